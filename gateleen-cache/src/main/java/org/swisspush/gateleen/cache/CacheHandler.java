@@ -1,6 +1,11 @@
 package org.swisspush.gateleen.cache;
 
 import com.google.common.base.Splitter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.HttpServerRequest;
@@ -11,15 +16,25 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.swisspush.gateleen.cache.fetch.CacheDataFetcher;
 import org.swisspush.gateleen.cache.storage.CacheStorage;
+import org.swisspush.gateleen.core.exception.GateleenExceptionFactory;
+import org.swisspush.gateleen.core.lock.Lock;
+import org.swisspush.gateleen.core.util.Address;
+import org.swisspush.gateleen.core.util.LockUtil;
 import org.swisspush.gateleen.core.util.ResponseStatusCodeLogUtil;
 import org.swisspush.gateleen.core.util.Result;
 import org.swisspush.gateleen.core.util.StatusCode;
 import org.swisspush.gateleen.core.util.StringUtils;
 
+import javax.annotation.Nullable;
 import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.swisspush.gateleen.core.util.LockUtil.acquireLock;
 
 /**
  * Handler class dealing with cached responses.
@@ -31,10 +46,21 @@ public class CacheHandler {
     public static final String CONTENT_TYPE_HEADER = "Content-Type";
     public static final String CONTENT_TYPE_JSON = "application/json";
     public static final String DEFAULT_CACHE_CONTROL_HEADER = "Cache-Control";
+    public static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+    public static final String COMPRESSION_RATIO_METRIC = "gateleen.cache.compression.ratio";
+    public static final String COMPRESSION_RATIO_METRIC_DESCRIPTION = "Ratio of the uncompressed to the compressed size of cached bodies";
+    private static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+    private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+    private static final String VARY_HEADER = "Vary";
     private static final String NO_CACHE = "no-cache";
     private static final String MAX_AGE = "max-age=";
+    private static final String STALE_WHILE_REVALIDATE = "stale-while-revalidate=";
+    private static final String STALE_IF_ERROR = "stale-if-error=";
     private static final String MAX_AGE_ZERO = MAX_AGE + "0";
     private static final int TIMEOUT_MS = 30000;
+    private static final String FILL_LOCK_PREFIX = "cacheFill_";
+    private static final long MIN_FILL_POLL_INTERVAL_MS = 10;
+    private static final int FILL_POLL_COUNT = 10;
     private final Logger log = LoggerFactory.getLogger(CacheHandler.class);
 
     private final CacheDataFetcher dataFetcher;
@@ -43,6 +69,15 @@ public class CacheHandler {
 
     private final String cacheControlHeader;
 
+    private final Map<String, Future<Result<CachedResponse, StatusCode>>> pendingFills = new ConcurrentHashMap<>();
+    private Vertx vertx;
+    private Lock fillLock;
+    private LockUtil lockUtil;
+    private long fillLockExpiryMs;
+    private long compressionThresholdBytes = -1;
+    private int compressionLevel;
+    private DistributionSummary compressionRatio;
+
     /**
      * Constructor for the {@link CacheHandler} using the default `Cache-Control` request header
      *
@@ -69,6 +104,51 @@ public class CacheHandler {
         this.cacheControlHeader = customCacheControlHeader;
     }
 
+    /**
+     * Coalesces the concurrent cache misses of all instances. Only the instance holding the lock for a cache identifier
+     * fetches the data, the other instances poll the cache storage until the data is cached or the lock expired.
+     * <p>
+     * Concurrent cache misses of the same instance are always coalesced.
+     *
+     * @param vertx the vertx instance
+     * @param lock the lock shared by all instances
+     * @param exceptionFactory the {@link GateleenExceptionFactory}
+     * @param lockExpiryMs the expiry of the lock, which should be a bit longer than the usual fetch duration
+     */
+    public void enableClusterWideFill(Vertx vertx, Lock lock, GateleenExceptionFactory exceptionFactory, long lockExpiryMs) {
+        this.vertx = vertx;
+        this.fillLock = lock;
+        this.lockUtil = new LockUtil(exceptionFactory);
+        this.fillLockExpiryMs = lockExpiryMs;
+    }
+
+    /**
+     * Stores the bodies of the cached responses gzip compressed. Clients accepting gzip get the compressed body as is,
+     * other clients get the body decompressed. Compression and decompression run on a worker thread.
+     *
+     * @param vertx the vertx instance
+     * @param thresholdBytes the minimal size of a body to be compressed
+     * @param level the gzip compression level from 1 (fastest) to 9 (smallest)
+     */
+    public void enableCompression(Vertx vertx, long thresholdBytes, int level) {
+        this.vertx = vertx;
+        this.compressionThresholdBytes = thresholdBytes;
+        this.compressionLevel = level;
+    }
+
+    /**
+     * Sets the MeterRegistry to record the compression ratio of the cached bodies.
+     *
+     * @param meterRegistry the MeterRegistry to set
+     */
+    public void setMeterRegistry(@Nullable MeterRegistry meterRegistry) {
+        if (meterRegistry != null) {
+            compressionRatio = DistributionSummary.builder(COMPRESSION_RATIO_METRIC)
+                    .description(COMPRESSION_RATIO_METRIC_DESCRIPTION)
+                    .register(meterRegistry);
+        }
+    }
+
     public boolean handle(final HttpServerRequest request) {
         if (request.uri().startsWith(cacheAdminUri)) {
             if(HttpMethod.POST == request.method() && request.uri().equals(cacheAdminUri + "/clear")) {
@@ -88,8 +168,8 @@ public class CacheHandler {
         request.pause();
 
         log.debug("Got a request which may be be cached");
-        Optional<Long> expireMs = extractExpireMs(request);
-        if (expireMs.isEmpty()) {
+        Optional<CacheDirectives> directives = extractDirectives(request);
+        if (directives.isEmpty()) {
             log.warn("Could not extract max-age value from Cache-Control request header");
             respondWith(StatusCode.BAD_REQUEST, request);
             return true;
@@ -105,44 +185,191 @@ public class CacheHandler {
 
             Optional<Buffer> cachedRequest = event.result();
             if(cachedRequest.isPresent()) {
-                log.debug("Request to {} found in cache storage", request.uri());
-                respondWithPayload(request, cachedRequest.get());
+                respondWithCachedOrRevalidate(request, cacheIdentifier, directives.get(), CachedResponse.decode(cachedRequest.get()));
             } else {
-                updateCacheAndRespond(request, cacheIdentifier, expireMs.get());
+                updateCacheAndRespond(request, cacheIdentifier, directives.get().storageExpiryMs());
             }
         });
 
         return true;
     }
 
+    /**
+     * Checks the age of the cache entry against the directives of the request. The cache entry may have been filled by a
+     * request with other directives, so its age is measured from the fill time stored in the cache entry. Cache entries
+     * without fill time were stored for their max-age only and are considered fresh.
+     */
+    private void respondWithCachedOrRevalidate(final HttpServerRequest request, String cacheIdentifier,
+                                               CacheDirectives directives, CachedResponse cachedResponse) {
+        OptionalLong cachedAt = cachedResponse.getCachedAt();
+        long staleSinceMs = 0;
+        if (cachedAt.isPresent()) {
+            staleSinceMs = System.currentTimeMillis() - cachedAt.getAsLong() - directives.maxAgeMs;
+        }
+        if (staleSinceMs <= 0) {
+            log.debug("Request to {} found in cache storage", request.uri());
+            respondWithCachedResponse(request, cachedResponse);
+        } else if (staleSinceMs <= directives.staleWhileRevalidateMs) {
+            log.debug("Stale request to {} found in cache storage, going to revalidate it.", request.uri());
+            respondWithCachedResponse(request, cachedResponse);
+            fill(request, cacheIdentifier, directives.storageExpiryMs()).onComplete(event -> {
+                if (event.failed() || event.result().isErr()) {
+                    log.warn("Failed to revalidate cached request {}", request.uri(), event.cause());
+                }
+            });
+        } else {
+            revalidateAndRespond(request, cacheIdentifier, directives, cachedResponse,
+                    staleSinceMs <= directives.staleIfErrorMs);
+        }
+    }
+
+    private void revalidateAndRespond(final HttpServerRequest request, String cacheIdentifier, CacheDirectives directives,
+                                      CachedResponse staleResponse, boolean staleIfError) {
+        fill(request, cacheIdentifier, directives.storageExpiryMs()).onComplete(event -> {
+            boolean error = event.failed() || (event.result().isErr() && event.result().err().getStatusCode() >= 500);
+            if (error && staleIfError) {
+                log.warn("Failed to revalidate cached request {}, responding with stale data", request.uri(), event.cause());
+                respondWithCachedResponse(request, staleResponse);
+            } else if (event.failed()) {
+                log.warn("Failed to fetch data from request", event.cause());
+                respondWith(StatusCode.INTERNAL_SERVER_ERROR, request);
+            } else if (event.result().isErr()) {
+                respondWith(event.result().err(), request);
+            } else {
+                respondWithCachedResponse(request, event.result().ok());
+            }
+        });
+    }
+
     private void updateCacheAndRespond(final HttpServerRequest request, String cacheIdentifier, Long expireMs){
-        log.debug("Request to {} not found in cache storage, going to fetch it.", request.uri());
-        HeadersMultiMap headersMultiMap = new HeadersMultiMap();
-        headersMultiMap.addAll(request.headers());
-        dataFetcher.fetchData(request.uri(), headersMultiMap, TIMEOUT_MS).onComplete(event -> {
+        fill(request, cacheIdentifier, expireMs).onComplete(event -> {
             if(event.failed()) {
                 log.warn("Failed to fetch data from request", event.cause());
                 respondWith(StatusCode.INTERNAL_SERVER_ERROR, request);
                 return;
             }
 
-            Result<Buffer, StatusCode> result = event.result();
+            Result<CachedResponse, StatusCode> result = event.result();
             if(result.isErr()) {
                 respondWith(result.err(), request);
                 return;
             }
+            respondWithCachedResponse(request, result.ok());
+        });
+    }
 
-            Buffer fetchedData = result.ok();
-            cacheStorage.cacheRequest(cacheIdentifier, fetchedData, Duration.ofMillis(expireMs)).onComplete(event1 -> {
-                if (event1.failed()){
-                    log.warn("Failed to store request to cache", event1.cause());
-                }
-                respondWithPayload(request, fetchedData);
-            });
+    /**
+     * Fetches the data and stores it to the cache. Concurrent calls for the same cache identifier share the fill
+     * already in progress.
+     */
+    private Future<Result<CachedResponse, StatusCode>> fill(final HttpServerRequest request, String cacheIdentifier, Long expireMs) {
+        Future<Result<CachedResponse, StatusCode>> pendingFill = pendingFills.get(cacheIdentifier);
+        if (pendingFill != null) {
+            log.debug("Request to {} not found in cache storage, waiting for the fetch in progress.", request.uri());
+            return pendingFill;
+        }
+        Promise<Result<CachedResponse, StatusCode>> promise = Promise.promise();
+        pendingFill = pendingFills.putIfAbsent(cacheIdentifier, promise.future());
+        if (pendingFill != null) {
+            return pendingFill;
+        }
 
+        log.debug("Request to {} not found in cache storage, going to fetch it.", request.uri());
+        HeadersMultiMap headersMultiMap = new HeadersMultiMap();
+        headersMultiMap.addAll(request.headers());
+        CachedResponse.CONDITIONAL_REQUEST_HEADERS.forEach(headersMultiMap::remove);
+        Future<Result<CachedResponse, StatusCode>> fill;
+        if (fillLock == null) {
+            fill = fetchAndCache(request.uri(), headersMultiMap, cacheIdentifier, expireMs);
+        } else {
+            fill = lockedFill(request.uri(), headersMultiMap, cacheIdentifier, expireMs);
+        }
+        fill.onComplete(event -> {
+            pendingFills.remove(cacheIdentifier, promise.future());
+            promise.handle(event);
+        });
+        return promise.future();
+    }
+
+    private Future<Result<CachedResponse, StatusCode>> lockedFill(String uri, HeadersMultiMap headers, String cacheIdentifier, Long expireMs) {
+        String lock = FILL_LOCK_PREFIX + cacheIdentifier;
+        String token = Address.instanceAddress() + "_" + System.currentTimeMillis() + "_" + lock;
+        return acquireLock(fillLock, lock, token, fillLockExpiryMs, log).transform(lockEvent -> {
+            if (lockEvent.failed()) {
+                log.warn("Could not acquire lock '{}', going to fetch without lock. Message: {}", lock, lockEvent.cause().getMessage());
+                return fetchAndCache(uri, headers, cacheIdentifier, expireMs);
+            }
+            if (lockEvent.result()) {
+                return fetchAndCache(uri, headers, cacheIdentifier, expireMs)
+                        .onComplete(event -> lockUtil.releaseLock(fillLock, lock, token, log));
+            }
+            log.debug("Request to {} is fetched by another instance, waiting for the cached data.", uri);
+            long pollIntervalMs = Math.max(MIN_FILL_POLL_INTERVAL_MS, fillLockExpiryMs / FILL_POLL_COUNT);
+            return awaitFill(uri, headers, cacheIdentifier, expireMs, pollIntervalMs, System.currentTimeMillis() + fillLockExpiryMs);
         });
     }
 
+    private Future<Result<CachedResponse, StatusCode>> awaitFill(String uri, HeadersMultiMap headers, String cacheIdentifier,
+                                                         Long expireMs, long pollIntervalMs, long deadline) {
+        if (System.currentTimeMillis() >= deadline) {
+            log.debug("Request to {} has not been cached by another instance in time, going to fetch it.", uri);
+            return fetchAndCache(uri, headers, cacheIdentifier, expireMs);
+        }
+        Promise<Void> timer = Promise.promise();
+        vertx.setTimer(pollIntervalMs, id -> timer.complete());
+        return timer.future()
+                .compose(nothing -> cacheStorage.cachedRequest(cacheIdentifier))
+                .transform(event -> {
+                    if (event.succeeded() && event.result().isPresent()) {
+                        return Future.succeededFuture(Result.ok(CachedResponse.decode(event.result().get())));
+                    }
+                    return awaitFill(uri, headers, cacheIdentifier, expireMs, pollIntervalMs, deadline);
+                });
+    }
+
+    private Future<Result<CachedResponse, StatusCode>> fetchAndCache(String uri, HeadersMultiMap headers, String cacheIdentifier, Long expireMs) {
+        return dataFetcher.fetchResponse(uri, headers, TIMEOUT_MS).compose(result -> {
+            if (result.isErr()) {
+                return Future.succeededFuture(result);
+            }
+            return maybeCompress(result.ok()).compose(compressedResponse -> {
+                CachedResponse fetchedResponse = compressedResponse.withCachedAt(System.currentTimeMillis());
+                Buffer fetchedData = fetchedResponse.encode();
+                return cacheStorage.cacheRequest(cacheIdentifier, fetchedData, Duration.ofMillis(expireMs)).transform(event -> {
+                    if (event.failed()) {
+                        log.warn("Failed to store request to cache", event.cause());
+                    }
+                    return Future.succeededFuture(Result.ok(fetchedResponse));
+                });
+            });
+        });
+    }
+
+    private Future<CachedResponse> maybeCompress(CachedResponse response) {
+        int uncompressedLength = response.getStoredBody().length();
+        if (compressionThresholdBytes < 0 || uncompressedLength < compressionThresholdBytes) {
+            return Future.succeededFuture(response);
+        }
+        return vertx.<CachedResponse>executeBlocking(() -> response.compress(compressionLevel), false)
+                .onSuccess(compressedResponse -> {
+                    if (compressionRatio != null) {
+                        compressionRatio.record(uncompressedLength / (double) Math.max(1, compressedResponse.getStoredBody().length()));
+                    }
+                });
+    }
+
+    private boolean acceptsGzip(final HttpServerRequest request) {
+        for (String acceptEncoding : request.headers().getAll(ACCEPT_ENCODING_HEADER)) {
+            for (String coding : Splitter.on(',').trimResults().omitEmptyStrings().split(acceptEncoding.toLowerCase())) {
+                List<String> codingAndWeight = Splitter.on(';').trimResults().splitToList(coding);
+                if (CachedResponse.GZIP.equals(codingAndWeight.get(0))) {
+                    return codingAndWeight.size() == 1 || !codingAndWeight.get(1).replace(" ", "").matches("q=0(\\.0*)?");
+                }
+            }
+        }
+        return false;
+    }
+
     private boolean containsCacheHeaders(final HttpServerRequest request) {
         List<String> cacheControlHeaderValues = request.headers().getAll(cacheControlHeader);
         for (String cacheControlHeaderValue : cacheControlHeaderValues) {
@@ -157,25 +384,52 @@ public class CacheHandler {
         return false;
     }
 
-    private Optional<Long> extractExpireMs(final HttpServerRequest request) {
+    private Optional<CacheDirectives> extractDirectives(final HttpServerRequest request) {
         String cacheControlHeaderValue = request.headers().get(cacheControlHeader);
         if (cacheControlHeaderValue == null || !cacheControlHeaderValue.toLowerCase().contains(MAX_AGE)) {
             return Optional.empty();
         }
 
         cacheControlHeaderValue = StringUtils.trim(cacheControlHeaderValue).toLowerCase();
-        List<String> headerValues = Splitter.on(MAX_AGE).omitEmptyStrings().splitToList(cacheControlHeaderValue);
-        if (headerValues.size() != 1) {
+        Long maxAgeMs = null;
+        long staleWhileRevalidateMs = 0;
+        long staleIfErrorMs = 0;
+        for (String directive : Splitter.on(',').trimResults().omitEmptyStrings().split(cacheControlHeaderValue)) {
+            if (directive.startsWith(MAX_AGE)) {
+                if (maxAgeMs != null) {
+                    return Optional.empty();
+                }
+                maxAgeMs = parseSecondsToMs(MAX_AGE, directive);
+                if (maxAgeMs == null) {
+                    return Optional.empty();
+                }
+            } else if (directive.startsWith(STALE_WHILE_REVALIDATE) || directive.startsWith(STALE_IF_ERROR)) {
+                String name = directive.startsWith(STALE_IF_ERROR) ? STALE_IF_ERROR : STALE_WHILE_REVALIDATE;
+                Long staleMs = parseSecondsToMs(name, directive);
+                if (staleMs == null) {
+                    return Optional.empty();
+                }
+                if (name.equals(STALE_IF_ERROR)) {
+                    staleIfErrorMs = staleMs;
+                } else {
+                    staleWhileRevalidateMs = staleMs;
+                }
+            }
+        }
+        if (maxAgeMs == null) {
             return Optional.empty();
         }
+        return Optional.of(new CacheDirectives(maxAgeMs, staleWhileRevalidateMs, staleIfErrorMs));
+    }
 
-        String headerValue = headerValues.get(0);
+    private Long parseSecondsToMs(String name, String directive) {
+        String headerValue = directive.substring(name.length());
         try {
-            long expireSeconds = Long.parseLong(headerValue);
-            return Optional.of(expireSeconds * 1000);
+            long seconds = Long.parseLong(headerValue);
+            return seconds >= 0 ? seconds * 1000 : null;
         } catch (NumberFormatException ex) {
-            log.warn("Value of {} max-age header is not a number: {}", cacheControlHeader, headerValue);
-            return Optional.empty();
+            log.warn("Value of {} {} header is not a number: {}", cacheControlHeader, name, headerValue);
+            return null;
         }
     }
 
@@ -225,6 +479,29 @@ public class CacheHandler {
         });
     }
 
+    /**
+     * The supported directives of the cache control request header
+     */
+    private static class CacheDirectives {
+        private final long maxAgeMs;
+        private final long staleWhileRevalidateMs;
+        private final long staleIfErrorMs;
+
+        CacheDirectives(long maxAgeMs, long staleWhileRevalidateMs, long staleIfErrorMs) {
+            this.maxAgeMs = maxAgeMs;
+            this.staleWhileRevalidateMs = staleWhileRevalidateMs;
+            this.staleIfErrorMs = staleIfErrorMs;
+        }
+
+        long staleMs() {
+            return Math.max(staleWhileRevalidateMs, staleIfErrorMs);
+        }
+
+        long storageExpiryMs() {
+            return maxAgeMs + staleMs();
+        }
+    }
+
     private void respondWith(StatusCode statusCode, final HttpServerRequest request) {
         ResponseStatusCodeLogUtil.info(request, statusCode, CacheHandler.class);
         request.response().setStatusCode(statusCode.getStatusCode());
@@ -233,6 +510,65 @@ public class CacheHandler {
         request.resume();
     }
 
+    private void respondWithCachedResponse(final HttpServerRequest request, CachedResponse cachedResponse) {
+        boolean gzip = cachedResponse.isCompressed() && acceptsGzip(request);
+        String eTag = cachedResponse.getETag();
+        if (gzip && eTag != null && !eTag.startsWith("W/")) {
+            // the compressed representation differs from the uncompressed one
+            eTag = "W/" + eTag;
+        }
+        if (cachedResponse.isCompressed()) {
+            request.response().headers().set(VARY_HEADER, ACCEPT_ENCODING_HEADER);
+        }
+
+        if (cachedResponse.notModified(request.headers().get(IF_NONE_MATCH_HEADER))) {
+            ResponseStatusCodeLogUtil.info(request, StatusCode.NOT_MODIFIED, CacheHandler.class);
+            request.response().setStatusCode(StatusCode.NOT_MODIFIED.getStatusCode());
+            request.response().setStatusMessage(StatusCode.NOT_MODIFIED.getStatusMessage());
+            request.response().headers().set(CachedResponse.ETAG_HEADER, eTag);
+            request.response().end();
+            request.resume();
+            return;
+        }
+        if (gzip) {
+            writeCachedResponse(request, cachedResponse, cachedResponse.getStoredBody(), eTag);
+        } else if (!cachedResponse.isCompressed()) {
+            writeCachedResponse(request, cachedResponse, cachedResponse.getBody(), null);
+        } else {
+            // entries compressed by other instances are decompressed right away when compression is not enabled
+            Future<Buffer> body = vertx == null ? Future.succeededFuture(cachedResponse.getBody())
+                    : vertx.executeBlocking(cachedResponse::getBody, false);
+            body.onComplete(event -> {
+                if (event.failed()) {
+                    log.warn("Failed to decompress cached request {}", request.uri(), event.cause());
+                    respondWith(StatusCode.INTERNAL_SERVER_ERROR, request);
+                    return;
+                }
+                writeCachedResponse(request, cachedResponse, event.result(), null);
+            });
+        }
+    }
+
+    /**
+     * Writes the cached response with the provided body. A gzip compressed body is sent with the provided weak ETag.
+     */
+    private void writeCachedResponse(final HttpServerRequest request, CachedResponse cachedResponse, Buffer body,
+                                     @Nullable String gzipETag) {
+        StatusCode statusCode = StatusCode.fromCode(cachedResponse.getStatusCode());
+        ResponseStatusCodeLogUtil.info(request, statusCode, CacheHandler.class);
+        request.response().setStatusCode(cachedResponse.getStatusCode());
+        if (statusCode != null) {
+            request.response().setStatusMessage(statusCode.getStatusMessage());
+        }
+        request.response().headers().addAll(cachedResponse.getHeaders());
+        if (gzipETag != null) {
+            request.response().headers().set(CachedResponse.ETAG_HEADER, gzipETag);
+            request.response().headers().set(CONTENT_ENCODING_HEADER, CachedResponse.GZIP);
+        }
+        request.response().end(body);
+        request.resume();
+    }
+
     private void respondWithPayload(final HttpServerRequest request, Buffer cachedRequestPayload) {
         ResponseStatusCodeLogUtil.info(request, StatusCode.OK, CacheHandler.class);
         request.response().setStatusCode(StatusCode.OK.getStatusCode());
@@ -0,0 +1,276 @@
+package org.swisspush.gateleen.cache;
+
+import com.google.common.hash.Hashing;
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.swisspush.gateleen.core.json.JsonMultiMap;
+import org.swisspush.gateleen.core.util.StatusCode;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A cached response consisting of the status code, the cached headers and the body.
+ * <p>
+ * The response is stored as a text envelope of a marker, the json encoded status code and headers, a line feed and the
+ * body. A gzip compressed body is stored base64 encoded, as the cache storage stores text only. Cache entries stored
+ * before the envelope was introduced contain the body only and are read as json responses without ETag.
+ * <p>
+ * The envelope contains the time the cache entry was filled, so the age of the cache entry can be checked against the
+ * max-age of each request.
+ */
+public class CachedResponse {
+
+    public static final String ETAG_HEADER = "ETag";
+
+    /**
+     * The conditional request headers of the client. They must not be sent with the request filling the cache, since
+     * the backend would answer with a body-less response which cannot be cached.
+     */
+    public static final List<String> CONDITIONAL_REQUEST_HEADERS = List.of("If-None-Match", "If-Modified-Since",
+            "If-Match", "If-Unmodified-Since", "If-Range");
+
+    /**
+     * The response headers of the backend being cached
+     */
+    public static final List<String> CACHED_HEADERS = List.of(CacheHandler.CONTENT_TYPE_HEADER, "Content-Language",
+            "Last-Modified", ETAG_HEADER);
+
+    public static final String GZIP = "gzip";
+
+    // json payloads never start with a zero byte
+    private static final byte[] ENVELOPE_MARKER = new byte[]{0, 'g', 'c', 1};
+    private static final byte HEADER_END = '\n';
+    private static final String STATUS_CODE = "statusCode";
+    private static final String HEADERS = "headers";
+    private static final String COMPRESSED = "compressed";
+    private static final String CACHED_AT = "cachedAt";
+    private static final long UNKNOWN = -1;
+
+    private final int statusCode;
+    private final MultiMap headers;
+    private final Buffer body;
+    private final boolean compressed;
+    private final long cachedAt;
+
+    private CachedResponse(int statusCode, MultiMap headers, Buffer body, boolean compressed, long cachedAt) {
+        this.statusCode = statusCode;
+        this.headers = headers;
+        this.body = body;
+        this.compressed = compressed;
+        this.cachedAt = cachedAt;
+    }
+
+    /**
+     * Creates a cached response from the response of the backend. Only the {@link #CACHED_HEADERS} are kept. When the
+     * backend did not provide an ETag, the ETag is computed from the body.
+     *
+     * @param statusCode the status code of the response
+     * @param responseHeaders the headers of the response
+     * @param body the body of the response
+     * @return the cached response
+     */
+    public static CachedResponse fromResponse(int statusCode, MultiMap responseHeaders, Buffer body) {
+        MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+        for (String header : CACHED_HEADERS) {
+            List<String> values = responseHeaders.getAll(header);
+            if (!values.isEmpty()) {
+                headers.add(header, values);
+            }
+        }
+        if (!headers.contains(CacheHandler.CONTENT_TYPE_HEADER)) {
+            headers.set(CacheHandler.CONTENT_TYPE_HEADER, CacheHandler.CONTENT_TYPE_JSON);
+        }
+        if (!headers.contains(ETAG_HEADER)) {
+            headers.set(ETAG_HEADER, "\"" + Hashing.murmur3_128().hashBytes(body.getBytes()) + "\"");
+        }
+        return new CachedResponse(statusCode, headers, body, false, UNKNOWN);
+    }
+
+    /**
+     * @param body the body of a json response
+     * @return a cached {@link StatusCode#OK} json response with the provided body
+     */
+    public static CachedResponse fromBody(Buffer body) {
+        return fromResponse(StatusCode.OK.getStatusCode(), MultiMap.caseInsensitiveMultiMap(), body);
+    }
+
+    /**
+     * Reads a cached response from the storage.
+     *
+     * @param stored the buffer stored in the cache storage
+     * @return the cached response
+     */
+    public static CachedResponse decode(Buffer stored) {
+        // the json encoded header never contains a line feed
+        int headerEnd = isEnvelope(stored) ? ENVELOPE_MARKER.length : stored.length();
+        while (headerEnd < stored.length() && stored.getByte(headerEnd) != HEADER_END) {
+            headerEnd++;
+        }
+        if (headerEnd >= stored.length()) {
+            MultiMap headers = MultiMap.caseInsensitiveMultiMap()
+                    .set(CacheHandler.CONTENT_TYPE_HEADER, CacheHandler.CONTENT_TYPE_JSON);
+            return new CachedResponse(StatusCode.OK.getStatusCode(), headers, stored, false, UNKNOWN);
+        }
+        JsonObject header = new JsonObject(stored.getBuffer(ENVELOPE_MARKER.length, headerEnd));
+        Buffer body = stored.getBuffer(headerEnd + 1, stored.length());
+        boolean compressed = header.getBoolean(COMPRESSED, false);
+        if (compressed) {
+            body = Buffer.buffer(Base64.getDecoder().decode(body.getBytes()));
+        }
+        return new CachedResponse(header.getInteger(STATUS_CODE), JsonMultiMap.fromJson(header.getJsonArray(HEADERS)),
+                body, compressed, header.getLong(CACHED_AT, UNKNOWN));
+    }
+
+    /**
+     * @return the buffer to store in the cache storage
+     */
+    public Buffer encode() {
+        JsonObject headerJson = new JsonObject()
+                .put(STATUS_CODE, statusCode)
+                .put(HEADERS, JsonMultiMap.toJson(headers));
+        Buffer storedBody = body;
+        if (compressed) {
+            headerJson.put(COMPRESSED, true);
+            storedBody = Buffer.buffer(Base64.getEncoder().encode(body.getBytes()));
+        }
+        if (cachedAt != UNKNOWN) {
+            headerJson.put(CACHED_AT, cachedAt);
+        }
+        Buffer header = headerJson.toBuffer();
+        return Buffer.buffer(ENVELOPE_MARKER.length + header.length() + 1 + storedBody.length())
+                .appendBytes(ENVELOPE_MARKER)
+                .appendBuffer(header)
+                .appendByte(HEADER_END)
+                .appendBuffer(storedBody);
+    }
+
+    /**
+     * Compresses the body with gzip.
+     *
+     * @param level the compression level from 1 (fastest) to 9 (smallest)
+     * @return the response with gzip compressed body
+     */
+    public CachedResponse compress(int level) {
+        if (compressed) {
+            return this;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, body.length() / 4));
+        try (GZIPOutputStream gzip = new LeveledGZIPOutputStream(out, level)) {
+            gzip.write(body.getBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new CachedResponse(statusCode, headers, Buffer.buffer(out.toByteArray()), true, cachedAt);
+    }
+
+    /**
+     * @param cachedAtMs the time in milliseconds the cache entry is filled
+     * @return the response with the provided fill time
+     */
+    public CachedResponse withCachedAt(long cachedAtMs) {
+        return new CachedResponse(statusCode, headers, body, compressed, cachedAtMs);
+    }
+
+    /**
+     * Checks whether the provided If-None-Match request header value matches the ETag of this response. Weak
+     * comparison is used as defined for If-None-Match.
+     *
+     * @param ifNoneMatch the value of the If-None-Match request header
+     * @return true when the response was not modified
+     */
+    public boolean notModified(@Nullable String ifNoneMatch) {
+        String eTag = getETag();
+        if (ifNoneMatch == null || eTag == null) {
+            return false;
+        }
+        if ("*".equals(ifNoneMatch.trim())) {
+            return true;
+        }
+        String opaqueETag = withoutWeakPrefix(eTag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            if (withoutWeakPrefix(candidate.trim()).equals(opaqueETag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public MultiMap getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return the uncompressed body
+     */
+    public Buffer getBody() {
+        if (!compressed) {
+            return body;
+        }
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(body.getBytes()))) {
+            return Buffer.buffer(gzip.readAllBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the body as stored, gzip compressed when {@link #isCompressed()}
+     */
+    public Buffer getStoredBody() {
+        return body;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * @return the time in milliseconds the cache entry was filled, or an empty optional for cache entries stored before
+     * the fill time was recorded
+     */
+    public OptionalLong getCachedAt() {
+        return cachedAt == UNKNOWN ? OptionalLong.empty() : OptionalLong.of(cachedAt);
+    }
+
+    @Nullable
+    public String getETag() {
+        return headers.get(ETAG_HEADER);
+    }
+
+    private static boolean isEnvelope(Buffer stored) {
+        if (stored.length() <= ENVELOPE_MARKER.length) {
+            return false;
+        }
+        for (int i = 0; i < ENVELOPE_MARKER.length; i++) {
+            if (stored.getByte(i) != ENVELOPE_MARKER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String withoutWeakPrefix(String eTag) {
+        return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+    }
+
+    private static class LeveledGZIPOutputStream extends GZIPOutputStream {
+        LeveledGZIPOutputStream(ByteArrayOutputStream out, int level) throws IOException {
+            super(out);
+            def.setLevel(level);
+        }
+    }
+}
@@ -3,10 +3,25 @@ package org.swisspush.gateleen.cache.fetch;
 import io.vertx.core.Future;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.impl.headers.HeadersMultiMap;
+import org.swisspush.gateleen.cache.CachedResponse;
 import org.swisspush.gateleen.core.util.Result;
 import org.swisspush.gateleen.core.util.StatusCode;
 
 public interface CacheDataFetcher {
 
     Future<Result<Buffer, StatusCode>> fetchData(final String requestUri, HeadersMultiMap requestHeaders, long requestTimeoutMs);
+
+    /**
+     * Fetches the data including the response headers to be cached. The default implementation uses
+     * {@link #fetchData(String, HeadersMultiMap, long)} and creates json responses.
+     *
+     * @param requestUri the uri of the request
+     * @param requestHeaders the headers of the request
+     * @param requestTimeoutMs the timeout of the request
+     * @return the response to be cached or the status code of an unsuccessful request
+     */
+    default Future<Result<CachedResponse, StatusCode>> fetchResponse(final String requestUri, HeadersMultiMap requestHeaders,
+                                                                     long requestTimeoutMs) {
+        return fetchData(requestUri, requestHeaders, requestTimeoutMs).map(result -> result.mapOk(CachedResponse::fromBody));
+    }
 }
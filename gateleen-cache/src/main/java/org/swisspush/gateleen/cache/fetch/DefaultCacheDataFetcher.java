@@ -8,6 +8,7 @@ import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.impl.headers.HeadersMultiMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.swisspush.gateleen.cache.CachedResponse;
 import org.swisspush.gateleen.core.http.ClientRequestCreator;
 import org.swisspush.gateleen.core.util.Result;
 import org.swisspush.gateleen.core.util.StatusCode;
@@ -46,9 +47,16 @@ public class DefaultCacheDataFetcher implements CacheDataFetcher {
 
     @Override
     public Future<Result<Buffer, StatusCode>> fetchData(final String requestUri, HeadersMultiMap requestHeaders, long requestTimeoutMs) {
-        Promise<Result<Buffer, StatusCode>> promise = Promise.promise();
+        return fetchResponse(requestUri, requestHeaders, requestTimeoutMs).map(result -> result.mapOk(CachedResponse::getBody));
+    }
+
+    @Override
+    public Future<Result<CachedResponse, StatusCode>> fetchResponse(final String requestUri, HeadersMultiMap requestHeaders,
+                                                                    long requestTimeoutMs) {
+        Promise<Result<CachedResponse, StatusCode>> promise = Promise.promise();
 
         requestHeaders.remove(cacheControlHeader);
+        CachedResponse.CONDITIONAL_REQUEST_HEADERS.forEach(requestHeaders::remove);
         clientRequestCreator.createClientRequest(
                 HttpMethod.GET,
                 requestUri,
@@ -79,7 +87,7 @@ public class DefaultCacheDataFetcher implements CacheDataFetcher {
                             return;
                         }
 
-                        promise.complete(Result.ok(data));
+                        promise.complete(Result.ok(CachedResponse.fromResponse(cRes.statusCode(), cRes.headers(), data)));
                     } else {
                         StatusCode statusCode = StatusCode.fromCode(cRes.statusCode());
                         if (statusCode == null) {
@@ -18,4 +18,15 @@ public interface CacheStorage {
     Future<Long> cacheEntriesCount();
 
     Future<Set<String>> cacheEntries();
+
+    /**
+     * Returns the remaining time until the cached request expires.
+     *
+     * @param cacheIdentifier the identifier of the cached request
+     * @return the remaining time or an empty optional when the cached request does not exist or the storage
+     * cannot provide the remaining time
+     */
+    default Future<Optional<Duration>> cacheExpiry(String cacheIdentifier) {
+        return Future.succeededFuture(Optional.empty());
+    }
 }
@@ -117,6 +117,27 @@ public class RedisCacheStorage implements CacheStorage {
         return promise.future();
     }
 
+    @Override
+    public Future<Optional<Duration>> cacheExpiry(String cacheIdentifier) {
+        Promise<Optional<Duration>> promise = Promise.promise();
+        redisProvider.redis().onSuccess(redisAPI -> redisAPI.pttl(CACHE_PREFIX + cacheIdentifier, event -> {
+            if (event.failed()) {
+                String message = "Failed to get expiry of cached request '" + cacheIdentifier + "'. Cause: " + logCause(event);
+                log.error(message);
+                promise.fail(message);
+            } else {
+                // negative values mean that the key does not exist or has no expiry
+                long ttl = event.result() != null ? event.result().toLong() : -1;
+                promise.complete(ttl > 0 ? Optional.of(Duration.ofMillis(ttl)) : Optional.empty());
+            }
+        })).onFailure(throwable -> {
+            String message = "Redis: Failed to get expiry of cached request '" + cacheIdentifier + "'. Cause: " + throwable.getMessage();
+            log.error(message);
+            promise.fail(message);
+        });
+        return promise.future();
+    }
+
     @Override
     public Future<Long> clearCache() {
         Promise<Long> promise = Promise.promise();
@@ -0,0 +1,291 @@
+package org.swisspush.gateleen.cache.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link CacheStorage} keeping the recently used cached requests in a local in-memory tier in front of another
+ * (remote) {@link CacheStorage} like the {@link RedisCacheStorage}.
+ * <p>
+ * The local tier is bounded by the total size of the cached payloads and evicts the least recently used entries.
+ * Local entries expire at the same time as the corresponding remote entries. Clearing the cache clears the local tier
+ * of all instances by publishing on the {@link #CACHE_INVALIDATION_ADDRESS}.
+ */
+public class TieredCacheStorage implements CacheStorage {
+
+    private final Logger log = LoggerFactory.getLogger(TieredCacheStorage.class);
+
+    public static final String CACHE_INVALIDATION_ADDRESS = "gateleen.cache-invalidation";
+
+    public static final String CACHE_LOOKUPS_METRIC = "gateleen.cache.lookups";
+    public static final String CACHE_LOOKUPS_METRIC_DESCRIPTION = "Amount of cache lookups per tier and result";
+    public static final String CACHE_HIT_RATIO_METRIC = "gateleen.cache.hit.ratio";
+    public static final String CACHE_HIT_RATIO_METRIC_DESCRIPTION = "Ratio of cache lookups being a hit per tier";
+    public static final String CACHE_LOCAL_SIZE_METRIC = "gateleen.cache.local.size.bytes";
+    public static final String CACHE_LOCAL_SIZE_METRIC_DESCRIPTION = "Size of the payloads in the local cache tier";
+    public static final String TIER_TAG = "tier";
+    public static final String RESULT_TAG = "result";
+    public static final String TIER_LOCAL = "local";
+    public static final String TIER_REMOTE = "remote";
+
+    private final Vertx vertx;
+    private final CacheStorage remoteStorage;
+    private final long maxLocalBytes;
+    private final LongSupplier clock;
+
+    private final LinkedHashMap<String, LocalEntry> localEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long localBytes;
+    private long generation;
+
+    private final TierStatistics localStatistics = new TierStatistics(TIER_LOCAL);
+    private final TierStatistics remoteStatistics = new TierStatistics(TIER_REMOTE);
+
+    /**
+     * @param vertx the vertx instance
+     * @param remoteStorage the storage holding the cached requests shared by all instances
+     * @param maxLocalBytes the maximum total size [bytes] of the payloads kept in the local tier
+     */
+    public TieredCacheStorage(Vertx vertx, CacheStorage remoteStorage, long maxLocalBytes) {
+        this(vertx, remoteStorage, maxLocalBytes, System::currentTimeMillis);
+    }
+
+    TieredCacheStorage(Vertx vertx, CacheStorage remoteStorage, long maxLocalBytes, LongSupplier clock) {
+        this.vertx = vertx;
+        this.remoteStorage = remoteStorage;
+        this.maxLocalBytes = maxLocalBytes;
+        this.clock = clock;
+        vertx.eventBus().consumer(CACHE_INVALIDATION_ADDRESS, message -> {
+            log.debug("Clearing local cache tier");
+            clearLocal();
+        });
+    }
+
+    /**
+     * Sets the MeterRegistry to export the lookups and the hit ratios of the tiers.
+     *
+     * @param meterRegistry the MeterRegistry to set
+     */
+    public void setMeterRegistry(@Nullable MeterRegistry meterRegistry) {
+        if (meterRegistry != null) {
+            localStatistics.register(meterRegistry);
+            remoteStatistics.register(meterRegistry);
+            Gauge.builder(CACHE_LOCAL_SIZE_METRIC, this, TieredCacheStorage::localBytes)
+                    .description(CACHE_LOCAL_SIZE_METRIC_DESCRIPTION)
+                    .register(meterRegistry);
+        }
+    }
+
+    @Override
+    public Future<Void> cacheRequest(String cacheIdentifier, Buffer cachedObject, Duration cacheExpiry) {
+        long currentGeneration = currentGeneration();
+        long expiresAt = clock.getAsLong() + cacheExpiry.toMillis();
+        return remoteStorage.cacheRequest(cacheIdentifier, cachedObject, cacheExpiry)
+                .onSuccess(nothing -> putLocal(cacheIdentifier, cachedObject, expiresAt, currentGeneration));
+    }
+
+    @Override
+    public Future<Optional<Buffer>> cachedRequest(String cacheIdentifier) {
+        Buffer localPayload = getLocal(cacheIdentifier);
+        if (localPayload != null) {
+            localStatistics.hit();
+            return Future.succeededFuture(Optional.of(localPayload));
+        }
+        localStatistics.miss();
+
+        long currentGeneration = currentGeneration();
+        return remoteStorage.cachedRequest(cacheIdentifier).onSuccess(remotePayload -> {
+            if (remotePayload.isEmpty()) {
+                remoteStatistics.miss();
+                return;
+            }
+            remoteStatistics.hit();
+            if (remotePayload.get().length() > maxLocalBytes) {
+                return;
+            }
+            // the remote entry is only kept locally when its expiry is known
+            remoteStorage.cacheExpiry(cacheIdentifier).onComplete(expiry -> {
+                if (expiry.succeeded() && expiry.result().isPresent()) {
+                    long expiresAt = clock.getAsLong() + expiry.result().get().toMillis();
+                    putLocal(cacheIdentifier, remotePayload.get(), expiresAt, currentGeneration);
+                }
+            });
+        });
+    }
+
+    @Override
+    public Future<Long> clearCache() {
+        clearLocal();
+        return remoteStorage.clearCache().onComplete(event -> vertx.eventBus().publish(CACHE_INVALIDATION_ADDRESS, null));
+    }
+
+    @Override
+    public Future<Long> cacheEntriesCount() {
+        return remoteStorage.cacheEntriesCount();
+    }
+
+    @Override
+    public Future<Set<String>> cacheEntries() {
+        return remoteStorage.cacheEntries();
+    }
+
+    @Override
+    public Future<Optional<Duration>> cacheExpiry(String cacheIdentifier) {
+        Long localExpiresAt = getLocalExpiresAt(cacheIdentifier);
+        if (localExpiresAt != null) {
+            return Future.succeededFuture(Optional.of(Duration.ofMillis(localExpiresAt - clock.getAsLong())));
+        }
+        return remoteStorage.cacheExpiry(cacheIdentifier);
+    }
+
+    /**
+     * @return the ratio of the lookups being a hit in the local tier
+     */
+    public double localHitRatio() {
+        return localStatistics.hitRatio();
+    }
+
+    /**
+     * @return the ratio of the lookups missed in the local tier being a hit in the remote tier
+     */
+    public double remoteHitRatio() {
+        return remoteStatistics.hitRatio();
+    }
+
+    synchronized long localBytes() {
+        return localBytes;
+    }
+
+    synchronized int localEntriesCount() {
+        return localEntries.size();
+    }
+
+    private synchronized long currentGeneration() {
+        return generation;
+    }
+
+    @Nullable
+    private synchronized Buffer getLocal(String cacheIdentifier) {
+        LocalEntry entry = localEntries.get(cacheIdentifier);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt <= clock.getAsLong()) {
+            removeLocal(cacheIdentifier);
+            return null;
+        }
+        return entry.payload;
+    }
+
+    @Nullable
+    private synchronized Long getLocalExpiresAt(String cacheIdentifier) {
+        LocalEntry entry = localEntries.get(cacheIdentifier);
+        if (entry == null || entry.expiresAt <= clock.getAsLong()) {
+            return null;
+        }
+        return entry.expiresAt;
+    }
+
+    private synchronized void putLocal(String cacheIdentifier, Buffer payload, long expiresAt, long expectedGeneration) {
+        if (expectedGeneration != generation || payload.length() > maxLocalBytes || expiresAt <= clock.getAsLong()) {
+            // the cache was cleared in the meantime or the entry is not worth to be kept
+            return;
+        }
+        removeLocal(cacheIdentifier);
+        localEntries.put(cacheIdentifier, new LocalEntry(payload, expiresAt));
+        localBytes += payload.length();
+
+        Iterator<Map.Entry<String, LocalEntry>> leastRecentlyUsed = localEntries.entrySet().iterator();
+        while (localBytes > maxLocalBytes && leastRecentlyUsed.hasNext()) {
+            localBytes -= leastRecentlyUsed.next().getValue().payload.length();
+            leastRecentlyUsed.remove();
+        }
+    }
+
+    private void removeLocal(String cacheIdentifier) {
+        LocalEntry removed = localEntries.remove(cacheIdentifier);
+        if (removed != null) {
+            localBytes -= removed.payload.length();
+        }
+    }
+
+    private synchronized void clearLocal() {
+        generation++;
+        localEntries.clear();
+        localBytes = 0;
+    }
+
+    private static class LocalEntry {
+        private final Buffer payload;
+        private final long expiresAt;
+
+        LocalEntry(Buffer payload, long expiresAt) {
+            this.payload = payload;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class TierStatistics {
+        private final String tier;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private Counter hitCounter;
+        private Counter missCounter;
+
+        TierStatistics(String tier) {
+            this.tier = tier;
+        }
+
+        void register(MeterRegistry meterRegistry) {
+            hitCounter = lookupCounter(meterRegistry, "hit");
+            missCounter = lookupCounter(meterRegistry, "miss");
+            Gauge.builder(CACHE_HIT_RATIO_METRIC, this, TierStatistics::hitRatio)
+                    .description(CACHE_HIT_RATIO_METRIC_DESCRIPTION)
+                    .tag(TIER_TAG, tier)
+                    .register(meterRegistry);
+        }
+
+        private Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+            return Counter.builder(CACHE_LOOKUPS_METRIC)
+                    .description(CACHE_LOOKUPS_METRIC_DESCRIPTION)
+                    .tag(TIER_TAG, tier)
+                    .tag(RESULT_TAG, result)
+                    .register(meterRegistry);
+        }
+
+        void hit() {
+            hits.increment();
+            if (hitCounter != null) {
+                hitCounter.increment();
+            }
+        }
+
+        void miss() {
+            misses.increment();
+            if (missCounter != null) {
+                missCounter.increment();
+            }
+        }
+
+        double hitRatio() {
+            long hitCount = hits.sum();
+            long total = hitCount + misses.sum();
+            return total == 0 ? 0.0 : hitCount / (double) total;
+        }
+    }
+}
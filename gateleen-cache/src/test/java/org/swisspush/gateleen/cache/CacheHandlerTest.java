@@ -1,6 +1,10 @@
 package org.swisspush.gateleen.cache;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
 import io.vertx.core.MultiMap;
 import io.vertx.core.buffer.Buffer;
 
@@ -19,11 +23,14 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.swisspush.gateleen.cache.fetch.CacheDataFetcher;
 import org.swisspush.gateleen.cache.storage.CacheStorage;
+import org.swisspush.gateleen.core.exception.GateleenExceptionFactory;
 import org.swisspush.gateleen.core.http.DummyHttpServerRequest;
 import org.swisspush.gateleen.core.http.DummyHttpServerResponse;
+import org.swisspush.gateleen.core.lock.Lock;
 import org.swisspush.gateleen.core.util.Result;
 import org.swisspush.gateleen.core.util.StatusCode;
 
+import java.time.Duration;
 import java.util.Collections;
 import java.util.Optional;
 import java.util.Set;
@@ -35,13 +42,24 @@ import static org.swisspush.gateleen.cache.CacheHandler.*;
 public class CacheHandlerTest {
 
     private CacheHandler cacheHandler;
-    private CacheDataFetcher dataFetcher = mock(CacheDataFetcher.class);
+    private CacheDataFetcher dataFetcher = mock(CacheDataFetcher.class, CALLS_REAL_METHODS);
     private CacheStorage cacheStorage = mock(CacheStorage.class);
 
     private Buffer bufferFromJson(JsonObject jsonObject) {
         return Buffer.buffer(jsonObject.encode());
     }
 
+    private Buffer cachedSecondsAgo(Buffer body, long seconds) {
+        return CachedResponse.fromBody(body).withCachedAt(System.currentTimeMillis() - seconds * 1000).encode();
+    }
+
+    private Buffer cachedBody(Buffer body) {
+        return argThat(stored -> {
+            CachedResponse cachedResponse = CachedResponse.decode(stored);
+            return cachedResponse.getBody().equals(body) && cachedResponse.getCachedAt().isPresent();
+        });
+    }
+
     @Before
     public void setUp() {
         cacheHandler = new CacheHandler(dataFetcher, cacheStorage, "/playground/server/cache");
@@ -197,7 +215,7 @@ public class CacheHandlerTest {
         context.assertTrue(cacheHandler.handle(getRequestWithCacheControlHeaders));
 
         verify(cacheStorage, times(1)).cachedRequest(eq(getRequestWithCacheControlHeaders.uri));
-        verify(cacheStorage, times(1)).cacheRequest(eq(getRequestWithCacheControlHeaders.uri), eq(dataObj), any());
+        verify(cacheStorage, times(1)).cacheRequest(eq(getRequestWithCacheControlHeaders.uri), cachedBody(dataObj), any());
         verify(response, times(1)).setStatusCode(StatusCode.OK.getStatusCode());
         verify(response, times(1)).setStatusMessage(StatusCode.OK.getStatusMessage());
         verify(response, timeout(1000).times(1)).end(dataObj);
@@ -217,13 +235,267 @@ public class CacheHandlerTest {
         context.assertTrue(cacheHandler.handle(getRequestWithCacheControlHeaders));
 
         verify(cacheStorage, times(1)).cachedRequest(eq(getRequestWithCacheControlHeaders.uri));
-        verify(cacheStorage, times(1)).cacheRequest(eq(getRequestWithCacheControlHeaders.uri), eq(dataObj), any());
+        verify(cacheStorage, times(1)).cacheRequest(eq(getRequestWithCacheControlHeaders.uri), cachedBody(dataObj), any());
         verify(response, times(1)).setStatusCode(StatusCode.OK.getStatusCode());
         verify(response, times(1)).setStatusMessage(StatusCode.OK.getStatusMessage());
         verify(response, timeout(1000).times(1)).end(dataObj);
         context.assertEquals(CONTENT_TYPE_JSON, response.headers().get(CONTENT_TYPE_HEADER));
     }
 
+    @Test
+    public void testConcurrentCacheMissesAreFetchedOnce(TestContext context) {
+        Buffer dataObj = bufferFromJson(new JsonObject().put("foo", "bar"));
+        Promise<Result<Buffer, StatusCode>> fetchPromise = Promise.promise();
+        when(cacheStorage.cachedRequest(anyString())).thenReturn(Future.succeededFuture(Optional.empty()));
+        when(dataFetcher.fetchData(anyString(), any(), anyLong())).thenReturn(fetchPromise.future());
+        when(cacheStorage.cacheRequest(anyString(), any(), any())).thenReturn(Future.succeededFuture());
+
+        MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+        headers.add(DEFAULT_CACHE_CONTROL_HEADER, "max-age=120");
+        HttpServerResponse response1 = spy(new Response());
+        HttpServerResponse response2 = spy(new Response());
+        context.assertTrue(cacheHandler.handle(new Request(HttpMethod.GET, "/some/path", headers, response1)));
+        context.assertTrue(cacheHandler.handle(new Request(HttpMethod.GET, "/some/path", headers, response2)));
+        verify(response1, never()).end(any(Buffer.class));
+
+        fetchPromise.complete(Result.ok(dataObj));
+
+        verify(dataFetcher, times(1)).fetchData(eq("/some/path"), any(), anyLong());
+        verify(cacheStorage, times(1)).cacheRequest(eq("/some/path"), cachedBody(dataObj), any());
+        verify(response1, timeout(1000).times(1)).end(dataObj);
+        verify(response2, timeout(1000).times(1)).end(dataObj);
+
+        // a later cache miss fetches again
+        when(dataFetcher.fetchData(anyString(), any(), anyLong())).thenReturn(Future.succeededFuture(Result.ok(dataObj)));
+        context.assertTrue(cacheHandler.handle(new Request(HttpMethod.GET, "/some/path", headers, spy(new Response()))));
+        verify(dataFetcher, times(2)).fetchData(eq("/some/path"), any(), anyLong());
+    }
+
+    @Test
+    public void testClusterWideFillWaitsForOtherInstance(TestContext context) {
+        Vertx vertx = Vertx.vertx();
+        Lock lock = mock(Lock.class);
+        when(lock.acquireLock(anyString(), anyString(), anyLong())).thenReturn(Future.succeededFuture(Boolean.FALSE));
+        cacheHandler.enableClusterWideFill(vertx, lock, GateleenExceptionFactory.newGateleenThriftyExceptionFactory(), 1000);
+
+        Buffer dataObj = bufferFromJson(new JsonObject().put("foo", "bar"));
+        when(cacheStorage.cachedRequest(anyString()))
+                .thenReturn(Future.succeededFuture(Optional.empty()))
+                .thenReturn(Future.succeededFuture(Optional.empty()))
+                .thenReturn(Future.succeededFuture(Optional.of(dataObj)));
+
+        MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+        headers.add(DEFAULT_CACHE_CONTROL_HEADER, "max-age=120");
+        HttpServerResponse response = spy(new Response());
+        context.assertTrue(cacheHandler.handle(new Request(HttpMethod.GET, "/some/path", headers, response)));
+
+        verify(response, timeout(2000).times(1)).end(dataObj);
+        verify(lock, times(1)).acquireLock(eq("cacheFill_/some/path"), anyString(), eq(1000L));
+        verify(dataFetcher, never()).fetchData(anyString(), any(), anyLong());
+        verify(cacheStorage, times(3)).cachedRequest(eq("/some/path"));
+        vertx.close();
+    }
+
+    @Test
+    public void testClusterWideFillWithLock(TestContext context) {
+        Vertx vertx = Vertx.vertx();
+        Lock lock = mock(Lock.class);
+        when(lock.acquireLock(anyString(), anyString(), anyLong())).thenReturn(Future.succeededFuture(Boolean.TRUE));
+        when(lock.releaseLock(anyString(), anyString())).thenReturn(Future.succeededFuture(Boolean.TRUE));
+        cacheHandler.enableClusterWideFill(vertx, lock, GateleenExceptionFactory.newGateleenThriftyExceptionFactory(), 1000);
+
+        Buffer dataObj = bufferFromJson(new JsonObject().put("foo", "bar"));
+        when(cacheStorage.cachedRequest(anyString())).thenReturn(Future.succeededFuture(Optional.empty()));
+        when(dataFetcher.fetchData(anyString(), any(), anyLong())).thenReturn(Future.succeededFuture(Result.ok(dataObj)));
+        when(cacheStorage.cacheRequest(anyString(), any(), any())).thenReturn(Future.succeededFuture());
+
+        MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+        headers.add(DEFAULT_CACHE_CONTROL_HEADER, "max-age=120");
+        HttpServerResponse response = spy(new Response());
+        context.assertTrue(cacheHandler.handle(new Request(HttpMethod.GET, "/some/path", headers, response)));
+
+        verify(response, timeout(1000).times(1)).end(dataObj);
+        verify(dataFetcher, times(1)).fetchData(eq("/some/path"), any(), anyLong());
+        verify(lock, times(1)).releaseLock(eq("cacheFill_/some/path"), anyString());
+        vertx.close();
+    }
+
+    @Test
+    public void testStaleWhileRevalidate(TestContext context) {
+        Buffer cachedObj = bufferFromJson(new JsonObject().put("foo", "cached"));
+        Buffer dataObj = bufferFromJson(new JsonObject().put("foo", "fetched"));
+        when(dataFetcher.fetchData(anyString(), any(), anyLong())).thenReturn(Future.succeededFuture(Result.ok(dataObj)));
+        when(cacheStorage.cacheRequest(anyString(), any(), any())).thenReturn(Future.succeededFuture());
+
+        MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+        headers.add(DEFAULT_CACHE_CONTROL_HEADER, "max-age=120, stale-while-revalidate=30");
+
+        // fresh
+        when(cacheStorage.cachedRequest(anyString())).thenReturn(Future.succeededFuture(Optional.of(cachedSecondsAgo(cachedObj, 110))));
+        HttpServerResponse response = spy(new Response());
+        context.assertTrue(cacheHandler.handle(new Request(HttpMethod.GET, "/some/path", headers, response)));
+        verify(response, timeout(1000).times(1)).end(cachedObj);
+        verify(dataFetcher, never()).fetchData(anyString(), any(), anyLong());
+
+        // stale, served from cache and revalidated in the background
+        when(cacheStorage.cachedRequest(anyString())).thenReturn(Future.succeededFuture(Optional.of(cachedSecondsAgo(cachedObj, 140))));
+        response = spy(new Response());
+        context.assertTrue(cacheHandler.handle(new Request(HttpMethod.GET, "/some/path", headers, response)));
+        verify(response, timeout(1000).times(1)).end(cachedObj);
+        verify(dataFetcher, times(1)).fetchData(eq("/some/path"), any(), anyLong());
+        verify(cacheStorage, times(1)).cacheRequest(eq("/some/path"), cachedBody(dataObj), eq(Duration.ofSeconds(150)));
+    }
+
+    @Test
+    public void testStaleEntryIsNotServedWithoutStaleDirectives(TestContext context) {
+        Buffer cachedObj = bufferFromJson(new JsonObject().put("foo", "cached"));
+        Buffer dataObj = bufferFromJson(new JsonObject().put("foo", "fetched"));
+        when(dataFetcher.fetchData(anyString(), any(), anyLong())).thenReturn(Future.succeededFuture(Result.ok(dataObj)));
+        when(cacheStorage.cacheRequest(anyString(), any(), any())).thenReturn(Future.succeededFuture());
+
+        // filled by a request allowing a day of staleness, but older than the max-age of this request
+        when(cacheStorage.cachedRequest(anyString())).thenReturn(Future.succeededFuture(Optional.of(cachedSecondsAgo(cachedObj, 3600))));
+        MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+        headers.add(DEFAULT_CACHE_CONTROL_HEADER, "max-age=60");
+        HttpServerResponse response = spy(new Response());
+        context.assertTrue(cacheHandler.handle(new Request(HttpMethod.GET, "/some/path", headers, response)));
+
+        verify(response, timeout(1000).times(1)).end(dataObj);
+        verify(response, never()).end(cachedObj);
+        verify(cacheStorage, times(1)).cacheRequest(eq("/some/path"), cachedBody(dataObj), eq(Duration.ofSeconds(60)));
+    }
+
+    @Test
+    public void testStaleIfError(TestContext context) {
+        Buffer cachedObj = bufferFromJson(new JsonObject().put("foo", "cached"));
+        when(cacheStorage.cachedRequest(anyString())).thenReturn(Future.succeededFuture(Optional.of(cachedSecondsAgo(cachedObj, 220))));
+        when(dataFetcher.fetchData(anyString(), any(), anyLong()))
+                .thenReturn(Future.succeededFuture(Result.err(StatusCode.SERVICE_UNAVAILABLE)));
+
+        // stale for 100s, so only stale-if-error applies
+        MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+        headers.add(DEFAULT_CACHE_CONTROL_HEADER, "max-age=120,stale-while-revalidate=30,stale-if-error=300");
+        HttpServerResponse response = spy(new Response());
+        context.assertTrue(cacheHandler.handle(new Request(HttpMethod.GET, "/some/path", headers, response)));
+        verify(response, timeout(1000).times(1)).end(cachedObj);
+        verify(dataFetcher, times(1)).fetchData(eq("/some/path"), any(), anyLong());
+
+        // without stale-if-error the server error is returned
+        headers.set(DEFAULT_CACHE_CONTROL_HEADER, "max-age=120,stale-while-revalidate=30");
+        response = spy(new Response());
+        context.assertTrue(cacheHandler.handle(new Request(HttpMethod.GET, "/some/path", headers, response)));
+        verify(response, timeout(1000).times(1)).setStatusCode(StatusCode.SERVICE_UNAVAILABLE.getStatusCode());
+
+
+        // client errors are not hidden
+        headers.set(DEFAULT_CACHE_CONTROL_HEADER, "max-age=120,stale-while-revalidate=30,stale-if-error=300");
+        when(dataFetcher.fetchData(anyString(), any(), anyLong())).thenReturn(Future.succeededFuture(Result.err(StatusCode.NOT_FOUND)));
+        response = spy(new Response());
+        context.assertTrue(cacheHandler.handle(new Request(HttpMethod.GET, "/some/path", headers, response)));
+        verify(response, timeout(1000).times(1)).setStatusCode(StatusCode.NOT_FOUND.getStatusCode());
+    }
+
+    @Test
+    public void testInvalidStaleDirective(TestContext context) {
+        HttpServerResponse response = spy(new Response());
+        MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+        headers.add(DEFAULT_CACHE_CONTROL_HEADER, "max-age=120, stale-while-revalidate=foo");
+        context.assertTrue(cacheHandler.handle(new Request(HttpMethod.GET, "/some/path", headers, response)));
+        verify(response, times(1)).setStatusCode(StatusCode.BAD_REQUEST.getStatusCode());
+    }
+
+    @Test
+    public void testCachedResponseWithHeadersAndConditionalRequest(TestContext context) {
+        Buffer dataObj = bufferFromJson(new JsonObject().put("foo", "bar"));
+        MultiMap responseHeaders = MultiMap.caseInsensitiveMultiMap()
+                .add(CONTENT_TYPE_HEADER, "application/json; charset=utf-8")
+                .add(CachedResponse.ETAG_HEADER, "\"v1\"");
+        CachedResponse cachedResponse = CachedResponse.fromResponse(200, responseHeaders, dataObj);
+        when(cacheStorage.cachedRequest(anyString())).thenReturn(Future.succeededFuture(Optional.of(cachedResponse.encode())));
+
+        MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+        headers.add(DEFAULT_CACHE_CONTROL_HEADER, "max-age=120");
+        HttpServerResponse response = spy(new Response());
+        context.assertTrue(cacheHandler.handle(new Request(HttpMethod.GET, "/some/path", headers, response)));
+        verify(response, timeout(1000).times(1)).end(dataObj);
+        context.assertEquals("application/json; charset=utf-8", response.headers().get(CONTENT_TYPE_HEADER));
+        context.assertEquals("\"v1\"", response.headers().get(CachedResponse.ETAG_HEADER));
+
+        headers.add(IF_NONE_MATCH_HEADER, "\"v1\"");
+        response = spy(new Response());
+        context.assertTrue(cacheHandler.handle(new Request(HttpMethod.GET, "/some/path", headers, response)));
+        verify(response, times(1)).setStatusCode(StatusCode.NOT_MODIFIED.getStatusCode());
+        verify(response, timeout(1000).times(1)).end();
+        verify(response, never()).end(any(Buffer.class));
+        context.assertEquals("\"v1\"", response.headers().get(CachedResponse.ETAG_HEADER));
+    }
+
+    @Test
+    public void testConditionalRequestHeadersAreNotUsedToFillTheCache(TestContext context) {
+        Buffer dataObj = bufferFromJson(new JsonObject().put("foo", "bar"));
+        when(cacheStorage.cachedRequest(anyString())).thenReturn(Future.succeededFuture(Optional.empty()));
+        when(dataFetcher.fetchData(anyString(), any(), anyLong())).thenReturn(Future.succeededFuture(Result.ok(dataObj)));
+        when(cacheStorage.cacheRequest(anyString(), any(), any())).thenReturn(Future.succeededFuture());
+
+        MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+        headers.add(DEFAULT_CACHE_CONTROL_HEADER, "max-age=120");
+        headers.add(IF_NONE_MATCH_HEADER, "\"v1\"");
+        headers.add("If-Modified-Since", "Wed, 21 Oct 2015 07:28:00 GMT");
+        HttpServerResponse response = spy(new Response());
+        context.assertTrue(cacheHandler.handle(new Request(HttpMethod.GET, "/some/path", headers, response)));
+        verify(response, timeout(1000).times(1)).end(dataObj);
+
+        ArgumentCaptor<HeadersMultiMap> headersCaptor = ArgumentCaptor.forClass(HeadersMultiMap.class);
+        verify(dataFetcher, times(1)).fetchData(eq("/some/path"), headersCaptor.capture(), anyLong());
+        context.assertFalse(headersCaptor.getValue().contains(IF_NONE_MATCH_HEADER));
+        context.assertFalse(headersCaptor.getValue().contains("If-Modified-Since"));
+        verify(cacheStorage, times(1)).cacheRequest(eq("/some/path"), any(), any());
+    }
+
+    @Test
+    public void testCompressedCacheEntries(TestContext context) {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        cacheHandler.setMeterRegistry(meterRegistry);
+        Vertx vertx = Vertx.vertx();
+        cacheHandler.enableCompression(vertx, 10, 6);
+
+        Buffer dataObj = bufferFromJson(new JsonObject().put("foo", "barbarbarbarbarbarbarbarbarbarbarbarbarbarbarbar"));
+        when(cacheStorage.cachedRequest(anyString())).thenReturn(Future.succeededFuture(Optional.empty()));
+        when(dataFetcher.fetchData(anyString(), any(), anyLong())).thenReturn(Future.succeededFuture(Result.ok(dataObj)));
+        when(cacheStorage.cacheRequest(anyString(), any(), any())).thenReturn(Future.succeededFuture());
+
+        MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+        headers.add(DEFAULT_CACHE_CONTROL_HEADER, "max-age=120");
+        HttpServerResponse response = spy(new Response());
+        context.assertTrue(cacheHandler.handle(new Request(HttpMethod.GET, "/some/path", headers, response)));
+        verify(response, timeout(1000).times(1)).end(dataObj);
+        context.assertNull(response.headers().get("Content-Encoding"));
+
+        ArgumentCaptor<Buffer> storedCaptor = ArgumentCaptor.forClass(Buffer.class);
+        verify(cacheStorage, times(1)).cacheRequest(eq("/some/path"), storedCaptor.capture(), any());
+        CachedResponse stored = CachedResponse.decode(storedCaptor.getValue());
+        context.assertTrue(stored.isCompressed());
+        context.assertEquals(1L, meterRegistry.get(COMPRESSION_RATIO_METRIC).summary().count());
+        context.assertTrue(meterRegistry.get(COMPRESSION_RATIO_METRIC).summary().max() > 1.0);
+
+        // gzip is passed through to clients accepting it
+        when(cacheStorage.cachedRequest(anyString())).thenReturn(Future.succeededFuture(Optional.of(storedCaptor.getValue())));
+        headers.add("Accept-Encoding", "br;q=1.0, gzip;q=0.8");
+        response = spy(new Response());
+        context.assertTrue(cacheHandler.handle(new Request(HttpMethod.GET, "/some/path", headers, response)));
+        verify(response, timeout(1000).times(1)).end(stored.getStoredBody());
+        context.assertEquals("gzip", response.headers().get("Content-Encoding"));
+        context.assertEquals("Accept-Encoding", response.headers().get("Vary"));
+        context.assertEquals("W/" + stored.getETag(), response.headers().get(CachedResponse.ETAG_HEADER));
+
+        headers.set("Accept-Encoding", "gzip;q=0");
+        response = spy(new Response());
+        context.assertTrue(cacheHandler.handle(new Request(HttpMethod.GET, "/some/path", headers, response)));
+        verify(response, timeout(1000).times(1)).end(dataObj);
+        context.assertNull(response.headers().get("Content-Encoding"));
+        vertx.close();
+    }
+
     @Test
     public void testCacheAdminFunctionNotSupported(TestContext context) {
         HttpServerResponse response = spy(new Response());
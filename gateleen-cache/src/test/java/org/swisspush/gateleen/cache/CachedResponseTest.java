@@ -0,0 +1,156 @@
+package org.swisspush.gateleen.cache;
+
+import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.swisspush.gateleen.cache.storage.CacheStorage;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Tests for the {@link CachedResponse} class
+ */
+@RunWith(VertxUnitRunner.class)
+public class CachedResponseTest {
+
+    @Test
+    public void testEncodeDecode(TestContext context) {
+        MultiMap responseHeaders = MultiMap.caseInsensitiveMultiMap()
+                .add("Content-Type", "application/json; charset=utf-8")
+                .add("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT")
+                .add("x-not-cached", "foo");
+        CachedResponse response = CachedResponse.fromResponse(200, responseHeaders, Buffer.buffer("{\"foo\":\"bar\"}"));
+
+        CachedResponse decoded = CachedResponse.decode(response.encode());
+        context.assertEquals(200, decoded.getStatusCode());
+        context.assertEquals(Buffer.buffer("{\"foo\":\"bar\"}"), decoded.getBody());
+        context.assertEquals("application/json; charset=utf-8", decoded.getHeaders().get("content-type"));
+        context.assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", decoded.getHeaders().get("Last-Modified"));
+        context.assertFalse(decoded.getHeaders().contains("x-not-cached"));
+        context.assertEquals(response.getETag(), decoded.getETag());
+        context.assertFalse(decoded.getCachedAt().isPresent());
+
+        decoded = CachedResponse.decode(response.withCachedAt(1234567L).compress(6).encode());
+        context.assertEquals(1234567L, decoded.getCachedAt().getAsLong());
+        context.assertEquals(Buffer.buffer("{\"foo\":\"bar\"}"), decoded.getBody());
+    }
+
+    @Test
+    public void testETag(TestContext context) {
+        String eTag = CachedResponse.fromBody(Buffer.buffer("{\"foo\":\"bar\"}")).getETag();
+        context.assertTrue(eTag.startsWith("\"") && eTag.endsWith("\""));
+        context.assertEquals(eTag, CachedResponse.fromBody(Buffer.buffer("{\"foo\":\"bar\"}")).getETag());
+        context.assertNotEquals(eTag, CachedResponse.fromBody(Buffer.buffer("{\"foo\":\"baz\"}")).getETag());
+
+        // the ETag of the backend is kept
+        MultiMap responseHeaders = MultiMap.caseInsensitiveMultiMap().add("etag", "W/\"v1\"");
+        CachedResponse response = CachedResponse.fromResponse(200, responseHeaders, Buffer.buffer("{}"));
+        context.assertEquals("W/\"v1\"", response.getETag());
+
+        context.assertTrue(response.notModified("\"v1\""));
+        context.assertTrue(response.notModified("\"v0\", W/\"v1\""));
+        context.assertTrue(response.notModified("*"));
+        context.assertFalse(response.notModified("\"v2\""));
+        context.assertFalse(response.notModified(null));
+    }
+
+    @Test
+    public void testRoundTripThroughStringStorage(TestContext context) {
+        // headers longer than 127 bytes, as a binary length field would not survive the string conversion
+        MultiMap responseHeaders = MultiMap.caseInsensitiveMultiMap()
+                .add("Content-Type", "application/json; charset=utf-8")
+                .add("Content-Language", "de-CH, fr-CH, it-CH, en-US, rm-CH, de-DE, fr-FR, it-IT, en-GB, en-AU, de-AT")
+                .add("ETag", "\"a-rather-long-etag-value-as-provided-by-the-backend-0123456789\"");
+        Buffer body = Buffer.buffer("{\"name\":\"item_ä\"}");
+        CachedResponse response = CachedResponse.fromResponse(200, responseHeaders, body);
+
+        StringCacheStorage storage = new StringCacheStorage();
+        storage.cacheRequest("key", response.encode(), Duration.ofSeconds(10));
+        CachedResponse decoded = CachedResponse.decode(storage.cachedRequest("key").result().get());
+
+        context.assertEquals(200, decoded.getStatusCode());
+        context.assertEquals(body, decoded.getBody());
+        context.assertEquals(responseHeaders.get("Content-Language"), decoded.getHeaders().get("Content-Language"));
+        context.assertEquals(response.getETag(), decoded.getETag());
+    }
+
+    @Test
+    public void testCompression(TestContext context) {
+        StringBuilder json = new StringBuilder("{\"items\":[");
+        for (int i = 0; i < 200; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"name\":\"item_ä_").append(i).append("\"}");
+        }
+        Buffer body = Buffer.buffer(json.append("]}").toString());
+        MultiMap responseHeaders = MultiMap.caseInsensitiveMultiMap()
+                .add("Content-Language", "de-CH, fr-CH, it-CH, en-US, rm-CH, de-DE, fr-FR, it-IT, en-GB, en-AU, de-AT");
+        CachedResponse response = CachedResponse.fromResponse(200, responseHeaders, body);
+        CachedResponse compressed = response.compress(6);
+
+        context.assertTrue(compressed.isCompressed());
+        context.assertTrue(compressed.getStoredBody().length() < body.length() / 4);
+        context.assertEquals(body, compressed.getBody());
+        context.assertEquals(response.getETag(), compressed.getETag());
+
+        // the envelope is text only, as the storage keeps strings
+        Buffer stored = Buffer.buffer(compressed.encode().toString());
+        CachedResponse decoded = CachedResponse.decode(stored);
+        context.assertTrue(decoded.isCompressed());
+        context.assertEquals(compressed.getStoredBody(), decoded.getStoredBody());
+        context.assertEquals(body, decoded.getBody());
+        context.assertEquals(responseHeaders.get("Content-Language"), decoded.getHeaders().get("Content-Language"));
+    }
+
+    @Test
+    public void testDecodeBodyOnlyEntries(TestContext context) {
+        CachedResponse decoded = CachedResponse.decode(Buffer.buffer("{\"foo\":\"bar\"}"));
+        context.assertEquals(200, decoded.getStatusCode());
+        context.assertEquals(Buffer.buffer("{\"foo\":\"bar\"}"), decoded.getBody());
+        context.assertEquals(CacheHandler.CONTENT_TYPE_JSON, decoded.getHeaders().get(CacheHandler.CONTENT_TYPE_HEADER));
+        context.assertNull(decoded.getETag());
+        context.assertFalse(decoded.notModified("*"));
+    }
+
+    /**
+     * Stores the cached objects as strings, as the redis cache storage does.
+     */
+    private static class StringCacheStorage implements CacheStorage {
+
+        private final Map<String, String> entries = new HashMap<>();
+
+        @Override
+        public Future<Void> cacheRequest(String cacheIdentifier, Buffer cachedObject, Duration cacheExpiry) {
+            entries.put(cacheIdentifier, cachedObject.toString());
+            return Future.succeededFuture();
+        }
+
+        @Override
+        public Future<Optional<Buffer>> cachedRequest(String cacheIdentifier) {
+            return Future.succeededFuture(Optional.ofNullable(entries.get(cacheIdentifier)).map(Buffer::buffer));
+        }
+
+        @Override
+        public Future<Long> clearCache() {
+            long count = entries.size();
+            entries.clear();
+            return Future.succeededFuture(count);
+        }
+
+        @Override
+        public Future<Long> cacheEntriesCount() {
+            return Future.succeededFuture((long) entries.size());
+        }
+
+        @Override
+        public Future<Set<String>> cacheEntries() {
+            return Future.succeededFuture(entries.keySet());
+        }
+    }
+}
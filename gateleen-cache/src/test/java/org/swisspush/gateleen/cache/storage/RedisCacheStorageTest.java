@@ -209,6 +209,32 @@ public class RedisCacheStorageTest {
         });
     }
 
+    @Test
+    public void testCacheExpiry(TestContext context) {
+        Async async = context.async();
+
+        // prepare
+        jedis.psetex(CACHE_PREFIX + "cache_item_1", 60000, jsonObjectStr("payload_1"));
+        jedis.set(CACHE_PREFIX + "cache_item_2", jsonObjectStr("payload_2"));
+
+        redisCacheStorage.cacheExpiry("cache_item_1").onComplete(event -> {
+            context.assertTrue(event.succeeded());
+            context.assertTrue(event.result().isPresent());
+            context.assertTrue(event.result().get().toMillis() > 0 && event.result().get().toMillis() <= 60000);
+
+            redisCacheStorage.cacheExpiry("cache_item_2").onComplete(event1 -> {
+                context.assertTrue(event1.succeeded());
+                context.assertEquals(Optional.empty(), event1.result());
+
+                redisCacheStorage.cacheExpiry("cache_item_99").onComplete(event2 -> {
+                    context.assertTrue(event2.succeeded());
+                    context.assertEquals(Optional.empty(), event2.result());
+                    async.complete();
+                });
+            });
+        });
+    }
+
     @Test
     public void testCacheEntries(TestContext context) {
         Async async = context.async();
@@ -0,0 +1,138 @@
+package org.swisspush.gateleen.cache.storage;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+import static org.swisspush.gateleen.cache.storage.TieredCacheStorage.*;
+
+/**
+ * Tests for the {@link TieredCacheStorage} class
+ */
+@RunWith(VertxUnitRunner.class)
+public class TieredCacheStorageTest {
+
+    private Vertx vertx;
+    private CacheStorage remoteStorage;
+    private AtomicLong clock;
+    private TieredCacheStorage storage;
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+        remoteStorage = mock(CacheStorage.class);
+        when(remoteStorage.cacheRequest(anyString(), any(), any())).thenReturn(Future.succeededFuture());
+        when(remoteStorage.cachedRequest(anyString())).thenReturn(Future.succeededFuture(Optional.empty()));
+        when(remoteStorage.cacheExpiry(anyString())).thenReturn(Future.succeededFuture(Optional.empty()));
+        when(remoteStorage.clearCache()).thenReturn(Future.succeededFuture(1L));
+        clock = new AtomicLong(1000);
+        storage = new TieredCacheStorage(vertx, remoteStorage, 10, clock::get);
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void testLocalHitUntilExpiry(TestContext context) {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        storage.setMeterRegistry(meterRegistry);
+
+        storage.cacheRequest("/resource", Buffer.buffer("12345"), Duration.ofMillis(500));
+        context.assertEquals(Optional.of(Buffer.buffer("12345")), storage.cachedRequest("/resource").result());
+        verify(remoteStorage, never()).cachedRequest(anyString());
+        context.assertEquals(Optional.of(Duration.ofMillis(500)), storage.cacheExpiry("/resource").result());
+        verify(remoteStorage, never()).cacheExpiry(anyString());
+
+        clock.addAndGet(500);
+        context.assertEquals(Optional.empty(), storage.cachedRequest("/resource").result());
+        verify(remoteStorage, times(1)).cachedRequest("/resource");
+        context.assertEquals(0L, storage.localBytes());
+
+        context.assertEquals(0.5, storage.localHitRatio());
+        context.assertEquals(0.0, storage.remoteHitRatio());
+        context.assertEquals(1.0, meterRegistry.get(CACHE_LOOKUPS_METRIC).tag(TIER_TAG, TIER_LOCAL)
+                .tag(RESULT_TAG, "hit").counter().count());
+        context.assertEquals(1.0, meterRegistry.get(CACHE_LOOKUPS_METRIC).tag(TIER_TAG, TIER_REMOTE)
+                .tag(RESULT_TAG, "miss").counter().count());
+        context.assertEquals(0.5, meterRegistry.get(CACHE_HIT_RATIO_METRIC).tag(TIER_TAG, TIER_LOCAL).gauge().value());
+    }
+
+    @Test
+    public void testRemoteHitIsKeptLocallyWithRemoteExpiry(TestContext context) {
+        when(remoteStorage.cachedRequest("/resource")).thenReturn(Future.succeededFuture(Optional.of(Buffer.buffer("123"))));
+        when(remoteStorage.cacheExpiry("/resource")).thenReturn(Future.succeededFuture(Optional.of(Duration.ofMillis(200))));
+
+        context.assertEquals(Optional.of(Buffer.buffer("123")), storage.cachedRequest("/resource").result());
+        context.assertEquals(Optional.of(Buffer.buffer("123")), storage.cachedRequest("/resource").result());
+        verify(remoteStorage, times(1)).cachedRequest("/resource");
+        context.assertEquals(1.0, storage.remoteHitRatio());
+
+        clock.addAndGet(200);
+        storage.cachedRequest("/resource");
+        verify(remoteStorage, times(2)).cachedRequest("/resource");
+    }
+
+    @Test
+    public void testRemoteHitWithoutExpiryIsNotKeptLocally(TestContext context) {
+        when(remoteStorage.cachedRequest("/resource")).thenReturn(Future.succeededFuture(Optional.of(Buffer.buffer("123"))));
+
+        storage.cachedRequest("/resource");
+        storage.cachedRequest("/resource");
+        verify(remoteStorage, times(2)).cachedRequest("/resource");
+        context.assertEquals(0, storage.localEntriesCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted(TestContext context) {
+        storage.cacheRequest("/a", Buffer.buffer("1234"), Duration.ofSeconds(10));
+        storage.cacheRequest("/b", Buffer.buffer("1234"), Duration.ofSeconds(10));
+        storage.cachedRequest("/a");
+        storage.cacheRequest("/c", Buffer.buffer("1234"), Duration.ofSeconds(10));
+
+        context.assertEquals(2, storage.localEntriesCount());
+        context.assertEquals(8L, storage.localBytes());
+        context.assertTrue(storage.cachedRequest("/a").result().isPresent());
+        context.assertTrue(storage.cachedRequest("/c").result().isPresent());
+        context.assertFalse(storage.cachedRequest("/b").result().isPresent());
+
+        // entries larger than the local tier are only stored remote
+        storage.cacheRequest("/large", Buffer.buffer("12345678901"), Duration.ofSeconds(10));
+        verify(remoteStorage, times(1)).cacheRequest(eq("/large"), any(), any());
+        context.assertEquals(2, storage.localEntriesCount());
+    }
+
+    @Test
+    public void testClearCacheInvalidatesAllInstances(TestContext context) {
+        TieredCacheStorage otherInstance = new TieredCacheStorage(vertx, remoteStorage, 10, clock::get);
+        storage.cacheRequest("/resource", Buffer.buffer("123"), Duration.ofSeconds(10));
+        otherInstance.cacheRequest("/resource", Buffer.buffer("123"), Duration.ofSeconds(10));
+        context.assertEquals(1, otherInstance.localEntriesCount());
+
+        Async async = context.async();
+        vertx.eventBus().consumer(CACHE_INVALIDATION_ADDRESS, message -> vertx.runOnContext(v -> {
+            context.assertEquals(0, storage.localEntriesCount());
+            context.assertEquals(0, otherInstance.localEntriesCount());
+            async.complete();
+        }));
+        context.assertEquals(1L, storage.clearCache().result());
+        verify(remoteStorage, times(1)).clearCache();
+    }
+}
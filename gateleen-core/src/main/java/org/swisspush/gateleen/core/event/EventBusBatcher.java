@@ -0,0 +1,209 @@
+package org.swisspush.gateleen.core.event;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects lines in a bounded queue and sends them in batches to the event bus. Each batch is sent as a single
+ * message containing a {@link JsonArray} of lines.
+ * <p>
+ * A batch is sent as soon as <code>maxBatchSize</code> lines are queued, or at the latest after
+ * <code>maxBatchDelay</code> milliseconds. With {@link EventBusWriter.TransmissionMode#send}, only one batch is in
+ * flight at a time and the lines are queued until the reply arrives. When the queue is full, lines are dropped
+ * according to the configured {@link DropPolicy}.
+ */
+public class EventBusBatcher {
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    public static final long DEFAULT_MAX_BATCH_DELAY = 1000;
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+    public enum DropPolicy {
+        /**
+         * Drops the line to be queued
+         */
+        dropNewest,
+        /**
+         * Drops the oldest queued line to make room for the line to be queued
+         */
+        dropOldest;
+
+        public static DropPolicy fromString(String policy) {
+            for (DropPolicy dropPolicy : values()) {
+                if (dropPolicy.name().equalsIgnoreCase(policy)) {
+                    return dropPolicy;
+                }
+            }
+            return DropPolicy.dropNewest;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(EventBusBatcher.class);
+
+    private final Vertx vertx;
+    private final EventBus eventBus;
+    private final String address;
+    private final DeliveryOptions deliveryOptions;
+    private final EventBusWriter.TransmissionMode transmissionMode;
+    private final int maxBatchSize;
+    private final DropPolicy dropPolicy;
+    private final ArrayBlockingQueue<String> queue;
+    private final AtomicBoolean inFlight = new AtomicBoolean(false);
+    private final long flushTimerId;
+    private volatile boolean closed;
+
+    private final LongAdder droppedLines = new LongAdder();
+    private final LongAdder sentLines = new LongAdder();
+    private final LongAdder sentBatches = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private long reportedDroppedLines;
+
+    /**
+     * @param vertx the vertx instance, the periodic flush runs on the context of the caller
+     * @param address the address to send the batches to
+     * @param deliveryOptionsHeaders the headers to add to each batch or <code>null</code>
+     * @param transmissionMode publish or send the batches
+     * @param maxBatchSize the maximum amount of lines per batch
+     * @param maxBatchDelay the maximum time [ms] a line is held back before its batch is sent
+     * @param queueCapacity the maximum amount of queued lines
+     * @param dropPolicy the policy to apply when the queue is full
+     */
+    public EventBusBatcher(Vertx vertx, String address, @Nullable MultiMap deliveryOptionsHeaders,
+                           EventBusWriter.TransmissionMode transmissionMode, int maxBatchSize, long maxBatchDelay,
+                           int queueCapacity, DropPolicy dropPolicy) {
+        if (maxBatchSize < 1 || maxBatchDelay < 1 || queueCapacity < maxBatchSize) {
+            throw new IllegalArgumentException("maxBatchSize and maxBatchDelay must be greater than 0 and " +
+                    "queueCapacity must not be less than maxBatchSize");
+        }
+        this.vertx = vertx;
+        this.eventBus = vertx.eventBus();
+        this.address = address;
+        this.deliveryOptions = new DeliveryOptions();
+        if (deliveryOptionsHeaders != null) {
+            deliveryOptions.setHeaders(deliveryOptionsHeaders);
+        }
+        this.transmissionMode = transmissionMode;
+        this.maxBatchSize = maxBatchSize;
+        this.dropPolicy = dropPolicy;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.flushTimerId = vertx.setPeriodic(maxBatchDelay, timerId -> flush());
+    }
+
+    /**
+     * Queues the provided line. Sends the queued lines when a batch is full.
+     *
+     * @param line the line to queue
+     */
+    public void offer(String line) {
+        if (!queue.offer(line)) {
+            if (dropPolicy == DropPolicy.dropNewest) {
+                droppedLines.increment();
+                return;
+            }
+            while (!queue.offer(line)) {
+                if (queue.poll() != null) {
+                    droppedLines.increment();
+                }
+            }
+        }
+        if (closed || queue.size() >= maxBatchSize) {
+            sendBatches(closed);
+        }
+    }
+
+    /**
+     * Sends all queued lines, including a partially filled batch. Called periodically.
+     */
+    public void flush() {
+        long dropped = droppedLines.sum();
+        if (dropped > reportedDroppedLines) {
+            log.warn("Dropped {} lines for eventBus address {} because the queue was full", dropped - reportedDroppedLines,
+                    address);
+            reportedDroppedLines = dropped;
+        }
+        sendBatches(true);
+    }
+
+    /**
+     * Stops the periodic sending and sends the queued lines. Lines offered afterwards are sent without batching.
+     */
+    public void close() {
+        closed = true;
+        vertx.cancelTimer(flushTimerId);
+        sendBatches(true);
+    }
+
+    public long getDroppedLines() {
+        return droppedLines.sum();
+    }
+
+    public long getSentLines() {
+        return sentLines.sum();
+    }
+
+    public long getSentBatches() {
+        return sentBatches.sum();
+    }
+
+    public long getFailedBatches() {
+        return failedBatches.sum();
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /*
+     * Lines queued while another thread holds the in-flight flag are sent by the next full batch or the next
+     * periodic flush at the latest.
+     */
+    private void sendBatches(boolean includePartialBatch) {
+        while (inFlight.compareAndSet(false, true)) {
+            int queued = queue.size();
+            if (queued == 0 || (!includePartialBatch && queued < maxBatchSize)) {
+                inFlight.set(false);
+                return;
+            }
+            List<String> lines = new ArrayList<>(Math.min(queued, maxBatchSize));
+            queue.drainTo(lines, maxBatchSize);
+            JsonArray batch = new JsonArray(lines);
+            if (EventBusWriter.TransmissionMode.send == transmissionMode) {
+                eventBus.request(address, batch, deliveryOptions, (Handler<AsyncResult<Message<JsonObject>>>) reply -> {
+                    if (reply.succeeded() && "ok".equals(reply.result().body().getString("status"))) {
+                        log.debug("Successfully sent batch of {} lines to (and got reply from) eventBus address {}",
+                                lines.size(), address);
+                        sentBatches.increment();
+                        sentLines.add(lines.size());
+                    } else {
+                        log.error("Failed to send (not publish) batch of {} lines to the eventBus", lines.size(),
+                                reply.cause());
+                        failedBatches.increment();
+                    }
+                    inFlight.set(false);
+                    sendBatches(closed);
+                });
+                return;
+            }
+            eventBus.publish(address, batch, deliveryOptions);
+            sentBatches.increment();
+            sentLines.add(lines.size());
+            inFlight.set(false);
+        }
+    }
+}
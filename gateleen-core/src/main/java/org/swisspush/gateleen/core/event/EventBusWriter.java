@@ -10,11 +10,13 @@ import io.vertx.core.json.JsonObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.Writer;
 
 /**
- * A writer that publishes to the event bus.
+ * A writer that publishes to the event bus. When an {@link EventBusBatcher} is provided, the written lines are
+ * handed over to the batcher instead of being sent one message per line.
  *
  * @author https://github.com/lbovet [Laurent Bovet]
  */
@@ -38,6 +40,7 @@ public class EventBusWriter extends Writer {
     private String address;
     private MultiMap deliveryOptionsHeaders;
     private TransmissionMode transmissionMode;
+    private EventBusBatcher batcher;
 
     private Logger log = LoggerFactory.getLogger(EventBusWriter.class);
 
@@ -48,6 +51,12 @@ public class EventBusWriter extends Writer {
         this.transmissionMode = transmissionMode;
     }
 
+    public EventBusWriter(EventBus eventBus, String address, MultiMap deliveryOptionsHeaders, TransmissionMode transmissionMode,
+                          @Nullable EventBusBatcher batcher) {
+        this(eventBus, address, deliveryOptionsHeaders, transmissionMode);
+        this.batcher = batcher;
+    }
+
     @Override
     public void write(char[] cbuf, int off, int len) throws IOException {
         if (buffer == null) {
@@ -58,7 +67,10 @@ public class EventBusWriter extends Writer {
 
     @Override
     public void flush() throws IOException {
-        if (buffer != null) {
+        if (buffer != null && batcher != null) {
+            batcher.offer(stripLineSeparator(buffer));
+            buffer = null;
+        } else if (buffer != null) {
             DeliveryOptions options = new DeliveryOptions();
             if (deliveryOptionsHeaders != null) {
                 options.setHeaders(deliveryOptionsHeaders);
@@ -84,4 +96,12 @@ public class EventBusWriter extends Writer {
     public void close() throws IOException {
         flush();
     }
+
+    private static String stripLineSeparator(StringBuffer line) {
+        int length = line.length();
+        while (length > 0 && (line.charAt(length - 1) == '\n' || line.charAt(length - 1) == '\r')) {
+            length--;
+        }
+        return line.substring(0, length);
+    }
 }
@@ -0,0 +1,158 @@
+package org.swisspush.gateleen.core.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Records latencies per metric name in-process. The latencies of each metric name are kept in a sliding window of
+ * <code>windowCount</code> intervals, each lasting <code>interval</code> milliseconds.
+ * <p>
+ * Recording a latency is lock-free. Reading a {@link LatencySnapshot} merges the intervals of
+ * the window and is meant to be done periodically, e.g. by the QoS evaluation.
+ */
+public class LatencyHistograms {
+
+    public static final long DEFAULT_INTERVAL = 60000; // 1 minute
+    public static final int DEFAULT_WINDOW_COUNT = 5;
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final long interval;
+    private final int windowCount;
+    private final LongSupplier clock;
+    private final Map<String, SlidingHistogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * Creates latency histograms with a sliding window of {@link #DEFAULT_WINDOW_COUNT} intervals of
+     * {@link #DEFAULT_INTERVAL} milliseconds.
+     */
+    public LatencyHistograms() {
+        this(DEFAULT_INTERVAL, DEFAULT_WINDOW_COUNT);
+    }
+
+    /**
+     * @param interval the duration [ms] of an interval
+     * @param windowCount the amount of intervals in the sliding window
+     */
+    public LatencyHistograms(long interval, int windowCount) {
+        this(interval, windowCount, System::currentTimeMillis);
+    }
+
+    LatencyHistograms(long interval, int windowCount, LongSupplier clock) {
+        if (interval < 1 || windowCount < 1) {
+            throw new IllegalArgumentException("interval and windowCount must be greater than 0");
+        }
+        this.interval = interval;
+        this.windowCount = windowCount;
+        this.clock = clock;
+    }
+
+    /**
+     * Records a latency for the provided metric name.
+     *
+     * @param metricName the metric name, e.g. the metricName of a routing rule
+     * @param durationNanos the latency [ns]
+     */
+    public void record(String metricName, long durationNanos) {
+        SlidingHistogram histogram = histograms.get(metricName);
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(metricName, n -> new SlidingHistogram(clock.getAsLong()));
+        }
+        histogram.recorder.recordValue(Math.max(0, durationNanos));
+    }
+
+    /**
+     * Returns the latencies recorded for the provided metric name within the sliding window.
+     *
+     * @param metricName the metric name
+     * @return the snapshot or <code>null</code> when no latency was ever recorded for the metric name
+     */
+    @Nullable
+    public LatencySnapshot snapshot(String metricName) {
+        SlidingHistogram histogram = histograms.get(metricName);
+        if (histogram == null) {
+            return null;
+        }
+        return new LatencySnapshot(histogram.snapshot(clock.getAsLong()));
+    }
+
+    /**
+     * The latencies recorded within a sliding window
+     */
+    public static class LatencySnapshot {
+        private final Histogram histogram;
+
+        LatencySnapshot(Histogram histogram) {
+            this.histogram = histogram;
+        }
+
+        /**
+         * @return the amount of latencies recorded within the sliding window
+         */
+        public long getCount() {
+            return histogram.getTotalCount();
+        }
+
+        /**
+         * @param percentile the percentile, e.g. 75.0 or 99.9
+         * @return the latency [ms] at the provided percentile
+         */
+        public double getValueAtPercentile(double percentile) {
+            return toMillis(histogram.getValueAtPercentile(percentile));
+        }
+
+        /**
+         * @return the maximum latency [ms]
+         */
+        public double getMax() {
+            return toMillis(histogram.getMaxValue());
+        }
+
+        private static double toMillis(long nanos) {
+            return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+
+    private class SlidingHistogram {
+        private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+        private final Histogram[] intervals = new Histogram[windowCount];
+        private Histogram recycled;
+        private int current;
+        private long intervalStart;
+
+        SlidingHistogram(long now) {
+            for (int i = 0; i < windowCount; i++) {
+                intervals[i] = new Histogram(SIGNIFICANT_DIGITS);
+            }
+            this.intervalStart = now;
+        }
+
+        synchronized Histogram snapshot(long now) {
+            long elapsedIntervals = (now - intervalStart) / interval;
+            if (elapsedIntervals > 0) {
+                for (int i = 0; i < Math.min(elapsedIntervals, windowCount); i++) {
+                    current = (current + 1) % windowCount;
+                    intervals[current].reset();
+                }
+                intervalStart += elapsedIntervals * interval;
+            }
+
+            // the values recorded since the last snapshot are added to the newest interval, so they never slide
+            // out of the window before they were read once
+            recycled = recorder.getIntervalHistogram(recycled);
+            intervals[current].add(recycled);
+
+            Histogram window = new Histogram(SIGNIFICANT_DIGITS);
+            for (Histogram intervalHistogram : intervals) {
+                window.add(intervalHistogram);
+            }
+            return window;
+        }
+    }
+}
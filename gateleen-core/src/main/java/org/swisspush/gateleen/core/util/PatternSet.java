@@ -0,0 +1,247 @@
+package org.swisspush.gateleen.core.util;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable set of entries, each having a regular expression, to be matched against an input like a request uri.
+ * <p>
+ * The literal prefixes of the regular expressions are indexed in a character trie. Matching an input only evaluates
+ * the regular expressions of the entries whose literal prefix is a prefix of the input, plus the entries without
+ * literal prefix. The cost of a lookup therefore depends on the length of the input and not on the amount of
+ * entries. The results are returned in the declared order of the entries.
+ * <p>
+ * Create a new set when the entries change.
+ *
+ * @param <T> the type of the entries
+ */
+public class PatternSet<T> {
+
+    private static final PatternSet<?> EMPTY = new PatternSet<>(Collections.emptyList(), p -> null);
+
+    private static final String REGEX_META_CHARS = "\\[](){}.*+?^$|";
+    private static final String REGEX_QUANTIFIER_CHARS = "*+?{";
+    private static final int PREFIX_CHANGING_FLAGS = Pattern.CASE_INSENSITIVE | Pattern.COMMENTS | Pattern.CANON_EQ;
+
+    private final List<T> entries;
+    private final Pattern[] patterns;
+    private final BitSet unprefixed = new BitSet();
+    private final PrefixNode prefixIndex = new PrefixNode();
+
+    private PatternSet(List<T> entries, Function<? super T, Pattern> patternOf) {
+        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+        this.patterns = new Pattern[this.entries.size()];
+        for (int i = 0; i < patterns.length; i++) {
+            patterns[i] = patternOf.apply(this.entries.get(i));
+            String prefix = null;
+            if (patterns[i] != null && (patterns[i].flags() & PREFIX_CHANGING_FLAGS) == 0) {
+                prefix = literalPrefix(patterns[i].pattern());
+            }
+            if (prefix == null) {
+                unprefixed.set(i);
+            } else {
+                prefixIndex.add(prefix, i);
+            }
+        }
+    }
+
+    /**
+     * Compiles the provided entries into a pattern set.
+     *
+     * @param entries the entries in their declared order
+     * @param patternOf the function returning the pattern of an entry. An entry without pattern (<code>null</code>)
+     *                  is a candidate for every input, but never matches.
+     * @param <T> the type of the entries
+     * @return the pattern set
+     */
+    public static <T> PatternSet<T> compile(List<T> entries, Function<? super T, Pattern> patternOf) {
+        return new PatternSet<>(entries, patternOf);
+    }
+
+    /**
+     * @param <T> the type of the entries
+     * @return an empty pattern set
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> PatternSet<T> empty() {
+        return (PatternSet<T>) EMPTY;
+    }
+
+    /**
+     * @return all entries in their declared order
+     */
+    public List<T> entries() {
+        return entries;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Returns the entries which may match the provided input, without evaluating their patterns. Use this method
+     * when the entries are matched by other means than their patterns.
+     *
+     * @param input the input, e.g. a request uri
+     * @return the entries having a literal prefix being a prefix of the input and the entries without literal prefix,
+     * in their declared order
+     */
+    public List<T> candidates(String input) {
+        BitSet candidates = candidateIndexes(input);
+        List<T> result = new ArrayList<>(candidates.cardinality());
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            result.add(entries.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the first entry in declared order whose pattern matches the provided input.
+     *
+     * @param input the input, e.g. a request uri
+     * @return the matching entry or <code>null</code>
+     */
+    @Nullable
+    public T findFirst(String input) {
+        return findFirst(input, entry -> true);
+    }
+
+    /**
+     * Returns the first entry in declared order accepted by the provided filter and whose pattern matches the provided
+     * input. The filter is evaluated before the pattern.
+     *
+     * @param input the input, e.g. a request uri
+     * @param filter the filter for the entries
+     * @return the matching entry or <code>null</code>
+     */
+    @Nullable
+    public T findFirst(String input, Predicate<? super T> filter) {
+        if (entries.isEmpty()) {
+            return null;
+        }
+        BitSet candidates = candidateIndexes(input);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            T entry = entries.get(i);
+            if (patterns[i] != null && filter.test(entry) && patterns[i].matcher(input).matches()) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns all entries whose pattern matches the provided input.
+     *
+     * @param input the input, e.g. a request uri
+     * @return the matching entries in their declared order
+     */
+    public List<T> findAll(String input) {
+        if (entries.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<T> result = new ArrayList<>();
+        BitSet candidates = candidateIndexes(input);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            if (patterns[i] != null && patterns[i].matcher(input).matches()) {
+                result.add(entries.get(i));
+            }
+        }
+        return result;
+    }
+
+    private BitSet candidateIndexes(String input) {
+        BitSet candidates = (BitSet) unprefixed.clone();
+        prefixIndex.collect(input, candidates);
+        return candidates;
+    }
+
+    /**
+     * Returns the literal prefix of the provided regular expression, which every input matching the expression starts
+     * with.
+     *
+     * @param regex the regular expression
+     * @return the literal prefix or <code>null</code> when the expression has no literal prefix
+     */
+    @Nullable
+    public static String literalPrefix(String regex) {
+        if (regex == null || regex.indexOf('|') >= 0) {
+            return null;
+        }
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (REGEX_META_CHARS.indexOf(c) >= 0) {
+                if (REGEX_QUANTIFIER_CHARS.indexOf(c) >= 0 && prefix.length() > 0) {
+                    // the quantified char is optional
+                    prefix.setLength(prefix.length() - 1);
+                }
+                break;
+            }
+            prefix.append(c);
+        }
+        return prefix.length() == 0 ? null : prefix.toString();
+    }
+
+    /**
+     * Node of a character trie holding the indexes of the entries whose literal prefix ends at this node
+     */
+    private static class PrefixNode {
+        private char[] chars = new char[0];
+        private PrefixNode[] children = new PrefixNode[0];
+        private int[] entryIndexes = new int[0];
+
+        void add(String prefix, int entryIndex) {
+            PrefixNode node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.getOrCreateChild(prefix.charAt(i));
+            }
+            node.entryIndexes = Arrays.copyOf(node.entryIndexes, node.entryIndexes.length + 1);
+            node.entryIndexes[node.entryIndexes.length - 1] = entryIndex;
+        }
+
+        void collect(String input, BitSet result) {
+            PrefixNode node = this;
+            for (int i = 0; i < input.length(); i++) {
+                node = node.child(input.charAt(i));
+                if (node == null) {
+                    return;
+                }
+                for (int entryIndex : node.entryIndexes) {
+                    result.set(entryIndex);
+                }
+            }
+        }
+
+        private PrefixNode child(char c) {
+            for (int i = 0; i < chars.length; i++) {
+                if (chars[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private PrefixNode getOrCreateChild(char c) {
+            PrefixNode child = child(c);
+            if (child == null) {
+                child = new PrefixNode();
+                chars = Arrays.copyOf(chars, chars.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                chars[chars.length - 1] = c;
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.swisspush.gateleen.core.event;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for the {@link EventBusBatcher} class
+ */
+@RunWith(VertxUnitRunner.class)
+public class EventBusBatcherTest {
+
+    private static final String ADDRESS = "event/request-log";
+    private Vertx vertx;
+    private EventBus eventBus;
+
+    @Before
+    public void setUp() {
+        eventBus = Mockito.mock(EventBus.class);
+        vertx = Mockito.mock(Vertx.class);
+        Mockito.when(vertx.eventBus()).thenReturn(eventBus);
+    }
+
+    @Test
+    public void testSizeBoundedBatches(TestContext context) {
+        EventBusBatcher batcher = new EventBusBatcher(vertx, ADDRESS, null, EventBusWriter.TransmissionMode.publish,
+                3, 60000, 10, EventBusBatcher.DropPolicy.dropNewest);
+        for (int i = 0; i < 7; i++) {
+            batcher.offer("line " + i);
+        }
+
+        ArgumentCaptor<JsonArray> batches = ArgumentCaptor.forClass(JsonArray.class);
+        verify(eventBus, times(2)).publish(eq(ADDRESS), batches.capture(), any(DeliveryOptions.class));
+        context.assertEquals(new JsonArray(List.of("line 0", "line 1", "line 2")), batches.getAllValues().get(0));
+        context.assertEquals(new JsonArray(List.of("line 3", "line 4", "line 5")), batches.getAllValues().get(1));
+        context.assertEquals(1, batcher.getQueueSize());
+
+        // the partial batch is sent on flush
+        batcher.flush();
+        verify(eventBus, times(3)).publish(eq(ADDRESS), batches.capture(), any(DeliveryOptions.class));
+        context.assertEquals(new JsonArray(List.of("line 6")), batches.getValue());
+        context.assertEquals(3L, batcher.getSentBatches());
+        context.assertEquals(7L, batcher.getSentLines());
+        batcher.close();
+    }
+
+    @Test
+    public void testTimeBoundedBatches(TestContext context) {
+        Async async = context.async();
+        Vertx vertx = Vertx.vertx();
+        vertx.eventBus().<JsonArray>consumer(ADDRESS, message -> {
+            context.assertEquals(new JsonArray(List.of("line 0", "line 1")), message.body());
+            async.complete();
+        });
+        EventBusBatcher batcher = new EventBusBatcher(vertx, ADDRESS, null,
+                EventBusWriter.TransmissionMode.publish, 100, 50, 1000, EventBusBatcher.DropPolicy.dropNewest);
+        batcher.offer("line 0");
+        batcher.offer("line 1");
+        async.awaitSuccess(2000);
+        batcher.close();
+        vertx.close();
+    }
+
+    @Test
+    public void testCloseCancelsFlushTimer(TestContext context) {
+        Mockito.when(vertx.setPeriodic(eq(500L), any())).thenReturn(42L);
+        EventBusBatcher batcher = new EventBusBatcher(vertx, ADDRESS, null, EventBusWriter.TransmissionMode.publish,
+                3, 500, 10, EventBusBatcher.DropPolicy.dropNewest);
+        batcher.offer("line 0");
+        batcher.close();
+
+        verify(vertx).cancelTimer(42L);
+        verify(eventBus).publish(eq(ADDRESS), eq(new JsonArray(List.of("line 0"))), any(DeliveryOptions.class));
+    }
+
+    @Test
+    public void testDropNewestWhileBatchInFlight(TestContext context) {
+        EventBusBatcher batcher = new EventBusBatcher(vertx, ADDRESS, null, EventBusWriter.TransmissionMode.send,
+                2, 60000, 2, EventBusBatcher.DropPolicy.dropNewest);
+        // the first batch is sent, but never replied
+        batcher.offer("line 0");
+        batcher.offer("line 1");
+        batcher.offer("line 2");
+        batcher.offer("line 3");
+        batcher.offer("line 4");
+
+        verify(eventBus, times(1)).request(eq(ADDRESS), eq(new JsonArray(List.of("line 0", "line 1"))),
+                any(DeliveryOptions.class), any(Handler.class));
+        context.assertEquals(2, batcher.getQueueSize());
+        context.assertEquals(1L, batcher.getDroppedLines());
+        verify(eventBus, never()).publish(any(), any(), any(DeliveryOptions.class));
+        batcher.close();
+    }
+
+    @Test
+    public void testDropOldest(TestContext context) {
+        EventBusBatcher batcher = new EventBusBatcher(vertx, ADDRESS, null, EventBusWriter.TransmissionMode.send,
+                2, 60000, 2, EventBusBatcher.DropPolicy.dropOldest);
+        for (int i = 0; i < 6; i++) {
+            batcher.offer("line " + i);
+        }
+        context.assertEquals(2L, batcher.getDroppedLines());
+
+        // complete the batch in flight, the two newest lines are sent next
+        ArgumentCaptor<Handler> replyHandler = ArgumentCaptor.forClass(Handler.class);
+        verify(eventBus).request(eq(ADDRESS), any(), any(DeliveryOptions.class), replyHandler.capture());
+        replyHandler.getValue().handle(Future.failedFuture("timeout"));
+        verify(eventBus).request(eq(ADDRESS), eq(new JsonArray(List.of("line 4", "line 5"))),
+                any(DeliveryOptions.class), any(Handler.class));
+        context.assertEquals(1L, batcher.getFailedBatches());
+        batcher.close();
+    }
+}
@@ -0,0 +1,60 @@
+package org.swisspush.gateleen.core.metrics;
+
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests for the {@link LatencyHistograms} class
+ */
+@RunWith(VertxUnitRunner.class)
+public class LatencyHistogramsTest {
+
+    @Test
+    public void testPercentiles(TestContext context) {
+        LatencyHistograms histograms = new LatencyHistograms();
+        context.assertNull(histograms.snapshot("myapi"));
+
+        for (int i = 1; i <= 100; i++) {
+            histograms.record("myapi", TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        LatencyHistograms.LatencySnapshot snapshot = histograms.snapshot("myapi");
+        context.assertEquals(100L, snapshot.getCount());
+        context.assertEquals(75.0, Math.rint(snapshot.getValueAtPercentile(75)));
+        context.assertEquals(50.0, Math.rint(snapshot.getValueAtPercentile(50)));
+        context.assertEquals(100.0, Math.rint(snapshot.getMax()));
+        context.assertNull(histograms.snapshot("otherapi"));
+    }
+
+    @Test
+    public void testSlidingWindow(TestContext context) {
+        AtomicLong now = new AtomicLong(0);
+        LatencyHistograms histograms = new LatencyHistograms(1000, 3, now::get);
+
+        histograms.record("myapi", TimeUnit.MILLISECONDS.toNanos(100));
+        context.assertEquals(1L, histograms.snapshot("myapi").getCount());
+
+        now.set(1000);
+        histograms.record("myapi", TimeUnit.MILLISECONDS.toNanos(10));
+        now.set(2000);
+        histograms.record("myapi", TimeUnit.MILLISECONDS.toNanos(10));
+        LatencyHistograms.LatencySnapshot snapshot = histograms.snapshot("myapi");
+        context.assertEquals(3L, snapshot.getCount());
+        context.assertEquals(100.0, Math.rint(snapshot.getMax()));
+
+        // the first interval slides out of the window
+        now.set(3000);
+        snapshot = histograms.snapshot("myapi");
+        context.assertEquals(2L, snapshot.getCount());
+        context.assertEquals(10.0, Math.rint(snapshot.getMax()));
+
+        // all intervals slide out of the window
+        now.set(10000);
+        context.assertEquals(0L, histograms.snapshot("myapi").getCount());
+    }
+}
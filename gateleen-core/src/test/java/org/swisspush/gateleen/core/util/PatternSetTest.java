@@ -0,0 +1,76 @@
+package org.swisspush.gateleen.core.util;
+
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Tests for the {@link PatternSet} class
+ */
+@RunWith(VertxUnitRunner.class)
+public class PatternSetTest {
+
+    @Test
+    public void testLiteralPrefix(TestContext context) {
+        context.assertEquals("/playground/server/", PatternSet.literalPrefix("/playground/server/.*"));
+        context.assertEquals("/playground/server/users", PatternSet.literalPrefix("/playground/server/users"));
+        context.assertEquals("/playground/server/user", PatternSet.literalPrefix("/playground/server/users?"));
+        context.assertEquals("/playground/", PatternSet.literalPrefix("/playground/(server)/.*"));
+        // alternations are not analyzed
+        context.assertNull(PatternSet.literalPrefix("/playground/(server|nsa)/.*"));
+        context.assertNull(PatternSet.literalPrefix("/playground/server/.*|/other/.*"));
+        context.assertNull(PatternSet.literalPrefix("^/playground/.*"));
+        context.assertNull(PatternSet.literalPrefix(".*/playground/.*"));
+        context.assertNull(PatternSet.literalPrefix("(?i)/playground/.*"));
+    }
+
+    @Test
+    public void testFindInDeclaredOrder(TestContext context) {
+        List<String> regexes = Arrays.asList(
+                "/playground/server/users/.*",
+                ".*/users/.*",
+                "/playground/server/.*",
+                "/playground/.*",
+                "/other/.*");
+        PatternSet<String> patternSet = PatternSet.compile(regexes, Pattern::compile);
+
+        context.assertEquals("/playground/server/users/.*", patternSet.findFirst("/playground/server/users/123"));
+        context.assertEquals(".*/users/.*", patternSet.findFirst("/other/users/123"));
+        context.assertEquals("/playground/.*", patternSet.findFirst("/playground/img/logo.png"));
+        context.assertNull(patternSet.findFirst("/unknown/resource"));
+        context.assertNull(patternSet.findFirst(""));
+
+        context.assertEquals(Arrays.asList("/playground/server/users/.*", ".*/users/.*", "/playground/server/.*",
+                "/playground/.*"), patternSet.findAll("/playground/server/users/123"));
+        context.assertEquals("/playground/server/.*",
+                patternSet.findFirst("/playground/server/users/123", regex -> !regex.contains("users")));
+
+        // candidates are not evaluated
+        context.assertEquals(Arrays.asList(".*/users/.*", "/playground/.*"), patternSet.candidates("/playground/x"));
+    }
+
+    @Test
+    public void testPatternFlagsAndMissingPatterns(TestContext context) {
+        List<String> regexes = Arrays.asList("/Playground/.*", "/other/.*", "none");
+        PatternSet<String> patternSet = PatternSet.compile(regexes,
+                regex -> "none".equals(regex) ? null : Pattern.compile(regex, Pattern.CASE_INSENSITIVE));
+
+        context.assertEquals("/Playground/.*", patternSet.findFirst("/playground/resource"));
+        context.assertEquals(Arrays.asList("/Playground/.*", "/other/.*", "none"), patternSet.candidates("/x"));
+        context.assertTrue(patternSet.findAll("none").isEmpty());
+    }
+
+    @Test
+    public void testEmpty(TestContext context) {
+        PatternSet<String> patternSet = PatternSet.empty();
+        context.assertTrue(patternSet.isEmpty());
+        context.assertNull(patternSet.findFirst("/playground"));
+        context.assertTrue(patternSet.findAll("/playground").isEmpty());
+        context.assertTrue(patternSet.candidates("/playground").isEmpty());
+    }
+}
@@ -4,8 +4,9 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
 import io.vertx.core.AsyncResult;
-import io.vertx.core.Handler;
+import io.vertx.core.Future;
 import io.vertx.core.MultiMap;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.*;
@@ -15,14 +16,20 @@ import io.vertx.redis.client.Response;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.swisspush.gateleen.core.exception.GateleenExceptionFactory;
 import org.swisspush.gateleen.core.http.HeaderFunction;
 import org.swisspush.gateleen.core.http.HeaderFunctions;
 import org.swisspush.gateleen.core.http.RequestLoggerFactory;
+import org.swisspush.gateleen.core.lua.LuaScriptState;
 import org.swisspush.gateleen.core.redis.ClusterSafeMget;
 import org.swisspush.gateleen.core.redis.RedisByNameProvider;
+import org.swisspush.gateleen.core.redis.RedisProvider;
 import org.swisspush.gateleen.core.util.*;
 import org.swisspush.gateleen.core.util.ExpansionDeltaUtil.CollectionResourceContainer;
 import org.swisspush.gateleen.core.util.ExpansionDeltaUtil.SlashHandling;
+import org.swisspush.gateleen.delta.lua.DeltaLuaScripts;
+import org.swisspush.gateleen.delta.lua.ReadDeltaIndexRedisCommand;
+import org.swisspush.gateleen.delta.lua.UpdateDeltaRedisCommand;
 import org.swisspush.gateleen.logging.LogAppenderRepository;
 import org.swisspush.gateleen.logging.LoggingHandler;
 import org.swisspush.gateleen.logging.LoggingResourceManager;
@@ -33,6 +40,7 @@ import org.swisspush.gateleen.routing.RuleProvider;
 
 import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -60,11 +68,17 @@ public class DeltaHandler implements RuleProvider.RuleChangesObserver {
     private static final String SEQUENCE_KEY = "delta:sequence";
     private static final String RESOURCE_KEY_PREFIX = "delta:resources";
     private static final String ETAG_KEY_PREFIX = "delta:etags";
+    private static final String INDEX_KEY_PREFIX = "delta:index";
 
     private final HttpClient httpClient;
     private final RedisByNameProvider redisProvider;
 
     private final boolean rejectLimitOffsetRequests;
+    private int sequenceBlockSize = 1;
+    private boolean collectionIndex;
+    private final Map<String, UpdateIdSequence> updateIdSequences = new ConcurrentHashMap<>();
+    private final Map<String, LuaScriptState> luaScriptStates = new ConcurrentHashMap<>();
+    private final GateleenExceptionFactory exceptionFactory = GateleenExceptionFactory.newGateleenThriftyExceptionFactory();
 
     List<Pair<Pattern, Rule>> storageRules = new ArrayList<>();
 
@@ -93,6 +107,25 @@ public class DeltaHandler implements RuleProvider.RuleChangesObserver {
         ruleProvider.registerObserver(this);
     }
 
+    /**
+     * Reserves the update-ids in blocks of the given size instead of incrementing the sequence in redis for every
+     * update. The update-ids are only increasing per instance then, see the README for the consequences.
+     *
+     * @param blockSize the count of update-ids to reserve at once, 1 to increment the sequence for every update
+     */
+    public void enableSequenceBlocks(int blockSize) {
+        sequenceBlockSize = Math.max(1, blockSize);
+        updateIdSequences.clear();
+    }
+
+    /**
+     * Stores the update-ids in a sorted set per collection instead of a key per resource. A delta request is then
+     * answered from the sorted set without listing the collection in the storage, see the README for the differences.
+     */
+    public void enableCollectionIndex() {
+        collectionIndex = true;
+    }
+
     @Override
     public void rulesChanged(List<Rule> rules) {
         log.info("Update deltaOnBackend information from changed routing rules");
@@ -161,6 +194,14 @@ public class DeltaHandler implements RuleProvider.RuleChangesObserver {
             if (updateId != null) {
                 if (rejectLimitOffsetRequests(request)) {
                     respondLimitOffsetParameterForbidden(request, log);
+                } else if (collectionIndex) {
+                    Long updateIdNumber = extractNumberDeltaParameter(updateId, request, log);
+                    if (updateIdNumber != null && updateIdNumber > 0) {
+                        handleCollectionIndexGET(request, storageName, updateIdNumber, log);
+                    } else if (updateIdNumber != null) {
+                        // the whole collection is requested, which is listed by the storage
+                        handleCollectionGET(request, storageName, updateId, log);
+                    }
                 } else {
                     handleCollectionGET(request, storageName, updateId, log);
                 }
@@ -170,106 +211,136 @@ public class DeltaHandler implements RuleProvider.RuleChangesObserver {
 
     private void handleResourcePUT(final HttpServerRequest request, @Nullable String storageName, final Router router, final Logger log) {
         request.pause(); // pause the request to avoid problems with starting another async request (storage)
-        handleDeltaEtag(request, storageName, log, updateDelta -> {
-            if (updateDelta) {
-                // increment and get update-id
-                redisProvider.redis(storageName).onSuccess(redisAPI -> redisAPI.incr(SEQUENCE_KEY, reply -> {
-                    if (reply.failed()) {
-                        log.error("incr command for redisKey {} failed with cause: {}", SEQUENCE_KEY, logCause(reply));
-                        handleError(request, "error incrementing/accessing sequence for update-id");
-                        return;
-                    }
+        final String path = request.path();
+        final String resourceKey = getResourceKey(path);
+        final String requestEtag = Objects.toString(request.headers().get(IF_NONE_MATCH_HEADER), "");
+        final Long expireAfter = getExpireAfterValue(request, log);
 
-                    final String resourceKey = getResourceKey(request.path(), false);
-                    Long expireAfter = getExpireAfterValue(request, log);
-                    String updateId = String.valueOf(reply.result());
-
-                    // save to storage
-                    saveDelta(resourceKey, storageName, updateId, expireAfter, event -> {
-                        if (event.failed()) {
-                            log.error("set command for redisKey {} failed with cause: {}", resourceKey, logCause(event));
-                            handleError(request, "error saving delta information");
-                            request.resume();
-                        } else {
-                            request.resume();
-                            router.route(request);
-                        }
-                    });
-                })).onFailure(throwable -> {
-                    log.error("Redis: handleResourcePUT failed", throwable);
-                    handleError(request, "handleResourcePUT: error incrementing/accessing sequence for update-id ");
-                });
-            } else {
-                log.debug("skip updating delta, resume request");
-                request.resume();
-                router.route(request);
-            }
-        });
-    }
-
-    private void handleDeltaEtag(final HttpServerRequest request, @Nullable String storageName, final Logger log, final Handler<Boolean> callback) {
         /*
-         * When no Etag is provided we just do the delta update
+         * Compare and store the etag and store the update-id with a single call. When the request provides an etag,
+         * the etag is compared first and an update-id is only taken when the etag changed. So a request with an
+         * unchanged etag needs a single call and does not use up an update-id. When the comparison fails, the delta
+         * update is performed anyway, like for a changed etag.
          */
-        if (!request.headers().contains(IF_NONE_MATCH_HEADER)) {
-            callback.handle(Boolean.TRUE);
+        if (requestEtag.isEmpty()) {
+            storeDeltaWithNextUpdateId(request, storageName, path, resourceKey, requestEtag, expireAfter, router, log);
             return;
         }
-
-        /*
-         * Loading Delta-Etag from storage to compare with header
-         */
-        final String requestEtag = request.headers().get(IF_NONE_MATCH_HEADER);
-        final String etagResourceKey = getResourceKey(request.path(), true);
-        redisProvider.redis(storageName).onSuccess(redisAPI -> redisAPI.get(etagResourceKey, event -> {
+        storeDelta(storageName, path, resourceKey, requestEtag, "", expireAfter, log).onComplete(event -> {
             if (event.failed()) {
-                log.error("get command for redisKey {} failed with cause: {}", etagResourceKey, logCause(event));
-                callback.handle(Boolean.TRUE);
-                return;
-            }
-
-            String etagFromStorage = Objects.toString(event.result(), "");
-            if (StringUtils.isEmpty(etagFromStorage)) {
-                /*
-                 * No Etag entry found. Store it and then do the delta update
-                 */
-                saveOrUpdateDeltaEtag(etagResourceKey, request, storageName, log, aBoolean -> callback.handle(Boolean.TRUE));
+                log.warn("etag comparison for redisKey {} failed, going to update the delta. Cause: {}", resourceKey, logCause(event));
+                storeDeltaWithNextUpdateId(request, storageName, path, resourceKey, requestEtag, expireAfter, router, log);
+            } else if (event.result() == UpdateDeltaRedisCommand.Outcome.UPDATE_ID_REQUIRED) {
+                storeDeltaWithNextUpdateId(request, storageName, path, resourceKey, requestEtag, expireAfter, router, log);
             } else {
-                /*
-                 * If etags match, no delta update has to be made.
-                 * If not, store/update the etag and then update the delta
-                 */
-                if (etagFromStorage.equals(requestEtag)) {
-                    callback.handle(Boolean.FALSE);
-                } else {
-                    saveOrUpdateDeltaEtag(etagResourceKey, request, storageName, log, aBoolean -> callback.handle(Boolean.TRUE));
-                }
+                routeAfterDeltaUpdate(request, router, resourceKey, event, log);
             }
-        })).onFailure(throwable -> {
-            log.error("Redis: handleDeltaEtag failed for redisKey {}", etagResourceKey, throwable);
-            callback.handle(Boolean.TRUE);
         });
     }
 
-    private void saveOrUpdateDeltaEtag(final String etagResourceKey, final HttpServerRequest request, @Nullable String storageName, final Logger log, final Handler<Boolean> updateCallback) {
-        final String requestEtag = request.headers().get(IF_NONE_MATCH_HEADER);
-        Long expireAfter = getExpireAfterValue(request, log);
-        saveDelta(etagResourceKey, storageName, requestEtag, expireAfter, event -> {
-            if (event.failed()) {
-                log.error("set command for redisKey {} failed with cause: {}", etagResourceKey, logCause(event));
+    private void storeDeltaWithNextUpdateId(final HttpServerRequest request, @Nullable String storageName, String path,
+                                            String resourceKey, String requestEtag, @Nullable Long expireAfter,
+                                            final Router router, final Logger log) {
+        // get update-id
+        redisProvider.redis(storageName).onSuccess(redisAPI -> getUpdateIdSequence(storageName).nextUpdateId(redisAPI).onComplete(reply -> {
+            if (reply.failed()) {
+                log.error("incr command for redisKey {} failed with cause: {}", SEQUENCE_KEY, logCause(reply));
+                handleError(request, "error incrementing/accessing sequence for update-id");
+                return;
             }
-            updateCallback.handle(Boolean.TRUE);
+            storeDelta(storageName, path, resourceKey, requestEtag, reply.result(), expireAfter, log)
+                    .onComplete(event -> routeAfterDeltaUpdate(request, router, resourceKey, event, log));
+        })).onFailure(throwable -> {
+            log.error("Redis: handleResourcePUT failed", throwable);
+            handleError(request, "handleResourcePUT: error incrementing/accessing sequence for update-id ");
         });
     }
 
-    private void saveDelta(String deltaKey, @Nullable String storageName, String deltaValue, Long expireAfter, Handler<AsyncResult<Object>> handler) {
-        redisProvider.redis(storageName).onSuccess(redisAPI -> {
-            List<String> options = new ArrayList<>(List.of(deltaKey, deltaValue));
-            if (expireAfter != null) {
-                options.addAll(List.of("EX", expireAfter.toString()));
-            }
-            redisAPI.set(options, (Handler) handler);
-        }).onFailure(throwable -> handler.handle(new FailedAsyncResult<>(throwable)));
+    private void routeAfterDeltaUpdate(final HttpServerRequest request, final Router router, String resourceKey,
+                                       AsyncResult<UpdateDeltaRedisCommand.Outcome> event, final Logger log) {
+        if (event.failed()) {
+            log.error("delta update for redisKey {} failed with cause: {}", resourceKey, logCause(event));
+            handleError(request, "error saving delta information");
+            request.resume();
+            return;
+        }
+        if (event.result() == UpdateDeltaRedisCommand.Outcome.UNCHANGED) {
+            log.debug("skip updating delta, resume request");
+        }
+        request.resume();
+        router.route(request);
+    }
+
+    /**
+     * Stores the delta information of the resource. Without update-id, the etag is compared only.
+     */
+    private Future<UpdateDeltaRedisCommand.Outcome> storeDelta(@Nullable String storageName, String path, String resourceKey,
+                                                               String requestEtag, String updateId,
+                                                               @Nullable Long expireAfter, Logger log) {
+        return collectionIndex
+                ? updateCollectionIndex(storageName, path, requestEtag, updateId, expireAfter, log)
+                : updateDelta(storageName, resourceKey, requestEtag, updateId, expireAfter, log);
+    }
+
+    private UpdateIdSequence getUpdateIdSequence(@Nullable String storageName) {
+        return updateIdSequences.computeIfAbsent(Objects.toString(storageName, ""),
+                name -> new UpdateIdSequence(SEQUENCE_KEY, sequenceBlockSize));
+    }
+
+    private Future<UpdateDeltaRedisCommand.Outcome> updateDelta(@Nullable String storageName, String resourceKey, String requestEtag, String updateId,
+                                        @Nullable Long expireAfter, Logger log) {
+        RedisProvider storageRedisProvider = () -> redisProvider.redis(storageName);
+        LuaScriptState luaScriptState = getLuaScriptState(DeltaLuaScripts.UPDATE_DELTA, storageName);
+
+        List<String> keys = List.of(getEtagKey(resourceKey), resourceKey);
+        List<String> arguments = List.of(requestEtag, updateId, expireAfter != null ? expireAfter.toString() : "");
+        Promise<UpdateDeltaRedisCommand.Outcome> promise = Promise.promise();
+        new UpdateDeltaRedisCommand(luaScriptState, keys, arguments, storageRedisProvider, log, promise).exec(0);
+        return promise.future();
+    }
+
+    /**
+     * Stores the update-id of the resource in the index of its collection. The expiry of the resources in the index is
+     * kept as timestamp in a second sorted set, expired resources are removed on every access of the index.
+     */
+    private Future<UpdateDeltaRedisCommand.Outcome> updateCollectionIndex(@Nullable String storageName, String path, String requestEtag, String updateId,
+                                                  @Nullable Long expireAfter, Logger log) {
+        RedisProvider storageRedisProvider = () -> redisProvider.redis(storageName);
+        LuaScriptState luaScriptState = getLuaScriptState(DeltaLuaScripts.UPDATE_INDEX, storageName);
+
+        List<String> pathSegments = Lists.newArrayList(Splitter.on(SLASH).omitEmptyStrings().split(path));
+        String resourceName = pathSegments.isEmpty() ? "" : pathSegments.remove(pathSegments.size() - 1);
+        long now = System.currentTimeMillis();
+        String expireAt = expireAfter != null ? String.valueOf(now + expireAfter * 1000) : "";
+
+        List<String> keys = getIndexKeys(Joiner.on(SLASH).join(pathSegments));
+        List<String> arguments = List.of(resourceName, requestEtag, updateId, expireAt, String.valueOf(now));
+        Promise<UpdateDeltaRedisCommand.Outcome> promise = Promise.promise();
+        new UpdateDeltaRedisCommand(luaScriptState, keys, arguments, storageRedisProvider, log, promise).exec(0);
+        return promise.future();
+    }
+
+    /**
+     * Reads the resources updated after the given update-id from the index of the collection.
+     *
+     * @param count the maximum count of resources to read, -1 for all resources and 0 to read the highest update-id only
+     */
+    private Future<DeltaResourcesContainer> readCollectionIndex(@Nullable String storageName, String collectionPath, long updateId,
+                                                                int offset, int count, Logger log) {
+        RedisProvider storageRedisProvider = () -> redisProvider.redis(storageName);
+        LuaScriptState luaScriptState = getLuaScriptState(DeltaLuaScripts.READ_INDEX, storageName);
+
+        List<String> keys = getIndexKeys(collectionPath);
+        List<String> arguments = List.of(String.valueOf(updateId), String.valueOf(offset), String.valueOf(count),
+                String.valueOf(System.currentTimeMillis()));
+        Promise<Response> promise = Promise.promise();
+        new ReadDeltaIndexRedisCommand(luaScriptState, keys, arguments, storageRedisProvider, log, promise).exec(0);
+        return promise.future().map(reply -> getIndexedDeltaResourceNames(reply, updateId));
+    }
+
+    private LuaScriptState getLuaScriptState(DeltaLuaScripts luaScript, @Nullable String storageName) {
+        return luaScriptStates.computeIfAbsent(luaScript.name() + ":" + Objects.toString(storageName, ""),
+                name -> new LuaScriptState(luaScript, () -> redisProvider.redis(storageName), exceptionFactory, false));
     }
 
     private String extractStringDeltaParameter(HttpServerRequest request, Logger log) {
@@ -326,6 +397,60 @@ public class DeltaHandler implements RuleProvider.RuleChangesObserver {
         return new DeltaResourcesContainer(maxUpdateId, deltaResourceNames);
     }
 
+    private DeltaResourcesContainer getIndexedDeltaResourceNames(Response reply, long updateId) {
+        List<String> deltaResourceNames = new ArrayList<>();
+        long maxUpdateId = 0;
+        // the reply starts with the highest update-id of the collection followed by the updated resources
+        for (int i = 1; i + 1 < reply.size(); i += 2) {
+            deltaResourceNames.add(reply.get(i).toString());
+            maxUpdateId = Math.max(maxUpdateId, parseScore(reply.get(i + 1)));
+        }
+        if (deltaResourceNames.isEmpty()) {
+            maxUpdateId = Math.max(updateId, parseScore(reply.get(0)));
+        }
+        return new DeltaResourcesContainer(maxUpdateId, deltaResourceNames);
+    }
+
+    private long parseScore(Response score) {
+        // sorted set scores are doubles
+        return (long) Double.parseDouble(score.toString());
+    }
+
+    private void handleCollectionIndexGET(final HttpServerRequest request, @Nullable String storageName, final long updateId, final Logger log) {
+        final LoggingHandler loggingHandler = new LoggingHandler(loggingResourceManager, logAppenderRepository, request, vertx.eventBus());
+        loggingHandler.request(request.headers());
+
+        // the resources are ordered by their update-id, so limit and offset page through the updated resources
+        int offset = Math.max(0, getIntParameter(request, OFFSET_PARAM, 0));
+        int count = getIntParameter(request, LIMIT_PARAM, -1);
+        readCollectionIndex(storageName, request.path(), updateId, offset, count, log).onComplete(event -> {
+            if (event.failed()) {
+                log.error("reading delta index of {} failed with cause: {}", request.path(), logCause(event));
+                handleError(request, "error reading delta information");
+                return;
+            }
+            DeltaResourcesContainer deltaResourcesContainer = event.result();
+            JsonObject result = buildResultJsonObject(deltaResourcesContainer.getResourceNames(),
+                    ExpansionDeltaUtil.extractCollectionFromPath(request.path()));
+            String responseBody = result.toString();
+            HttpServerResponse response = request.response();
+            response.putHeader("Content-Type", "application/json");
+            response.putHeader(DELTA_HEADER, "" + deltaResourcesContainer.getMaxUpdateId());
+            loggingHandler.appendResponsePayload(Buffer.buffer(responseBody), response.headers());
+            loggingHandler.log(request.uri(), request.method(), StatusCode.OK.getStatusCode(),
+                    StatusCode.OK.getStatusMessage(), request.headers(), response.headers());
+            response.end(responseBody);
+        });
+    }
+
+    private int getIntParameter(HttpServerRequest request, String name, int defaultValue) {
+        try {
+            return Integer.parseInt(request.params().get(name));
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
+    }
+
     private void handleCollectionGET(final HttpServerRequest request, @Nullable String storageName, final String updateId, final Logger log) {
         request.pause();
 
@@ -383,9 +508,14 @@ public class DeltaHandler implements RuleProvider.RuleChangesObserver {
                                         log.trace("DeltaHandler: targetUri ({}) using mget command.", targetUri);
                                     }
 
-                                    handleMgetAndRespond(request, dataContainer.getCollectionName(),
-                                            subResourceNames, deltaResourceKeys, updateIdNumber,
-                                            loggingHandler, storageName);
+                                    if (collectionIndex) {
+                                        handleIndexAndRespond(request, dataContainer.getCollectionName(),
+                                                subResourceNames, loggingHandler, storageName);
+                                    } else {
+                                        handleMgetAndRespond(request, dataContainer.getCollectionName(),
+                                                subResourceNames, deltaResourceKeys, updateIdNumber,
+                                                loggingHandler, storageName);
+                                    }
                                 } else {
                                     if (log.isTraceEnabled()) {
                                         log.trace("DeltaHandler: targetUri ({}) NOT using database", targetUri);
@@ -447,9 +577,32 @@ public class DeltaHandler implements RuleProvider.RuleChangesObserver {
         });
     }
 
+    /**
+     * Responds the whole collection with the highest update-id of the collection index.
+     */
+    private void handleIndexAndRespond(HttpServerRequest request,
+                                       String collectionName,
+                                       List<String> subResourceNames,
+                                       LoggingHandler loggingHandler,
+                                       @Nullable String storageName) {
+        readCollectionIndex(storageName, request.path(), 0, 0, 0, log).onComplete(event -> {
+            if (event.failed()) {
+                log.error("reading delta index of {} failed with cause: {}", request.path(), logCause(event));
+                handleError(request, "error reading delta information");
+                return;
+            }
+            JsonObject result = buildResultJsonObject(subResourceNames, collectionName);
+            String responseBody = result.toString();
+            request.response().putHeader(DELTA_HEADER, "" + event.result().getMaxUpdateId());
+            loggingHandler.appendResponsePayload(Buffer.buffer(responseBody));
+            loggingHandler.log();
+            request.response().end(responseBody);
+        });
+    }
+
     private List<String> buildDeltaResourceKeys(String requestPath, List<String> subResourceNames) {
         List<String> storageResourceKeys = new ArrayList<>();
-        String resourceKeyPrefix = getResourceKey(requestPath, false);
+        String resourceKeyPrefix = getResourceKey(requestPath);
         for (String entry : subResourceNames) {
             storageResourceKeys.add(resourceKeyPrefix + ":" + entry);
         }
@@ -477,16 +630,33 @@ public class DeltaHandler implements RuleProvider.RuleChangesObserver {
         request.response().end(errorMessage);
     }
 
-    private String getResourceKey(String path, boolean useEtagPrefix) {
+    private String getResourceKey(String path) {
         List<String> pathSegments = Lists.newArrayList(Splitter.on(SLASH).omitEmptyStrings().split(path));
-        if (useEtagPrefix) {
-            pathSegments.add(0, ETAG_KEY_PREFIX);
-        } else {
-            pathSegments.add(0, RESOURCE_KEY_PREFIX);
-        }
+        pathSegments.add(0, RESOURCE_KEY_PREFIX);
         return Joiner.on(":").skipNulls().join(pathSegments);
     }
 
+    /**
+     * The resource key is used as hash tag of the etag key, so both keys are in the same redis cluster slot and can be
+     * updated by a single lua script.
+     */
+    private String getEtagKey(String resourceKey) {
+        if (resourceKey.indexOf('{') >= 0) {
+            // the resource key has its own hash tag, which is used for the etag key too
+            return ETAG_KEY_PREFIX + ":" + resourceKey;
+        }
+        return ETAG_KEY_PREFIX + ":{" + resourceKey + "}";
+    }
+
+    /**
+     * The keys of the collection index: the update-ids, the expiry timestamps and the etags of the resources. The
+     * collection is used as hash tag, so all keys are in the same redis cluster slot.
+     */
+    private List<String> getIndexKeys(String collectionPath) {
+        String indexKey = INDEX_KEY_PREFIX + ":{" + getResourceKey(collectionPath) + "}";
+        return List.of(indexKey, indexKey + ":expiry", indexKey + ":etags");
+    }
+
     private Long getExpireAfterValue(HttpServerRequest request, Logger log) {
         MultiMap requestHeaders = request.headers();
         HeaderFunction headerFunction = getHeaderFunctionFromRule(request);
@@ -0,0 +1,100 @@
+package org.swisspush.gateleen.delta;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.redis.client.RedisAPI;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Provides the update-ids of a storage. Without block allocation, every update-id is incremented in redis. With block
+ * allocation, a range of {@code blockSize} update-ids is reserved with a single INCRBY and the update-ids of the range
+ * are handed out locally, so the sequence key is accessed once per block only.
+ */
+class UpdateIdSequence {
+
+    private final String sequenceKey;
+    private final int blockSize;
+
+    // the update-ids of the reserved block not handed out yet
+    private long next = 1;
+    private long last = 0;
+    private final Queue<Promise<String>> waiting = new ArrayDeque<>();
+    private boolean reserving;
+
+    /**
+     * @param sequenceKey the key of the sequence in redis
+     * @param blockSize   the count of update-ids to reserve at once, 1 to increment the sequence for every update-id
+     */
+    UpdateIdSequence(String sequenceKey, int blockSize) {
+        this.sequenceKey = sequenceKey;
+        this.blockSize = Math.max(1, blockSize);
+    }
+
+    /**
+     * @param redisAPI the redis of the storage
+     * @return the next update-id
+     */
+    Future<String> nextUpdateId(RedisAPI redisAPI) {
+        Promise<String> promise = Promise.promise();
+        if (blockSize == 1) {
+            redisAPI.incr(sequenceKey, reply -> {
+                if (reply.failed()) {
+                    promise.fail(reply.cause());
+                } else {
+                    promise.complete(String.valueOf(reply.result()));
+                }
+            });
+            return promise.future();
+        }
+
+        boolean reserve;
+        synchronized (this) {
+            if (next <= last) {
+                return Future.succeededFuture(String.valueOf(next++));
+            }
+            waiting.add(promise);
+            reserve = !reserving;
+            reserving = true;
+        }
+        if (reserve) {
+            reserveBlock(redisAPI);
+        }
+        return promise.future();
+    }
+
+    private void reserveBlock(RedisAPI redisAPI) {
+        redisAPI.incrby(sequenceKey, String.valueOf(blockSize), reply -> {
+            List<Promise<String>> served = new ArrayList<>();
+            List<String> updateIds = new ArrayList<>();
+            List<Promise<String>> failed = new ArrayList<>();
+            boolean reserveAgain = false;
+            synchronized (this) {
+                if (reply.failed()) {
+                    reserving = false;
+                    failed.addAll(waiting);
+                    waiting.clear();
+                } else {
+                    last = reply.result().toLong();
+                    next = last - blockSize + 1;
+                    while (next <= last && !waiting.isEmpty()) {
+                        served.add(waiting.poll());
+                        updateIds.add(String.valueOf(next++));
+                    }
+                    reserveAgain = !waiting.isEmpty();
+                    reserving = reserveAgain;
+                }
+            }
+            for (int i = 0; i < served.size(); i++) {
+                served.get(i).complete(updateIds.get(i));
+            }
+            failed.forEach(promise -> promise.fail(reply.cause()));
+            if (reserveAgain) {
+                reserveBlock(redisAPI);
+            }
+        });
+    }
+}
@@ -0,0 +1,22 @@
+package org.swisspush.gateleen.delta.lua;
+
+import org.swisspush.gateleen.core.lua.LuaScript;
+
+/**
+ * Enum containing the file names of the delta feature related lua scripts.
+ */
+public enum DeltaLuaScripts implements LuaScript {
+
+    UPDATE_DELTA("delta_update.lua"),
+    UPDATE_INDEX("delta_index_update.lua"),
+    READ_INDEX("delta_index_read.lua");
+
+    private String file;
+
+    DeltaLuaScripts(String file) { this.file = file; }
+
+    @Override
+    public String getFilename() {
+        return file;
+    }
+}
@@ -0,0 +1,61 @@
+package org.swisspush.gateleen.delta.lua;
+
+import io.vertx.core.Promise;
+import io.vertx.redis.client.Response;
+import org.slf4j.Logger;
+import org.swisspush.gateleen.core.lua.LuaScriptState;
+import org.swisspush.gateleen.core.lua.RedisCommand;
+import org.swisspush.gateleen.core.redis.RedisProvider;
+import org.swisspush.gateleen.core.util.RedisUtils;
+
+import java.util.List;
+
+/**
+ * Reads the resources of a collection updated after an update-id with a single call of the
+ * {@link DeltaLuaScripts#READ_INDEX} script. The promise is completed with the reply of the script, the highest update-id
+ * of the collection followed by the names and update-ids of the updated resources.
+ */
+public class ReadDeltaIndexRedisCommand implements RedisCommand {
+
+    private final LuaScriptState luaScriptState;
+    private final List<String> keys;
+    private final List<String> arguments;
+    private final Promise<Response> promise;
+    private final RedisProvider redisProvider;
+    private final Logger log;
+
+    public ReadDeltaIndexRedisCommand(LuaScriptState luaScriptState, List<String> keys, List<String> arguments,
+                                   RedisProvider redisProvider, Logger log, final Promise<Response> promise) {
+        this.luaScriptState = luaScriptState;
+        this.keys = keys;
+        this.arguments = arguments;
+        this.redisProvider = redisProvider;
+        this.log = log;
+        this.promise = promise;
+    }
+
+    @Override
+    public void exec(int executionCounter) {
+        List<String> args = RedisUtils.toPayload(luaScriptState.getSha(), keys.size(), keys, arguments);
+        redisProvider.redis().onSuccess(redisAPI -> redisAPI.evalsha(args, event -> {
+            if (event.succeeded()) {
+                promise.complete(event.result());
+            } else {
+                String message = event.cause().getMessage();
+                if (message != null && message.startsWith("NOSCRIPT")) {
+                    log.warn("ReadDeltaIndexRedisCommand script couldn't be found, reload it");
+                    log.warn("amount the script got loaded: {}", executionCounter);
+                    if (executionCounter > 10) {
+                        promise.fail("amount the script got loaded is higher than 10, we abort");
+                    } else {
+                        luaScriptState.loadLuaScript(new ReadDeltaIndexRedisCommand(luaScriptState, keys, arguments,
+                                redisProvider, log, promise), executionCounter);
+                    }
+                } else {
+                    promise.fail("ReadDeltaIndexRedisCommand request failed with message: " + message);
+                }
+            }
+        })).onFailure(throwable -> promise.fail("Redis: ReadDeltaIndexRedisCommand request failed with message: "
+                + throwable.getMessage()));
+    }
+}
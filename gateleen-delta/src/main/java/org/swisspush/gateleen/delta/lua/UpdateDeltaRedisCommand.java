@@ -0,0 +1,79 @@
+package org.swisspush.gateleen.delta.lua;
+
+import io.vertx.core.Promise;
+import org.slf4j.Logger;
+import org.swisspush.gateleen.core.lua.LuaScriptState;
+import org.swisspush.gateleen.core.lua.RedisCommand;
+import org.swisspush.gateleen.core.redis.RedisProvider;
+import org.swisspush.gateleen.core.util.RedisUtils;
+
+import java.util.List;
+
+/**
+ * Compares and stores the etag of a resource and stores its update-id with a single call of the
+ * {@link DeltaLuaScripts#UPDATE_DELTA} or the {@link DeltaLuaScripts#UPDATE_INDEX} script. Called without update-id,
+ * the script only compares the etag.
+ */
+public class UpdateDeltaRedisCommand implements RedisCommand {
+
+    /**
+     * The outcome of the script
+     */
+    public enum Outcome {
+        /** the etag did not change, nothing was stored */
+        UNCHANGED,
+        /** the etag and the update-id were stored */
+        STORED,
+        /** the etag changed, but nothing was stored as no update-id was provided */
+        UPDATE_ID_REQUIRED
+    }
+
+    private final LuaScriptState luaScriptState;
+    private final List<String> keys;
+    private final List<String> arguments;
+    private final Promise<Outcome> promise;
+    private final RedisProvider redisProvider;
+    private final Logger log;
+
+    public UpdateDeltaRedisCommand(LuaScriptState luaScriptState, List<String> keys, List<String> arguments,
+                                   RedisProvider redisProvider, Logger log, final Promise<Outcome> promise) {
+        this.luaScriptState = luaScriptState;
+        this.keys = keys;
+        this.arguments = arguments;
+        this.redisProvider = redisProvider;
+        this.log = log;
+        this.promise = promise;
+    }
+
+    @Override
+    public void exec(int executionCounter) {
+        List<String> args = RedisUtils.toPayload(luaScriptState.getSha(), keys.size(), keys, arguments);
+        redisProvider.redis().onSuccess(redisAPI -> redisAPI.evalsha(args, event -> {
+            if (event.succeeded()) {
+                Long outcome = event.result().toLong();
+                if (outcome == null || outcome == 0) {
+                    promise.complete(Outcome.UNCHANGED);
+                } else if (outcome == 2) {
+                    promise.complete(Outcome.UPDATE_ID_REQUIRED);
+                } else {
+                    promise.complete(Outcome.STORED);
+                }
+            } else {
+                String message = event.cause().getMessage();
+                if (message != null && message.startsWith("NOSCRIPT")) {
+                    log.warn("UpdateDeltaRedisCommand script couldn't be found, reload it");
+                    log.warn("amount the script got loaded: {}", executionCounter);
+                    if (executionCounter > 10) {
+                        promise.fail("amount the script got loaded is higher than 10, we abort");
+                    } else {
+                        luaScriptState.loadLuaScript(new UpdateDeltaRedisCommand(luaScriptState, keys, arguments,
+                                redisProvider, log, promise), executionCounter);
+                    }
+                } else {
+                    promise.fail("UpdateDeltaRedisCommand request failed with message: " + message);
+                }
+            }
+        })).onFailure(throwable -> promise.fail("Redis: UpdateDeltaRedisCommand request failed with message: "
+                + throwable.getMessage()));
+    }
+}
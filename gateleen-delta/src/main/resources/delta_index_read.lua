@@ -0,0 +1,29 @@
+local indexKey = KEYS[1]
+local expiryKey = KEYS[2]
+local etagsKey = KEYS[3]
+local updateId = ARGV[1]
+local offset = ARGV[2]
+local count = ARGV[3]
+local now = tonumber(ARGV[4])
+
+-- remove the expired resources from the index
+local expired = redis.call('zrangebyscore', expiryKey, '-inf', now)
+for _, expiredName in ipairs(expired) do
+    redis.call('zrem', indexKey, expiredName)
+    redis.call('hdel', etagsKey, expiredName)
+end
+redis.call('zremrangebyscore', expiryKey, '-inf', now)
+
+-- the highest update-id of the collection followed by the resource names and update-ids updated after the given update-id
+local result = { 0 }
+local last = redis.call('zrevrange', indexKey, 0, 0, 'withscores')
+if last[2] then
+    result[1] = last[2]
+end
+if count ~= "0" then
+    local updated = redis.call('zrangebyscore', indexKey, '(' .. updateId, '+inf', 'withscores', 'limit', offset, count)
+    for _, value in ipairs(updated) do
+        table.insert(result, value)
+    end
+end
+return result
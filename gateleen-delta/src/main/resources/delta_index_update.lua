@@ -0,0 +1,51 @@
+local indexKey = KEYS[1]
+local expiryKey = KEYS[2]
+local etagsKey = KEYS[3]
+local resourceName = ARGV[1]
+local requestEtag = ARGV[2]
+local updateId = ARGV[3]
+local expireAt = tonumber(ARGV[4])
+local now = tonumber(ARGV[5])
+
+-- remove the expired resources from the index
+local expired = redis.call('zrangebyscore', expiryKey, '-inf', now)
+for _, expiredName in ipairs(expired) do
+    redis.call('zrem', indexKey, expiredName)
+    redis.call('hdel', etagsKey, expiredName)
+end
+redis.call('zremrangebyscore', expiryKey, '-inf', now)
+
+if requestEtag ~= "" then
+    if redis.call('hget', etagsKey, resourceName) == requestEtag then
+        return 0
+    end
+end
+
+-- without update-id, only report the change. The caller takes an update-id and calls again
+if updateId == "" then
+    return 2
+end
+
+if requestEtag ~= "" then
+    redis.call('hset', etagsKey, resourceName, requestEtag)
+end
+
+redis.call('zadd', indexKey, updateId, resourceName)
+if expireAt then
+    redis.call('zadd', expiryKey, expireAt, resourceName)
+else
+    redis.call('zrem', expiryKey, resourceName)
+end
+
+-- the index expires with its last resource, as long as all resources expire
+if redis.call('zcard', expiryKey) == redis.call('zcard', indexKey) then
+    local last = redis.call('zrevrange', expiryKey, 0, 0, 'withscores')
+    redis.call('pexpireat', indexKey, last[2])
+    redis.call('pexpireat', expiryKey, last[2])
+    redis.call('pexpireat', etagsKey, last[2])
+else
+    redis.call('persist', indexKey)
+    redis.call('persist', expiryKey)
+    redis.call('persist', etagsKey)
+end
+return 1
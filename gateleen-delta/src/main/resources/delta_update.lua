@@ -0,0 +1,31 @@
+local etagKey = KEYS[1]
+local resourceKey = KEYS[2]
+local requestEtag = ARGV[1]
+local updateId = ARGV[2]
+local expireAfter = tonumber(ARGV[3])
+
+if requestEtag ~= "" then
+    if redis.call('get', etagKey) == requestEtag then
+        return 0
+    end
+end
+
+-- without update-id, only report the change. The caller takes an update-id and calls again
+if updateId == "" then
+    return 2
+end
+
+if requestEtag ~= "" then
+    if expireAfter then
+        redis.call('set', etagKey, requestEtag, 'ex', expireAfter)
+    else
+        redis.call('set', etagKey, requestEtag)
+    end
+end
+
+if expireAfter then
+    redis.call('set', resourceKey, updateId, 'ex', expireAfter)
+else
+    redis.call('set', resourceKey, updateId)
+end
+return 1
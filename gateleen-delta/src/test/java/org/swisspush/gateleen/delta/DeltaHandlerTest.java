@@ -5,15 +5,23 @@ import io.vertx.core.*;
 import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.impl.headers.HeadersMultiMap;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
 import io.vertx.redis.client.RedisAPI;
 import io.vertx.redis.client.Response;
+import io.vertx.redis.client.impl.types.BulkType;
+import io.vertx.redis.client.impl.types.MultiType;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.stubbing.Answer;
+import org.mockito.stubbing.Stubber;
 import org.swisspush.gateleen.core.http.DummyHttpServerRequest;
 import org.swisspush.gateleen.core.http.DummyHttpServerResponse;
 import org.swisspush.gateleen.core.redis.RedisByNameProvider;
@@ -29,7 +37,7 @@ import org.swisspush.gateleen.routing.Router;
 import org.swisspush.gateleen.routing.Rule;
 import org.swisspush.gateleen.routing.RuleProvider;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +46,8 @@ import static org.awaitility.Awaitility.await;
 import static org.awaitility.Durations.TWO_SECONDS;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
 @RunWith(VertxUnitRunner.class)
@@ -80,6 +90,9 @@ public class DeltaHandlerTest {
             return null;
         }).when(redisAPI).set(any(), any());
 
+        // Default: delta update script succeeds
+        answerDeltaUpdate(1L);
+
         requestHeaders = MultiMap.caseInsensitiveMultiMap();
         requestHeaders.add("x-delta", "auto");
 
@@ -137,12 +150,12 @@ public class DeltaHandlerTest {
         await().atMost(TWO_SECONDS).until(() -> !deltaHandler.storageRules.isEmpty());
 
         deltaHandler.handle(request, router);
-        verify(redisProvider, times(2)).redis(eq("main"));
+        verify(redisProvider, times(3)).redis(eq("main"));
 
         when(request.uri()).thenReturn("/gateleen/server/storage_add_1/res_2");
         when(request.path()).thenReturn("/gateleen/server/storage_add_1/res_2");
         deltaHandler.handle(request, router);
-        verify(redisProvider, times(2)).redis(eq("add_1"));
+        verify(redisProvider, times(3)).redis(eq("add_1"));
     }
 
     @Test
@@ -233,7 +246,7 @@ public class DeltaHandlerTest {
         DeltaHandler deltaHandler = new DeltaHandler(vertx, redisProvider, null, ruleProvider, loggingResourceManager, logAppenderRepository);
         deltaHandler.handle(request, router);
 
-        verify(redisAPI, times(1)).set(eq(Arrays.asList("delta:resources:a:b:c", "555")), any());
+        verifyDeltaUpdate("delta:resources:a:b:c", "", "555", "");
     }
 
     @Test
@@ -243,7 +256,7 @@ public class DeltaHandlerTest {
         DeltaHandler deltaHandler = new DeltaHandler(vertx, redisProvider, null, ruleProvider, loggingResourceManager, logAppenderRepository);
         deltaHandler.handle(request, router);
 
-        verify(redisAPI, times(1)).set(eq(Arrays.asList("delta:resources:a:b:c", "555", "EX", "123")), any());
+        verifyDeltaUpdate("delta:resources:a:b:c", "", "555", "123");
     }
 
     @Test
@@ -280,10 +293,10 @@ public class DeltaHandlerTest {
         await().atMost(TWO_SECONDS).until(() -> !deltaHandler.storageRules.isEmpty());
 
         deltaHandler.handle(request, router);
-        verify(redisProvider, times(2)).redis(eq("main"));
+        verify(redisProvider, times(3)).redis(eq("main"));
 
         // Verify that the expiry time from the routing rule is used
-        verify(redisAPI, times(1)).set(eq(Arrays.asList("delta:resources:gateleen:rule:1", "555", "EX", "60")), any());
+        verifyDeltaUpdate("delta:resources:gateleen:rule:1", "", "555", "60");
     }
 
     @Test
@@ -321,10 +334,10 @@ public class DeltaHandlerTest {
         await().atMost(TWO_SECONDS).until(() -> !deltaHandler.storageRules.isEmpty());
 
         deltaHandler.handle(request, router);
-        verify(redisProvider, times(2)).redis(eq("main"));
+        verify(redisProvider, times(3)).redis(eq("main"));
 
         // Verify that the routing rule value (60) wins over the request header (123)
-        verify(redisAPI, times(1)).set(eq(Arrays.asList("delta:resources:gateleen:rule:1", "555", "EX", "60")), any());
+        verifyDeltaUpdate("delta:resources:gateleen:rule:1", "", "555", "60");
     }
 
     @Test
@@ -363,10 +376,10 @@ public class DeltaHandlerTest {
         await().atMost(TWO_SECONDS).until(() -> !deltaHandler.storageRules.isEmpty());
 
         deltaHandler.handle(request, router);
-        verify(redisProvider, times(2)).redis(eq("main"));
+        verify(redisProvider, times(3)).redis(eq("main"));
 
         // In "complete" mode the existing request header value (123) is kept
-        verify(redisAPI, times(1)).set(eq(Arrays.asList("delta:resources:gateleen:rule:1", "555", "EX", "123")), any());
+        verifyDeltaUpdate("delta:resources:gateleen:rule:1", "", "555", "123");
     }
 
     @Test
@@ -515,12 +528,12 @@ public class DeltaHandlerTest {
     }
 
     @Test
-    public void testRedisSetFailureReturns500(TestContext context) {
+    public void testDeltaUpdateFailureReturns500(TestContext context) {
         doAnswer(invocation -> {
             Handler<AsyncResult<Response>> handler = (Handler<AsyncResult<Response>>) invocation.getArguments()[1];
-            handler.handle(Future.failedFuture("set failed"));
+            handler.handle(Future.failedFuture("evalsha failed"));
             return null;
-        }).when(redisAPI).set(any(), any());
+        }).when(redisAPI).evalsha(any(), any());
 
         ArgumentCaptor<Integer> statusCodeCaptor = ArgumentCaptor.forClass(Integer.class);
         when(response.setStatusCode(statusCodeCaptor.capture())).thenReturn(response);
@@ -537,105 +550,147 @@ public class DeltaHandlerTest {
     }
 
     @Test
-    public void testEtagNotInStoragePerformsDeltaUpdate() {
-        // When no etag is stored (get returns null), delta update should proceed
-        doAnswer(invocation -> {
-            Handler<AsyncResult<Response>> handler = (Handler<AsyncResult<Response>>) invocation.getArguments()[1];
-            handler.handle(Future.succeededFuture(null)); // null = not found in Redis
-            return null;
-        }).when(redisAPI).get(any(), any());
-
+    public void testEtagIsComparedAndStoredWithDeltaUpdate() {
+        // the script returns 2 when the etag changed but no update-id was provided
+        answerDeltaUpdate(2L, 1L);
         requestHeaders.add("if-none-match", "etag-abc");
 
         DeltaHandler deltaHandler = new DeltaHandler(vertx, redisProvider, null, ruleProvider, loggingResourceManager, logAppenderRepository);
         deltaHandler.handle(request, router);
 
-        // incr should be called (delta update performed)
-        verify(redisAPI, times(1)).incr(eq("delta:sequence"), any());
-        // router should be called after successful update
+        // the update-id is only taken after the etag was compared
+        InOrder inOrder = inOrder(redisAPI);
+        inOrder.verify(redisAPI).evalsha(any(), any());
+        inOrder.verify(redisAPI).incr(eq("delta:sequence"), any());
+        ArgumentCaptor<List<String>> argsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(redisAPI, times(2)).evalsha(argsCaptor.capture(), any());
+        assertEquals(List.of("2", "delta:etags:{delta:resources:a:b:c}", "delta:resources:a:b:c", "etag-abc", "", ""),
+                argsCaptor.getAllValues().get(0).subList(1, 7));
+        assertEquals(List.of("2", "delta:etags:{delta:resources:a:b:c}", "delta:resources:a:b:c", "etag-abc", "555", ""),
+                argsCaptor.getAllValues().get(1).subList(1, 7));
+        verify(redisAPI, never()).get(any(), any());
+        verify(redisAPI, never()).set(any(), any());
         verify(router, times(1)).route(request);
     }
 
     @Test
     public void testEtagMatchSkipsDeltaUpdate() {
-        // When stored etag matches request etag, skip the delta update
-        String etag = "etag-abc";
-
-        Response etagResponse = mock(Response.class);
-        when(etagResponse.toString()).thenReturn(etag);
-
-        doAnswer(invocation -> {
-            Handler<AsyncResult<Response>> handler = (Handler<AsyncResult<Response>>) invocation.getArguments()[1];
-            handler.handle(Future.succeededFuture(etagResponse));
-            return null;
-        }).when(redisAPI).get(any(), any());
-
-        requestHeaders.add("if-none-match", etag);
+        // the script returns 0 when the stored etag matches the request etag
+        answerDeltaUpdate(0L);
+        requestHeaders.add("if-none-match", "etag-abc");
 
         DeltaHandler deltaHandler = new DeltaHandler(vertx, redisProvider, null, ruleProvider, loggingResourceManager, logAppenderRepository);
         deltaHandler.handle(request, router);
 
-        // incr should NOT be called (skipped)
-        verify(redisAPI, never()).incr(any(), any());
         // router should still be called to pass the request through
         verify(router, times(1)).route(request);
+        verify(response, never()).setStatusCode(anyInt());
+        // a single call without using up an update-id
+        verify(redisAPI, times(1)).evalsha(any(), any());
+        verify(redisAPI, never()).incr(any(), any());
     }
 
     @Test
-    public void testEtagMismatchPerformsDeltaUpdate() {
-        // When stored etag differs from request etag, update delta
-        Response storedEtagResponse = mock(Response.class);
-        when(storedEtagResponse.toString()).thenReturn("old-etag");
-
+    public void testEtagComparisonFailureProceedsWithDeltaUpdate() {
+        // the first call only compares the etag, a failure falls back to performing the delta update
+        Response updated = mock(Response.class);
+        when(updated.toLong()).thenReturn(1L);
         doAnswer(invocation -> {
             Handler<AsyncResult<Response>> handler = (Handler<AsyncResult<Response>>) invocation.getArguments()[1];
-            handler.handle(Future.succeededFuture(storedEtagResponse));
+            handler.handle(Future.failedFuture("evalsha failed"));
+            return null;
+        }).doAnswer(invocation -> {
+            Handler<AsyncResult<Response>> handler = (Handler<AsyncResult<Response>>) invocation.getArguments()[1];
+            handler.handle(Future.succeededFuture(updated));
             return null;
-        }).when(redisAPI).get(any(), any());
+        }).when(redisAPI).evalsha(any(), any());
+        requestHeaders.add("if-none-match", "etag-xyz");
+
+        DeltaHandler deltaHandler = new DeltaHandler(vertx, redisProvider, null, ruleProvider, loggingResourceManager, logAppenderRepository);
+        deltaHandler.handle(request, router);
 
-        requestHeaders.add("if-none-match", "new-etag");
+        verify(redisAPI, times(1)).incr(eq("delta:sequence"), any());
+        verify(redisAPI, times(2)).evalsha(any(), any());
+        verify(response, never()).setStatusCode(anyInt());
+        verify(router, times(1)).route(request);
+    }
 
+    @Test
+    public void testEtagComparisonRedisProviderFailureProceedsWithDeltaUpdate() {
+        // a first request loads the script, which accesses redis too
         DeltaHandler deltaHandler = new DeltaHandler(vertx, redisProvider, null, ruleProvider, loggingResourceManager, logAppenderRepository);
         deltaHandler.handle(request, router);
+        clearInvocations(redisAPI, router);
+        requestHeaders.add("if-none-match", "etag-xyz");
+
+        // the first call only compares the etag, a failure falls back to performing the delta update
+        when(redisProvider.redis(any()))
+                .thenReturn(Future.failedFuture("provider failed"))
+                .thenReturn(Future.succeededFuture(redisAPI));
+        deltaHandler.handle(request, router);
 
-        // incr should be called (delta update performed)
         verify(redisAPI, times(1)).incr(eq("delta:sequence"), any());
+        verify(redisAPI, times(1)).evalsha(any(), any());
+        verify(response, never()).setStatusCode(anyInt());
         verify(router, times(1)).route(request);
     }
 
     @Test
-    public void testEtagRedisGetFailureProceedsWithDeltaUpdate() {
-        // When Redis GET fails, fall back to performing the delta update
+    public void testDeltaUpdateScriptIsReloaded() {
+        Response exists = mock(Response.class);
+        when(exists.toLong()).thenReturn(1L);
+        Response existsResult = mock(Response.class);
+        when(existsResult.get(0)).thenReturn(exists);
         doAnswer(invocation -> {
             Handler<AsyncResult<Response>> handler = (Handler<AsyncResult<Response>>) invocation.getArguments()[1];
-            handler.handle(Future.failedFuture("get failed"));
+            handler.handle(Future.succeededFuture(existsResult));
             return null;
-        }).when(redisAPI).get(any(), any());
+        }).when(redisAPI).script(any(), any());
 
-        requestHeaders.add("if-none-match", "etag-xyz");
+        Response updated = mock(Response.class);
+        when(updated.toLong()).thenReturn(1L);
+        doAnswer(invocation -> {
+            Handler<AsyncResult<Response>> handler = (Handler<AsyncResult<Response>>) invocation.getArguments()[1];
+            handler.handle(Future.failedFuture("NOSCRIPT No matching script"));
+            return null;
+        }).doAnswer(invocation -> {
+            Handler<AsyncResult<Response>> handler = (Handler<AsyncResult<Response>>) invocation.getArguments()[1];
+            handler.handle(Future.succeededFuture(updated));
+            return null;
+        }).when(redisAPI).evalsha(any(), any());
 
         DeltaHandler deltaHandler = new DeltaHandler(vertx, redisProvider, null, ruleProvider, loggingResourceManager, logAppenderRepository);
         deltaHandler.handle(request, router);
 
-        // incr should still be called (proceed with update despite GET failure)
-        verify(redisAPI, times(1)).incr(eq("delta:sequence"), any());
+        verify(redisAPI, times(2)).evalsha(any(), any());
+        verify(router, times(1)).route(request);
     }
 
     @Test
-    public void testEtagRedisProviderFailureProceedsWithDeltaUpdate() {
-        // When redisProvider.redis() fails in the etag path, fall back to performing the delta update
-        // First call (for get) fails; second call (for incr) succeeds
-        when(redisProvider.redis(any()))
-                .thenReturn(Future.failedFuture("provider failed"))   // etag GET
-                .thenReturn(Future.succeededFuture(redisAPI));         // incr + set
-
-        requestHeaders.add("if-none-match", "etag-xyz");
+    public void testSequenceBlocks() {
+        Response block = mock(Response.class);
+        when(block.toLong()).thenReturn(20L);
+        doAnswer(invocation -> {
+            Handler<AsyncResult<Response>> handler = (Handler<AsyncResult<Response>>) invocation.getArguments()[2];
+            handler.handle(Future.succeededFuture(block));
+            return null;
+        }).when(redisAPI).incrby(eq("delta:sequence"), eq("10"), any());
 
         DeltaHandler deltaHandler = new DeltaHandler(vertx, redisProvider, null, ruleProvider, loggingResourceManager, logAppenderRepository);
+        deltaHandler.enableSequenceBlocks(10);
+        deltaHandler.handle(request, router);
+        deltaHandler.handle(request, router);
         deltaHandler.handle(request, router);
 
-        // incr should be called (proceeded with update despite provider failure)
-        verify(redisAPI, times(1)).incr(eq("delta:sequence"), any());
+        // a single block of update-ids (11 - 20) is reserved
+        verify(redisAPI, times(1)).incrby(eq("delta:sequence"), eq("10"), any());
+        verify(redisAPI, never()).incr(any(), any());
+        ArgumentCaptor<List<String>> argsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(redisAPI, times(3)).evalsha(argsCaptor.capture(), any());
+        List<String> updateIds = new ArrayList<>();
+        argsCaptor.getAllValues().forEach(args -> updateIds.add(args.get(5)));
+        assertEquals(List.of("11", "12", "13"), updateIds);
+        verify(router, times(3)).route(request);
     }
 
     @Test
@@ -646,7 +701,7 @@ public class DeltaHandlerTest {
         deltaHandler.handle(request, router);
 
         // No EX option should be added when value is negative
-        verify(redisAPI, times(1)).set(eq(Arrays.asList("delta:resources:a:b:c", "555")), any());
+        verifyDeltaUpdate("delta:resources:a:b:c", "", "555", "");
     }
 
     @Test
@@ -657,7 +712,7 @@ public class DeltaHandlerTest {
         deltaHandler.handle(request, router);
 
         // No EX option should be added when value is non-numeric
-        verify(redisAPI, times(1)).set(eq(Arrays.asList("delta:resources:a:b:c", "555")), any());
+        verifyDeltaUpdate("delta:resources:a:b:c", "", "555", "");
     }
 
     @Test
@@ -668,7 +723,7 @@ public class DeltaHandlerTest {
         deltaHandler.handle(request, router);
 
         // Zero is a valid non-negative value, so EX 0 is sent (Redis may reject it, but that's Redis's concern)
-        verify(redisAPI, times(1)).set(eq(Arrays.asList("delta:resources:a:b:c", "555", "EX", "0")), any());
+        verifyDeltaUpdate("delta:resources:a:b:c", "", "555", "0");
     }
 
     @Test
@@ -725,6 +780,88 @@ public class DeltaHandlerTest {
         verify(getResponse).end(contains("item1"));
     }
 
+    @Test
+    public void testCollectionIndexPUT() {
+        answerDeltaUpdate(2L, 1L);
+        requestHeaders.add("if-none-match", "etag-abc");
+        requestHeaders.add("x-expire-after", "100");
+
+        DeltaHandler deltaHandler = new DeltaHandler(vertx, redisProvider, null, ruleProvider, loggingResourceManager, logAppenderRepository);
+        deltaHandler.enableCollectionIndex();
+        long before = System.currentTimeMillis();
+        deltaHandler.handle(request, router);
+
+        ArgumentCaptor<List<String>> argsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(redisAPI, times(2)).evalsha(argsCaptor.capture(), any());
+        assertEquals("", argsCaptor.getAllValues().get(0).get(7));
+        List<String> args = argsCaptor.getAllValues().get(1);
+        // all keys of the collection index are in the same redis cluster slot
+        assertEquals(List.of("3", "delta:index:{delta:resources:a:b}", "delta:index:{delta:resources:a:b}:expiry",
+                "delta:index:{delta:resources:a:b}:etags", "c", "etag-abc", "555"), args.subList(1, 8));
+        long now = Long.parseLong(args.get(9));
+        assertEquals(now + 100000, Long.parseLong(args.get(8)));
+        assertTrue(now >= before);
+        verify(redisAPI, never()).set(any(), any());
+        verify(router, times(1)).route(request);
+    }
+
+    @Test
+    public void testCollectionIndexGET(TestContext context) {
+        // highest update-id of the collection followed by the updated resources
+        answerIndexRead("13", "res1", "12", "res2", "13");
+
+        DeltaHandler deltaHandler = new DeltaHandler(vertx, redisProvider, null, ruleProvider, loggingResourceManager, logAppenderRepository);
+        deltaHandler.enableCollectionIndex();
+        final DummyHttpServerResponse response = new DummyHttpServerResponse();
+        DeltaRequest request = new DeltaRequest(MultiMap.caseInsensitiveMultiMap()
+                .add("delta", "11")
+                .add("limit", "2"), response);
+        deltaHandler.handle(request, router);
+
+        ArgumentCaptor<List<String>> argsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(redisAPI, times(1)).evalsha(argsCaptor.capture(), any());
+        assertEquals(List.of("3", "delta:index:{delta:resources:gateleen:server:deltaResources}",
+                "delta:index:{delta:resources:gateleen:server:deltaResources}:expiry",
+                "delta:index:{delta:resources:gateleen:server:deltaResources}:etags", "11", "0", "2"),
+                argsCaptor.getValue().subList(1, 8));
+        verify(redisAPI, never()).mget(any(List.class));
+
+        context.assertEquals("13", response.headers().get("x-delta"));
+        context.assertEquals(new JsonObject().put("deltaResources", new JsonArray().add("res1").add("res2")),
+                new JsonObject(response.getResultBuffer()));
+    }
+
+    @Test
+    public void testCollectionIndexGETWithoutUpdates(TestContext context) {
+        answerIndexRead("9");
+
+        DeltaHandler deltaHandler = new DeltaHandler(vertx, redisProvider, null, ruleProvider, loggingResourceManager, logAppenderRepository);
+        deltaHandler.enableCollectionIndex();
+        final DummyHttpServerResponse response = new DummyHttpServerResponse();
+        deltaHandler.handle(new DeltaRequest(MultiMap.caseInsensitiveMultiMap().add("delta", "11"), response), router);
+
+        // the update-id of the request is returned, when there are no updated resources
+        context.assertEquals("11", response.headers().get("x-delta"));
+        context.assertEquals(new JsonObject().put("deltaResources", new JsonArray()), new JsonObject(response.getResultBuffer()));
+    }
+
+    @Test
+    public void testCollectionIndexGETFailureReturns500(TestContext context) {
+        doAnswer(invocation -> {
+            Handler<AsyncResult<Response>> handler = (Handler<AsyncResult<Response>>) invocation.getArguments()[1];
+            handler.handle(Future.failedFuture("evalsha failed"));
+            return null;
+        }).when(redisAPI).evalsha(any(), any());
+
+        DeltaHandler deltaHandler = new DeltaHandler(vertx, redisProvider, null, ruleProvider, loggingResourceManager, logAppenderRepository);
+        deltaHandler.enableCollectionIndex();
+        final DummyHttpServerResponse response = new DummyHttpServerResponse();
+        deltaHandler.handle(new DeltaRequest(MultiMap.caseInsensitiveMultiMap().add("delta", "11"), response), router);
+
+        context.assertEquals(StatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), response.getStatusCode());
+        context.assertEquals("error reading delta information", response.getResultBuffer());
+    }
+
     // -------------------------------------------------------------------------
     // Helper methods
     // -------------------------------------------------------------------------
@@ -756,6 +893,11 @@ public class DeltaHandlerTest {
             return "/gateleen/server/deltaResources";
         }
 
+        @Override
+        public String path() {
+            return "/gateleen/server/deltaResources/";
+        }
+
         @Override
         public MultiMap params() {
             return params;
@@ -771,4 +913,43 @@ public class DeltaHandlerTest {
             return MultiMap.caseInsensitiveMultiMap();
         }
     }
+
+    private void answerDeltaUpdate(long... results) {
+        List<Response> responses = new ArrayList<>();
+        for (long result : results) {
+            Response response = mock(Response.class);
+            when(response.toLong()).thenReturn(result);
+            responses.add(response);
+        }
+        Stubber stubber = null;
+        for (Response response : responses) {
+            Answer<Void> answer = invocation -> {
+                Handler<AsyncResult<Response>> handler = (Handler<AsyncResult<Response>>) invocation.getArguments()[1];
+                handler.handle(Future.succeededFuture(response));
+                return null;
+            };
+            stubber = stubber == null ? doAnswer(answer) : stubber.doAnswer(answer);
+        }
+        stubber.when(redisAPI).evalsha(any(), any());
+    }
+
+    private void answerIndexRead(String... values) {
+        MultiType reply = MultiType.create(values.length, false);
+        for (String value : values) {
+            reply.add(BulkType.create(Buffer.buffer(value), false));
+        }
+        doAnswer(invocation -> {
+            Handler<AsyncResult<Response>> handler = (Handler<AsyncResult<Response>>) invocation.getArguments()[1];
+            handler.handle(Future.succeededFuture(reply));
+            return null;
+        }).when(redisAPI).evalsha(any(), any());
+    }
+
+    private void verifyDeltaUpdate(String resourceKey, String requestEtag, String updateId, String expireAfter) {
+        ArgumentCaptor<List<String>> argsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(redisAPI, times(1)).evalsha(argsCaptor.capture(), any());
+        // the etag key has the resource key as hash tag, so both keys are in the same redis cluster slot
+        assertEquals(List.of("2", "delta:etags:{" + resourceKey + "}", resourceKey, requestEtag, updateId, expireAfter),
+                argsCaptor.getValue().subList(1, 7));
+    }
 }
@@ -0,0 +1,101 @@
+package org.swisspush.gateleen.delta.lua;
+
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.swisspush.gateleen.testhelper.AbstractLuaScriptTest;
+
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for the {@link DeltaLuaScripts#UPDATE_INDEX} and {@link DeltaLuaScripts#READ_INDEX} lua scripts.
+ */
+@RunWith(VertxUnitRunner.class)
+public class DeltaIndexLuaScriptTests extends AbstractLuaScriptTest {
+
+    private static final String INDEX_KEY = "delta:index:{delta:resources:a:b}";
+    private static final List<String> KEYS = List.of(INDEX_KEY, INDEX_KEY + ":expiry", INDEX_KEY + ":etags");
+    private static final long NOW = 1000000L;
+
+    @Test
+    public void testReadUpdatedResources() {
+        assertThat(evalScriptUpdateIndex("res1", "", "11", "", NOW), equalTo(1L));
+        assertThat(evalScriptUpdateIndex("res2", "", "12", "", NOW), equalTo(1L));
+        assertThat(evalScriptUpdateIndex("res3", "", "13", "", NOW), equalTo(1L));
+        assertThat(evalScriptUpdateIndex("res1", "", "14", "", NOW), equalTo(1L));
+
+        assertThat(evalScriptReadIndex(12, 0, -1, NOW), equalTo(List.of("14", "res3", "13", "res1", "14")));
+        assertThat(evalScriptReadIndex(0, 0, 2, NOW), equalTo(List.of("14", "res2", "12", "res3", "13")));
+        assertThat(evalScriptReadIndex(0, 1, 1, NOW), equalTo(List.of("14", "res3", "13")));
+        assertThat(evalScriptReadIndex(14, 0, -1, NOW), equalTo(List.of("14")));
+
+        // the highest update-id only
+        assertThat(evalScriptReadIndex(0, 0, 0, NOW), equalTo(List.of("14")));
+    }
+
+    @Test
+    public void testReadEmptyIndex() {
+        assertThat(evalScriptReadIndex(0, 0, -1, NOW), equalTo(List.of(0L)));
+    }
+
+    @Test
+    public void testMatchingEtagSkipsUpdate() {
+        assertThat(evalScriptUpdateIndex("res1", "etag-1", "11", "", NOW), equalTo(1L));
+        assertThat(evalScriptUpdateIndex("res1", "etag-1", "12", "", NOW), equalTo(0L));
+        assertThat(evalScriptUpdateIndex("res1", "etag-2", "13", "", NOW), equalTo(1L));
+
+        assertThat(jedis.zscore(INDEX_KEY, "res1"), equalTo(13.0));
+        assertThat(jedis.hget(INDEX_KEY + ":etags", "res1"), equalTo("etag-2"));
+    }
+
+    @Test
+    public void testEtagIsComparedOnlyWithoutUpdateId() {
+        assertThat(evalScriptUpdateIndex("res1", "etag-1", "11", "", NOW), equalTo(1L));
+        assertThat(evalScriptUpdateIndex("res1", "etag-1", "", "", NOW), equalTo(0L));
+        assertThat(evalScriptUpdateIndex("res1", "etag-2", "", "", NOW), equalTo(2L));
+
+        // nothing is stored until the update-id is provided
+        assertThat(jedis.zscore(INDEX_KEY, "res1"), equalTo(11.0));
+        assertThat(jedis.hget(INDEX_KEY + ":etags", "res1"), equalTo("etag-1"));
+    }
+
+    @Test
+    public void testExpiredResourcesAreRemoved() {
+        assertThat(evalScriptUpdateIndex("res1", "etag-1", "11", String.valueOf(NOW + 1000), NOW), equalTo(1L));
+        assertThat(evalScriptUpdateIndex("res2", "", "12", String.valueOf(NOW + 5000), NOW), equalTo(1L));
+
+        assertThat(evalScriptReadIndex(0, 0, -1, NOW + 2000), equalTo(List.of("12", "res2", "12")));
+        assertThat(jedis.zscore(INDEX_KEY, "res1") == null, is(true));
+        assertThat(jedis.hexists(INDEX_KEY + ":etags", "res1"), is(false));
+        assertThat(jedis.zscore(INDEX_KEY + ":expiry", "res1") == null, is(true));
+    }
+
+    @Test
+    public void testIndexExpiresWithLastResource() {
+        long expireAt = System.currentTimeMillis() + 100000;
+        assertThat(evalScriptUpdateIndex("res1", "etag-1", "11", String.valueOf(expireAt), NOW), equalTo(1L));
+        assertThat(jedis.pttl(INDEX_KEY) > 0, is(true));
+        assertThat(jedis.pttl(INDEX_KEY + ":expiry") > 0, is(true));
+        assertThat(jedis.pttl(INDEX_KEY + ":etags") > 0, is(true));
+
+        // a resource without expiry keeps the index
+        assertThat(evalScriptUpdateIndex("res2", "", "12", "", NOW), equalTo(1L));
+        assertThat(jedis.pttl(INDEX_KEY), equalTo(-1L));
+        assertThat(jedis.pttl(INDEX_KEY + ":expiry"), equalTo(-1L));
+    }
+
+    private Object evalScriptUpdateIndex(String resourceName, String requestEtag, String updateId, String expireAt, long now) {
+        String script = readScript(DeltaLuaScripts.UPDATE_INDEX.getFilename());
+        return jedis.eval(script, KEYS, List.of(resourceName, requestEtag, updateId, expireAt, String.valueOf(now)));
+    }
+
+    private Object evalScriptReadIndex(long updateId, int offset, int count, long now) {
+        String script = readScript(DeltaLuaScripts.READ_INDEX.getFilename());
+        return jedis.eval(script, KEYS, List.of(String.valueOf(updateId), String.valueOf(offset), String.valueOf(count),
+                String.valueOf(now)));
+    }
+}
@@ -0,0 +1,77 @@
+package org.swisspush.gateleen.delta.lua;
+
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.swisspush.gateleen.testhelper.AbstractLuaScriptTest;
+
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for the {@link DeltaLuaScripts#UPDATE_DELTA} lua script.
+ */
+@RunWith(VertxUnitRunner.class)
+public class DeltaUpdateLuaScriptTests extends AbstractLuaScriptTest {
+
+    private static final String RESOURCE_KEY = "delta:resources:a:b:c";
+    private static final String ETAG_KEY = "delta:etags:{" + RESOURCE_KEY + "}";
+
+    @Test
+    public void testUpdateWithoutEtag() {
+        assertThat(evalScriptUpdateDelta("", "1", ""), equalTo(1L));
+
+        assertThat(jedis.get(RESOURCE_KEY), equalTo("1"));
+        assertThat(jedis.exists(ETAG_KEY), is(false));
+        assertThat(jedis.ttl(RESOURCE_KEY), equalTo(-1L));
+    }
+
+    @Test
+    public void testUpdateWithNewEtag() {
+        assertThat(evalScriptUpdateDelta("etag-1", "1", ""), equalTo(1L));
+        assertThat(evalScriptUpdateDelta("etag-2", "2", ""), equalTo(1L));
+
+        assertThat(jedis.get(RESOURCE_KEY), equalTo("2"));
+        assertThat(jedis.get(ETAG_KEY), equalTo("etag-2"));
+    }
+
+    @Test
+    public void testMatchingEtagSkipsUpdate() {
+        assertThat(evalScriptUpdateDelta("etag-1", "1", ""), equalTo(1L));
+        assertThat(evalScriptUpdateDelta("etag-1", "2", ""), equalTo(0L));
+
+        assertThat(jedis.get(RESOURCE_KEY), equalTo("1"));
+        assertThat(jedis.get(ETAG_KEY), equalTo("etag-1"));
+    }
+
+    @Test
+    public void testEtagIsComparedOnlyWithoutUpdateId() {
+        assertThat(evalScriptUpdateDelta("etag-1", "1", ""), equalTo(1L));
+        assertThat(evalScriptUpdateDelta("etag-1", "", ""), equalTo(0L));
+        assertThat(evalScriptUpdateDelta("etag-2", "", ""), equalTo(2L));
+
+        // nothing is stored until the update-id is provided
+        assertThat(jedis.get(RESOURCE_KEY), equalTo("1"));
+        assertThat(jedis.get(ETAG_KEY), equalTo("etag-1"));
+        assertThat(evalScriptUpdateDelta("etag-2", "2", ""), equalTo(1L));
+        assertThat(jedis.get(RESOURCE_KEY), equalTo("2"));
+        assertThat(jedis.get(ETAG_KEY), equalTo("etag-2"));
+    }
+
+    @Test
+    public void testUpdateWithExpiry() {
+        assertThat(evalScriptUpdateDelta("etag-1", "1", "100"), equalTo(1L));
+
+        assertThat(jedis.get(RESOURCE_KEY), equalTo("1"));
+        assertThat(jedis.ttl(RESOURCE_KEY) > 0, is(true));
+        assertThat(jedis.ttl(ETAG_KEY) > 0, is(true));
+    }
+
+    private Object evalScriptUpdateDelta(String requestEtag, String updateId, String expireAfter) {
+        String script = readScript(DeltaLuaScripts.UPDATE_DELTA.getFilename());
+        return jedis.eval(script, List.of(ETAG_KEY, RESOURCE_KEY), List.of(requestEtag, updateId, expireAfter));
+    }
+}
@@ -90,14 +90,28 @@ public class ExpansionHandler implements RuleChangesObserver {
 
     private static final String EXPAND_REQUEST_METRIC = "gateleen.expand.requests";
     private static final String STORAGE_EXPAND_REQUEST_METRIC = "gateleen.storage.expand.requests";
+    private static final String SUBRESOURCE_CACHE_HIT_METRIC = "gateleen.expand.subresource.cache.hits";
     private static final String LEVEL = "level";
 
     public static final String MAX_EXPANSION_LEVEL_SOFT_PROPERTY = "max.expansion.level.soft";
     public static final String MAX_EXPANSION_LEVEL_HARD_PROPERTY = "max.expansion.level.hard";
     public static final String MAX_SUBREQUEST_PROPERTY = "max.expansion.subrequests";
     private static final int MAX_SUBREQUEST_COUNT_DEFAULT = 20000;
+    public static final String STREAMING_PROPERTY = "expansion.streaming";
+    public static final String STREAMING_REORDER_BUFFER_PROPERTY = "expansion.streaming.reorder.buffer";
+    private static final int STREAMING_REORDER_BUFFER_DEFAULT = 16;
+    public static final String MAX_CONCURRENT_SUBREQUEST_PROPERTY = "max.expansion.subrequests.concurrent";
+    private static final int MAX_CONCURRENT_SUBREQUEST_DEFAULT = 50;
+    public static final String MAX_CONCURRENT_SUBREQUEST_GLOBAL_PROPERTY = "max.expansion.subrequests.concurrent.global";
+    private static final int MAX_CONCURRENT_SUBREQUEST_GLOBAL_DEFAULT = 500;
+    public static final String STORAGE_EXPAND_BATCH_SIZE_PROPERTY = "expansion.storageexpand.batch.size";
+    private static final int STORAGE_EXPAND_BATCH_SIZE_DEFAULT = 1000;
+    public static final String SUBRESOURCE_CACHE_SIZE_PROPERTY = "expansion.subresource.cache.size";
+    public static final String SUBRESOURCE_CACHE_MAX_BYTES_PROPERTY = "expansion.subresource.cache.maxbytes";
+    private static final int SUBRESOURCE_CACHE_MAX_BYTES_DEFAULT = 64 * 1024 * 1024;
 
     private static final String ETAG_HEADER = "Etag";
+    private static final String IF_NONE_MATCH_HEADER = "if-none-match";
     private static final String SELF_REQUEST_HEADER = "x-self-request";
 
     private static final Handler<Buffer> DEV_NULL = buf -> {};
@@ -107,6 +121,16 @@ public class ExpansionHandler implements RuleChangesObserver {
     private int maxExpansionLevelSoft = Integer.MAX_VALUE;
     private int maxExpansionLevelHard = Integer.MAX_VALUE;
 
+    private boolean streamingEnabled;
+    private int streamingReorderBufferSize = STREAMING_REORDER_BUFFER_DEFAULT;
+    private int maxConcurrentSubRequestCount = MAX_CONCURRENT_SUBREQUEST_DEFAULT;
+    private int maxConcurrentSubRequestCountGlobal = MAX_CONCURRENT_SUBREQUEST_GLOBAL_DEFAULT;
+    private int storageExpandBatchSize = STORAGE_EXPAND_BATCH_SIZE_DEFAULT;
+    private int subResourceCacheSize;
+    private int subResourceCacheMaxBytes = SUBRESOURCE_CACHE_MAX_BYTES_DEFAULT;
+    private SubResourceCache subResourceCache;
+    private SubRequestScheduler subRequestScheduler;
+
     private HttpClient httpClient;
     private Map<String, Object> properties;
     private String serverRoot;
@@ -128,6 +152,7 @@ public class ExpansionHandler implements RuleChangesObserver {
 
     private final Map<Integer, Counter> counterMap = new HashMap<>();
     private Counter storageExpandCounter;
+    private Counter subResourceCacheHitCounter;
 
     /**
      * Creates a new instance of the ExpansionHandler.
@@ -182,8 +207,37 @@ public class ExpansionHandler implements RuleChangesObserver {
         return maxSubRequestCount;
     }
 
+    public boolean isStreamingEnabled() {
+        return streamingEnabled;
+    }
+
+    public int getStreamingReorderBufferSize() {
+        return streamingReorderBufferSize;
+    }
+
+    public int getMaxConcurrentSubRequestCount() {
+        return maxConcurrentSubRequestCount;
+    }
+
+    public int getMaxConcurrentSubRequestCountGlobal() {
+        return maxConcurrentSubRequestCountGlobal;
+    }
+
+    public int getStorageExpandBatchSize() {
+        return storageExpandBatchSize;
+    }
+
+    public int getSubResourceCacheSize() {
+        return subResourceCacheSize;
+    }
+
+    public int getSubResourceCacheMaxBytes() {
+        return subResourceCacheMaxBytes;
+    }
+
     public void setMeterRegistry(MeterRegistry meterRegistry) {
         counterMap.clear();
+        subResourceCacheHitCounter = null;
         if(meterRegistry != null) {
             counterMap.put(0, Counter.builder(EXPAND_REQUEST_METRIC).tag(LEVEL, "0").register(meterRegistry));
             counterMap.put(1, Counter.builder(EXPAND_REQUEST_METRIC).tag(LEVEL, "1").register(meterRegistry));
@@ -192,7 +246,9 @@ public class ExpansionHandler implements RuleChangesObserver {
             counterMap.put(4, Counter.builder(EXPAND_REQUEST_METRIC).tag(LEVEL, "4").register(meterRegistry));
 
             storageExpandCounter = Counter.builder(STORAGE_EXPAND_REQUEST_METRIC).register(meterRegistry);
+            subResourceCacheHitCounter = Counter.builder(SUBRESOURCE_CACHE_HIT_METRIC).register(meterRegistry);
         }
+        subRequestScheduler.setMeterRegistry(meterRegistry);
     }
 
     private void incrementExpandReqCount(int level) {
@@ -273,6 +329,45 @@ public class ExpansionHandler implements RuleChangesObserver {
             log.info("Setting maximum expansion level soft hard to a default of {}, since no property {} is defined!",
                     maxExpansionLevelHard, MAX_EXPANSION_LEVEL_HARD_PROPERTY);
         }
+
+        if (properties != null && properties.containsKey(STREAMING_PROPERTY)) {
+            streamingEnabled = Boolean.parseBoolean((String) properties.get(STREAMING_PROPERTY));
+            log.info("Setting streaming of expansion responses to {} from properties", streamingEnabled);
+        }
+
+        streamingReorderBufferSize = positiveIntProperty(STREAMING_REORDER_BUFFER_PROPERTY, STREAMING_REORDER_BUFFER_DEFAULT);
+        maxConcurrentSubRequestCount = positiveIntProperty(MAX_CONCURRENT_SUBREQUEST_PROPERTY, MAX_CONCURRENT_SUBREQUEST_DEFAULT);
+        maxConcurrentSubRequestCountGlobal = positiveIntProperty(MAX_CONCURRENT_SUBREQUEST_GLOBAL_PROPERTY, MAX_CONCURRENT_SUBREQUEST_GLOBAL_DEFAULT);
+        storageExpandBatchSize = positiveIntProperty(STORAGE_EXPAND_BATCH_SIZE_PROPERTY, STORAGE_EXPAND_BATCH_SIZE_DEFAULT);
+        subResourceCacheSize = positiveIntProperty(SUBRESOURCE_CACHE_SIZE_PROPERTY, 0);
+        subResourceCacheMaxBytes = positiveIntProperty(SUBRESOURCE_CACHE_MAX_BYTES_PROPERTY, SUBRESOURCE_CACHE_MAX_BYTES_DEFAULT);
+        subResourceCache = subResourceCacheSize > 0 ? new SubResourceCache(subResourceCacheSize, subResourceCacheMaxBytes) : null;
+        subRequestScheduler = new SubRequestScheduler(maxConcurrentSubRequestCount, maxConcurrentSubRequestCountGlobal);
+    }
+
+    /**
+     * Reads a positive number from the properties.
+     *
+     * @param property the name of the property
+     * @param defaultValue the value used when the property is not defined or not a positive number
+     * @return the configured value or the default value
+     */
+    private int positiveIntProperty(String property, int defaultValue) {
+        if (properties == null || !properties.containsKey(property)) {
+            return defaultValue;
+        }
+        try {
+            int value = Integer.parseInt((String) properties.get(property));
+            if (value < 1) {
+                throw new NumberFormatException("value must be positive");
+            }
+            log.info("Setting {} to {} from properties", property, value);
+            return value;
+        } catch (Exception e) {
+            log.warn("Setting {} to a default of {}, since defined value in properties is not a positive number",
+                    property, defaultValue);
+            return defaultValue;
+        }
     }
 
     /**
@@ -373,11 +468,6 @@ public class ExpansionHandler implements RuleChangesObserver {
             expandLevel = maxExpansionLevelSoft;
         }
 
-        if (isStorageExpand(req.uri()) && expandLevel > 1) {
-            respondBadRequest(req, "Expand values higher than 1 are not supported for storageExpand requests");
-            return;
-        }
-
         // store the parameters for later use
         Set<String> originalParams = null;
         if (req.params() != null) {
@@ -425,9 +515,13 @@ public class ExpansionHandler implements RuleChangesObserver {
                      * an exception is thrown and handled
                      * by the handler right away.
                      */
-                    makeResourceSubRequest(targetUri, req, finalExpandLevel, new AtomicInteger(),
-                            recursiveHandlerType,
-                            RecursiveHandlerFactory.createRootHandler(recursiveHandlerType, req, serverRoot, data, finalOriginalParams), true);
+                    if (recursiveHandlerType == RecursiveHandlerFactory.RecursiveHandlerTypes.EXPANSION
+                            && streamExpansion(req, targetUri, finalExpandLevel, data, finalOriginalParams)) {
+                        return;
+                    }
+                    SubRequestScheduler.Expansion expansion = subRequestScheduler.newExpansion();
+                    makeResourceSubRequest(targetUri, req, finalExpandLevel, new AtomicInteger(), expansion, recursiveHandlerType,
+                            RecursiveHandlerFactory.createRootHandler(recursiveHandlerType, req, serverRoot, data, finalOriginalParams, expansion), true);
                 });
                 cRes.exceptionHandler(ExpansionDeltaUtil.createResponseExceptionHandler(req, targetUri, ExpansionHandler.class));
             };
@@ -529,18 +623,79 @@ public class ExpansionHandler implements RuleChangesObserver {
         }
     }
 
-    private void makeStorageExpandRequest(final String targetUri, final List subResourceNames, final HttpServerRequest req, final DeltaHandler<ResourceNode> handler) {
+    /**
+     * Streams the expansion of the collection in the given data, when streaming is enabled and the request can be
+     * streamed. The expansion is not streamed, when the response needs the aggregated eTag (conditional requests) or
+     * the x-delta header (delta requests), as these headers are only known after all sub resources completed.
+     *
+     * @param req                  - the original request
+     * @param targetUri            - uri of the collection
+     * @param expandLevel          - the expand level of the request
+     * @param data                 - the data of the collection
+     * @param finalOriginalParams  - the parameters of the original request
+     * @return true when the expansion is streamed, false when the expansion has to be handled as usual
+     */
+    private boolean streamExpansion(final HttpServerRequest req, final String targetUri, final int expandLevel, final Buffer data, final Set<String> finalOriginalParams) {
+        if (!streamingEnabled || expandLevel == MAX_RECURSION_LEVEL || isStorageExpand(targetUri)
+                || req.headers().contains(IF_NONE_MATCH_HEADER)
+                || (finalOriginalParams != null && finalOriginalParams.contains("delta"))) {
+            return false;
+        }
+
+        CollectionResourceContainer collection;
+        try {
+            collection = ExpansionDeltaUtil.verifyCollectionResponse(req, data, finalOriginalParams);
+        } catch (ResourceCollectionException e) {
+            // the error is responded by the usual expansion
+            return false;
+        }
+        if (collection.getResourceNames().isEmpty()) {
+            return false;
+        }
+
+        RequestLoggerFactory.getLogger(ExpansionHandler.class, req).debug("streaming expansion of {}", targetUri);
+
+        // the request of the collection counts as the first sub request
+        final AtomicInteger subRequestCounter = new AtomicInteger(1);
+        final SubRequestScheduler.Expansion expansion = subRequestScheduler.newExpansion();
+        final String collectionUri = removeParameters(targetUri);
+        new StreamingExpansionHandler(req, collection.getCollectionName(), collection.getResourceNames(), streamingReorderBufferSize,
+                (childResourceName, childHandler) -> makeChildResourceSubRequest(collectionUri, childResourceName, req,
+                        expandLevel - DECREMENT_BY_ONE, subRequestCounter, expansion, RecursiveHandlerFactory.RecursiveHandlerTypes.EXPANSION, childHandler)
+        ).start();
+        return true;
+    }
+
+    /**
+     * Performs a single storageExpand request for the given sub resources of a collection.
+     *
+     * @param targetUri         - uri of the collection without parameters
+     * @param subResourceNames  - the sub resources to expand
+     * @param req               - the original request
+     * @param subRequestCounter - the request counter
+     * @param expansion         - schedules the sub requests of the expansion
+     * @param handler           - gets the response body or the error
+     */
+    private void makeStorageExpandRequest(final String targetUri, final List<String> subResourceNames, final HttpServerRequest req, final AtomicInteger subRequestCounter, final SubRequestScheduler.Expansion expansion, final Handler<ResourceNode> handler) {
         Logger log = RequestLoggerFactory.getLogger(ExpansionHandler.class, req);
         HttpMethod reqMethod = HttpMethod.POST;
         String reqUri = targetUri + "?storageExpand=true";
 
+        if (subRequestCounter.get() > maxSubRequestCount) {
+            handler.handle(new ResourceNode(SERIOUS_EXCEPTION, new ResourceCollectionException("Number of allowed sub requests exceeded. Limit is " + maxSubRequestCount + " requests", StatusCode.BAD_REQUEST)));
+            return;
+        }
+        subRequestCounter.incrementAndGet();
+
         if(storageExpandCounter != null) {
             storageExpandCounter.increment();
         }
 
-        httpClient.request(reqMethod, reqUri).onComplete(asyncResult -> {
+        expansion.submit(release -> httpClient.request(reqMethod, reqUri).onComplete(asyncResult -> {
             if (asyncResult.failed()) {
                 log.warn("Failed request to {}", reqUri, asyncResult.cause());
+                release.run();
+                handler.handle(new ResourceNode(SERIOUS_EXCEPTION, new ResourceCollectionException(asyncResult.cause().getMessage(), StatusCode.INTERNAL_SERVER_ERROR)));
                 return;
             }
             HttpClientRequest cReq = asyncResult.result();
@@ -561,23 +716,33 @@ public class ExpansionHandler implements RuleChangesObserver {
                 if (event.failed()) {
                     Throwable ex = event.cause();
                     log.debug("{} {}", reqMethod, reqUri, ex);
+                    release.run();
                     var exWrappr = new ResourceCollectionException(ex.getMessage(), INTERNAL_SERVER_ERROR);
                     handler.handle(new ResourceNode(SERIOUS_EXCEPTION, exWrappr));
+                    return;
                 }
                 HttpClientResponse cRes = event.result();
+                cRes.exceptionHandler(exception -> {
+                    log.warn("Failed response of {}: {}", reqUri, exception.getMessage());
+                    release.run();
+                });
                 if (StatusCode.NOT_FOUND.getStatusCode() == cRes.statusCode()) {
                     log.debug("NotFound: {}", targetUri);
+                    release.run();
                     cRes.handler(DEV_NULL);
                     handler.handle(new ResourceNode(SERIOUS_EXCEPTION, new ResourceCollectionException(cRes.statusMessage(), StatusCode.NOT_FOUND)));
                     return;
                 }
                 if (StatusCode.METHOD_NOT_ALLOWED.getStatusCode() == cRes.statusCode()) {
                     log.error("storageExpand not allowed for: {}", targetUri);
+                    release.run();
                     cRes.handler(DEV_NULL);
                     handler.handle(new ResourceNode(SERIOUS_EXCEPTION, new ResourceCollectionException(cRes.statusMessage(), StatusCode.METHOD_NOT_ALLOWED)));
                     return;
                 }
                 cRes.bodyHandler(data -> {
+                    // the handling of the data can submit further storageExpand requests
+                    release.run();
                     if (StatusCode.PAYLOAD_TOO_LARGE.getStatusCode() == cRes.statusCode()) {
                         String fullResponseBody = data.toString();
                         log.info("{}: {}: {}", PAYLOAD_TOO_LARGE, targetUri, fullResponseBody);
@@ -592,7 +757,7 @@ public class ExpansionHandler implements RuleChangesObserver {
                     }
                 });
             });
-        });
+        }));
     }
 
     /**
@@ -602,11 +767,12 @@ public class ExpansionHandler implements RuleChangesObserver {
      * @param req                  - the original request
      * @param recursionLevel       - the actual depth of the recursion
      * @param subRequestCounter    - the request counter
+     * @param expansion            - schedules the sub requests of the expansion
      * @param recursionHandlerType - the type of the desired handler
      * @param handler              - the parent handler
      * @param collection           - indicates if the just passed targetUri belongs to a collection or a resource
      */
-    private void makeResourceSubRequest(final String targetUri, final HttpServerRequest req, final int recursionLevel, final AtomicInteger subRequestCounter, final RecursiveHandlerFactory.RecursiveHandlerTypes recursionHandlerType, final DeltaHandler<ResourceNode> handler, final boolean collection) {
+    private void makeResourceSubRequest(final String targetUri, final HttpServerRequest req, final int recursionLevel, final AtomicInteger subRequestCounter, final SubRequestScheduler.Expansion expansion, final RecursiveHandlerFactory.RecursiveHandlerTypes recursionHandlerType, final DeltaHandler<ResourceNode> handler, final boolean collection) {
 
         Logger log = RequestLoggerFactory.getLogger(ExpansionHandler.class, req);
 
@@ -624,10 +790,11 @@ public class ExpansionHandler implements RuleChangesObserver {
 
         subRequestCounter.incrementAndGet();
 
-        // request target uri
-        httpClient.request(HttpMethod.GET, targetUri).onComplete(asyncResult -> {
+        // request target uri, as soon as the scheduler has a free slot
+        expansion.submit(release -> httpClient.request(HttpMethod.GET, targetUri).onComplete(asyncResult -> {
             if (asyncResult.failed()) {
                 log.warn("Failed request to {}: {}", targetUri, asyncResult.cause());
+                release.run();
                 return;
             }
             HttpClientRequest cReq = asyncResult.result();
@@ -642,13 +809,33 @@ public class ExpansionHandler implements RuleChangesObserver {
             cReq.headers().set(SELF_REQUEST_HEADER, "true");
             cReq.setChunked(true);
 
-            cReq.exceptionHandler(ExpansionDeltaUtil.createRequestExceptionHandler(req, targetUri, ExpansionHandler.class));
+            // revalidate a cached body of the resource instead of transferring it again
+            final SubResourceCache.Entry cachedEntry = (subResourceCache != null && !collection) ? subResourceCache.get(targetUri) : null;
+            if (cachedEntry != null) {
+                cReq.headers().set(IF_NONE_MATCH_HEADER, cachedEntry.getETag());
+            }
+
+            Handler<Throwable> requestExceptionHandler = ExpansionDeltaUtil.createRequestExceptionHandler(req, targetUri, ExpansionHandler.class);
+            cReq.exceptionHandler(exception -> {
+                release.run();
+                requestExceptionHandler.handle(exception);
+            });
 
             if (log.isTraceEnabled()) {
                 log.trace("end the cReq for the subRequest");
             }
             cReq.send(event -> {
+                if (event.failed()) {
+                    log.warn("Failed request to {}: {}", targetUri, event.cause());
+                    release.run();
+                    handler.handle(new ResourceNode(SERIOUS_EXCEPTION, new ResourceCollectionException(event.cause().getMessage(), StatusCode.INTERNAL_SERVER_ERROR)));
+                    return;
+                }
                 HttpClientResponse cRes = event.result();
+                cRes.exceptionHandler(exception -> {
+                    log.warn("Failed response of {}: {}", targetUri, exception.getMessage());
+                    release.run();
+                });
 
                 if (log.isTraceEnabled()) {
                     log.trace(" x-delta for {} is {}", targetUri, cRes.headers().get("x-delta"));
@@ -657,12 +844,26 @@ public class ExpansionHandler implements RuleChangesObserver {
                 handler.storeXDeltaResponseHeader(cRes.headers().get("x-delta"));
 
                 cRes.bodyHandler(data -> {
+                    // the handling of the data can submit further sub requests
+                    release.run();
+
                     /*
                      * extract eTag from response, it can be used for the collection, as well as the resource
                      */
                     String eTag = geteTag(cRes.headers());
 
-                    if (StatusCode.NOT_FOUND.getStatusCode() == cRes.statusCode()) {
+                    if (cachedEntry != null && StatusCode.NOT_MODIFIED.getStatusCode() != cRes.statusCode()) {
+                        // the cached body is outdated, a changed body with eTag is cached again below
+                        subResourceCache.remove(removeParameters(targetUri));
+                    }
+
+                    if (cachedEntry != null && StatusCode.NOT_MODIFIED.getStatusCode() == cRes.statusCode()) {
+                        log.debug("cached resource not modified: {}", targetUri);
+                        if (subResourceCacheHitCounter != null) {
+                            subResourceCacheHitCounter.increment();
+                        }
+                        handleCachedResource(removeParameters(targetUri), handler, cachedEntry, recursionHandlerType);
+                    } else if (StatusCode.NOT_FOUND.getStatusCode() == cRes.statusCode()) {
                         log.debug("requested resource could not be found: {}", targetUri);
                         handler.handle(new ResourceNode(SERIOUS_EXCEPTION, new ResourceCollectionException(cRes.statusMessage(), StatusCode.NOT_FOUND)));
                     } else if (StatusCode.INTERNAL_SERVER_ERROR.getStatusCode() == cRes.statusCode()) {
@@ -681,20 +882,22 @@ public class ExpansionHandler implements RuleChangesObserver {
                          */
                         if (collection) {
                             try {
-                                handleCollectionResource(removeParameters(targetUri), req, recursionLevel, subRequestCounter, recursionHandlerType, handler, data, eTag);
+                                handleCollectionResource(removeParameters(targetUri), req, recursionLevel, subRequestCounter, expansion, recursionHandlerType, handler, data, eTag);
                             } catch (ResourceCollectionException e) {
                                 if (log.isTraceEnabled()) {
                                     log.trace("handling collection failed with: {}", e.getMessage());
                                 }
                                 handleSimpleResource(removeParameters(targetUri), handler, data, eTag);
                             }
+                        } else if (subResourceCache != null) {
+                            cacheSimpleResource(removeParameters(targetUri), handler, cRes.statusCode(), data, eTag, recursionHandlerType);
                         } else {
                             handleSimpleResource(removeParameters(targetUri), handler, data, eTag);
                         }
                     }
                 });
             });
-        });
+        }));
     }
 
     /**
@@ -715,6 +918,38 @@ public class ExpansionHandler implements RuleChangesObserver {
         handler.handle(new ResourceNode(resourceName, data, eTag, targetUri));
     }
 
+    /**
+     * Caches the body of a simple resource when it has an eTag and passes it on.
+     *
+     * @param targetUri            - uri of the resource
+     * @param handler              - the parent handler
+     * @param statusCode           - the status code of the response
+     * @param data                 - the data from the response of the request
+     * @param eTag                 - eTag of the actual request
+     * @param recursionHandlerType - the type of the handler, which gets the resource
+     */
+    private void cacheSimpleResource(final String targetUri, final Handler<ResourceNode> handler, final int statusCode, final Buffer data, final String eTag, final RecursiveHandlerFactory.RecursiveHandlerTypes recursionHandlerType) {
+        if (StatusCode.OK.getStatusCode() != statusCode || eTag.isEmpty()) {
+            subResourceCache.remove(targetUri);
+            handleSimpleResource(targetUri, handler, data, eTag);
+            return;
+        }
+        handleCachedResource(targetUri, handler, subResourceCache.put(targetUri, eTag, data), recursionHandlerType);
+    }
+
+    /**
+     * Passes a cached body of a simple resource to the handler. The expansion handlers get the already parsed body.
+     *
+     * @param targetUri            - uri of the resource
+     * @param handler              - the parent handler
+     * @param entry                - the cached body
+     * @param recursionHandlerType - the type of the handler, which gets the resource
+     */
+    private void handleCachedResource(final String targetUri, final Handler<ResourceNode> handler, final SubResourceCache.Entry entry, final RecursiveHandlerFactory.RecursiveHandlerTypes recursionHandlerType) {
+        Object object = recursionHandlerType == RecursiveHandlerFactory.RecursiveHandlerTypes.EXPANSION ? entry.getParsedBody() : entry.getBody();
+        handler.handle(new ResourceNode(ExpansionDeltaUtil.extractCollectionFromPath(targetUri), object, entry.getETag(), targetUri));
+    }
+
     /**
      * Removes all parameters from the targetUri.
      *
@@ -751,13 +986,14 @@ public class ExpansionHandler implements RuleChangesObserver {
      * @param req                  - the original request
      * @param recursionLevel       - the actual depth of the recursion
      * @param subRequestCounter    - the request counter
+     * @param expansion            - schedules the sub requests of the expansion
      * @param recursionHandlerType - the typ of the desired handler
      * @param handler              - the parent handler
      * @param data                 - the data from the response of the request
      * @param eTag                 - eTag of the actual request
      * @throws ResourceCollectionException - thrown if the response does not belong to a collection
      */
-    private void handleCollectionResource(final String targetUri, final HttpServerRequest req, final int recursionLevel, final AtomicInteger subRequestCounter, final RecursiveHandlerFactory.RecursiveHandlerTypes recursionHandlerType, final DeltaHandler<ResourceNode> handler, final Buffer data, final String eTag) throws ResourceCollectionException {
+    private void handleCollectionResource(final String targetUri, final HttpServerRequest req, final int recursionLevel, final AtomicInteger subRequestCounter, final SubRequestScheduler.Expansion expansion, final RecursiveHandlerFactory.RecursiveHandlerTypes recursionHandlerType, final DeltaHandler<ResourceNode> handler, final Buffer data, final String eTag) throws ResourceCollectionException {
         CollectionResourceContainer collectionResourceContainer = ExpansionDeltaUtil.verifyCollectionResponse(targetUri, data, null);
         Logger log = RequestLoggerFactory.getLogger(ExpansionHandler.class, req);
         if (log.isTraceEnabled()) {
@@ -787,18 +1023,17 @@ public class ExpansionHandler implements RuleChangesObserver {
                 final DeltaHandler<ResourceNode> parentHandler = RecursiveHandlerFactory.createHandler(recursionHandlerType, subResourceNames, collectionResourceContainer.getCollectionName(), eTag, handler);
 
                 if (isStorageExpand(targetUri)) {
-                    makeStorageExpandRequest(targetUri, subResourceNames, req, handler);
+                    // all remaining levels are expanded by the storage
+                    new StorageExpansion(storageExpandBatchSize,
+                            (collectionUri, names, storageExpandHandler) -> makeStorageExpandRequest(collectionUri, names, req, subRequestCounter, expansion, storageExpandHandler),
+                            handler).start(targetUri, subResourceNames, recursionLevel);
                 } else {
                     for (String childResourceName : subResourceNames) {
                         if (log.isTraceEnabled()) {
                             log.trace("processing child resource: {}", childResourceName);
                         }
 
-                        // if the child is not a collection, we remove the parameter
-                        boolean collection = isCollection(childResourceName);
-
-                        final String collectionURI = ExpansionDeltaUtil.constructRequestUri(targetUri, req.params(), parameter_to_remove_after_initial_request, childResourceName, SlashHandling.END_WITHOUT_SLASH);
-                        makeResourceSubRequest((collection ? collectionURI : removeParameters(collectionURI)), req, recursionLevel - DECREMENT_BY_ONE, subRequestCounter, recursionHandlerType, parentHandler, collection);
+                        makeChildResourceSubRequest(targetUri, childResourceName, req, recursionLevel - DECREMENT_BY_ONE, subRequestCounter, expansion, recursionHandlerType, parentHandler);
                     }
                 }
             }
@@ -819,6 +1054,26 @@ public class ExpansionHandler implements RuleChangesObserver {
         }
     }
 
+    /**
+     * Performs the sub request for a child resource of a collection.
+     *
+     * @param targetUri            - uri of the collection without parameters
+     * @param childResourceName    - name of the child resource, ending with a slash for collections
+     * @param req                  - the original request
+     * @param recursionLevel       - the depth of the recursion for the child resource
+     * @param subRequestCounter    - the request counter
+     * @param expansion            - schedules the sub requests of the expansion
+     * @param recursionHandlerType - the typ of the desired handler
+     * @param handler              - the handler of the collection
+     */
+    private void makeChildResourceSubRequest(final String targetUri, final String childResourceName, final HttpServerRequest req, final int recursionLevel, final AtomicInteger subRequestCounter, final SubRequestScheduler.Expansion expansion, final RecursiveHandlerFactory.RecursiveHandlerTypes recursionHandlerType, final DeltaHandler<ResourceNode> handler) {
+        // if the child is not a collection, we remove the parameter
+        boolean collection = isCollection(childResourceName);
+
+        final String collectionURI = ExpansionDeltaUtil.constructRequestUri(targetUri, req.params(), parameter_to_remove_after_initial_request, childResourceName, SlashHandling.END_WITHOUT_SLASH);
+        makeResourceSubRequest((collection ? collectionURI : removeParameters(collectionURI)), req, recursionLevel, subRequestCounter, expansion, recursionHandlerType, handler, collection);
+    }
+
     /**
      * Returns true if the given name or path belongs
      * to a collection.
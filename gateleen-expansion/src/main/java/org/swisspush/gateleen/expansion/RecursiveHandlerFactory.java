@@ -73,15 +73,16 @@ public final class RecursiveHandlerFactory {
      * @param serverRoot serverRoot
      * @param data data
      * @param finalOriginalParams finalOriginalParams
+     * @param expansion the scheduler of the sub requests
      * @return Handler
      */
-    public static DeltaHandler<ResourceNode> createRootHandler(RecursiveHandlerTypes type, HttpServerRequest request, String serverRoot, Buffer data, Set<String> finalOriginalParams) {
+    public static DeltaHandler<ResourceNode> createRootHandler(RecursiveHandlerTypes type, HttpServerRequest request, String serverRoot, Buffer data, Set<String> finalOriginalParams, SubRequestScheduler.Expansion expansion) {
         switch (type) {
         case EXPANSION:
             return new RecursiveExpansionRootHandler(request, data, finalOriginalParams);
         case ZIP:
         case STORE:
-            return new RecursiveZipRootHandler(request, serverRoot, data, finalOriginalParams, type);
+            return new RecursiveZipRootHandler(request, serverRoot, data, finalOriginalParams, type, expansion);
         default:
             return null;
         }
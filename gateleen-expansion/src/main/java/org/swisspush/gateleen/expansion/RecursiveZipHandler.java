@@ -15,7 +15,7 @@ import java.util.concurrent.atomic.AtomicLong;
  * 
  * @author https://github.com/ljucam [Mario Ljuca]
  */
-public class RecursiveZipHandler implements DeltaHandler<ResourceNode> {
+public class RecursiveZipHandler implements DeltaHandler<ResourceNode>, ZipEntryHandler {
     private static final int PROCESS_DONE = 0;
     private static final String HANDLER_PATH = "<HANDLER>";
 
@@ -86,7 +86,7 @@ public class RecursiveZipHandler implements DeltaHandler<ResourceNode> {
                      * corresponding root handler.
                      */
                     node.setObject(((Buffer) node.getObject()).getBytes());
-                    nodes.add(node);
+                    handleZipEntry(node);
                 }
             }
         }
@@ -111,6 +111,21 @@ public class RecursiveZipHandler implements DeltaHandler<ResourceNode> {
         }
     }
 
+    /**
+     * Passes the resource to the root handler right away, when it is able to write it to the zip stream.
+     * Otherwise the resource is collected and passed when all resources of the collection are handled.
+     *
+     * @param node node
+     */
+    @Override
+    public void handleZipEntry(ResourceNode node) {
+        if (parentHandler instanceof ZipEntryHandler) {
+            ((ZipEntryHandler) parentHandler).handleZipEntry(node);
+        } else {
+            nodes.add(node);
+        }
+    }
+
     @Override
     public void storeXDeltaResponseHeader(String xDeltaResponseNumber) {
         if (log.isTraceEnabled()) {
@@ -7,19 +7,26 @@ import org.swisspush.gateleen.core.util.ResourceCollectionException;
 import org.swisspush.gateleen.core.util.ResponseStatusCodeLogUtil;
 import org.swisspush.gateleen.core.util.StatusCode;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 /**
  * Creates a root handler for the recursive ZIP GET.
+ * <p>
+ * The resources are written to the zip stream of the chunked response as soon as they arrive, so the zip is never
+ * held in memory. While the response cannot be written fast enough, no further sub requests are started. Requests
+ * with the <code>delta</code> parameter are written when all resources arrived, as the x-delta header is only known
+ * then.
  * 
  * @author https://github.com/ljucam [Mario Ljuca]
  */
-public class RecursiveZipRootHandler extends RecursiveRootHandlerBase {
+public class RecursiveZipRootHandler extends RecursiveRootHandlerBase implements ZipEntryHandler {
     private static final int DATA_BLOCK_SIZE = 2048;
+    private static final int CHUNK_SIZE = 64 * 1024;
     private static final String CONTENT_TYPE_HEADER = "Content-type";
     private static final String CONTENT_TYPE_ZIP = "application/octet-stream";
 
@@ -29,6 +36,12 @@ public class RecursiveZipRootHandler extends RecursiveRootHandlerBase {
     private final Buffer data;
     private final Set<String> finalOriginalParams;
     private final RecursiveHandlerFactory.RecursiveHandlerTypes zipType;
+    private final SubRequestScheduler.Expansion expansion;
+
+    private final List<ResourceNode> pendingEntries = new ArrayList<>();
+    private boolean streaming;
+    private ZipOutputStream zipOutputStream;
+    private boolean failed;
 
     /**
      * Creates an instance of the root handler for the
@@ -39,13 +52,58 @@ public class RecursiveZipRootHandler extends RecursiveRootHandlerBase {
      * @param data data
      * @param finalOriginalParams finalOriginalParams
      * @param zipType zipType
+     * @param expansion the scheduler of the sub requests, paused while the response is not drained and cancelled when
+     *                  the response is closed or reset (can be null)
      */
-    public RecursiveZipRootHandler(final HttpServerRequest req, String serverRoot, Buffer data, Set<String> finalOriginalParams, RecursiveHandlerFactory.RecursiveHandlerTypes zipType) {
+    public RecursiveZipRootHandler(final HttpServerRequest req, String serverRoot, Buffer data, Set<String> finalOriginalParams,
+                                   RecursiveHandlerFactory.RecursiveHandlerTypes zipType, SubRequestScheduler.Expansion expansion) {
         this.req = req;
         this.serverRoot = serverRoot;
         this.data = data;
         this.finalOriginalParams = finalOriginalParams;
         this.zipType = zipType;
+        this.expansion = expansion;
+        this.streaming = !finalOriginalParams.contains("delta");
+    }
+
+    /**
+     * Writes the resource to the zip stream, when the response can be streamed. Otherwise the resource is written
+     * when all resources arrived.
+     * <p>
+     * Zip streams are not thread safe, but all resources are handled on the event loop of the request.
+     *
+     * @param node node
+     */
+    @Override
+    public void handleZipEntry(ResourceNode node) {
+        if (failed) {
+            return;
+        }
+        if (zipOutputStream == null && streaming) {
+            try {
+                ExpansionDeltaUtil.verifyCollectionResponse(req, data, finalOriginalParams);
+                startZipStream();
+            } catch (ResourceCollectionException exception) {
+                // the error is responded when all resources arrived
+                streaming = false;
+            }
+        }
+        if (zipOutputStream == null) {
+            pendingEntries.add(node);
+            return;
+        }
+
+        try {
+            zipEntry(node);
+        } catch (Exception e) {
+            log.error("Error while writing zip entry '{}'.", node.getNodeName(), e);
+            resetResponse();
+            return;
+        }
+        if (expansion != null && req.response().writeQueueFull()) {
+            expansion.pause();
+            req.response().drainHandler(v -> expansion.resume());
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -54,6 +112,9 @@ public class RecursiveZipRootHandler extends RecursiveRootHandlerBase {
         if (log.isTraceEnabled()) {
             log.trace("parent handler called");
         }
+        if (failed) {
+            return;
+        }
 
         try {
             ExpansionDeltaUtil.verifyCollectionResponse(req, data, finalOriginalParams);
@@ -61,80 +122,103 @@ public class RecursiveZipRootHandler extends RecursiveRootHandlerBase {
             // throw the given error (if any)
             checkIfError(node);
 
-            /*
-             * Zip Streams are not thread safe.
-             * You can't access / write them asynchronously.
-             * For this reason you have to collect the needed
-             * data and put it together at the end.
-             */
-
-            // zip the collection
-            try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                    ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
-
-                // set level for store
-                if (zipType.equals(RecursiveHandlerFactory.RecursiveHandlerTypes.STORE)) {
-                    if (log.isTraceEnabled() ) {
-                        log.trace("setting zip level to store");
-                    }
+            // resources not passed by handleZipEntry (if any)
+            for (ResourceNode resourceNode : (Iterable<ResourceNode>) node.getObject()) {
+                pendingEntries.add(resourceNode);
+            }
 
-                    zipOutputStream.setLevel(ZipOutputStream.STORED);
+            if (zipOutputStream == null) {
+                if (finalOriginalParams.contains("delta")) {
+                    req.response().headers().set("x-delta", "" + xDeltaResponseNumber);
                 }
+                startZipStream();
+            }
+
+            for (ResourceNode resourceNode : pendingEntries) {
+                zipEntry(resourceNode);
+            }
+            pendingEntries.clear();
 
-                Iterable<ResourceNode> zipableNodes = (Iterable<ResourceNode>) node.getObject();
+            zipOutputStream.finish();
+            zipOutputStream.flush();
+            req.response().end();
+        } catch (ResourceCollectionException exception) {
+            if (zipOutputStream != null) {
+                log.warn("Resetting the zip stream, because of: {}", exception.getMessage());
+                resetResponse();
+            } else {
+                handleResponseError(req, exception);
+            }
+        } catch (Exception e) {
+            log.error("Error while writing zip: {}", e.getMessage(), e);
+            if (zipOutputStream != null) {
+                resetResponse();
+            } else {
+                createErrorResponse(e);
+            }
+        }
+    }
 
-                for (ResourceNode resourceNode : zipableNodes) {
-                    if (log.isTraceEnabled()) {
-                        log.trace("Create zip for: {}", resourceNode.getNodeName());
-                        log.trace("   >> {}", resourceNode.getPath());
-                    }
+    /**
+     * Sends the response headers and creates the zip stream writing to the response.
+     */
+    private void startZipStream() {
+        req.response().headers().set(CONTENT_TYPE_HEADER, CONTENT_TYPE_ZIP);
+        req.response().setChunked(true);
+        ResponseStatusCodeLogUtil.debug(req, StatusCode.OK, RecursiveZipRootHandler.class);
 
-                    zipEntry(zipOutputStream, resourceNode);
-                }
+        zipOutputStream = new ZipOutputStream(new WriteStreamOutputStream(req.response(), CHUNK_SIZE));
 
-                zipOutputStream.finish();
+        // set level for store
+        if (zipType.equals(RecursiveHandlerFactory.RecursiveHandlerTypes.STORE)) {
+            if (log.isTraceEnabled() ) {
+                log.trace("setting zip level to store");
+            }
 
-                req.response().headers().set(CONTENT_TYPE_HEADER, CONTENT_TYPE_ZIP);
+            zipOutputStream.setLevel(ZipOutputStream.STORED);
+        }
 
-                if (finalOriginalParams.contains("delta")) {
-                    req.response().headers().set("x-delta", "" + xDeltaResponseNumber);
+        req.response().closeHandler(v -> {
+            if (!failed && !req.response().ended()) {
+                log.debug("Connection closed before the zip stream was written completely");
+                failed = true;
+                if (expansion != null) {
+                    expansion.cancel();
                 }
-
-                ResponseStatusCodeLogUtil.debug(req, StatusCode.OK, RecursiveExpansionRootHandler.class);
-                req.response().end(Buffer.buffer(outputStream.toByteArray()));
-            } catch (Exception e) {
-                log.error("Error while writing zip: {}", e.getMessage(), e);
-                createErrorResponse(e);
             }
-        } catch (ResourceCollectionException exception) {
-            handleResponseError(req, exception);
-        }
+        });
     }
 
     /**
      * Zips the given ResourceNode.
      * 
-     * @param zipOutputStream zipOutputStream
      * @param resourceNode resourceNode
+     * @throws IOException when the entry could not be written
      */
-    private void zipEntry(ZipOutputStream zipOutputStream, ResourceNode resourceNode) {
-        try (ByteArrayInputStream inputStream = new ByteArrayInputStream((byte[]) resourceNode.getObject())) {
-
-            ZipEntry zipEntry = new ZipEntry(createNewZipEntryName(resourceNode.getPath()));
-            zipOutputStream.putNextEntry(zipEntry);
-
-            byte[] b = new byte[DATA_BLOCK_SIZE];
-            int byteCount;
+    private void zipEntry(ResourceNode resourceNode) throws IOException {
+        if (log.isTraceEnabled()) {
+            log.trace("Create zip for: {}", resourceNode.getNodeName());
+            log.trace("   >> {}", resourceNode.getPath());
+        }
 
-            while ((byteCount = inputStream.read(b, 0, DATA_BLOCK_SIZE)) != -1) {
-                zipOutputStream.write(b, 0, byteCount);
-            }
+        byte[] content = (byte[]) resourceNode.getObject();
+        zipOutputStream.putNextEntry(new ZipEntry(createNewZipEntryName(resourceNode.getPath())));
+        for (int offset = 0; offset < content.length; offset += DATA_BLOCK_SIZE) {
+            zipOutputStream.write(content, offset, Math.min(DATA_BLOCK_SIZE, content.length - offset));
+        }
+        zipOutputStream.closeEntry();
+    }
 
-            zipOutputStream.closeEntry();
-            inputStream.close();
-        } catch (Exception e) {
-            log.error("Error while writing zip entry '{}'.", resourceNode.getNodeName(), e);
+    /**
+     * Resets the response, as the zip stream cannot be completed.
+     */
+    private void resetResponse() {
+        failed = true;
+        pendingEntries.clear();
+        if (expansion != null) {
+            expansion.cancel();
         }
+        req.response().reset();
     }
 
     /**
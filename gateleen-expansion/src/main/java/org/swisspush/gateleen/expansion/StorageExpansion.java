@@ -0,0 +1,155 @@
+package org.swisspush.gateleen.expansion;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.swisspush.gateleen.core.util.ExpansionDeltaUtil;
+import org.swisspush.gateleen.core.util.ResourceCollectionException;
+import org.swisspush.gateleen.core.util.StatusCode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Expands a collection over several levels with storageExpand requests. The sub resources of a collection are
+ * requested in batches of at most {@code batchSize} resources with one storageExpand request per batch. The sub
+ * collections listed in the merged result are expanded the same way on the next level. A deep expansion therefore
+ * needs one request per batch and collection instead of one request per resource.
+ */
+class StorageExpansion {
+
+    /**
+     * Performs a single storageExpand request.
+     */
+    interface Requester {
+
+        /**
+         * @param collectionUri    uri of the collection, ending with a slash
+         * @param subResourceNames the sub resources to expand, ending with a slash for collections
+         * @param handler          gets the body of the storageExpand response or a {@link ExpansionHandler#SERIOUS_EXCEPTION} node
+         */
+        void request(String collectionUri, List<String> subResourceNames, Handler<ResourceNode> handler);
+    }
+
+    private final int batchSize;
+    private final Requester requester;
+    private final Handler<ResourceNode> handler;
+    private boolean failed;
+
+    /**
+     * @param batchSize the maximum count of sub resources per storageExpand request
+     * @param requester performs the storageExpand requests
+     * @param handler   gets the expanded collection or the first error
+     */
+    StorageExpansion(int batchSize, Requester requester, Handler<ResourceNode> handler) {
+        this.batchSize = Math.max(1, batchSize);
+        this.requester = requester;
+        this.handler = handler;
+    }
+
+    /**
+     * Expands the sub resources of the collection.
+     *
+     * @param collectionUri    uri of the collection, ending with a slash
+     * @param subResourceNames the sub resources of the collection
+     * @param levels           the count of levels to expand, at least 1
+     */
+    void start(String collectionUri, List<String> subResourceNames, int levels) {
+        if (levels <= 1 && subResourceNames.size() <= batchSize) {
+            // a single request, the response is passed on as it is
+            requester.request(collectionUri, subResourceNames, handler);
+            return;
+        }
+        String collectionName = ExpansionDeltaUtil.extractCollectionFromPath(collectionUri);
+        expandCollection(collectionUri, subResourceNames, levels, (expanded, eTag) ->
+                handler.handle(new ResourceNode(collectionName, expanded, eTag, collectionUri)));
+    }
+
+    private void expandCollection(String collectionUri, List<String> subResourceNames, int levels,
+                                  BiConsumer<JsonObject, String> completionHandler) {
+        List<List<String>> batches = new ArrayList<>();
+        for (int i = 0; i < subResourceNames.size(); i += batchSize) {
+            batches.add(subResourceNames.subList(i, Math.min(subResourceNames.size(), i + batchSize)));
+        }
+
+        // the batches are merged in the order of the collection, regardless of the order of their responses
+        JsonObject[] results = new JsonObject[batches.size()];
+        String[] eTags = new String[batches.size()];
+        int[] pending = {batches.size()};
+        for (int i = 0; i < batches.size(); i++) {
+            int batch = i;
+            requester.request(collectionUri, batches.get(batch), node -> {
+                if (failed) {
+                    return;
+                }
+                if (ExpansionHandler.SERIOUS_EXCEPTION.equals(node.getNodeName())) {
+                    fail(node);
+                    return;
+                }
+                try {
+                    results[batch] = new JsonObject(((Buffer) node.getObject()).toString("UTF-8"));
+                } catch (Exception e) {
+                    fail(new ResourceNode(ExpansionHandler.SERIOUS_EXCEPTION, new ResourceCollectionException(
+                            "Invalid storageExpand response for " + collectionUri + ": " + e.getMessage(), StatusCode.INTERNAL_SERVER_ERROR)));
+                    return;
+                }
+                eTags[batch] = node.geteTag() == null ? "" : node.geteTag();
+                if (--pending[0] == 0) {
+                    JsonObject merged = new JsonObject();
+                    for (JsonObject result : results) {
+                        merged.mergeIn(result);
+                    }
+                    expandSubCollections(collectionUri, subResourceNames, merged, levels - 1, String.join("", eTags), completionHandler);
+                }
+            });
+        }
+    }
+
+    private void expandSubCollections(String collectionUri, List<String> subResourceNames, JsonObject expanded, int levels,
+                                      String eTag, BiConsumer<JsonObject, String> completionHandler) {
+        // the storage lists the sub resources of sub collections, these are expanded on the next level
+        List<String> subCollectionNames = new ArrayList<>();
+        if (levels > 0) {
+            for (String subResourceName : subResourceNames) {
+                if (subResourceName.endsWith("/")) {
+                    Object subCollection = expanded.getValue(subResourceName.substring(0, subResourceName.length() - 1));
+                    if (subCollection instanceof JsonArray && !((JsonArray) subCollection).isEmpty()) {
+                        subCollectionNames.add(subResourceName);
+                    }
+                }
+            }
+        }
+        if (subCollectionNames.isEmpty()) {
+            completionHandler.accept(expanded, eTag);
+            return;
+        }
+
+        String[] eTags = new String[subCollectionNames.size()];
+        int[] pending = {subCollectionNames.size()};
+        for (int i = 0; i < subCollectionNames.size(); i++) {
+            int index = i;
+            String subCollectionName = subCollectionNames.get(index);
+            String key = subCollectionName.substring(0, subCollectionName.length() - 1);
+            List<String> names = new ArrayList<>();
+            for (Object name : expanded.getJsonArray(key)) {
+                names.add(String.valueOf(name));
+            }
+            expandCollection(collectionUri + subCollectionName, names, levels, (subExpanded, subETag) -> {
+                expanded.put(key, subExpanded);
+                eTags[index] = subETag;
+                if (--pending[0] == 0) {
+                    completionHandler.accept(expanded, eTag + String.join("", eTags));
+                }
+            });
+        }
+    }
+
+    private void fail(ResourceNode node) {
+        if (!failed) {
+            failed = true;
+            handler.handle(node);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package org.swisspush.gateleen.expansion;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.swisspush.gateleen.core.http.RequestLoggerFactory;
+import org.swisspush.gateleen.core.util.ResourceCollectionException;
+import org.swisspush.gateleen.core.util.ResponseStatusCodeLogUtil;
+import org.swisspush.gateleen.core.util.StatusCode;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Writes the response of an expansion request progressively while the sub resources of the expanded collection
+ * complete, instead of collecting the whole result in memory first.
+ * <p>
+ * The sub resources are written in the order of the collection. Sub resources completing out of order are buffered,
+ * whereas at most {@code reorderBufferSize} sub resources are requested ahead of the next sub resource to write. When
+ * the client does not read fast enough, no further sub resources are requested until the response is drained.
+ * <p>
+ * Errors occurring before the first sub resource has been written are responded like by the
+ * {@link RecursiveExpansionRootHandler}. Errors occurring later reset the response, as the status code and parts of
+ * the body have been sent already.
+ */
+class StreamingExpansionHandler {
+
+    private static final String ETAG_HEADER = "Etag";
+
+    private final Logger log;
+    private final HttpServerRequest req;
+    private final String collectionName;
+    private final List<String> subResourceNames;
+    private final int reorderBufferSize;
+    private final BiConsumer<String, DeltaHandler<ResourceNode>> subRequestStarter;
+
+    private final ResourceNode[] completedNodes;
+    private int requestedCount;
+    private int writtenCount;
+    private boolean started;
+    private boolean done;
+
+    /**
+     * @param req the expansion request
+     * @param collectionName the name of the expanded collection
+     * @param subResourceNames the names of the sub resources in the order of the collection
+     * @param reorderBufferSize the maximum count of sub resources requested ahead of the next sub resource to write
+     * @param subRequestStarter requests the sub resource with the given name and passes the result to the given handler
+     */
+    StreamingExpansionHandler(HttpServerRequest req, String collectionName, List<String> subResourceNames,
+                              int reorderBufferSize, BiConsumer<String, DeltaHandler<ResourceNode>> subRequestStarter) {
+        this.log = RequestLoggerFactory.getLogger(StreamingExpansionHandler.class, req);
+        this.req = req;
+        this.collectionName = collectionName;
+        this.subResourceNames = subResourceNames;
+        this.reorderBufferSize = Math.max(1, reorderBufferSize);
+        this.subRequestStarter = subRequestStarter;
+        this.completedNodes = new ResourceNode[subResourceNames.size()];
+    }
+
+    /**
+     * Starts requesting the sub resources.
+     */
+    void start() {
+        req.response().closeHandler(v -> {
+            if (!done) {
+                log.debug("Connection closed before the expansion of '{}' was written completely", collectionName);
+                done = true;
+            }
+        });
+        requestSubResources();
+    }
+
+    private void requestSubResources() {
+        while (!done && requestedCount < subResourceNames.size() && requestedCount < writtenCount + reorderBufferSize) {
+            int index = requestedCount++;
+            subRequestStarter.accept(subResourceNames.get(index), new SubResourceHandler(index));
+        }
+    }
+
+    private void handleSubResource(int index, ResourceNode node) {
+        if (done || completedNodes[index] != null) {
+            return;
+        }
+        ResourceNode completedNode = toJsonNode(node);
+        if (!(completedNode.getObject() instanceof JsonObject || completedNode.getObject() instanceof JsonArray)) {
+            fail(completedNode);
+            return;
+        }
+        completedNodes[index] = completedNode;
+        writeCompletedSubResources();
+    }
+
+    private void writeCompletedSubResources() {
+        while (!done && writtenCount < completedNodes.length && completedNodes[writtenCount] != null) {
+            if (req.response().writeQueueFull()) {
+                req.response().drainHandler(v -> writeCompletedSubResources());
+                return;
+            }
+            Buffer chunk = Buffer.buffer();
+            if (started) {
+                chunk.appendString(",");
+            } else {
+                startResponse();
+                chunk.appendString("{").appendString(Json.encode(collectionName)).appendString(":{");
+            }
+            String resourceName = subResourceNames.get(writtenCount).replace("/", "");
+            Object object = completedNodes[writtenCount].getObject();
+            chunk.appendString(Json.encode(resourceName)).appendString(":")
+                    .appendBuffer(object instanceof JsonObject ? ((JsonObject) object).toBuffer() : ((JsonArray) object).toBuffer());
+
+            // release the written sub resource
+            completedNodes[writtenCount++] = null;
+            req.response().write(chunk);
+        }
+
+        if (!done && writtenCount == completedNodes.length) {
+            done = true;
+            req.response().end("}}");
+            return;
+        }
+        requestSubResources();
+    }
+
+    private void startResponse() {
+        started = true;
+        ResponseStatusCodeLogUtil.debug(req, StatusCode.OK, StreamingExpansionHandler.class);
+        // the eTag of the collection does not match the expanded content
+        req.response().headers().remove(ETAG_HEADER);
+        req.response().setChunked(true);
+    }
+
+    /**
+     * Converts pure data to a JsonObject, like the {@link RecursiveExpansionHandler} does.
+     */
+    private ResourceNode toJsonNode(ResourceNode node) {
+        if (node == null || node.getObject() == null) {
+            return new ResourceNode(collectionName, new ResourceCollectionException("No result for sub resource"));
+        }
+        if (node.getObject() instanceof Buffer) {
+            try {
+                node.setObject(new JsonObject(((Buffer) node.getObject()).toString("UTF-8")));
+            } catch (Exception e) {
+                log.error("Error in result of sub resource with path '{}' Message: {}", node.getPath(), e.getMessage());
+                node.setObject(new ResourceCollectionException(e.getMessage()));
+            }
+        }
+        return node;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void fail(ResourceNode node) {
+        done = true;
+        ResourceCollectionException exception;
+        if (node.getObject() instanceof ResourceCollectionException && ExpansionHandler.SERIOUS_EXCEPTION.equals(node.getNodeName())) {
+            exception = (ResourceCollectionException) node.getObject();
+        } else {
+            Map<String, ResourceCollectionException> errorMap = node.getObject() instanceof Map<?, ?>
+                    ? (Map<String, ResourceCollectionException>) node.getObject()
+                    : Map.of(node.getNodeName(), (ResourceCollectionException) node.getObject());
+            StringBuilder errorMessage = new StringBuilder("Errors found in resources:\n");
+            for (Map.Entry<String, ResourceCollectionException> error : errorMap.entrySet()) {
+                errorMessage.append(error.getKey()).append(": ").append(error.getValue().getMessage()).append("\n");
+            }
+            exception = new ResourceCollectionException(errorMessage.toString(), StatusCode.INTERNAL_SERVER_ERROR);
+        }
+
+        if (started) {
+            log.warn("Resetting the streamed expansion of '{}' after {} sub resources, because of: {}", collectionName,
+                    writtenCount, exception.getMessage());
+            req.response().reset();
+            return;
+        }
+        ResponseStatusCodeLogUtil.debug(req, exception.getStatusCode(), StreamingExpansionHandler.class);
+        req.response().setStatusCode(exception.getStatusCode().getStatusCode());
+        req.response().setStatusMessage(exception.getStatusCode().getStatusMessage());
+        req.response().putHeader("Content-Type", "text/plain");
+        req.response().end(exception.getMessage());
+    }
+
+    private class SubResourceHandler implements DeltaHandler<ResourceNode> {
+        private final int index;
+
+        SubResourceHandler(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void handle(ResourceNode node) {
+            handleSubResource(index, node);
+        }
+
+        @Override
+        public void storeXDeltaResponseHeader(String xDeltaResponseNumber) {
+            // delta requests are not streamed
+        }
+    }
+}
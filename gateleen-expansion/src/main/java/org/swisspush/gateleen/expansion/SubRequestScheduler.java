@@ -0,0 +1,228 @@
+package org.swisspush.gateleen.expansion;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Limits the concurrent sub requests of the expansions. Each expansion has at most {@code windowSize} sub requests
+ * running, while all expansions together have at most {@code globalBudget} sub requests running. Further sub requests
+ * are queued per expansion. Free slots are assigned to the expansions with queued sub requests in round robin order,
+ * so a large expansion cannot delay the sub requests of the other expansions until it is completed.
+ */
+public class SubRequestScheduler {
+
+    public static final String QUEUED_METRIC = "gateleen.expand.subrequests.queued";
+    public static final String QUEUED_METRIC_DESCRIPTION = "Amount of sub requests of expansions waiting for a free slot";
+    public static final String ACTIVE_METRIC = "gateleen.expand.subrequests.active";
+    public static final String ACTIVE_METRIC_DESCRIPTION = "Amount of running sub requests of expansions";
+    public static final String WAIT_METRIC = "gateleen.expand.subrequests.wait";
+    public static final String WAIT_METRIC_DESCRIPTION = "Time sub requests of expansions waited for a free slot";
+
+    private final int windowSize;
+    private final int globalBudget;
+
+    // expansions with queued sub requests and a free slot in their window
+    private final Queue<Expansion> readyExpansions = new ArrayDeque<>();
+    private int activeCount;
+    private int queuedCount;
+
+    private Timer waitTimer;
+
+    /**
+     * @param windowSize the maximum count of concurrent sub requests per expansion
+     * @param globalBudget the maximum count of concurrent sub requests of all expansions
+     */
+    public SubRequestScheduler(int windowSize, int globalBudget) {
+        this.windowSize = Math.max(1, windowSize);
+        this.globalBudget = Math.max(1, globalBudget);
+    }
+
+    /**
+     * Sets the MeterRegistry to export the queue depth, the running sub requests and the wait time.
+     *
+     * @param meterRegistry the MeterRegistry to set
+     */
+    public void setMeterRegistry(@Nullable MeterRegistry meterRegistry) {
+        if (meterRegistry == null) {
+            waitTimer = null;
+            return;
+        }
+        Gauge.builder(QUEUED_METRIC, this, SubRequestScheduler::queuedCount)
+                .description(QUEUED_METRIC_DESCRIPTION)
+                .register(meterRegistry);
+        Gauge.builder(ACTIVE_METRIC, this, SubRequestScheduler::activeCount)
+                .description(ACTIVE_METRIC_DESCRIPTION)
+                .register(meterRegistry);
+        waitTimer = Timer.builder(WAIT_METRIC)
+                .description(WAIT_METRIC_DESCRIPTION)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return a new expansion to schedule the sub requests of a single expansion request
+     */
+    public Expansion newExpansion() {
+        return new Expansion();
+    }
+
+    public synchronized int queuedCount() {
+        return queuedCount;
+    }
+
+    public synchronized int activeCount() {
+        return activeCount;
+    }
+
+    private void submit(Expansion expansion, Consumer<Runnable> subRequest) {
+        synchronized (this) {
+            if (expansion.cancelled) {
+                return;
+            }
+            expansion.queue.add(new PendingSubRequest(subRequest, System.nanoTime()));
+            queuedCount++;
+            markReady(expansion);
+        }
+        dispatch();
+    }
+
+    private void release(Expansion expansion) {
+        synchronized (this) {
+            expansion.activeCount--;
+            activeCount--;
+            markReady(expansion);
+        }
+        dispatch();
+    }
+
+    private void pause(Expansion expansion) {
+        synchronized (this) {
+            expansion.paused = true;
+        }
+    }
+
+    private void cancel(Expansion expansion) {
+        synchronized (this) {
+            expansion.cancelled = true;
+            expansion.paused = true;
+            queuedCount -= expansion.queue.size();
+            expansion.queue.clear();
+        }
+    }
+
+    private void resume(Expansion expansion) {
+        synchronized (this) {
+            if (expansion.cancelled) {
+                return;
+            }
+            expansion.paused = false;
+            markReady(expansion);
+        }
+        dispatch();
+    }
+
+    private void markReady(Expansion expansion) {
+        if (!expansion.ready && !expansion.paused && !expansion.queue.isEmpty() && expansion.activeCount < windowSize) {
+            expansion.ready = true;
+            readyExpansions.add(expansion);
+        }
+    }
+
+    private void dispatch() {
+        while (true) {
+            Expansion expansion;
+            PendingSubRequest pending;
+            synchronized (this) {
+                if (activeCount >= globalBudget || readyExpansions.isEmpty()) {
+                    return;
+                }
+                expansion = readyExpansions.poll();
+                expansion.ready = false;
+                if (expansion.paused) {
+                    continue;
+                }
+                pending = expansion.queue.poll();
+                queuedCount--;
+                expansion.activeCount++;
+                activeCount++;
+                // give the other expansions a turn before the next sub request of this expansion
+                markReady(expansion);
+            }
+            Timer timer = waitTimer;
+            if (timer != null) {
+                timer.record(System.nanoTime() - pending.queuedAt, TimeUnit.NANOSECONDS);
+            }
+            AtomicBoolean released = new AtomicBoolean();
+            Expansion finalExpansion = expansion;
+            pending.subRequest.accept(() -> {
+                if (released.compareAndSet(false, true)) {
+                    release(finalExpansion);
+                }
+            });
+        }
+    }
+
+    /**
+     * The sub requests of a single expansion request.
+     */
+    public class Expansion {
+        private final Queue<PendingSubRequest> queue = new ArrayDeque<>();
+        private int activeCount;
+        private boolean ready;
+        private boolean paused;
+        private boolean cancelled;
+
+        private Expansion() {
+        }
+
+        /**
+         * Runs the sub request as soon as a slot is free. The sub request gets a callback to release its slot,
+         * which must be called when the sub request completed or failed.
+         *
+         * @param subRequest the sub request to run
+         */
+        public void submit(Consumer<Runnable> subRequest) {
+            SubRequestScheduler.this.submit(this, subRequest);
+        }
+
+        /**
+         * Stops running queued sub requests of this expansion, e.g. while the response cannot be written.
+         * Running sub requests are not affected.
+         */
+        public void pause() {
+            SubRequestScheduler.this.pause(this);
+        }
+
+        /**
+         * Drops the queued sub requests of this expansion, e.g. when the response was closed or reset. Sub requests
+         * submitted afterwards are dropped too. Running sub requests are not affected.
+         */
+        public void cancel() {
+            SubRequestScheduler.this.cancel(this);
+        }
+
+        /**
+         * Continues running the queued sub requests of this expansion, unless it was cancelled.
+         */
+        public void resume() {
+            SubRequestScheduler.this.resume(this);
+        }
+    }
+
+    private static class PendingSubRequest {
+        private final Consumer<Runnable> subRequest;
+        private final long queuedAt;
+
+        PendingSubRequest(Consumer<Runnable> subRequest, long queuedAt) {
+            this.subRequest = subRequest;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
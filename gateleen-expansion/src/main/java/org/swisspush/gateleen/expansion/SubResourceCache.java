@@ -0,0 +1,147 @@
+package org.swisspush.gateleen.expansion;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+
+import javax.annotation.Nullable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of sub resource bodies of expansions, keyed by the uri of the sub resource. The entries
+ * hold the eTag of the body, so they can be revalidated with an If-None-Match request. The body is parsed at most
+ * once per entry, the parsed object is shared by all expansions and must not be modified.
+ * <p>
+ * The cache is limited by the count of entries and by the size of the bodies as received. Once parsed, an entry keeps
+ * the parsed object only, which takes a multiple of the body size in memory, so the byte budget should be chosen with
+ * some headroom.
+ */
+class SubResourceCache {
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    /**
+     * @param maxEntries the maximum count of cached sub resources
+     * @param maxBytes   the maximum total size of the cached bodies
+     */
+    SubResourceCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    @Nullable
+    Entry get(String uri) {
+        synchronized (entries) {
+            return entries.get(uri);
+        }
+    }
+
+    /**
+     * Caches the body of the sub resource, replacing a cached body with another eTag. Bodies larger than the byte
+     * budget are not cached.
+     *
+     * @param uri  the uri of the sub resource
+     * @param eTag the eTag of the body
+     * @param body the body
+     * @return the entry of the body
+     */
+    Entry put(String uri, String eTag, Buffer body) {
+        Entry entry = new Entry(eTag, body);
+        synchronized (entries) {
+            remove(uri);
+            if (entry.size > maxBytes) {
+                return entry;
+            }
+            entries.put(uri, entry);
+            bytes += entry.size;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (entries.size() > maxEntries || bytes > maxBytes) {
+                bytes -= eldest.next().size;
+                eldest.remove();
+            }
+        }
+        return entry;
+    }
+
+    void remove(String uri) {
+        synchronized (entries) {
+            Entry removed = entries.remove(uri);
+            if (removed != null) {
+                bytes -= removed.size;
+            }
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    long bytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    /**
+     * A cached body with its eTag.
+     */
+    static class Entry {
+        private final String eTag;
+        private final int size;
+        private volatile Buffer body;
+        private volatile Object parsed;
+
+        Entry(String eTag, Buffer body) {
+            this.eTag = eTag;
+            this.size = body.length();
+            this.body = body;
+        }
+
+        String getETag() {
+            return eTag;
+        }
+
+        /**
+         * @return the body, encoded again from the parsed object when the body was dropped after parsing
+         */
+        Buffer getBody() {
+            Buffer result = body;
+            if (result == null) {
+                result = ((JsonObject) parsed).toBuffer();
+            }
+            return result;
+        }
+
+        /**
+         * @return the body parsed as {@link JsonObject} or the body itself when it is no json object, so the handlers
+         * report the error as for uncached bodies
+         */
+        Object getParsedBody() {
+            Object result = parsed;
+            if (result == null) {
+                Buffer data = body;
+                if (data == null) {
+                    // parsed concurrently
+                    return parsed;
+                }
+                try {
+                    result = new JsonObject(data.toString("UTF-8"));
+                } catch (Exception e) {
+                    result = data;
+                }
+                parsed = result;
+                if (result instanceof JsonObject) {
+                    // the parsed object is set first, so both fields are never empty at the same time
+                    body = null;
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.swisspush.gateleen.expansion;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.WriteStream;
+
+import java.io.OutputStream;
+
+/**
+ * An {@link OutputStream} writing the bytes in chunks of the given size to a {@link WriteStream}. Closing the
+ * output stream writes the pending bytes, but does not end the write stream.
+ */
+class WriteStreamOutputStream extends OutputStream {
+
+    private final WriteStream<Buffer> writeStream;
+    private final int chunkSize;
+    private Buffer chunk;
+
+    WriteStreamOutputStream(WriteStream<Buffer> writeStream, int chunkSize) {
+        this.writeStream = writeStream;
+        this.chunkSize = chunkSize;
+        this.chunk = Buffer.buffer(chunkSize);
+    }
+
+    @Override
+    public void write(int b) {
+        chunk.appendByte((byte) b);
+        if (chunk.length() >= chunkSize) {
+            flush();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        chunk.appendBytes(b, off, len);
+        if (chunk.length() >= chunkSize) {
+            flush();
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (chunk.length() > 0) {
+            writeStream.write(chunk);
+            chunk = Buffer.buffer(chunkSize);
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+}
@@ -0,0 +1,15 @@
+package org.swisspush.gateleen.expansion;
+
+/**
+ * Handles the resources of a zip expansion as soon as they are available, so they can be written to the zip
+ * stream while the other sub requests are still running.
+ */
+interface ZipEntryHandler {
+
+    /**
+     * Handles a resource to put into the zip stream.
+     *
+     * @param node the resource, holding its data as byte array
+     */
+    void handleZipEntry(ResourceNode node);
+}
@@ -9,6 +9,8 @@ import org.swisspush.gateleen.core.util.StatusCode;
 import org.swisspush.reststorage.MimeTypeResolver;
 
 import java.io.ByteArrayInputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -17,6 +19,11 @@ import java.util.zip.ZipInputStream;
  * <code>
  * GET /gateleen/zips/111111.zip/this/is/my/resource
  * </code>
+ * <p>
+ * When created with an index cache size, the entries are located with the central directory of the zip instead of
+ * reading the zip sequentially. The index is cached per zip and validated with the ETag of the zip. Further
+ * extractions from a cached zip request only the data of the wished entry with a range request, when the storage
+ * supports range requests.
  *
  * @author https://github.com/ljucam [Mario Ljuca]
  */
@@ -25,9 +32,15 @@ public class ZipExtractHandler {
     private static final int DEFAULT_TIMEOUT = 120000;
     private static final byte[] ZIP_BUFFER_SIZE = new byte[2048];
     private static final String DEFAULT_MIME_TYPE = "application/json";
+    private static final String ETAG_HEADER = "ETag";
+    private static final String RANGE_HEADER = "Range";
+    private static final String IF_RANGE_HEADER = "If-Range";
 
     private final HttpClient selfClient;
     private final MimeTypeResolver mimeTypeResolver;
+    private final int indexCacheSize;
+    private final long maxIndexedEntrySize;
+    private final Map<String, CachedIndex> indexCache;
 
 
     /**
@@ -36,8 +49,38 @@ public class ZipExtractHandler {
      * @param selfClient
      */
     public ZipExtractHandler(HttpClient selfClient) {
+        this(selfClient, 0);
+    }
+
+    /**
+     * Creates a new instance of the ZipExtractHandler locating the entries with the central directory of the zip.
+     *
+     * @param selfClient
+     * @param indexCacheSize the maximum count of zips to cache the index for, 0 to read the zips sequentially
+     */
+    public ZipExtractHandler(HttpClient selfClient, int indexCacheSize) {
+        this(selfClient, indexCacheSize, ZipIndex.DEFAULT_MAX_ENTRY_SIZE);
+    }
+
+    /**
+     * Creates a new instance of the ZipExtractHandler locating the entries with the central directory of the zip.
+     * Zips containing entries larger than the maximum entry size are read sequentially.
+     *
+     * @param selfClient
+     * @param indexCacheSize the maximum count of zips to cache the index for, 0 to read the zips sequentially
+     * @param maxIndexedEntrySize the maximum compressed and uncompressed size of the entries in bytes
+     */
+    public ZipExtractHandler(HttpClient selfClient, int indexCacheSize, long maxIndexedEntrySize) {
         this.selfClient = selfClient;
+        this.maxIndexedEntrySize = maxIndexedEntrySize;
         this.mimeTypeResolver = new MimeTypeResolver(DEFAULT_MIME_TYPE);
+        this.indexCacheSize = indexCacheSize;
+        this.indexCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedIndex> eldest) {
+                return size() > indexCacheSize;
+            }
+        };
     }
 
     /**
@@ -84,6 +127,15 @@ public class ZipExtractHandler {
             // setting headers
             selfRequest.headers().setAll(req.headers());
 
+            // only request the data of the entry, as long as the zip did not change
+            CachedIndex cachedIndex = getCachedIndex(zipUrl);
+            ZipIndex.Entry cachedEntry = cachedIndex != null ? cachedIndex.index.getEntry(insidePath) : null;
+            if (cachedEntry != null && cachedEntry.getCompressedSize() > 0) {
+                long lastByte = cachedEntry.getDataOffset() + cachedEntry.getCompressedSize() - 1;
+                selfRequest.headers().set(RANGE_HEADER, "bytes=" + cachedEntry.getDataOffset() + "-" + lastByte);
+                selfRequest.headers().set(IF_RANGE_HEADER, cachedIndex.eTag);
+            }
+
             // avoids blocking other requests
             selfRequest.idleTimeout(DEFAULT_TIMEOUT);
 
@@ -92,6 +144,8 @@ public class ZipExtractHandler {
                 HttpClientResponse response = event.result();
                 if (response.statusCode() == StatusCode.OK.getStatusCode()) {
                     extractResourceFromZip(req, zipUrl, insidePath, response);
+                } else if (response.statusCode() == StatusCode.PARTIAL_CONTENT.getStatusCode() && cachedEntry != null) {
+                    extractResourceFromEntryData(req, zipUrl, insidePath, cachedEntry, response);
                 } else {
                     log.debug("GET of zip resource {} failed.", zipUrl);
                     createResponse(req, response.statusCode(), response.statusMessage(), null, null);
@@ -137,6 +191,15 @@ public class ZipExtractHandler {
         Logger log = RequestLoggerFactory.getLogger(ZipExtractHandler.class, req);
 
         response.bodyHandler(buffer -> {
+            if (indexCacheSize > 0) {
+                ZipIndex index = getIndex(zipUrl, response.headers().get(ETAG_HEADER), buffer);
+                if (index != null) {
+                    extractResourceWithIndex(req, zipUrl, insidePath, index, buffer);
+                    return;
+                }
+                log.debug("zip {} is not supported by the index, reading it sequentially", zipUrl);
+            }
+
             // read the zip from the buffer
 
             try (ByteArrayInputStream bInputStream = new ByteArrayInputStream(buffer.getBytes());
@@ -178,4 +241,98 @@ public class ZipExtractHandler {
             }
         });
     }
+
+    /**
+     * Extracts the wished resource with the index of the zip.
+     *
+     * @param req
+     * @param zipUrl
+     * @param insidePath
+     * @param index
+     * @param zip
+     */
+    private void extractResourceWithIndex(final HttpServerRequest req, final String zipUrl, final String insidePath, final ZipIndex index, final Buffer zip) {
+        Logger log = RequestLoggerFactory.getLogger(ZipExtractHandler.class, req);
+        ZipIndex.Entry entry = index.getEntry(insidePath);
+        if (entry == null) {
+            // return 404 - not found
+            log.error("could not extract {} from {}", insidePath, zipUrl);
+            createResponse(req, StatusCode.NOT_FOUND.getStatusCode(), StatusCode.NOT_FOUND.getStatusMessage(), null, null);
+            return;
+        }
+        try {
+            createResponse(req, StatusCode.OK.getStatusCode(), StatusCode.OK.getStatusMessage(), entry.extract(zip), mimeTypeResolver.resolveMimeType(insidePath));
+        } catch (Exception e) {
+            log.error("could not extract {} from {}: {}", insidePath, zipUrl, e.getMessage());
+            createResponse(req, StatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), StatusCode.INTERNAL_SERVER_ERROR.getStatusMessage(), null, null);
+        }
+    }
+
+    /**
+     * Extracts the wished resource from the data of its entry, read with a range request.
+     *
+     * @param req
+     * @param zipUrl
+     * @param insidePath
+     * @param entry
+     * @param response
+     */
+    private void extractResourceFromEntryData(final HttpServerRequest req, final String zipUrl, final String insidePath, final ZipIndex.Entry entry, final HttpClientResponse response) {
+        Logger log = RequestLoggerFactory.getLogger(ZipExtractHandler.class, req);
+        response.bodyHandler(data -> {
+            try {
+                createResponse(req, StatusCode.OK.getStatusCode(), StatusCode.OK.getStatusMessage(), entry.extractData(data), mimeTypeResolver.resolveMimeType(insidePath));
+            } catch (Exception e) {
+                log.error("could not extract {} from range of {}: {}", insidePath, zipUrl, e.getMessage());
+                removeCachedIndex(zipUrl);
+                createResponse(req, StatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), StatusCode.INTERNAL_SERVER_ERROR.getStatusMessage(), null, null);
+            }
+        });
+    }
+
+    /**
+     * Returns the cached index when it belongs to the given ETag, otherwise the index is read from the zip and cached.
+     *
+     * @param zipUrl
+     * @param eTag the ETag of the zip, the index is not cached without ETag
+     * @param zip
+     * @return the index or null when the zip is not supported by the index
+     */
+    private ZipIndex getIndex(final String zipUrl, final String eTag, final Buffer zip) {
+        CachedIndex cachedIndex = getCachedIndex(zipUrl);
+        if (eTag != null && cachedIndex != null && eTag.equals(cachedIndex.eTag)) {
+            return cachedIndex.index;
+        }
+        ZipIndex index = ZipIndex.read(zip, maxIndexedEntrySize);
+        if (index == null || eTag == null) {
+            removeCachedIndex(zipUrl);
+        } else {
+            synchronized (indexCache) {
+                indexCache.put(zipUrl, new CachedIndex(eTag, index));
+            }
+        }
+        return index;
+    }
+
+    private CachedIndex getCachedIndex(String zipUrl) {
+        synchronized (indexCache) {
+            return indexCache.get(zipUrl);
+        }
+    }
+
+    private void removeCachedIndex(String zipUrl) {
+        synchronized (indexCache) {
+            indexCache.remove(zipUrl);
+        }
+    }
+
+    private static class CachedIndex {
+        private final String eTag;
+        private final ZipIndex index;
+
+        CachedIndex(String eTag, ZipIndex index) {
+            this.eTag = eTag;
+            this.index = index;
+        }
+    }
 }
@@ -0,0 +1,207 @@
+package org.swisspush.gateleen.expansion;
+
+import io.vertx.core.buffer.Buffer;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Index of the entries of a zip archive, read from its central directory. Maps the entry names to the position and
+ * size of their data, so a single entry can be extracted without reading the entries before it.
+ * <p>
+ * Only stored and deflated entries of archives without ZIP64 extensions are supported. Archives with entries larger
+ * than the maximum entry size are not supported either, as the entries are extracted into a single byte array.
+ */
+class ZipIndex {
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final long ZIP64_MARKER = 0xFFFFFFFFL;
+    private static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    static final long DEFAULT_MAX_ENTRY_SIZE = 64 * 1024 * 1024;
+
+    private final Map<String, Entry> entries;
+
+    private ZipIndex(Map<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Reads the index from the central directory of the given zip archive, supporting entries up to
+     * {@link #DEFAULT_MAX_ENTRY_SIZE}.
+     *
+     * @param zip the zip archive
+     * @return the index or <code>null</code> when the archive is not supported
+     */
+    @Nullable
+    static ZipIndex read(Buffer zip) {
+        return read(zip, DEFAULT_MAX_ENTRY_SIZE);
+    }
+
+    /**
+     * Reads the index from the central directory of the given zip archive.
+     *
+     * @param zip the zip archive
+     * @param maxEntrySize the maximum compressed and uncompressed size of the entries in bytes
+     * @return the index or <code>null</code> when the archive is not supported
+     */
+    @Nullable
+    static ZipIndex read(Buffer zip, long maxEntrySize) {
+        long maxSize = Math.min(maxEntrySize, MAX_ARRAY_SIZE);
+        try {
+            int endOfCentralDirectory = findEndOfCentralDirectory(zip);
+            if (endOfCentralDirectory < 0) {
+                return null;
+            }
+            int entryCount = zip.getUnsignedShortLE(endOfCentralDirectory + 10);
+            long centralDirectoryOffset = zip.getUnsignedIntLE(endOfCentralDirectory + 16);
+            if (entryCount == 0xFFFF || centralDirectoryOffset == ZIP64_MARKER) {
+                return null;
+            }
+
+            Map<String, Entry> entries = new HashMap<>(entryCount * 2);
+            int position = (int) centralDirectoryOffset;
+            for (int i = 0; i < entryCount; i++) {
+                if (zip.getIntLE(position) != CENTRAL_DIRECTORY_SIGNATURE) {
+                    return null;
+                }
+                int method = zip.getUnsignedShortLE(position + 10);
+                long compressedSize = zip.getUnsignedIntLE(position + 20);
+                long size = zip.getUnsignedIntLE(position + 24);
+                int nameLength = zip.getUnsignedShortLE(position + 28);
+                int extraLength = zip.getUnsignedShortLE(position + 30);
+                int commentLength = zip.getUnsignedShortLE(position + 32);
+                long localHeaderOffset = zip.getUnsignedIntLE(position + 42);
+                String name = zip.getString(position + CENTRAL_DIRECTORY_HEADER_SIZE,
+                        position + CENTRAL_DIRECTORY_HEADER_SIZE + nameLength, StandardCharsets.UTF_8.name());
+                if (compressedSize == ZIP64_MARKER || size == ZIP64_MARKER || localHeaderOffset == ZIP64_MARKER
+                        || compressedSize > maxSize || size > maxSize
+                        || (method != ZipEntry.STORED && method != ZipEntry.DEFLATED)) {
+                    return null;
+                }
+
+                // the extra field of the local header can differ from the one in the central directory
+                int localHeader = (int) localHeaderOffset;
+                if (zip.getIntLE(localHeader) != LOCAL_HEADER_SIGNATURE) {
+                    return null;
+                }
+                long dataOffset = localHeaderOffset + LOCAL_HEADER_SIZE + zip.getUnsignedShortLE(localHeader + 26)
+                        + zip.getUnsignedShortLE(localHeader + 28);
+
+                // the first entry wins, like when reading the archive sequentially
+                entries.putIfAbsent(key(name), new Entry(method, dataOffset, compressedSize, size));
+                position += CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength;
+            }
+            return new ZipIndex(entries);
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private static int findEndOfCentralDirectory(Buffer zip) {
+        int lowest = Math.max(0, zip.length() - END_OF_CENTRAL_DIRECTORY_SIZE - MAX_COMMENT_SIZE);
+        for (int position = zip.length() - END_OF_CENTRAL_DIRECTORY_SIZE; position >= lowest; position--) {
+            if (zip.getIntLE(position) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param name the name of the entry, compared case insensitive
+     * @return the entry or <code>null</code> when the archive contains no entry with this name
+     */
+    @Nullable
+    Entry getEntry(String name) {
+        return entries.get(key(name));
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Position and size of the data of a zip entry.
+     */
+    static class Entry {
+        private final int method;
+        private final long dataOffset;
+        private final long compressedSize;
+        private final long size;
+
+        Entry(int method, long dataOffset, long compressedSize, long size) {
+            this.method = method;
+            this.dataOffset = dataOffset;
+            this.compressedSize = compressedSize;
+            this.size = size;
+        }
+
+        long getDataOffset() {
+            return dataOffset;
+        }
+
+        long getCompressedSize() {
+            return compressedSize;
+        }
+
+        /**
+         * Extracts the entry from the whole zip archive.
+         *
+         * @param zip the zip archive
+         * @return the uncompressed content of the entry
+         * @throws DataFormatException when the data of the entry is corrupt
+         */
+        Buffer extract(Buffer zip) throws DataFormatException {
+            return extractData(zip.getBuffer((int) dataOffset, (int) (dataOffset + compressedSize)));
+        }
+
+        /**
+         * Extracts the entry from its data, e.g. read with a range request.
+         *
+         * @param data the (compressed) data of the entry
+         * @return the uncompressed content of the entry
+         * @throws DataFormatException when the data of the entry is corrupt
+         */
+        Buffer extractData(Buffer data) throws DataFormatException {
+            if (data.length() != compressedSize) {
+                throw new DataFormatException("Expected " + compressedSize + " bytes of entry data, got " + data.length());
+            }
+            if (method == ZipEntry.STORED) {
+                return data;
+            }
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(data.getBytes());
+                byte[] content = new byte[(int) size];
+                int length = 0;
+                while (length < content.length && !inflater.finished()) {
+                    int inflated = inflater.inflate(content, length, content.length - length);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new DataFormatException("Truncated entry data");
+                    }
+                    length += inflated;
+                }
+                return Buffer.buffer(content);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+}
@@ -1,11 +1,20 @@
 package org.swisspush.gateleen.expansion;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
 import io.vertx.core.MultiMap;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
 import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
 import org.junit.Before;
@@ -13,6 +22,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
 import org.swisspush.gateleen.core.http.DummyHttpServerRequest;
+import org.swisspush.gateleen.core.http.DummyHttpServerResponse;
 import org.swisspush.gateleen.core.storage.MockResourceStorage;
 import org.swisspush.gateleen.core.util.StatusCode;
 import org.swisspush.gateleen.routing.Rule;
@@ -57,6 +67,13 @@ public class ExpansionHandlerTest {
         context.assertEquals(Integer.MAX_VALUE, expansionHandler.getMaxExpansionLevelSoft(), "max.expansion.level.soft should have the default value");
         context.assertEquals(Integer.MAX_VALUE, expansionHandler.getMaxExpansionLevelHard(), "max.expansion.level.soft should have the default value");
         context.assertEquals(20000, expansionHandler.getMaxSubRequestCount(), "max.expansion.subrequests should have the default value");
+        context.assertFalse(expansionHandler.isStreamingEnabled(), "expansion.streaming should have the default value");
+        context.assertEquals(16, expansionHandler.getStreamingReorderBufferSize(), "expansion.streaming.reorder.buffer should have the default value");
+        context.assertEquals(50, expansionHandler.getMaxConcurrentSubRequestCount(), "max.expansion.subrequests.concurrent should have the default value");
+        context.assertEquals(500, expansionHandler.getMaxConcurrentSubRequestCountGlobal(), "max.expansion.subrequests.concurrent.global should have the default value");
+        context.assertEquals(1000, expansionHandler.getStorageExpandBatchSize(), "expansion.storageexpand.batch.size should have the default value");
+        context.assertEquals(0, expansionHandler.getSubResourceCacheSize(), "expansion.subresource.cache.size should have the default value");
+        context.assertEquals(67108864, expansionHandler.getSubResourceCacheMaxBytes(), "expansion.subresource.cache.maxbytes should have the default value");
     }
 
     @Test
@@ -66,12 +83,26 @@ public class ExpansionHandlerTest {
         properties.put("max.expansion.subrequests", "500");
         properties.put("max.expansion.level.soft", "1000");
         properties.put("max.expansion.level.hard", "1500");
+        properties.put("expansion.streaming", "true");
+        properties.put("expansion.streaming.reorder.buffer", "64");
+        properties.put("max.expansion.subrequests.concurrent", "20");
+        properties.put("max.expansion.subrequests.concurrent.global", "200");
+        properties.put("expansion.storageexpand.batch.size", "250");
+        properties.put("expansion.subresource.cache.size", "5000");
+        properties.put("expansion.subresource.cache.maxbytes", "1000000");
 
         expansionHandler = new ExpansionHandler(vertx, storage, httpClient, properties, ROOT, RULES_ROOT);
 
         context.assertEquals(1000, expansionHandler.getMaxExpansionLevelSoft(), "max.expansion.level.soft should have the default value");
         context.assertEquals(1500, expansionHandler.getMaxExpansionLevelHard(), "max.expansion.level.soft should have the default value");
         context.assertEquals(500, expansionHandler.getMaxSubRequestCount(), "max.expansion.subrequests should have the default value");
+        context.assertTrue(expansionHandler.isStreamingEnabled(), "expansion.streaming should have the custom value");
+        context.assertEquals(64, expansionHandler.getStreamingReorderBufferSize(), "expansion.streaming.reorder.buffer should have the custom value");
+        context.assertEquals(20, expansionHandler.getMaxConcurrentSubRequestCount(), "max.expansion.subrequests.concurrent should have the custom value");
+        context.assertEquals(200, expansionHandler.getMaxConcurrentSubRequestCountGlobal(), "max.expansion.subrequests.concurrent.global should have the custom value");
+        context.assertEquals(250, expansionHandler.getStorageExpandBatchSize(), "expansion.storageexpand.batch.size should have the custom value");
+        context.assertEquals(5000, expansionHandler.getSubResourceCacheSize(), "expansion.subresource.cache.size should have the custom value");
+        context.assertEquals(1000000, expansionHandler.getSubResourceCacheMaxBytes(), "expansion.subresource.cache.maxbytes should have the custom value");
     }
 
     @Test
@@ -81,12 +112,24 @@ public class ExpansionHandlerTest {
         properties.put("max.expansion.subrequests", "abc");
         properties.put("max.expansion.level.soft", "xyz");
         properties.put("max.expansion.level.hard", "123x");
+        properties.put("expansion.streaming.reorder.buffer", "0");
+        properties.put("max.expansion.subrequests.concurrent", "-1");
+        properties.put("max.expansion.subrequests.concurrent.global", "many");
+        properties.put("expansion.storageexpand.batch.size", "none");
+        properties.put("expansion.subresource.cache.size", "-5");
+        properties.put("expansion.subresource.cache.maxbytes", "0");
 
         expansionHandler = new ExpansionHandler(vertx, storage, httpClient, properties, ROOT, RULES_ROOT);
 
         context.assertEquals(Integer.MAX_VALUE, expansionHandler.getMaxExpansionLevelSoft(), "max.expansion.level.soft should have the default value");
         context.assertEquals(Integer.MAX_VALUE, expansionHandler.getMaxExpansionLevelHard(), "max.expansion.level.soft should have the default value");
         context.assertEquals(20000, expansionHandler.getMaxSubRequestCount(), "max.expansion.subrequests should have the default value");
+        context.assertEquals(16, expansionHandler.getStreamingReorderBufferSize(), "expansion.streaming.reorder.buffer should have the default value");
+        context.assertEquals(50, expansionHandler.getMaxConcurrentSubRequestCount(), "max.expansion.subrequests.concurrent should have the default value");
+        context.assertEquals(500, expansionHandler.getMaxConcurrentSubRequestCountGlobal(), "max.expansion.subrequests.concurrent.global should have the default value");
+        context.assertEquals(1000, expansionHandler.getStorageExpandBatchSize(), "expansion.storageexpand.batch.size should have the default value");
+        context.assertEquals(0, expansionHandler.getSubResourceCacheSize(), "expansion.subresource.cache.size should have the default value");
+        context.assertEquals(67108864, expansionHandler.getSubResourceCacheMaxBytes(), "expansion.subresource.cache.maxbytes should have the default value");
     }
 
     @Test
@@ -213,7 +256,7 @@ public class ExpansionHandlerTest {
     }
 
     @Test
-    public void testStorageExpandRequestWithExpandLevelLimitExceeded(TestContext context) {
+    public void testStorageExpandRequestWithExpandLevelHigherThanOne(TestContext context) {
         expansionHandler = new ExpansionHandler(vertx, storage, httpClient, new HashMap<>(), ROOT, RULES_ROOT);
 
         List<Rule> rules = new ArrayList<>();
@@ -227,12 +270,13 @@ public class ExpansionHandlerTest {
         params.set(EXPAND_PARAM, "2");
         HttpServerResponse response = Mockito.mock(HttpServerResponse.class);
         Request request = new Request(HttpMethod.GET, "/test/rules/rule/storageExpand", params, response);
+        when(httpClient.request(any(HttpMethod.class), anyString())).thenReturn(Future.failedFuture("no connection"));
 
         expansionHandler.handleExpansionRecursion(request);
 
-        verify(response, times(1)).setStatusCode(StatusCode.BAD_REQUEST.getStatusCode());
-        verify(response, times(1)).setStatusMessage(StatusCode.BAD_REQUEST.getStatusMessage());
-        verify(response, times(1)).end("Expand values higher than 1 are not supported for storageExpand requests");
+        // deeper levels are expanded by the storage too
+        verify(response, never()).setStatusCode(StatusCode.BAD_REQUEST.getStatusCode());
+        verify(httpClient, times(1)).request(eq(HttpMethod.GET), anyString());
     }
 
     @Test
@@ -273,6 +317,135 @@ public class ExpansionHandlerTest {
         verifyNoInteractions(httpClient);
     }
 
+    @Test
+    public void testSubResourcesAreRevalidatedWithCachedETag(TestContext context) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("expansion.subresource.cache.size", "10");
+        expansionHandler = new ExpansionHandler(vertx, storage, httpClient, properties, ROOT, RULES_ROOT);
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        expansionHandler.setMeterRegistry(meterRegistry);
+
+        Map<String, ClientResponse> clientResponses = new HashMap<>();
+        clientResponses.put("/gateleen/items/", new ClientResponse(200, "\"items\"", "{\"items\":[\"a\"]}"));
+        clientResponses.put("/gateleen/items/a", new ClientResponse(200, "\"a1\"", "{\"foo\":\"bar\"}"));
+        Map<String, List<MultiMap>> requestHeaders = mockClientResponses(clientResponses);
+
+        // the first expansion caches the sub resource
+        context.assertEquals(new JsonObject("{\"items\":{\"a\":{\"foo\":\"bar\"}}}"), expand());
+        context.assertFalse(lastRequestHeaders(requestHeaders, "/gateleen/items/a").contains("If-None-Match"));
+
+        // a 304 response reuses the cached body
+        clientResponses.put("/gateleen/items/a", new ClientResponse(304, "\"a1\"", ""));
+        context.assertEquals(new JsonObject("{\"items\":{\"a\":{\"foo\":\"bar\"}}}"), expand());
+        context.assertEquals("\"a1\"", lastRequestHeaders(requestHeaders, "/gateleen/items/a").get("If-None-Match"));
+        context.assertEquals(1.0, meterRegistry.get("gateleen.expand.subresource.cache.hits").counter().count());
+    }
+
+    @Test
+    public void testSubResourcesAreEvictedWithoutETagOrSuccess(TestContext context) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("expansion.subresource.cache.size", "10");
+        expansionHandler = new ExpansionHandler(vertx, storage, httpClient, properties, ROOT, RULES_ROOT);
+
+        Map<String, ClientResponse> clientResponses = new HashMap<>();
+        clientResponses.put("/gateleen/items/", new ClientResponse(200, "\"items\"", "{\"items\":[\"a\"]}"));
+        clientResponses.put("/gateleen/items/a", new ClientResponse(200, "\"a1\"", "{\"foo\":\"bar\"}"));
+        Map<String, List<MultiMap>> requestHeaders = mockClientResponses(clientResponses);
+        expand();
+
+        // a response without eTag evicts the cached body
+        clientResponses.put("/gateleen/items/a", new ClientResponse(200, null, "{\"foo\":\"baz\"}"));
+        context.assertEquals(new JsonObject("{\"items\":{\"a\":{\"foo\":\"baz\"}}}"), expand());
+        context.assertEquals("\"a1\"", lastRequestHeaders(requestHeaders, "/gateleen/items/a").get("If-None-Match"));
+        expand();
+        context.assertFalse(lastRequestHeaders(requestHeaders, "/gateleen/items/a").contains("If-None-Match"));
+
+        // an error response evicts the cached body
+        clientResponses.put("/gateleen/items/a", new ClientResponse(200, "\"a2\"", "{\"foo\":\"baz\"}"));
+        expand();
+        clientResponses.put("/gateleen/items/a", new ClientResponse(404, null, "Not Found"));
+        expand();
+        context.assertEquals("\"a2\"", lastRequestHeaders(requestHeaders, "/gateleen/items/a").get("If-None-Match"));
+        expand();
+        context.assertFalse(lastRequestHeaders(requestHeaders, "/gateleen/items/a").contains("If-None-Match"));
+    }
+
+    /**
+     * Expands the items collection with the mocked http client, which answers synchronously.
+     */
+    private JsonObject expand() {
+        MultiMap params = MultiMap.caseInsensitiveMultiMap();
+        params.set(EXPAND_PARAM, "1");
+        DummyHttpServerResponse response = new ExpansionResponse();
+        expansionHandler.handleExpansionRecursion(new Request(HttpMethod.GET, "/gateleen/items/", params, response));
+        return response.getStatusCode() == StatusCode.OK.getStatusCode() ? new JsonObject(response.getResultBuffer()) : null;
+    }
+
+    /**
+     * Answers the requests of the mocked http client with the response of the requested uri.
+     *
+     * @return the headers of the requests per uri
+     */
+    private Map<String, List<MultiMap>> mockClientResponses(Map<String, ClientResponse> clientResponses) {
+        Map<String, List<MultiMap>> requestHeaders = new HashMap<>();
+        when(httpClient.request(any(HttpMethod.class), anyString())).thenAnswer(invocation -> {
+            String uri = ((String) invocation.getArgument(1)).split("\\?")[0];
+            HttpClientRequest request = mock(HttpClientRequest.class);
+            MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+            when(request.headers()).thenReturn(headers);
+            requestHeaders.computeIfAbsent(uri, key -> new ArrayList<>()).add(headers);
+            HttpClientResponse response = clientResponses.get(uri).mock();
+            doAnswer(sendInvocation -> {
+                Handler<AsyncResult<HttpClientResponse>> handler = sendInvocation.getArgument(0);
+                handler.handle(Future.succeededFuture(response));
+                return null;
+            }).when(request).send(any(Handler.class));
+            return Future.succeededFuture(request);
+        });
+        return requestHeaders;
+    }
+
+    private static MultiMap lastRequestHeaders(Map<String, List<MultiMap>> requestHeaders, String uri) {
+        List<MultiMap> headers = requestHeaders.get(uri);
+        return headers.get(headers.size() - 1);
+    }
+
+    private static class ClientResponse {
+        private final int statusCode;
+        private final String eTag;
+        private final String body;
+
+        ClientResponse(int statusCode, String eTag, String body) {
+            this.statusCode = statusCode;
+            this.eTag = eTag;
+            this.body = body;
+        }
+
+        HttpClientResponse mock() {
+            HttpClientResponse response = Mockito.mock(HttpClientResponse.class);
+            MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+            if (eTag != null) {
+                headers.set("Etag", eTag);
+            }
+            when(response.statusCode()).thenReturn(statusCode);
+            when(response.statusMessage()).thenReturn(StatusCode.fromCode(statusCode).getStatusMessage());
+            when(response.headers()).thenReturn(headers);
+            doAnswer(invocation -> {
+                Handler<Buffer> bodyHandler = invocation.getArgument(0);
+                bodyHandler.handle(Buffer.buffer(body));
+                return response;
+            }).when(response).bodyHandler(any());
+            return response;
+        }
+    }
+
+    private static class ExpansionResponse extends DummyHttpServerResponse {
+        @Override
+        public HttpServerResponse setChunked(boolean chunked) {
+            return this;
+        }
+    }
+
     private static class Request extends DummyHttpServerRequest {
         private MultiMap params;
         private HttpMethod httpMethod;
@@ -296,6 +469,9 @@ public class ExpansionHandlerTest {
         @Override public String uri() {
             return uri;
         }
+        @Override public String path() {
+            return uri;
+        }
         @Override public MultiMap params() { return params; }
 
         @Override public HttpServerResponse response() {return response; }
@@ -308,5 +484,14 @@ public class ExpansionHandlerTest {
 
         @Override
         public HttpServerRequest resume() { return this; }
+
+        @Override
+        public HttpServerRequest handler(Handler<Buffer> handler) { return this; }
+
+        @Override
+        public HttpServerRequest endHandler(Handler<Void> endHandler) {
+            endHandler.handle(null);
+            return this;
+        }
     }
 }
@@ -0,0 +1,226 @@
+package org.swisspush.gateleen.expansion;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.swisspush.gateleen.core.http.DummyHttpServerRequest;
+import org.swisspush.gateleen.core.http.DummyHttpServerResponse;
+import org.swisspush.gateleen.core.util.ResourceCollectionException;
+import org.swisspush.gateleen.core.util.StatusCode;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Tests for the {@link RecursiveZipRootHandler} class
+ */
+@RunWith(VertxUnitRunner.class)
+public class RecursiveZipRootHandlerTest {
+
+    private static final Buffer COLLECTION = Buffer.buffer("{\"resources\":[\"a\",\"b\"]}");
+
+    private StreamingResponse response;
+    private Request request;
+
+    @Before
+    public void setUp() {
+        response = new StreamingResponse();
+        response.setStatusCode(StatusCode.OK.getStatusCode());
+        request = new Request(response);
+    }
+
+    @Test
+    public void testEntriesAreWrittenWhileArriving(TestContext context) throws IOException {
+        RecursiveZipRootHandler handler = new RecursiveZipRootHandler(request, "/gateleen", COLLECTION, Set.of("expand"),
+                RecursiveHandlerFactory.RecursiveHandlerTypes.STORE, null);
+
+        byte[] large = new byte[100 * 1024];
+        Arrays.fill(large, (byte) 'x');
+        handler.handleZipEntry(new ResourceNode("a", large, "", "/gateleen/resources/a"));
+        context.assertTrue(response.written.length() > large.length / 2, "entry should be written before the expansion completed");
+        context.assertEquals("application/octet-stream", response.headers().get("Content-type"));
+
+        handler.handleZipEntry(new ResourceNode("b", "{\"b\":1}".getBytes(), "", "/gateleen/resources/b"));
+        handler.handle(new ResourceNode("resources", new ArrayList<ResourceNode>(), "", "<HANDLER>"));
+        context.assertTrue(response.ended);
+
+        Map<String, byte[]> entries = unzip(response.written);
+        context.assertEquals(2, entries.size());
+        context.assertTrue(Arrays.equals(large, entries.get("resources/a")));
+        context.assertEquals("{\"b\":1}", new String(entries.get("resources/b")));
+    }
+
+    @Test
+    public void testSubRequestsArePausedUntilDrained(TestContext context) {
+        SubRequestScheduler.Expansion expansion = new SubRequestScheduler(1, 10).newExpansion();
+        List<Runnable> releases = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            expansion.submit(releases::add);
+        }
+        RecursiveZipRootHandler handler = new RecursiveZipRootHandler(request, "/gateleen", COLLECTION, Set.of("expand"),
+                RecursiveHandlerFactory.RecursiveHandlerTypes.ZIP, expansion);
+
+        response.writeQueueFull = true;
+        handler.handleZipEntry(new ResourceNode("a", "{}".getBytes(), "", "/gateleen/resources/a"));
+        releases.get(0).run();
+        context.assertEquals(1, releases.size());
+
+        response.writeQueueFull = false;
+        response.drainHandler.handle(null);
+        context.assertEquals(2, releases.size());
+    }
+
+    @Test
+    public void testQueuedSubRequestsAreCancelledOnReset(TestContext context) {
+        SubRequestScheduler scheduler = new SubRequestScheduler(1, 10);
+        SubRequestScheduler.Expansion expansion = scheduler.newExpansion();
+        List<Runnable> releases = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            expansion.submit(releases::add);
+        }
+        RecursiveZipRootHandler handler = new RecursiveZipRootHandler(request, "/gateleen", COLLECTION, Set.of("expand"),
+                RecursiveHandlerFactory.RecursiveHandlerTypes.ZIP, expansion);
+        context.assertEquals(2, scheduler.queuedCount());
+
+        handler.handleZipEntry(new ResourceNode("a", "{}".getBytes(), "", "/gateleen/resources/a"));
+        handler.handle(new ResourceNode(ExpansionHandler.SERIOUS_EXCEPTION,
+                new ResourceCollectionException("Not Found", StatusCode.NOT_FOUND)));
+        context.assertTrue(response.reset);
+        context.assertEquals(0, scheduler.queuedCount());
+
+        releases.get(0).run();
+        context.assertEquals(1, releases.size());
+        context.assertEquals(0, scheduler.activeCount());
+    }
+
+    @Test
+    public void testErrorBeforeFirstEntry(TestContext context) {
+        RecursiveZipRootHandler handler = new RecursiveZipRootHandler(request, "/gateleen", COLLECTION, Set.of("expand"),
+                RecursiveHandlerFactory.RecursiveHandlerTypes.ZIP, null);
+        handler.handle(new ResourceNode(ExpansionHandler.SERIOUS_EXCEPTION,
+                new ResourceCollectionException("Not Found", StatusCode.NOT_FOUND)));
+
+        context.assertEquals(StatusCode.NOT_FOUND.getStatusCode(), response.getStatusCode());
+        context.assertEquals("Not Found", response.getResultBuffer());
+        context.assertFalse(response.reset);
+    }
+
+    @Test
+    public void testErrorAfterFirstEntry(TestContext context) {
+        RecursiveZipRootHandler handler = new RecursiveZipRootHandler(request, "/gateleen", COLLECTION, Set.of("expand"),
+                RecursiveHandlerFactory.RecursiveHandlerTypes.ZIP, null);
+        handler.handleZipEntry(new ResourceNode("a", "{}".getBytes(), "", "/gateleen/resources/a"));
+        handler.handle(new ResourceNode(ExpansionHandler.SERIOUS_EXCEPTION,
+                new ResourceCollectionException("Not Found", StatusCode.NOT_FOUND)));
+
+        context.assertTrue(response.reset);
+        context.assertFalse(response.ended);
+        context.assertEquals(StatusCode.OK.getStatusCode(), response.getStatusCode());
+    }
+
+    @Test
+    public void testDeltaRequestsAreWrittenAtTheEnd(TestContext context) throws IOException {
+        RecursiveZipRootHandler handler = new RecursiveZipRootHandler(request, "/gateleen", COLLECTION, Set.of("expand", "delta"),
+                RecursiveHandlerFactory.RecursiveHandlerTypes.ZIP, null);
+        handler.handleZipEntry(new ResourceNode("a", "{}".getBytes(), "", "/gateleen/resources/a"));
+        handler.storeXDeltaResponseHeader("42");
+        context.assertFalse(response.headers().contains("Content-type"));
+
+        handler.handle(new ResourceNode("resources", new ArrayList<ResourceNode>(), "", "<HANDLER>"));
+        context.assertEquals("42", response.headers().get("x-delta"));
+        context.assertEquals(Set.of("resources/a"), unzip(response.written).keySet());
+    }
+
+    private static Map<String, byte[]> unzip(Buffer zip) throws IOException {
+        Map<String, byte[]> entries = new HashMap<>();
+        try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(zip.getBytes()))) {
+            ZipEntry entry;
+            while ((entry = zipInputStream.getNextEntry()) != null) {
+                entries.put(entry.getName(), zipInputStream.readAllBytes());
+            }
+        }
+        return entries;
+    }
+
+    private static class StreamingResponse extends DummyHttpServerResponse {
+        private final Buffer written = Buffer.buffer();
+        private boolean writeQueueFull;
+        private Handler<Void> drainHandler;
+        private boolean ended;
+        private boolean reset;
+
+        @Override
+        public Future<Void> write(Buffer data) {
+            written.appendBuffer(data);
+            return Future.succeededFuture();
+        }
+
+        @Override
+        public Future<Void> end() {
+            ended = true;
+            return super.end();
+        }
+
+        @Override
+        public boolean ended() {
+            return ended;
+        }
+
+        @Override
+        public HttpServerResponse setChunked(boolean chunked) {
+            return this;
+        }
+
+        @Override
+        public boolean writeQueueFull() {
+            return writeQueueFull;
+        }
+
+        @Override
+        public HttpServerResponse drainHandler(Handler<Void> handler) {
+            this.drainHandler = handler;
+            return this;
+        }
+
+        @Override
+        public HttpServerResponse closeHandler(Handler<Void> handler) {
+            return this;
+        }
+
+        @Override
+        public boolean reset(long code) {
+            reset = true;
+            return true;
+        }
+    }
+
+    private static class Request extends DummyHttpServerRequest {
+        private final HttpServerResponse response;
+
+        Request(HttpServerResponse response) {
+            this.response = response;
+        }
+
+        @Override public HttpMethod method() { return HttpMethod.GET; }
+        @Override public String uri() { return "/gateleen/resources/?expand=1&zip=true"; }
+        @Override public String path() { return "/gateleen/resources/"; }
+        @Override public MultiMap headers() { return MultiMap.caseInsensitiveMultiMap(); }
+        @Override public HttpServerResponse response() { return response; }
+    }
+}
@@ -0,0 +1,103 @@
+package org.swisspush.gateleen.expansion;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.swisspush.gateleen.core.util.ResourceCollectionException;
+import org.swisspush.gateleen.core.util.StatusCode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the {@link StorageExpansion} class
+ */
+@RunWith(VertxUnitRunner.class)
+public class StorageExpansionTest {
+
+    private static final Map<String, JsonObject> STORAGE = Map.of(
+            "/gateleen/items/", new JsonObject()
+                    .put("res1", new JsonObject().put("foo", "bar1"))
+                    .put("res2", new JsonObject().put("foo", "bar2"))
+                    .put("sub", new JsonArray().add("res3").add("deeper/"))
+                    .put("empty", new JsonArray()),
+            "/gateleen/items/sub/", new JsonObject()
+                    .put("res3", new JsonObject().put("foo", "bar3"))
+                    .put("deeper", new JsonArray().add("res4")),
+            "/gateleen/items/sub/deeper/", new JsonObject()
+                    .put("res4", new JsonObject().put("foo", "bar4")));
+
+    private final List<String> requests = new ArrayList<>();
+
+    @Test
+    public void testSingleLevelIsPassedThrough(TestContext context) {
+        List<ResourceNode> nodes = new ArrayList<>();
+        new StorageExpansion(10, this::request, nodes::add).start("/gateleen/items/", List.of("res1", "res2"), 1);
+
+        context.assertEquals(List.of("/gateleen/items/ [res1, res2]"), requests);
+        context.assertEquals(1, nodes.size());
+        context.assertTrue(nodes.get(0).getObject() instanceof Buffer);
+    }
+
+    @Test
+    public void testMultipleLevelsInBatches(TestContext context) {
+        List<ResourceNode> nodes = new ArrayList<>();
+        new StorageExpansion(2, this::request, nodes::add)
+                .start("/gateleen/items/", List.of("res1", "res2", "sub/", "empty/"), 3);
+
+        context.assertEquals(List.of(
+                "/gateleen/items/ [res1, res2]",
+                "/gateleen/items/ [sub/, empty/]",
+                "/gateleen/items/sub/ [res3, deeper/]",
+                "/gateleen/items/sub/deeper/ [res4]"), requests);
+        context.assertEquals(1, nodes.size());
+        ResourceNode node = nodes.get(0);
+        context.assertEquals("items", node.getNodeName());
+        context.assertEquals("etag1etag2etag3etag4", node.geteTag());
+
+        JsonObject expanded = (JsonObject) node.getObject();
+        context.assertEquals("bar1", expanded.getJsonObject("res1").getString("foo"));
+        context.assertEquals("bar3", expanded.getJsonObject("sub").getJsonObject("res3").getString("foo"));
+        context.assertEquals("bar4", expanded.getJsonObject("sub").getJsonObject("deeper").getJsonObject("res4").getString("foo"));
+        context.assertEquals(new JsonArray(), expanded.getJsonArray("empty"));
+    }
+
+    @Test
+    public void testLevelLimit(TestContext context) {
+        List<ResourceNode> nodes = new ArrayList<>();
+        new StorageExpansion(10, this::request, nodes::add)
+                .start("/gateleen/items/", List.of("res1", "res2", "sub/", "empty/"), 2);
+
+        context.assertEquals(2, requests.size());
+        JsonObject sub = ((JsonObject) nodes.get(0).getObject()).getJsonObject("sub");
+        context.assertEquals(new JsonArray().add("res4"), sub.getJsonArray("deeper"));
+    }
+
+    @Test
+    public void testFirstErrorIsReported(TestContext context) {
+        List<ResourceNode> nodes = new ArrayList<>();
+        new StorageExpansion(1, (collectionUri, subResourceNames, handler) -> handler.handle(
+                new ResourceNode(ExpansionHandler.SERIOUS_EXCEPTION, new ResourceCollectionException("Not Found", StatusCode.NOT_FOUND))),
+                nodes::add).start("/gateleen/items/", List.of("res1", "res2"), 1);
+
+        context.assertEquals(1, nodes.size());
+        context.assertEquals(ExpansionHandler.SERIOUS_EXCEPTION, nodes.get(0).getNodeName());
+    }
+
+    private void request(String collectionUri, List<String> subResourceNames, Handler<ResourceNode> handler) {
+        requests.add(collectionUri + " " + subResourceNames);
+        JsonObject collection = STORAGE.get(collectionUri);
+        JsonObject result = new JsonObject();
+        for (String name : subResourceNames) {
+            String key = name.endsWith("/") ? name.substring(0, name.length() - 1) : name;
+            result.put(key, collection.getValue(key));
+        }
+        handler.handle(new ResourceNode("storage", result.toBuffer(), "etag" + requests.size(), collectionUri));
+    }
+}
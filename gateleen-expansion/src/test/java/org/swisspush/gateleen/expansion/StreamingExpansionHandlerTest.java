@@ -0,0 +1,171 @@
+package org.swisspush.gateleen.expansion;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.swisspush.gateleen.core.http.DummyHttpServerRequest;
+import org.swisspush.gateleen.core.http.DummyHttpServerResponse;
+import org.swisspush.gateleen.core.util.ResourceCollectionException;
+import org.swisspush.gateleen.core.util.StatusCode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the {@link StreamingExpansionHandler} class
+ */
+@RunWith(VertxUnitRunner.class)
+public class StreamingExpansionHandlerTest {
+
+    private StreamingResponse response;
+    private List<DeltaHandler<ResourceNode>> subRequests;
+    private List<String> requestedNames;
+    private StreamingExpansionHandler handler;
+
+    @Before
+    public void setUp() {
+        response = new StreamingResponse();
+        response.setStatusCode(StatusCode.OK.getStatusCode());
+        response.headers().set("Etag", "collection-etag");
+        subRequests = new ArrayList<>();
+        requestedNames = new ArrayList<>();
+        handler = new StreamingExpansionHandler(new Request(response), "resources", List.of("a", "b/", "c"), 2,
+                (name, subResourceHandler) -> {
+                    requestedNames.add(name);
+                    subRequests.add(subResourceHandler);
+                });
+    }
+
+    @Test
+    public void testWritesSubResourcesInCollectionOrder(TestContext context) {
+        handler.start();
+        context.assertEquals(List.of("a", "b/"), requestedNames);
+
+        subRequests.get(1).handle(new ResourceNode("b", new JsonObject().put("y", 2)));
+        context.assertEquals(0, response.written.length());
+
+        subRequests.get(0).handle(new ResourceNode("a", Buffer.buffer("{\"x\":1}")));
+        context.assertEquals("{\"resources\":{\"a\":{\"x\":1},\"b\":{\"y\":2}", response.written.toString());
+        context.assertFalse(response.headers().contains("Etag"));
+        context.assertEquals(List.of("a", "b/", "c"), requestedNames);
+
+        subRequests.get(2).handle(new ResourceNode("c", new JsonArray().add("z")));
+        context.assertTrue(response.ended);
+        context.assertEquals(new JsonObject().put("resources", new JsonObject()
+                        .put("a", new JsonObject().put("x", 1))
+                        .put("b", new JsonObject().put("y", 2))
+                        .put("c", new JsonArray().add("z"))),
+                new JsonObject(response.written));
+    }
+
+    @Test
+    public void testErrorBeforeFirstWrite(TestContext context) {
+        handler.start();
+        subRequests.get(1).handle(new ResourceNode(ExpansionHandler.SERIOUS_EXCEPTION,
+                new ResourceCollectionException("Not Found", StatusCode.NOT_FOUND)));
+        subRequests.get(0).handle(new ResourceNode("a", new JsonObject()));
+
+        context.assertEquals(StatusCode.NOT_FOUND.getStatusCode(), response.getStatusCode());
+        context.assertEquals("Not Found", response.getResultBuffer());
+        context.assertEquals(List.of("a", "b/"), requestedNames);
+    }
+
+    @Test
+    public void testInvalidSubResourceAfterFirstWrite(TestContext context) {
+        handler.start();
+        subRequests.get(0).handle(new ResourceNode("a", new JsonObject()));
+        subRequests.get(1).handle(new ResourceNode("b", Buffer.buffer("no json")));
+
+        context.assertTrue(response.reset);
+        context.assertFalse(response.ended);
+        context.assertEquals(List.of("a", "b/", "c"), requestedNames);
+        subRequests.get(2).handle(new ResourceNode("c", new JsonObject()));
+        context.assertFalse(response.ended);
+    }
+
+    @Test
+    public void testNoFurtherSubRequestsUntilDrained(TestContext context) {
+        handler.start();
+        response.writeQueueFull = true;
+        subRequests.get(0).handle(new ResourceNode("a", new JsonObject()));
+        context.assertEquals(0, response.written.length());
+        context.assertEquals(2, requestedNames.size());
+
+        response.writeQueueFull = false;
+        response.drainHandler.handle(null);
+        context.assertEquals("{\"resources\":{\"a\":{}", response.written.toString());
+        context.assertEquals(3, requestedNames.size());
+    }
+
+    private static class StreamingResponse extends DummyHttpServerResponse {
+        private final Buffer written = Buffer.buffer();
+        private boolean writeQueueFull;
+        private Handler<Void> drainHandler;
+        private boolean ended;
+        private boolean reset;
+
+        @Override
+        public Future<Void> write(Buffer data) {
+            written.appendBuffer(data);
+            return Future.succeededFuture();
+        }
+
+        @Override
+        public Future<Void> end(String chunk) {
+            ended = true;
+            written.appendString(chunk);
+            return super.end(chunk);
+        }
+
+        @Override
+        public HttpServerResponse setChunked(boolean chunked) {
+            return this;
+        }
+
+        @Override
+        public boolean writeQueueFull() {
+            return writeQueueFull;
+        }
+
+        @Override
+        public HttpServerResponse drainHandler(Handler<Void> handler) {
+            this.drainHandler = handler;
+            return this;
+        }
+
+        @Override
+        public HttpServerResponse closeHandler(Handler<Void> handler) {
+            return this;
+        }
+
+        @Override
+        public boolean reset(long code) {
+            reset = true;
+            return true;
+        }
+    }
+
+    private static class Request extends DummyHttpServerRequest {
+        private final HttpServerResponse response;
+
+        Request(HttpServerResponse response) {
+            this.response = response;
+        }
+
+        @Override public HttpMethod method() { return HttpMethod.GET; }
+        @Override public String uri() { return "/gateleen/resources/?expand=1"; }
+        @Override public MultiMap headers() { return MultiMap.caseInsensitiveMultiMap(); }
+        @Override public HttpServerResponse response() { return response; }
+    }
+}
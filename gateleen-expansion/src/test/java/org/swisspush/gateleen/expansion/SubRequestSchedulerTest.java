@@ -0,0 +1,97 @@
+package org.swisspush.gateleen.expansion;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.swisspush.gateleen.expansion.SubRequestScheduler.*;
+
+/**
+ * Tests for the {@link SubRequestScheduler} class
+ */
+@RunWith(VertxUnitRunner.class)
+public class SubRequestSchedulerTest {
+
+    private final List<String> started = new ArrayList<>();
+    private final List<Runnable> releases = new ArrayList<>();
+
+    @Test
+    public void testWindowPerExpansion(TestContext context) {
+        SubRequestScheduler scheduler = new SubRequestScheduler(2, 10);
+        SubRequestScheduler.Expansion expansion = scheduler.newExpansion();
+        for (int i = 0; i < 4; i++) {
+            submit(expansion, "a" + i);
+        }
+        context.assertEquals(List.of("a0", "a1"), started);
+        context.assertEquals(2, scheduler.queuedCount());
+        context.assertEquals(2, scheduler.activeCount());
+
+        // releasing twice frees a single slot only
+        releases.get(0).run();
+        releases.get(0).run();
+        context.assertEquals(List.of("a0", "a1", "a2"), started);
+        context.assertEquals(2, scheduler.activeCount());
+    }
+
+    @Test
+    public void testGlobalBudgetIsSharedFairly(TestContext context) {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SubRequestScheduler scheduler = new SubRequestScheduler(10, 2);
+        scheduler.setMeterRegistry(meterRegistry);
+
+        SubRequestScheduler.Expansion large = scheduler.newExpansion();
+        SubRequestScheduler.Expansion small = scheduler.newExpansion();
+        for (int i = 0; i < 5; i++) {
+            submit(large, "large" + i);
+        }
+        submit(small, "small0");
+        submit(small, "small1");
+        context.assertEquals(List.of("large0", "large1"), started);
+        context.assertEquals(5.0, meterRegistry.get(QUEUED_METRIC).gauge().value());
+
+        releases.get(0).run();
+        releases.get(1).run();
+        releases.get(2).run();
+        releases.get(3).run();
+        context.assertEquals(List.of("large0", "large1", "large2", "small0", "large3", "small1"), started);
+        context.assertEquals(2.0, meterRegistry.get(ACTIVE_METRIC).gauge().value());
+        context.assertEquals(1.0, meterRegistry.get(QUEUED_METRIC).gauge().value());
+        context.assertEquals(6L, meterRegistry.get(WAIT_METRIC).timer().count());
+    }
+
+    @Test
+    public void testCancelDropsQueuedSubRequests(TestContext context) {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SubRequestScheduler scheduler = new SubRequestScheduler(1, 10);
+        scheduler.setMeterRegistry(meterRegistry);
+        SubRequestScheduler.Expansion expansion = scheduler.newExpansion();
+        for (int i = 0; i < 3; i++) {
+            submit(expansion, "a" + i);
+        }
+        context.assertEquals(2.0, meterRegistry.get(QUEUED_METRIC).gauge().value());
+
+        expansion.cancel();
+        context.assertEquals(0.0, meterRegistry.get(QUEUED_METRIC).gauge().value());
+
+        // neither resuming nor releasing the running sub request starts the dropped ones
+        submit(expansion, "a3");
+        expansion.resume();
+        releases.get(0).run();
+        context.assertEquals(List.of("a0"), started);
+        context.assertEquals(0.0, meterRegistry.get(QUEUED_METRIC).gauge().value());
+        context.assertEquals(0.0, meterRegistry.get(ACTIVE_METRIC).gauge().value());
+    }
+
+    private void submit(SubRequestScheduler.Expansion expansion, String name) {
+        expansion.submit(release -> {
+            started.add(name);
+            releases.add(release);
+        });
+    }
+}
@@ -0,0 +1,77 @@
+package org.swisspush.gateleen.expansion;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests for the {@link SubResourceCache} class
+ */
+@RunWith(VertxUnitRunner.class)
+public class SubResourceCacheTest {
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted(TestContext context) {
+        SubResourceCache cache = new SubResourceCache(2, 1000);
+        cache.put("/gateleen/items/a", "etag-a", Buffer.buffer("{}"));
+        cache.put("/gateleen/items/b", "etag-b", Buffer.buffer("{}"));
+        cache.get("/gateleen/items/a");
+        cache.put("/gateleen/items/c", "etag-c", Buffer.buffer("{}"));
+
+        context.assertEquals(2, cache.size());
+        context.assertEquals("etag-a", cache.get("/gateleen/items/a").getETag());
+        context.assertNull(cache.get("/gateleen/items/b"));
+
+        cache.put("/gateleen/items/a", "etag-a2", Buffer.buffer("{}"));
+        context.assertEquals("etag-a2", cache.get("/gateleen/items/a").getETag());
+        cache.remove("/gateleen/items/a");
+        context.assertNull(cache.get("/gateleen/items/a"));
+    }
+
+    @Test
+    public void testEntriesAreEvictedByBytes(TestContext context) {
+        SubResourceCache cache = new SubResourceCache(10, 10);
+        cache.put("/gateleen/items/a", "etag-a", Buffer.buffer("{\"a\":1}"));
+        cache.put("/gateleen/items/b", "etag-b", Buffer.buffer("{}"));
+        context.assertEquals(9L, cache.bytes());
+
+        cache.put("/gateleen/items/c", "etag-c", Buffer.buffer("{\"c\":1}"));
+        context.assertNull(cache.get("/gateleen/items/a"));
+        context.assertEquals(9L, cache.bytes());
+
+        // bodies larger than the budget are passed on, but not cached
+        SubResourceCache.Entry entry = cache.put("/gateleen/items/b", "etag-b2", Buffer.buffer("{\"b\":\"large\"}"));
+        context.assertEquals("etag-b2", entry.getETag());
+        context.assertNull(cache.get("/gateleen/items/b"));
+        context.assertEquals(7L, cache.bytes());
+        cache.remove("/gateleen/items/c");
+        context.assertEquals(0L, cache.bytes());
+    }
+
+    @Test
+    public void testBodyIsDroppedAfterParsing(TestContext context) {
+        SubResourceCache.Entry entry = new SubResourceCache(10, 1000).put("/gateleen/items/a", "etag-a", Buffer.buffer("{ \"foo\" : \"bar\" }"));
+        entry.getParsedBody();
+        context.assertEquals(new JsonObject().put("foo", "bar"), new JsonObject(entry.getBody()));
+    }
+
+    @Test
+    public void testBodyIsParsedOnce(TestContext context) {
+        SubResourceCache.Entry entry = new SubResourceCache(10, 1000).put("/gateleen/items/a", "etag-a", Buffer.buffer("{\"foo\":\"bar\"}"));
+
+        Object parsed = entry.getParsedBody();
+        context.assertEquals(new JsonObject().put("foo", "bar"), parsed);
+        context.assertTrue(parsed == entry.getParsedBody());
+    }
+
+    @Test
+    public void testInvalidBodyIsNotParsed(TestContext context) {
+        Buffer body = Buffer.buffer("no json");
+        SubResourceCache.Entry entry = new SubResourceCache(10, 1000).put("/gateleen/items/a", "etag-a", body);
+
+        context.assertTrue(body == entry.getParsedBody());
+    }
+}
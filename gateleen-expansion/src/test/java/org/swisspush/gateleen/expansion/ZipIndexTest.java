@@ -0,0 +1,98 @@
+package org.swisspush.gateleen.expansion;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Tests for the {@link ZipIndex} class
+ */
+@RunWith(VertxUnitRunner.class)
+public class ZipIndexTest {
+
+    @Test
+    public void testExtractEntries(TestContext context) throws IOException, DataFormatException {
+        String large = "{\"content\":\"" + "abc".repeat(10000) + "\"}";
+        Buffer zip = zip(large);
+
+        ZipIndex index = ZipIndex.read(zip);
+        context.assertNotNull(index);
+        context.assertEquals(3, index.size());
+        context.assertEquals("{\"first\":true}", index.getEntry("resources/first").extract(zip).toString());
+        context.assertEquals(large, index.getEntry("resources/large").extract(zip).toString());
+        context.assertEquals("stored", index.getEntry("Resources/Stored").extract(zip).toString());
+        context.assertNull(index.getEntry("resources/unknown"));
+    }
+
+    @Test
+    public void testExtractEntryData(TestContext context) throws IOException, DataFormatException {
+        Buffer zip = zip("{\"content\":\"large\"}");
+        ZipIndex.Entry entry = ZipIndex.read(zip).getEntry("resources/large");
+
+        // the data as returned by a range request
+        long offset = entry.getDataOffset();
+        Buffer data = zip.getBuffer((int) offset, (int) (offset + entry.getCompressedSize()));
+        context.assertEquals("{\"content\":\"large\"}", entry.extractData(data).toString());
+
+        try {
+            entry.extractData(data.getBuffer(0, data.length() - 1));
+            context.fail("truncated data should not be extracted");
+        } catch (DataFormatException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testEntriesLargerThanMaxEntrySizeAreNotSupported(TestContext context) throws IOException {
+        Buffer zip = zip("{\"content\":\"" + "abc".repeat(10000) + "\"}");
+        context.assertNull(ZipIndex.read(zip, 1000));
+        context.assertNotNull(ZipIndex.read(zip, 30020));
+
+        // sizes beyond the size of a byte array are never supported
+        Buffer corrupt = zip.copy();
+        int centralDirectory = corrupt.getIntLE(corrupt.length() - 22 - "archive comment".length() + 16);
+        corrupt.setIntLE(centralDirectory + 24, 0xF0000000);
+        context.assertNull(ZipIndex.read(corrupt, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testUnsupportedArchive(TestContext context) {
+        context.assertNull(ZipIndex.read(Buffer.buffer("no zip at all")));
+        context.assertNull(ZipIndex.read(Buffer.buffer()));
+    }
+
+    private static Buffer zip(String largeContent) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+            zipOutputStream.setComment("archive comment");
+            zipOutputStream.putNextEntry(new ZipEntry("resources/first"));
+            zipOutputStream.write("{\"first\":true}".getBytes());
+            zipOutputStream.closeEntry();
+
+            zipOutputStream.putNextEntry(new ZipEntry("resources/large"));
+            zipOutputStream.write(largeContent.getBytes());
+            zipOutputStream.closeEntry();
+
+            byte[] stored = "stored".getBytes();
+            CRC32 crc = new CRC32();
+            crc.update(stored);
+            ZipEntry storedEntry = new ZipEntry("resources/stored");
+            storedEntry.setMethod(ZipEntry.STORED);
+            storedEntry.setSize(stored.length);
+            storedEntry.setCrc(crc.getValue());
+            zipOutputStream.putNextEntry(storedEntry);
+            zipOutputStream.write(stored);
+            zipOutputStream.closeEntry();
+        }
+        return Buffer.buffer(outputStream.toByteArray());
+    }
+}
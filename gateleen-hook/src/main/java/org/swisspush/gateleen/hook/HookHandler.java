@@ -915,7 +915,7 @@ public class HookHandler implements LoggableResource {
             } else {
                 queueHeaders.remove(X_QUEUE); // remove the "x-queue" header - otherwise we take a second turn through the queue
             }
-            queue = queueSplitter.convertToSubQueue(queue, request);
+            queue = queueSplitter.convertToSubQueue(queue, request, buffer);
 
             QueueingStrategy queueingStrategy = listener.getHook().getQueueingStrategy();
 
@@ -5,9 +5,9 @@ import io.vertx.kafka.client.producer.KafkaProducer;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.swisspush.gateleen.core.util.PatternSet;
 
 import java.util.*;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -20,6 +20,7 @@ public class KafkaProducerRepository {
     private final Logger log = LoggerFactory.getLogger(KafkaProducerRepository.class);
     private final Vertx vertx;
     private final Map<Pattern, KafkaProducer<String, String>> kafkaProducers;
+    private PatternSet<Pattern> topicPatterns = PatternSet.empty();
 
     public KafkaProducerRepository(Vertx vertx) {
         this.vertx = vertx;
@@ -29,15 +30,14 @@ public class KafkaProducerRepository {
     void addKafkaProducer(KafkaConfiguration config) {
         log.info("About to add kafka producer from {}", config);
         this.kafkaProducers.put(config.getTopic(), KafkaProducer.create(vertx, config.getConfigurations()));
+        this.topicPatterns = PatternSet.compile(new ArrayList<>(kafkaProducers.keySet()), pattern -> pattern);
     }
 
     Optional<Pair<KafkaProducer<String, String>, Pattern>> findMatchingKafkaProducer(String topic) {
-        for (Map.Entry<Pattern, KafkaProducer<String, String>> entry : kafkaProducers.entrySet()) {
-            Matcher matcher = entry.getKey().matcher(topic);
-            if (matcher.matches()) {
-                log.debug("Found matching KafkaProducer with pattern '{}' for topic '{}' found", entry.getKey().pattern(), topic);
-                return Optional.of(Pair.of(entry.getValue(), entry.getKey()));
-            }
+        Pattern pattern = topicPatterns.findFirst(topic);
+        if (pattern != null) {
+            log.debug("Found matching KafkaProducer with pattern '{}' for topic '{}' found", pattern.pattern(), topic);
+            return Optional.of(Pair.of(kafkaProducers.get(pattern), pattern));
         }
         log.info("No matching KafkaProducer for topic '{}' found", topic);
         return Optional.empty();
@@ -64,6 +64,7 @@ public class KafkaProducerRepository {
         // wait for all producers to be closed
         Future.all(futures).onComplete(event -> {
             kafkaProducers.clear();
+            topicPatterns = PatternSet.empty();
             promise.complete();
         });
         return promise;
@@ -0,0 +1,193 @@
+package org.swisspush.gateleen.logging;
+
+import io.vertx.core.http.HttpServerRequest;
+import org.swisspush.gateleen.core.util.PatternSet;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable, precompiled form of the payload filters of a {@link LoggingResource}. The regular expressions of the
+ * filters are compiled once instead of for every request.
+ * <p>
+ * The url patterns of the filters are indexed in a {@link PatternSet}. Filters starting with an url pattern are
+ * skipped without evaluating any condition when the request uri does not start with the literal prefix of the pattern.
+ */
+public class CompiledPayloadFilters {
+
+    private static final String REJECT = "reject";
+    private static final String DESTINATION = "destination";
+    private static final String DESCRIPTION = "description";
+    private static final String PAYLOAD_LIMIT = "payloadLimit";
+
+    private final PatternSet<CompiledPayloadFilter> filters;
+
+    private CompiledPayloadFilters(List<CompiledPayloadFilter> filters) {
+        this.filters = PatternSet.compile(filters, CompiledPayloadFilter::getUrlPattern);
+    }
+
+    /**
+     * Compiles the provided payload filters
+     *
+     * @param payloadFilters the payload filters of a {@link LoggingResource}
+     * @return the compiled payload filters
+     */
+    public static CompiledPayloadFilters compile(List<Map<String, String>> payloadFilters) {
+        List<CompiledPayloadFilter> compiled = new ArrayList<>();
+        for (Map<String, String> payloadFilter : payloadFilters) {
+            compiled.add(new CompiledPayloadFilter(payloadFilter));
+        }
+        return new CompiledPayloadFilters(Collections.unmodifiableList(compiled));
+    }
+
+    /**
+     * Evaluates the payload filters in their configured order against the provided request.
+     *
+     * @param request the request to evaluate
+     * @return the first payload filter matching the request or <code>null</code> when no filter matches or a filter
+     * rejects the request
+     */
+    @Nullable
+    public Map<String, String> match(HttpServerRequest request) {
+        CompiledPayloadFilter filter = matchFilter(request);
+        return filter != null ? filter.getPayloadFilter() : null;
+    }
+
+    /**
+     * Evaluates the payload filters in their configured order against the provided request.
+     *
+     * @param request the request to evaluate
+     * @return the first compiled payload filter matching the request or <code>null</code> when no filter matches or a
+     * filter rejects the request
+     */
+    @Nullable
+    public CompiledPayloadFilter matchFilter(HttpServerRequest request) {
+        if (filters.isEmpty()) {
+            return null;
+        }
+        for (CompiledPayloadFilter filter : filters.candidates(request.uri())) {
+            FilterResult result = filter.evaluate(request);
+            if (result == FilterResult.FILTER) {
+                return filter;
+            } else if (result == FilterResult.REJECT) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    int size() {
+        return filters.size();
+    }
+
+    /**
+     * A compiled payload filter
+     */
+    public static class CompiledPayloadFilter {
+        private final Map<String, String> payloadFilter;
+        private final boolean reject;
+        private final int payloadLimit;
+        private final List<Condition> conditions = new ArrayList<>();
+        private final Pattern urlPattern;
+
+        CompiledPayloadFilter(Map<String, String> payloadFilter) {
+            this.payloadFilter = payloadFilter;
+            this.reject = Boolean.parseBoolean(payloadFilter.get(REJECT));
+            this.payloadLimit = parsePayloadLimit(payloadFilter.get(PAYLOAD_LIMIT));
+
+            // NEMO-5551: Custom sorting. We have to make sure key "URL" comes first in the array.
+            for (Map.Entry<String, String> filterEntry : payloadFilter.entrySet()) {
+                String key = filterEntry.getKey();
+                if (REJECT.equalsIgnoreCase(key) || DESTINATION.equalsIgnoreCase(key) || DESCRIPTION.equalsIgnoreCase(key)
+                        || PAYLOAD_LIMIT.equalsIgnoreCase(key)) {
+                    continue;
+                }
+                Condition condition = new Condition(key, filterEntry.getValue());
+                if (key.equalsIgnoreCase(RequestPropertyFilter.URL)) {
+                    conditions.add(0, condition);
+                } else {
+                    conditions.add(condition);
+                }
+            }
+
+            if (!conditions.isEmpty() && RequestPropertyFilter.URL.equals(conditions.get(0).key)) {
+                this.urlPattern = conditions.get(0).pattern;
+            } else {
+                this.urlPattern = null;
+            }
+        }
+
+        public Map<String, String> getPayloadFilter() {
+            return payloadFilter;
+        }
+
+        /**
+         * @return the url pattern the filter starts with or <code>null</code> when the filter does not start with an
+         * url condition
+         */
+        @Nullable
+        Pattern getUrlPattern() {
+            return urlPattern;
+        }
+
+        /**
+         * @return the maximum amount of bytes of the payloads to log or {@link PayloadCapture#UNLIMITED}
+         */
+        public int getPayloadLimit() {
+            return payloadLimit;
+        }
+
+        FilterResult evaluate(HttpServerRequest request) {
+            if (conditions.isEmpty()) {
+                return FilterResult.NO_MATCH;
+            }
+            for (Condition condition : conditions) {
+                FilterResult result = RequestPropertyFilter.filterProperty(request, condition.key, condition.value,
+                        condition.pattern, reject);
+                if (result != FilterResult.FILTER) {
+                    return result;
+                }
+            }
+            return FilterResult.FILTER;
+        }
+    }
+
+    /**
+     * Parses the payload limit. Limits above {@link Integer#MAX_VALUE} are reduced to {@link Integer#MAX_VALUE}.
+     *
+     * @throws IllegalArgumentException when the limit is not a non-negative integer
+     */
+    static int parsePayloadLimit(@Nullable String limit) {
+        if (limit == null) {
+            return PayloadCapture.UNLIMITED;
+        }
+        if (!limit.matches("[0-9]+")) {
+            throw new IllegalArgumentException("Invalid payloadLimit '" + limit + "'");
+        }
+        String digits = limit.replaceFirst("^0+(?=.)", "");
+        if (digits.length() > 10 || Long.parseLong(digits) > Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        }
+        return Integer.parseInt(digits);
+    }
+
+    private static class Condition {
+        private final String key;
+        private final String value;
+        private final Pattern pattern;
+
+        Condition(String key, String value) {
+            this.key = key;
+            this.value = value;
+            if (RequestPropertyFilter.URL.equals(key) || RequestPropertyFilter.METHOD.equals(key)) {
+                this.pattern = Pattern.compile(value);
+            } else {
+                this.pattern = null;
+            }
+        }
+    }
+}
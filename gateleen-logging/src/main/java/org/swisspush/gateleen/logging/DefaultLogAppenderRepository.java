@@ -40,6 +40,11 @@ public class DefaultLogAppenderRepository implements LogAppenderRepository {
 
     @Override
     public void clearRepository() {
+        for (Appender appender : appenderMap.values()) {
+            if (appender instanceof EventBusAppender) {
+                ((EventBusAppender) appender).closeBatcher();
+            }
+        }
         appenderMap.clear();
     }
 }
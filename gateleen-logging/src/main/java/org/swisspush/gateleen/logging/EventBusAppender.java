@@ -9,6 +9,7 @@ import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
 import org.apache.logging.log4j.core.config.plugins.PluginFactory;
 import org.apache.logging.log4j.core.layout.PatternLayout;
 import org.apache.logging.log4j.core.util.CloseShieldWriter;
+import org.swisspush.gateleen.core.event.EventBusBatcher;
 import org.swisspush.gateleen.core.event.EventBusWriter;
 import io.vertx.core.eventbus.EventBus;
 
@@ -28,6 +29,7 @@ public class EventBusAppender extends AbstractWriterAppender {
         private String address;
         private MultiMap deliveryOptionsHeaders;
         private EventBusWriter.TransmissionMode transmissionMode;
+        private EventBusBatcher batcher;
 
         @Override
         public EventBusAppender build() {
@@ -37,9 +39,9 @@ public class EventBusAppender extends AbstractWriterAppender {
                 return null;
             }
             final StringLayout stringLayout = (StringLayout) layout;
-            Writer target = new EventBusWriter(eventBus, address, deliveryOptionsHeaders, transmissionMode);
+            Writer target = new EventBusWriter(eventBus, address, deliveryOptionsHeaders, transmissionMode, batcher);
             EventBusAppender appender = new EventBusAppender(getName(), stringLayout, getFilter(), getManager(target, false, stringLayout),
-                    isIgnoreExceptions(), getPropertyArray());
+                    isIgnoreExceptions(), getPropertyArray(), batcher);
             appender.start();
             return appender;
         }
@@ -62,6 +64,16 @@ public class EventBusAppender extends AbstractWriterAppender {
             this.transmissionMode = transmissionMode;
             return asBuilder();
         }
+
+        /**
+         * Sends the log lines in batches instead of one message per line
+         *
+         * @param batcher the batcher or <code>null</code> to send one message per line
+         */
+        public B setBatcher(EventBusBatcher batcher) {
+            this.batcher = batcher;
+            return asBuilder();
+        }
     }
 
     /**
@@ -116,7 +128,7 @@ public class EventBusAppender extends AbstractWriterAppender {
             layout = PatternLayout.createDefaultLayout();
         }
         Writer target = new EventBusWriter(eventBus, address, deliveryOptionsHeaders, transmissionMode);
-        EventBusAppender appender = new EventBusAppender(name, layout, filter, getManager(target, follow, layout), ignore, null);
+        EventBusAppender appender = new EventBusAppender(name, layout, filter, getManager(target, follow, layout), ignore, null, null);
         appender.start();
         return appender;
     }
@@ -133,8 +145,29 @@ public class EventBusAppender extends AbstractWriterAppender {
         return new EventBusAppender.Builder<B>().asBuilder();
     }
 
+    private final EventBusBatcher batcher;
+
     private EventBusAppender(final String name, final StringLayout layout, final Filter filter,
-                             final WriterManager manager, final boolean ignoreExceptions, final Property[] properties) {
+                             final WriterManager manager, final boolean ignoreExceptions, final Property[] properties,
+                             final EventBusBatcher batcher) {
         super(name, layout, filter, ignoreExceptions, true, properties, manager);
+        this.batcher = batcher;
+    }
+
+    /**
+     * @return the batcher of this appender or <code>null</code> when the log lines are not batched
+     */
+    public EventBusBatcher getBatcher() {
+        return batcher;
+    }
+
+    /**
+     * Sends the batched log lines and stops the periodic sending of batches. Log lines appended afterwards are sent
+     * without batching.
+     */
+    public void closeBatcher() {
+        if (batcher != null) {
+            batcher.close();
+        }
     }
 }
@@ -1,13 +1,12 @@
 package org.swisspush.gateleen.logging;
 
 import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.eventbus.EventBus;
 import io.vertx.core.http.HttpClientResponse;
 import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.HttpServerRequest;
-import io.vertx.core.json.DecodeException;
-import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.core.Appender;
@@ -15,12 +14,12 @@ import org.apache.logging.log4j.core.appender.RollingFileAppender;
 import org.apache.logging.log4j.core.appender.rolling.TimeBasedTriggeringPolicy;
 import org.apache.logging.log4j.core.layout.PatternLayout;
 import org.slf4j.Logger;
+import org.swisspush.gateleen.core.event.EventBusBatcher;
 import org.swisspush.gateleen.core.event.EventBusWriter;
 import org.swisspush.gateleen.core.http.RequestLoggerFactory;
 
-import java.util.ArrayList;
+import java.io.StringWriter;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -34,10 +33,13 @@ public class LoggingHandler {
     private HttpClientResponse response;
     private boolean active = false;
 
-    private Buffer requestPayload;
-    private Buffer responsePayload;
+    private PayloadCapture requestPayload;
+    private PayloadCapture responsePayload;
+    private int payloadLimit = PayloadCapture.UNLIMITED;
+    private boolean logBody = true;
     private LoggingResource loggingResource;
     private EventBus eventBus;
+    private Vertx vertx;
     private LogAppenderRepository logAppenderRepository;
 
     private String currentDestination;
@@ -50,8 +52,13 @@ public class LoggingHandler {
     private static final String REJECT = "reject";
     private static final String DESTINATION = "destination";
     private static final String DESCRIPTION = "description";
+    private static final String LOG_BODY = "logBody";
     private static final String META_DATA = "metadata";
     private static final String TRANSMISSION = "transmission";
+    private static final String BATCH_SIZE = "batchSize";
+    private static final String BATCH_DELAY = "batchDelay";
+    private static final String BATCH_QUEUE_SIZE = "batchQueueSize";
+    private static final String DROP_POLICY = "dropPolicy";
     private static final String URL = "url";
     private static final String METHOD = "method";
     private static final String STATUS_CODE = "statusCode";
@@ -59,7 +66,6 @@ public class LoggingHandler {
     private static final String REQUEST = "request";
     private static final String RESPONSE = "response";
     private static final String HEADERS = "headers";
-    private static final String BODY = "body";
     private static final String FILE = "file";
     private static final String ADDRESS = "address";
     private static final String DEFAULT = "default";
@@ -75,50 +81,24 @@ public class LoggingHandler {
         this.request = request;
         this.eventBus = eventBus;
         this.loggingResource = loggingResourceManager.getLoggingResource();
+        this.vertx = loggingResourceManager.getVertx();
         this.log = RequestLoggerFactory.getLogger(LoggingHandler.class, request);
         ((org.apache.logging.log4j.core.Logger) LogManager.getLogger(DEFAULT_LOGGER)).setAdditive(false);
-        boolean stopValidation = false;
 
         if(request.headers().get(SKIP_LOGGING_HEADER) != null) {
             log.info("request will not be logged because of skip log request header");
             return;
         }
 
-        for (Map<String, String> payloadFilter : loggingResource.getPayloadFilters()) {
-            if (active || stopValidation) {
-                break;
-            }
-
-            // NEMO-5551: Custom sorting. We have to make sure key "URL" comes first in the array.
-            List<Entry<String, String>> payloadFilterEntrySetList = new ArrayList<>();
-            for (Entry<String, String> filterEntry : payloadFilter.entrySet()) {
-                if (filterEntry.getKey().equalsIgnoreCase("url")) {
-                    payloadFilterEntrySetList.add(0, filterEntry);
-                } else {
-                    payloadFilterEntrySetList.add(filterEntry);
-                }
-            }
-
-            boolean reject = Boolean.parseBoolean(payloadFilter.get(REJECT));
-            for (Entry<String, String> filterEntry : payloadFilterEntrySetList) {
-                if (REJECT.equalsIgnoreCase(filterEntry.getKey())
-                        || DESTINATION.equalsIgnoreCase(filterEntry.getKey())
-                        || DESCRIPTION.equalsIgnoreCase(filterEntry.getKey())) {
-                    continue;
-                }
-
-                FilterResult result = RequestPropertyFilter.filterProperty(request, filterEntry.getKey(), filterEntry.getValue(), reject);
-                if (result == FilterResult.FILTER) {
-                    active = true;
-                    currentDestination = createLoggerAndGetDestination(payloadFilter);
-                } else if (result == FilterResult.REJECT) {
-                    active = false;
-                    stopValidation = true;
-                    break;
-                } else if (result == FilterResult.NO_MATCH) {
-                    active = false;
-                    break;
-                }
+        CompiledPayloadFilters.CompiledPayloadFilter compiledPayloadFilter = loggingResource.getCompiledPayloadFilters()
+                .matchFilter(request);
+        if (compiledPayloadFilter != null) {
+            active = true;
+            currentDestination = createLoggerAndGetDestination(compiledPayloadFilter.getPayloadFilter());
+            payloadLimit = compiledPayloadFilter.getPayloadLimit();
+            Map<String, String> destinationOptions = loggingResource.getDestinationEntries().get(currentDestination);
+            if (destinationOptions != null) {
+                logBody = !"false".equalsIgnoreCase(destinationOptions.get(LOG_BODY));
             }
         }
     }
@@ -207,17 +187,55 @@ public class LoggingHandler {
              * </appender>
              */
             EventBusAppender.Builder.setEventBus(eventBus);
+            MultiMap deliveryOptionsHeaders = MultiMap.caseInsensitiveMultiMap()
+                    .add(META_DATA, destinationOptions.get(META_DATA));
+            EventBusWriter.TransmissionMode transmissionMode =
+                    EventBusWriter.TransmissionMode.fromString(destinationOptions.get(TRANSMISSION));
             EventBusAppender appender = EventBusAppender.newBuilder().setName(filterDestination)
                     .setAddress(destinationOptions.get(ADDRESS))
-                    .setDeliveryOptionsHeaders(MultiMap.caseInsensitiveMultiMap()
-                            .add(META_DATA, destinationOptions.get(META_DATA)))
-                    .setTransmissionMode(EventBusWriter.TransmissionMode.fromString(destinationOptions.get(TRANSMISSION)))
+                    .setDeliveryOptionsHeaders(deliveryOptionsHeaders)
+                    .setTransmissionMode(transmissionMode)
+                    .setBatcher(createBatcher(destinationOptions, deliveryOptionsHeaders, transmissionMode))
                     .setLayout(PatternLayout.createDefaultLayout()).build();
             logAppenderRepository.addAppender(filterDestination, appender);
         }
         return logAppenderRepository.getAppender(filterDestination);
     }
 
+    /**
+     * Creates a batcher when the destination is configured with a batch size.
+     *
+     * @return the batcher or <code>null</code> when the log lines are not batched
+     */
+    private EventBusBatcher createBatcher(Map<String, String> destinationOptions, MultiMap deliveryOptionsHeaders,
+                                          EventBusWriter.TransmissionMode transmissionMode) {
+        String batchSize = destinationOptions.get(BATCH_SIZE);
+        if (batchSize == null) {
+            return null;
+        }
+        if (vertx == null) {
+            log.warn("No vertx instance available. Sending one message per log line for destination with address {}",
+                    destinationOptions.get(ADDRESS));
+            return null;
+        }
+        try {
+            return new EventBusBatcher(vertx, destinationOptions.get(ADDRESS), deliveryOptionsHeaders, transmissionMode,
+                    Integer.parseInt(batchSize),
+                    getLongOption(destinationOptions, BATCH_DELAY, EventBusBatcher.DEFAULT_MAX_BATCH_DELAY),
+                    (int) getLongOption(destinationOptions, BATCH_QUEUE_SIZE, EventBusBatcher.DEFAULT_QUEUE_CAPACITY),
+                    EventBusBatcher.DropPolicy.fromString(destinationOptions.get(DROP_POLICY)));
+        } catch (IllegalArgumentException ex) {
+            log.warn("Invalid batch configuration for destination with address {}. Sending one message per log line. {}",
+                    destinationOptions.get(ADDRESS), ex.getMessage());
+            return null;
+        }
+    }
+
+    private long getLongOption(Map<String, String> destinationOptions, String option, long defaultValue) {
+        String value = destinationOptions.get(option);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
     /**
      * Returns the file appender matching the given
      * filterDestination. If no appender exists for the
@@ -274,14 +292,14 @@ public class LoggingHandler {
     }
 
     public void appendRequestPayload(Buffer data, MultiMap headers) {
-        if (active && isJsonContent(headers)) {
-            getRequestPayload().appendBuffer(data);
+        if (active && logBody && isJsonContent(headers)) {
+            getRequestPayload().append(data);
         }
     }
 
     public void appendResponsePayload(Buffer data, MultiMap headers) {
-        if (active && isJsonContent(headers)) {
-            getResponsePayload().appendBuffer(data);
+        if (active && logBody && isJsonContent(headers)) {
+            getResponsePayload().append(data);
         }
     }
 
@@ -297,41 +315,19 @@ public class LoggingHandler {
                     put(METHOD, method.name()).
                     put(STATUS_CODE, statusCode).
                     put(STATUS_MESSAGE, statusMessage);
-            JsonObject requestLog = new JsonObject();
-            JsonObject responseLog = new JsonObject();
-            logEvent.put(REQUEST, requestLog);
-            logEvent.put(RESPONSE, responseLog);
-            requestLog.put(HEADERS, headersAsJson(requestHeaders));
-            responseLog.put(HEADERS, headersAsJson(responseHeaders));
-            if (requestPayload != null) {
-                try {
-                    requestLog.put(BODY, new JsonObject(requestPayload));
-                } catch (DecodeException e) {
-                    // maybe payload was a JsonArray
-                    try {
-                        requestLog.put(BODY, new JsonArray(requestPayload));
-                    } catch (DecodeException ex) {
-                        log.info("request payload could not be parsed and will not be logged");
-                    }
-                }
-            }
-            if (responsePayload != null) {
-                String responsePayloadString = responsePayload.toString("UTF-8");
-                try {
-                    responseLog.put(BODY, new JsonObject(responsePayloadString));
-                } catch (DecodeException e) {
-                    // maybe payload was a JsonArray
-                    try {
-                        responseLog.put(BODY, new JsonArray(responsePayloadString));
-                    } catch (DecodeException ex) {
-                        log.info("response payload could not be parsed and will not be logged");
-                    }
-                }
-            }
+            // the payloads are written directly into the log line instead of parsing them into json objects
+            StringWriter logLine = new StringWriter();
+            String encodedLogEvent = logEvent.encode();
+            logLine.write(encodedLogEvent, 0, encodedLogEvent.length() - 1);
+            logLine.write(",\"" + REQUEST + "\":");
+            writePayloadLog(logLine, REQUEST, requestHeaders, requestPayload);
+            logLine.write(",\"" + RESPONSE + "\":");
+            writePayloadLog(logLine, RESPONSE, responseHeaders, responsePayload);
+            logLine.write('}');
 
             try {
                 aboutToLogRequest(currentDestination);
-                loggers.get(currentDestination).info(logEvent.encode());
+                loggers.get(currentDestination).info(logLine.toString());
             } catch (Exception ex) {
                 errorLogRequest(currentDestination, ex);
             }
@@ -348,6 +344,15 @@ public class LoggingHandler {
         log.error("Error logging to destination {}. Cause: {}", currentDestination, ex.toString());
     }
 
+    private void writePayloadLog(StringWriter logLine, String type, MultiMap headers, PayloadCapture payload) {
+        String encodedHeaders = new JsonObject().put(HEADERS, headersAsJson(headers)).encode();
+        logLine.write(encodedHeaders, 0, encodedHeaders.length() - 1);
+        if (payload != null && !payload.writeBodyFields(logLine)) {
+            log.info("{} payload could not be parsed and will not be logged", type);
+        }
+        logLine.write('}');
+    }
+
     private JsonObject headersAsJson(MultiMap headers) {
         JsonObject obj = new JsonObject();
         switch (loggingResource.getHeaderLogStrategy()) {
@@ -373,16 +378,16 @@ public class LoggingHandler {
         return obj;
     }
 
-    private Buffer getRequestPayload() {
+    private PayloadCapture getRequestPayload() {
         if (requestPayload == null) {
-            requestPayload = Buffer.buffer();
+            requestPayload = new PayloadCapture(payloadLimit);
         }
         return requestPayload;
     }
 
-    private Buffer getResponsePayload() {
+    private PayloadCapture getResponsePayload() {
         if (responsePayload == null) {
-            responsePayload = Buffer.buffer();
+            responsePayload = new PayloadCapture(payloadLimit);
         }
         return responsePayload;
     }
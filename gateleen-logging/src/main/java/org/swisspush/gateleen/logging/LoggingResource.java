@@ -25,6 +25,7 @@ public class LoggingResource {
 
     private List<Map<String, String>> payloadFilters = new ArrayList<>();
     private Map<String, Map<String, String>> destinationEntries = new HashMap<>();
+    private volatile CompiledPayloadFilters compiledPayloadFilters;
 
     /**
      * Returns the strategy for the headers logging. Default value is {@link HeaderLogStrategy#LOG_ALL}
@@ -82,6 +83,21 @@ public class LoggingResource {
         return payloadFilters;
     }
 
+    /**
+     * Returns the compiled payload filters. The payload filters are compiled on the first call after they have been
+     * changed through {@link #addPayloadFilter(Map)} or {@link #reset()}.
+     *
+     * @return the compiled payload filters
+     */
+    public CompiledPayloadFilters getCompiledPayloadFilters() {
+        CompiledPayloadFilters compiled = compiledPayloadFilters;
+        if (compiled == null) {
+            compiled = CompiledPayloadFilters.compile(new ArrayList<>(getPayloadFilters()));
+            compiledPayloadFilters = compiled;
+        }
+        return compiled;
+    }
+
     /**
      * Returns a map with destinations
      * 
@@ -101,6 +117,7 @@ public class LoggingResource {
         getHeaders().clear();
         getPayloadFilters().clear();
         getDestinationEntries().clear();
+        compiledPayloadFilters = null;
     }
 
     /**
@@ -110,6 +127,7 @@ public class LoggingResource {
      */
     public void addPayloadFilter(Map<String, String> payloadFilter) {
         getPayloadFilters().add(payloadFilter);
+        compiledPayloadFilters = null;
     }
 
     /**
@@ -33,6 +33,7 @@ import java.util.Map;
 public class LoggingResourceManager implements LoggableResource {
 
     static final String UPDATE_ADDRESS = "gateleen.logging-updated";
+    static final List<String> BATCH_OPTIONS = List.of("batchSize", "batchDelay", "batchQueueSize", "dropPolicy");
 
     private final String loggingUri;
     private final ResourceStorage storage;
@@ -42,6 +43,10 @@ public class LoggingResourceManager implements LoggableResource {
     private final String loggingResourceSchema;
     private boolean logConfigurationResourceChanges = false;
 
+    public Vertx getVertx() {
+        return vertx;
+    }
+
     public LoggingResource getLoggingResource() {
         if (loggingResource == null) {
             loggingResource = new LoggingResource();
@@ -181,6 +186,9 @@ public class LoggingResourceManager implements LoggableResource {
 
                     Map<String, String> options = new HashMap<>();
                     options.put("type", destination.getString("type"));
+                    if (destination.containsKey("logBody")) {
+                        options.put("logBody", String.valueOf(destination.getBoolean("logBody")));
+                    }
 
                     String typeLocation = null;
 
@@ -191,6 +199,12 @@ public class LoggingResourceManager implements LoggableResource {
                         typeLocation = "address";
                         options.put("metadata", StringUtils.getStringOrEmpty(destination.getString("metadata")));
                         options.put("transmission", StringUtils.getStringOrDefault(destination.getString("transmission"), "publish"));
+                        for (String batchOption : BATCH_OPTIONS) {
+                            Object value = destination.getValue(batchOption);
+                            if (value != null) {
+                                options.put(batchOption, value.toString());
+                            }
+                        }
                     }
 
                     if (typeLocation != null) {
@@ -218,6 +232,7 @@ public class LoggingResourceManager implements LoggableResource {
                     getLoggingResource().addPayloadFilter(filterEntries);
                 }
             }
+            getLoggingResource().getCompiledPayloadFilters();
         } catch (Exception ex) {
             getLoggingResource().reset();
             throw new ValidationException(ex);
@@ -0,0 +1,105 @@
+package org.swisspush.gateleen.logging;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.netty.buffer.ByteBufInputStream;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Captures the payload of a logged request or response up to a configurable limit of bytes.
+ * <p>
+ * A complete payload is copied token by token into the log line without building a {@link io.vertx.core.json.JsonObject}
+ * or {@link io.vertx.core.json.JsonArray}. A payload exceeding the limit is logged as string containing the captured
+ * bytes together with the markers <code>bodyTruncated</code> and <code>bodySize</code>.
+ */
+class PayloadCapture {
+
+    static final int UNLIMITED = -1;
+    static final String BODY = "body";
+    static final String BODY_TRUNCATED = "bodyTruncated";
+    static final String BODY_SIZE = "bodySize";
+
+    private static final JsonFactory jsonFactory = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    private final int limit;
+    private final Buffer captured = Buffer.buffer();
+    private long size;
+
+    /**
+     * @param limit the maximum amount of bytes to capture or {@link #UNLIMITED}
+     */
+    PayloadCapture(int limit) {
+        this.limit = limit;
+    }
+
+    void append(Buffer data) {
+        size += data.length();
+        if (limit == UNLIMITED) {
+            captured.appendBuffer(data);
+            return;
+        }
+        int remaining = limit - captured.length();
+        if (remaining > 0) {
+            captured.appendBuffer(data, 0, Math.min(remaining, data.length()));
+        }
+    }
+
+    boolean isTruncated() {
+        return size > captured.length();
+    }
+
+    /**
+     * @return the total amount of bytes appended, including the bytes not captured
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Writes the body fields, each preceded by a comma, to the provided json being built.
+     *
+     * @param json the json being built
+     * @return <code>false</code> when the captured payload is neither a json object nor a json array. Nothing is
+     * written in this case.
+     */
+    boolean writeBodyFields(StringWriter json) {
+        if (isTruncated()) {
+            json.write(",\"" + BODY + "\":");
+            json.write(Json.encode(captured.toString(StandardCharsets.UTF_8)));
+            json.write(",\"" + BODY_TRUNCATED + "\":true,\"" + BODY_SIZE + "\":" + size);
+            return true;
+        }
+        int mark = json.getBuffer().length();
+        json.write(",\"" + BODY + "\":");
+        if (copyJsonStructure(json)) {
+            return true;
+        }
+        json.getBuffer().setLength(mark);
+        return false;
+    }
+
+    private boolean copyJsonStructure(StringWriter json) {
+        try (JsonParser parser = jsonFactory.createParser((InputStream) new ByteBufInputStream(captured.getByteBuf()));
+             JsonGenerator generator = jsonFactory.createGenerator(json)) {
+            JsonToken first = parser.nextToken();
+            if (first != JsonToken.START_OBJECT && first != JsonToken.START_ARRAY) {
+                return false;
+            }
+            generator.copyCurrentStructure(parser);
+            generator.flush();
+            return parser.nextToken() == null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -6,7 +6,7 @@ import io.vertx.core.http.HttpServerRequest;
 import org.slf4j.Logger;
 import org.swisspush.gateleen.core.http.RequestLoggerFactory;
 
-import java.util.regex.Matcher;
+import javax.annotation.Nullable;
 import java.util.regex.Pattern;
 
 /**
@@ -30,22 +30,36 @@ public class RequestPropertyFilter {
      * @return the {@link FilterResult} for the provided request
      */
     public static FilterResult filterProperty(HttpServerRequest request, String filterPropertyKey, String filterPropertyValue, boolean reject) {
+        return filterProperty(request, filterPropertyKey, filterPropertyValue, null, reject);
+    }
 
-        MultiMap headers = MultiMap.caseInsensitiveMultiMap();
-        headers.setAll(request.headers());
-
+    /**
+     * Same as {@link #filterProperty(HttpServerRequest, String, String, boolean)} but using an already compiled
+     * pattern of the filterProperty value for the url and method filterProperty keys.
+     *
+     * @param request the request to be checked to filterProperty or not
+     * @param filterPropertyKey the key of the filterProperty e.g. url, method
+     * @param filterPropertyValue the value of the filterProperty
+     * @param filterPropertyPattern the compiled filterProperty value or <code>null</code> to compile it on the fly
+     * @param reject boolean value from the filterProperty entry called "reject"
+     * @return the {@link FilterResult} for the provided request
+     */
+    static FilterResult filterProperty(HttpServerRequest request, String filterPropertyKey, String filterPropertyValue,
+                                       @Nullable Pattern filterPropertyPattern, boolean reject) {
         if (URL.equals(filterPropertyKey)) {
-            boolean matches = filterRequestURL(request, filterPropertyValue);
+            boolean matches = matches(filterPropertyPattern, filterPropertyValue, request.uri());
             FilterResult result = rejectIfNeeded(reject, matches);
             logFilterResult(request, filterPropertyKey, filterPropertyValue, result);
             return result;
         }
         if (METHOD.equals(filterPropertyKey)) {
-            boolean matches = filterRequestMethod(request, filterPropertyValue);
+            boolean matches = matches(filterPropertyPattern, filterPropertyValue, request.method().toString());
             FilterResult result = rejectIfNeeded(reject, matches);
             logFilterResult(request, filterPropertyKey, filterPropertyValue, result);
             return result;
         }
+        MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+        headers.setAll(request.headers());
         if (headers.names().contains(filterPropertyKey) && headers.get(filterPropertyKey).equalsIgnoreCase(filterPropertyValue)) {
             FilterResult result = reject ? FilterResult.REJECT : FilterResult.FILTER;
             logFilterResult(request, filterPropertyKey, filterPropertyValue, result);
@@ -62,16 +76,9 @@ public class RequestPropertyFilter {
         return reject ? FilterResult.REJECT : FilterResult.FILTER;
     }
 
-    private static boolean filterRequestURL(HttpServerRequest request, String url) {
-        Pattern urlPattern = Pattern.compile(url);
-        Matcher urlMatcher = urlPattern.matcher(request.uri());
-        return urlMatcher.matches();
-    }
-
-    private static boolean filterRequestMethod(HttpServerRequest request, String method) {
-        Pattern methodPattern = Pattern.compile(method);
-        Matcher methodMatcher = methodPattern.matcher(request.method().toString());
-        return methodMatcher.matches();
+    private static boolean matches(@Nullable Pattern pattern, String regex, String value) {
+        Pattern compiled = pattern != null ? pattern : Pattern.compile(regex);
+        return compiled.matcher(value).matches();
     }
 
     private static void logFilterResult(HttpServerRequest request, String filterPropertyKey, String filterPropertyValue, FilterResult filterResult){
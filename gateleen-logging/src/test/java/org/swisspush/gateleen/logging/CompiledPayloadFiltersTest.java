@@ -0,0 +1,115 @@
+package org.swisspush.gateleen.logging;
+
+import io.vertx.core.MultiMap;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.swisspush.gateleen.core.http.DummyHttpServerRequest;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the {@link CompiledPayloadFilters} class
+ */
+@RunWith(VertxUnitRunner.class)
+public class CompiledPayloadFiltersTest {
+
+    @Test
+    public void testFirstMatchingFilterInOrder(TestContext context) {
+        Map<String, String> nsa = filter("url", "/playground/nsa/v1/.*");
+        Map<String, String> usersPut = filter("url", "/playground/server/users/v1/.*", "method", "PUT");
+        Map<String, String> users = filter("url", "/playground/server/users/v1/.*", "destination", "fileLog");
+        CompiledPayloadFilters filters = CompiledPayloadFilters.compile(List.of(nsa, usersPut, users));
+
+        context.assertEquals(users, filters.match(new Request(HttpMethod.GET, "/playground/server/users/v1/test")));
+        context.assertEquals(usersPut, filters.match(new Request(HttpMethod.PUT, "/playground/server/users/v1/test")));
+        context.assertEquals(nsa, filters.match(new Request(HttpMethod.PUT, "/playground/nsa/v1/acknowledgment/1")));
+        context.assertNull(filters.match(new Request(HttpMethod.PUT, "/playground/server/other/v1/test")));
+        context.assertNull(filters.match(new Request(HttpMethod.PUT, "/other")));
+    }
+
+    @Test
+    public void testRejectStopsEvaluation(TestContext context) {
+        Map<String, String> reject = filter("url", "/playground/server/users/v1/secret/.*", "reject", "true");
+        Map<String, String> users = filter("url", "/playground/server/users/v1/.*");
+        CompiledPayloadFilters filters = CompiledPayloadFilters.compile(List.of(reject, users));
+
+        context.assertNull(filters.match(new Request(HttpMethod.GET, "/playground/server/users/v1/secret/1")));
+        context.assertEquals(users, filters.match(new Request(HttpMethod.GET, "/playground/server/users/v1/public/1")));
+    }
+
+    @Test
+    public void testFiltersWithoutUrlPrefix(TestContext context) {
+        Map<String, String> header = filter("x-log", "true");
+        Map<String, String> anyUrl = filter("url", ".*/users/.*");
+        CompiledPayloadFilters filters = CompiledPayloadFilters.compile(List.of(anyUrl, header));
+
+        context.assertEquals(anyUrl, filters.match(new Request(HttpMethod.GET, "/playground/server/users/1")));
+        Request request = new Request(HttpMethod.GET, "/playground/server/other/1");
+        context.assertNull(filters.match(request));
+        request.headers().add("x-log", "true");
+        context.assertEquals(header, filters.match(request));
+    }
+
+    @Test
+    public void testPayloadLimit(TestContext context) {
+        Map<String, String> limited = filter("url", "/playground/limited/.*", "payloadLimit", "1024");
+        Map<String, String> tooHigh = filter("url", "/playground/huge/.*", "payloadLimit", "99999999999999999999");
+        Map<String, String> unlimited = filter("url", "/playground/.*");
+        CompiledPayloadFilters filters = CompiledPayloadFilters.compile(List.of(limited, tooHigh, unlimited));
+
+        context.assertEquals(1024, filters.matchFilter(new Request(HttpMethod.GET, "/playground/limited/1")).getPayloadLimit());
+        context.assertEquals(Integer.MAX_VALUE, filters.matchFilter(new Request(HttpMethod.GET, "/playground/huge/1")).getPayloadLimit());
+        context.assertEquals(PayloadCapture.UNLIMITED, filters.matchFilter(new Request(HttpMethod.GET, "/playground/other")).getPayloadLimit());
+
+        try {
+            CompiledPayloadFilters.compile(List.of(filter("url", "/playground/.*", "payloadLimit", "-1")));
+            context.fail("invalid payload limits should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testNoFilters(TestContext context) {
+        context.assertNull(CompiledPayloadFilters.compile(List.of()).match(new Request(HttpMethod.GET, "/playground")));
+    }
+
+    private Map<String, String> filter(String... keyValues) {
+        Map<String, String> filter = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            filter.put(keyValues[i], keyValues[i + 1]);
+        }
+        return filter;
+    }
+
+    private static class Request extends DummyHttpServerRequest {
+        private final HttpMethod method;
+        private final String uri;
+        private final MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+
+        Request(HttpMethod method, String uri) {
+            this.method = method;
+            this.uri = uri;
+        }
+
+        @Override
+        public HttpMethod method() {
+            return method;
+        }
+
+        @Override
+        public String uri() {
+            return uri;
+        }
+
+        @Override
+        public MultiMap headers() {
+            return headers;
+        }
+    }
+}
@@ -3,14 +3,21 @@ package org.swisspush.gateleen.logging;
 import com.google.common.collect.ImmutableMap;
 import io.vertx.core.MultiMap;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.eventbus.EventBus;
 
 import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.swisspush.gateleen.core.http.DummyHttpServerRequest;
 import org.swisspush.gateleen.core.storage.MockResourceStorage;
@@ -41,6 +48,8 @@ public class LoggingHandlerTest {
             .loadResource("testresource_logging_handler_test", true);
     private final String TEST_LOGGING_RESOURCE_WITH_DESTINATION = ResourcesUtils
             .loadResource("testresource_with_destination_logging_handler_test", true);
+    private final String TEST_LOGGING_RESOURCE_PAYLOAD = ResourcesUtils
+            .loadResource("testresource_payload_logging_handler_test", true);
 
     @Before
     public void setUp() {
@@ -92,8 +101,62 @@ public class LoggingHandlerTest {
         context.assertTrue(loggingHandler.isActive());
     }
 
+    @Test
+    public void testPayloadLimit(TestContext context) {
+        JsonObject logged = logPayload("/playground/server/limited/v1/test", "{\"name\": \"john doe\"}",
+                "payload_eventbus_address");
+        JsonObject requestLog = logged.getJsonObject("request");
+        context.assertEquals("{\"name\": \"", requestLog.getString("body"));
+        context.assertTrue(requestLog.getBoolean("bodyTruncated"));
+        context.assertEquals(20L, requestLog.getLong("bodySize"));
+    }
+
+    @Test
+    public void testPayloadWithoutLimit(TestContext context) {
+        JsonObject logged = logPayload("/playground/server/unlimited/v1/test", "[{\"name\": \"john doe\"}]",
+                "payload_eventbus_address");
+        context.assertEquals(new JsonArray().add(new JsonObject().put("name", "john doe")),
+                logged.getJsonObject("request").getJsonArray("body"));
+        context.assertFalse(logged.getJsonObject("request").containsKey("bodyTruncated"));
+        context.assertEquals("/playground/server/unlimited/v1/test", logged.getString("url"));
+        context.assertEquals(200, logged.getInteger("statusCode"));
+    }
+
+    @Test
+    public void testPayloadNotCapturedWhenDestinationDoesNotLogBody(TestContext context) {
+        JsonObject logged = logPayload("/playground/server/nobody/v1/test", "{\"name\": \"john doe\"}",
+                "no_body_eventbus_address");
+        context.assertFalse(logged.getJsonObject("request").containsKey("body"));
+        context.assertTrue(logged.getJsonObject("request").containsKey("headers"));
+    }
+
+    private JsonObject logPayload(String uri, String payload, String address) {
+        // the request log is written with level info
+        Configurator.setLevel("LOG_FILTER_" + uri.substring(0, uri.lastIndexOf('/') + 1) + ".*", Level.INFO);
+        storage = new MockResourceStorage(ImmutableMap.of(LOGGING_URI, TEST_LOGGING_RESOURCE_PAYLOAD));
+        LoggingResourceManager manager = new LoggingResourceManager(vertx, storage, LOGGING_URI);
+        GETRequest request = new GETRequest(uri);
+        request.addHeader("content-type", "application/json");
+        LoggingHandler loggingHandler = new LoggingHandler(manager, logAppenderRepository, request, vertx.eventBus());
+        loggingHandler.appendRequestPayload(Buffer.buffer(payload));
+        loggingHandler.log(uri, HttpMethod.PUT, 200, "OK", request.headers(), MultiMap.caseInsensitiveMultiMap());
+
+        ArgumentCaptor<String> logLine = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(vertx.eventBus()).publish(eq(address), logLine.capture(), any(DeliveryOptions.class));
+        return new JsonObject(logLine.getValue());
+    }
+
     class GETRequest extends DummyHttpServerRequest {
         MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+        private final String uri;
+
+        GETRequest() {
+            this(GET_REQUEST_URI);
+        }
+
+        GETRequest(String uri) {
+            this.uri = uri;
+        }
 
         @Override
         public HttpMethod method() {
@@ -102,7 +165,7 @@ public class LoggingHandlerTest {
 
         @Override
         public String uri() {
-            return GET_REQUEST_URI;
+            return uri;
         }
 
         @Override
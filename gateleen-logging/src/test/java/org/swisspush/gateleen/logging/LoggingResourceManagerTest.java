@@ -86,6 +86,9 @@ public class LoggingResourceManagerTest {
         assertFilterProperty(context, eventBusLogProperties, ADDRESS, "some_eventbus_address");
         assertFilterProperty(context, eventBusLogProperties, METADATA, "meta 1");
         assertFilterProperty(context, eventBusLogProperties, TRANSMISSION, "send");
+        assertFilterProperty(context, eventBusLogProperties, "batchSize", "50");
+        assertFilterProperty(context, eventBusLogProperties, "dropPolicy", "dropOldest");
+        context.assertFalse(eventBusLogProperties.containsKey("batchDelay"));
     }
 
     @Test
@@ -0,0 +1,63 @@
+package org.swisspush.gateleen.logging;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.StringWriter;
+
+/**
+ * Tests for the {@link PayloadCapture} class
+ */
+@RunWith(VertxUnitRunner.class)
+public class PayloadCaptureTest {
+
+    @Test
+    public void testCompletePayloadIsCopied(TestContext context) {
+        PayloadCapture capture = new PayloadCapture(PayloadCapture.UNLIMITED);
+        capture.append(Buffer.buffer("{ \"name\" : \"john\",\n"));
+        capture.append(Buffer.buffer("  \"tags\" : [1, 2] }"));
+
+        StringWriter json = new StringWriter();
+        json.write("{\"headers\":{}");
+        context.assertTrue(capture.writeBodyFields(json));
+        json.write('}');
+
+        context.assertFalse(capture.isTruncated());
+        context.assertEquals("{\"headers\":{},\"body\":{\"name\":\"john\",\"tags\":[1,2]}}", json.toString());
+    }
+
+    @Test
+    public void testTruncatedPayload(TestContext context) {
+        PayloadCapture capture = new PayloadCapture(10);
+        capture.append(Buffer.buffer("{\"name\":"));
+        capture.append(Buffer.buffer("\"john\"}"));
+
+        StringWriter json = new StringWriter();
+        json.write("{\"headers\":{}");
+        context.assertTrue(capture.writeBodyFields(json));
+        json.write('}');
+
+        context.assertTrue(capture.isTruncated());
+        context.assertEquals(15L, capture.size());
+        JsonObject logged = new JsonObject(json.toString());
+        context.assertEquals("{\"name\":\"j", logged.getString(PayloadCapture.BODY));
+        context.assertTrue(logged.getBoolean(PayloadCapture.BODY_TRUNCATED));
+        context.assertEquals(15L, logged.getLong(PayloadCapture.BODY_SIZE));
+    }
+
+    @Test
+    public void testInvalidPayloadIsNotWritten(TestContext context) {
+        for (String payload : new String[]{"{\"name\":", "\"john\"", "{} trailing", "not json"}) {
+            PayloadCapture capture = new PayloadCapture(PayloadCapture.UNLIMITED);
+            capture.append(Buffer.buffer(payload));
+            StringWriter json = new StringWriter();
+            json.write("{\"headers\":{}");
+            context.assertFalse(capture.writeBodyFields(json), payload);
+            context.assertEquals("{\"headers\":{}", json.toString(), payload);
+        }
+    }
+}
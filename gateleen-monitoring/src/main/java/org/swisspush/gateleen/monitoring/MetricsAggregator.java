@@ -0,0 +1,195 @@
+package org.swisspush.gateleen.monitoring;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.Vertx;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates metrics in-process and flushes them periodically to a {@link MetricsPublisher} and / or a
+ * {@link MeterRegistry}. Recording a value is lock-free and does neither create json objects nor send event bus
+ * messages.
+ * <p>
+ * Counters are published with their total value, gauges with their current value and timers with the mean and the
+ * max duration [ms] of the values recorded since the last flush (suffix <code>.max</code>). When a
+ * {@link MeterRegistry} is used, the metrics are registered as {@link FunctionCounter}, {@link Gauge} and
+ * {@link FunctionTimer} on the first flush after their creation.
+ */
+public class MetricsAggregator {
+
+    public static final long DEFAULT_FLUSH_INTERVAL = 10000; // 10 seconds
+    public static final String MAX_SUFFIX = ".max";
+
+    private static final Logger log = LoggerFactory.getLogger(MetricsAggregator.class);
+
+    private final Vertx vertx;
+    private final MetricsPublisher metricsPublisher;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, CounterMetric> counters = new ConcurrentHashMap<>();
+    private final Map<String, TimerMetric> timers = new ConcurrentHashMap<>();
+    private final long flushTimerId;
+
+    /**
+     * @param vertx vertx
+     * @param flushInterval the interval [ms] to flush the aggregated metrics
+     * @param metricsPublisher the publisher to flush the metrics to or <code>null</code>
+     * @param meterRegistry the registry to register the metrics to or <code>null</code>
+     */
+    public MetricsAggregator(Vertx vertx, long flushInterval, @Nullable MetricsPublisher metricsPublisher,
+                             @Nullable MeterRegistry meterRegistry) {
+        this.vertx = vertx;
+        this.metricsPublisher = metricsPublisher;
+        this.meterRegistry = meterRegistry;
+        this.flushTimerId = vertx.setPeriodic(flushInterval, event -> flush());
+        log.info("Aggregating metrics in-process with a flush interval of [ms] {}", flushInterval);
+    }
+
+    /**
+     * Get the counter with the provided name. Counters are published with their total value.
+     *
+     * @param name the name of the metric
+     * @return the counter
+     */
+    public CounterMetric counter(String name) {
+        return counters.computeIfAbsent(name, n -> new CounterMetric(n, false));
+    }
+
+    /**
+     * Get the gauge with the provided name. Gauges are counters which are published with their current value.
+     *
+     * @param name the name of the metric
+     * @return the gauge
+     */
+    public CounterMetric gauge(String name) {
+        return counters.computeIfAbsent(name, n -> new CounterMetric(n, true));
+    }
+
+    /**
+     * Get the timer with the provided name.
+     *
+     * @param name the name of the metric
+     * @return the timer
+     */
+    public TimerMetric timer(String name) {
+        return timers.computeIfAbsent(name, TimerMetric::new);
+    }
+
+    /**
+     * Flushes the aggregated metrics. This method is called periodically and must not be called concurrently.
+     */
+    public void flush() {
+        for (CounterMetric counter : counters.values()) {
+            if (meterRegistry != null && !counter.registered) {
+                register(counter);
+            }
+            if (metricsPublisher != null) {
+                metricsPublisher.publishMetric(counter.name, counter.value());
+            }
+        }
+        for (TimerMetric timer : timers.values()) {
+            if (meterRegistry != null && !timer.registered) {
+                register(timer);
+            }
+            long count = timer.count.sum();
+            long totalNanos = timer.totalNanos.sum();
+            long maxNanos = timer.maxNanos.getAndSet(0);
+            long countSinceFlush = count - timer.flushedCount;
+            if (metricsPublisher != null && countSinceFlush > 0) {
+                long meanNanos = (totalNanos - timer.flushedTotalNanos) / countSinceFlush;
+                metricsPublisher.publishMetric(timer.name, TimeUnit.NANOSECONDS.toMillis(meanNanos));
+                metricsPublisher.publishMetric(timer.name + MAX_SUFFIX, TimeUnit.NANOSECONDS.toMillis(maxNanos));
+            }
+            timer.flushedCount = count;
+            timer.flushedTotalNanos = totalNanos;
+        }
+    }
+
+    /**
+     * Stops the periodic flush and flushes the aggregated metrics one last time.
+     */
+    public void close() {
+        vertx.cancelTimer(flushTimerId);
+        flush();
+    }
+
+    private void register(CounterMetric counter) {
+        if (counter.gauge) {
+            Gauge.builder(counter.name, counter, CounterMetric::value).register(meterRegistry);
+        } else {
+            FunctionCounter.builder(counter.name, counter, CounterMetric::value).register(meterRegistry);
+        }
+        counter.registered = true;
+    }
+
+    private void register(TimerMetric timer) {
+        FunctionTimer.builder(timer.name, timer, t -> t.count.sum(), t -> t.totalNanos.sum(), TimeUnit.NANOSECONDS)
+                .register(meterRegistry);
+        timer.registered = true;
+    }
+
+    /**
+     * A lock-free counter or gauge
+     */
+    public static class CounterMetric {
+        private final String name;
+        private final boolean gauge;
+        private final LongAdder value = new LongAdder();
+        private boolean registered;
+
+        CounterMetric(String name, boolean gauge) {
+            this.name = name;
+            this.gauge = gauge;
+        }
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void decrement() {
+            value.decrement();
+        }
+
+        public long value() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * A lock-free timer
+     */
+    public static class TimerMetric {
+        private final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private long flushedCount;
+        private long flushedTotalNanos;
+        private boolean registered;
+
+        TimerMetric(String name) {
+            this.name = name;
+        }
+
+        public void record(long durationNanos) {
+            count.increment();
+            totalNanos.add(durationNanos);
+            if (durationNanos > maxNanos.get()) {
+                maxNanos.accumulateAndGet(durationNanos, Math::max);
+            }
+        }
+
+        public long count() {
+            return count.sum();
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package org.swisspush.gateleen.monitoring;
 
 import com.google.common.collect.Ordering;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
 import io.vertx.core.MultiMap;
@@ -8,6 +11,7 @@ import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.eventbus.Message;
 
+import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
@@ -15,14 +19,19 @@ import io.vertx.redis.client.impl.RedisClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.swisspush.gateleen.core.http.RequestLoggerFactory;
+import org.swisspush.gateleen.core.metrics.LatencyHistograms;
 import org.swisspush.gateleen.core.storage.ResourceStorage;
 import org.swisspush.gateleen.core.util.Address;
 import org.swisspush.gateleen.core.util.HttpServerRequestUtil;
 import org.swisspush.gateleen.core.util.StatusCode;
 import org.swisspush.gateleen.core.util.StringUtils;
 
+import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.swisspush.redisques.util.RedisquesAPI.*;
 
@@ -44,7 +53,7 @@ public class MonitoringHandler {
     private boolean requestPerRuleMonitoringActive;
     private String requestPerRuleMonitoringProperty;
     private final String requestPerRuleMonitoringPath;
-    private Map<String, Long> requestPerRuleMonitoringMap;
+    private RequestPerRuleCounter requestPerRuleCounter;
 
     private static Logger log = LoggerFactory.getLogger(MonitoringHandler.class);
 
@@ -58,6 +67,16 @@ public class MonitoringHandler {
 
     public static final String ENQUEUE_METRIC = "queues.enqueue";
     public static final String DEQUEUE_METRIC = "queues.dequeue";
+    public static final String QUEUE_BACKLOG_METRIC = "queues.backlog.size";
+
+    public static final String QUEUE_DELIVERY_LAG_METRIC_NAME = "gateleen.queue.delivery.lag";
+    public static final String QUEUE_DELIVERY_DURATION_METRIC_NAME = "gateleen.queue.delivery.duration";
+    public static final String QUEUE_BACKLOG_METRIC_NAME = "gateleen.queue.backlog";
+    public static final String QUEUE_METRIC_TAG_PREFIX = "prefix";
+    public static final String QUEUE_METRIC_TAG_OUTCOME = "outcome";
+    public static final String QUEUE_OUTCOME_SUCCESS = "success";
+    public static final String QUEUE_OUTCOME_FAILURE = "failure";
+    public static final String OTHER_QUEUE_PREFIX = "other";
 
     public static final String LISTENER_COUNT_METRIC = "hooks.listener.count";
     public static final String ROUTE_COUNT_METRIC = "hooks.route.count";
@@ -75,15 +94,35 @@ public class MonitoringHandler {
     public static final String REQUEST_PER_RULE_EXPIRY_PROPERTY = "org.swisspush.request.rule.expiry";
     public static final long REQUEST_PER_RULE_DEFAULT_SAMPLING = 60000; // 60 seconds
     public static final long REQUEST_PER_RULE_DEFAULT_EXPIRY = 86400; // 24 hours
+    public static final String REQUEST_PER_RULE_CAPACITY_PROPERTY = "org.swisspush.request.rule.capacity";
+    public static final String REQUEST_PER_RULE_WINDOWS_PROPERTY = "org.swisspush.request.rule.windows";
+    public static final int REQUEST_PER_RULE_DEFAULT_CAPACITY = 1024;
+    public static final int REQUEST_PER_RULE_DEFAULT_WINDOWS = 5;
+    public static final String REQUEST_PER_RULE_SUMMARY = "_summary";
     private final String UNKNOWN_VALUE = "unknown";
     private final String EXPIRE_AFTER_HEADER = "x-expire-after";
 
     private String prefix;
     private long requestPerRuleSampling;
     private long requestPerRuleExpiry;
+    private int requestPerRuleWindows;
     private final UUID uuid;
     private final List<Handler<Message<JsonObject>>> receivers = new ArrayList<>();
 
+    private MeterRegistry meterRegistry;
+    private List<String> queueMetricPrefixes = Collections.emptyList();
+    private final Map<String, Timer> queueDeliveryTimers = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> queueBacklogs = new ConcurrentHashMap<>();
+
+    private MetricsAggregator metricsAggregator;
+    private MetricsAggregator.CounterMetric incomingRequestsCounter;
+    private MetricsAggregator.CounterMetric backendRequestsCounter;
+    private MetricsAggregator.CounterMetric clientRequestsCounter;
+    private MetricsAggregator.CounterMetric pendingRequestsGauge;
+    private final Map<String, MetricsAggregator.CounterMetric> routingCounters = new ConcurrentHashMap<>();
+    private final Map<String, MetricsAggregator.TimerMetric> routingTimers = new ConcurrentHashMap<>();
+    private LatencyHistograms latencyHistograms;
+
     public interface MonitoringCallback {
 
         void onDone(JsonObject result);
@@ -93,6 +132,8 @@ public class MonitoringHandler {
 
     private interface QueueLengthCollectingCallback {
         void onDone(List<Map.Entry<String, Long>> mapEntries);
+
+        void onFail(String errorMessage);
     }
 
     /**
@@ -142,7 +183,6 @@ public class MonitoringHandler {
             final JsonObject body = message.body();
             final String action = body.getString(METRIC_ACTION);
             final String name = body.getString(METRIC_NAME);
-            handleRequestPerRuleMessage(name);
             long now;
             switch (action) {
                 case "set":
@@ -161,6 +201,58 @@ public class MonitoringHandler {
         });
     }
 
+    /**
+     * Set the {@link MeterRegistry} used to record the queue delivery latencies and the queue backlog. Without a
+     * {@link MeterRegistry}, no delivery latencies are recorded and the backlog is not collected.
+     *
+     * @param meterRegistry the registry to register the meters to
+     */
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        queueDeliveryTimers.clear();
+        queueBacklogs.clear();
+    }
+
+    /**
+     * Set the {@link MetricsAggregator} to aggregate the request metrics in-process instead of sending an event bus
+     * message for each request. The request metrics are then no longer passed to the registered receivers.
+     *
+     * @param metricsAggregator the aggregator or <code>null</code> to send the request metrics over the event bus
+     */
+    public void setMetricsAggregator(@Nullable MetricsAggregator metricsAggregator) {
+        routingCounters.clear();
+        routingTimers.clear();
+        if (metricsAggregator != null) {
+            incomingRequestsCounter = metricsAggregator.counter(REQUESTS_INCOMING_NAME);
+            backendRequestsCounter = metricsAggregator.counter(REQUESTS_BACKENDS_NAME);
+            clientRequestsCounter = metricsAggregator.counter(REQUESTS_CLIENT_NAME);
+            pendingRequestsGauge = metricsAggregator.gauge(PENDING_REQUESTS_METRIC);
+        }
+        this.metricsAggregator = metricsAggregator;
+    }
+
+    /**
+     * Set the {@link LatencyHistograms} to additionally record the durations of the routed requests per metricName
+     * in-process. The histograms can be shared with consumers like the QoS evaluation.
+     *
+     * @param latencyHistograms the histograms or <code>null</code> to not record the durations in-process
+     */
+    public void setLatencyHistograms(@Nullable LatencyHistograms latencyHistograms) {
+        this.latencyHistograms = latencyHistograms;
+    }
+
+    /**
+     * Set the queue name prefixes used to group the queue metrics. Queues not matching any of the prefixes are
+     * grouped as {@value #OTHER_QUEUE_PREFIX}. When multiple prefixes match, the longest one is used.
+     *
+     * @param prefixes the queue name prefixes
+     */
+    public void setQueueMetricPrefixes(Collection<String> prefixes) {
+        List<String> sorted = new ArrayList<>(prefixes);
+        sorted.sort(Comparator.comparingInt(String::length).reversed());
+        this.queueMetricPrefixes = sorted;
+    }
+
     /**
      * Register an external receiver interested in monitoring data.
      * @param receiver a handler
@@ -201,18 +293,15 @@ public class MonitoringHandler {
         return str;
     }
 
-    private void handleRequestPerRuleMessage(String metricName){
-        if(StringUtils.isNotEmpty(metricName) && metricName.startsWith(prefix + REQUEST_PER_RULE_PREFIX)){
-            writeRequestPerRuleMonitoringMetricsToStorage(metricName.replaceAll(prefix+REQUEST_PER_RULE_PREFIX, ""));
-        }
-    }
-
     private void initRequestPerRuleMonitoring(){
         requestPerRuleMonitoringProperty = StringUtils.getStringOrEmpty(System.getProperty(REQUEST_PER_RULE_PROPERTY));
         if(StringUtils.isNotEmpty(requestPerRuleMonitoringProperty)){
             requestPerRuleMonitoringActive = true;
             log.info("Activated request per rule monitoring for request header property '{}'", requestPerRuleMonitoringProperty);
             configureSamplingAndExpiry();
+            requestPerRuleWindows = getIntProperty(REQUEST_PER_RULE_WINDOWS_PROPERTY, REQUEST_PER_RULE_DEFAULT_WINDOWS);
+            requestPerRuleCounter = new RequestPerRuleCounter(
+                    getIntProperty(REQUEST_PER_RULE_CAPACITY_PROPERTY, REQUEST_PER_RULE_DEFAULT_CAPACITY), requestPerRuleWindows);
             registerRequestPerRuleMonitoringTimer();
         } else {
             requestPerRuleMonitoringActive = false;
@@ -224,15 +313,28 @@ public class MonitoringHandler {
         return requestPerRuleMonitoringActive;
     }
 
-    private Map<String, Long> getRequestPerRuleMonitoringMap() {
-        if(requestPerRuleMonitoringMap == null){
-            requestPerRuleMonitoringMap = new HashMap<>();
+    private int getIntProperty(String property, int defaultValue){
+        String value = System.getProperty(property, String.valueOf(defaultValue));
+        try {
+            int result = Integer.parseInt(value);
+            if (result > 0) {
+                log.info("Initializing request per rule monitoring with '{}' set to {}", property, result);
+                return result;
+            }
+        } catch (NumberFormatException ex){
+            // handled below
         }
-        return requestPerRuleMonitoringMap;
+        log.warn("Unable to parse system property '{}'. Using default value instead: {}", property, defaultValue);
+        return defaultValue;
     }
 
     private void registerQueueSizeTrackingTimer() {
-        vertx.setPeriodic(QUEUE_SIZE_REFRESH_TIME, event -> updateQueueCountInformation());
+        vertx.setPeriodic(QUEUE_SIZE_REFRESH_TIME, event -> {
+            updateQueueCountInformation();
+            if (meterRegistry != null) {
+                updateQueueBacklogInformation();
+            }
+        });
     }
 
     private void registerRequestPerRuleMonitoringTimer(){
@@ -272,6 +374,10 @@ public class MonitoringHandler {
 
     public void updateIncomingRequests(HttpServerRequest request) {
         if (!HttpServerRequestUtil.isRemoteAddressLoopbackAddress(request) && shouldBeTracked(request.uri())) {
+            if (metricsAggregator != null) {
+                incomingRequestsCounter.increment();
+                return;
+            }
             vertx.eventBus().send(getMonitoringAddress(), new JsonObject().put(METRIC_NAME, prefix + REQUESTS_INCOMING_NAME).put(METRIC_ACTION, MARK));
         }
     }
@@ -280,8 +386,7 @@ public class MonitoringHandler {
         if(isRequestPerRuleMonitoringActive()){
             String headerValue = StringUtils.getStringOrDefault(request.getHeader(requestPerRuleMonitoringProperty), UNKNOWN_VALUE);
             if(StringUtils.isNotEmptyTrimmed(metricName)){
-                String key = headerValue + "." + metricName;
-                getRequestPerRuleMonitoringMap().merge(key, 1L, Long::sum);
+                requestPerRuleCounter.increment(headerValue, metricName);
             } else {
                 Logger requestlog = RequestLoggerFactory.getLogger(MonitoringHandler.class, request);
                 requestlog.warn("Request per rule monitoring is active but was called without a rule metricName. This request will be ignored.");
@@ -290,22 +395,31 @@ public class MonitoringHandler {
     }
 
     private void submitRequestPerRuleMonitoringMetrics(){
-        log.info("About to send {} request per rule monitoring values to metrics", getRequestPerRuleMonitoringMap().size());
-        for (Iterator<Map.Entry<String, Long>> it = getRequestPerRuleMonitoringMap().entrySet().iterator(); it.hasNext(); ) {
-            Map.Entry<String, Long> entry = it.next();
-            vertx.eventBus().send(getMonitoringAddress(),
-                    new JsonObject()
-                            .put(METRIC_NAME, prefix + REQUEST_PER_RULE_PREFIX + entry.getKey())
-                            .put(METRIC_ACTION, SET)
-                            .put("n", entry.getValue()));
-            it.remove();
+        JsonObject closedWindow = requestPerRuleCounter.rotate();
+        log.info("About to send request per rule monitoring values of {} groups to metrics", closedWindow.size());
+        for (String group : closedWindow.fieldNames()) {
+            JsonObject rules = closedWindow.getValue(group) instanceof JsonObject ? closedWindow.getJsonObject(group) : null;
+            if (rules == null) {
+                continue;
+            }
+            for (String rule : rules.fieldNames()) {
+                vertx.eventBus().send(getMonitoringAddress(),
+                        new JsonObject()
+                                .put(METRIC_NAME, prefix + REQUEST_PER_RULE_PREFIX + group + "." + rule)
+                                .put(METRIC_ACTION, SET)
+                                .put("n", rules.getLong(rule)));
+            }
         }
+        writeRequestPerRuleMonitoringMetricsToStorage(requestPerRuleCounter.snapshot());
     }
 
-    private void writeRequestPerRuleMonitoringMetricsToStorage(String name){
+    private void writeRequestPerRuleMonitoringMetricsToStorage(JsonObject snapshot){
         if(StringUtils.isNotEmptyTrimmed(requestPerRuleMonitoringPath)) {
-            String path = requestPerRuleMonitoringPath + "/" + uuid + "/" + name;
-            JsonObject obj = new JsonObject().put("timestamp", System.currentTimeMillis());
+            String path = requestPerRuleMonitoringPath + "/" + uuid;
+            JsonObject obj = new JsonObject()
+                    .put("timestamp", System.currentTimeMillis())
+                    .put("interval", requestPerRuleSampling * requestPerRuleWindows)
+                    .put("rules", snapshot);
             MultiMap headers = MultiMap.caseInsensitiveMultiMap().add(EXPIRE_AFTER_HEADER, String.valueOf(requestPerRuleExpiry));
             storage.put(path, headers, Buffer.buffer(obj.encode()), status -> {
                 if (status != StatusCode.OK.getStatusCode()) {
@@ -317,6 +431,102 @@ public class MonitoringHandler {
         }
     }
 
+    /**
+     * Handles GET requests to <code>&lt;requestPerRulePath&gt;/_summary</code> by merging the request per rule
+     * snapshots of all instances. Snapshots older than their interval plus the sampling period are skipped, as their
+     * instance is not running anymore.
+     *
+     * @param request the request
+     * @return true when the request was handled, false otherwise
+     */
+    public boolean handleRequestPerRuleQuery(HttpServerRequest request){
+        if (requestPerRuleMonitoringPath == null || HttpMethod.GET != request.method()
+                || !request.path().equals(requestPerRuleMonitoringPath + "/" + REQUEST_PER_RULE_SUMMARY)) {
+            return false;
+        }
+        mergeRequestPerRuleSnapshots(result -> {
+            request.response().putHeader("Content-Type", "application/json");
+            request.response().end(result.encodePrettily());
+        });
+        return true;
+    }
+
+    void mergeRequestPerRuleSnapshots(Handler<JsonObject> resultHandler){
+        final JsonObject rules = new JsonObject();
+        final JsonObject result = new JsonObject().put("instances", 0).put("rules", rules);
+        storage.get(requestPerRuleMonitoringPath + "/", listing -> {
+            List<String> instances = new ArrayList<>();
+            if (listing != null) {
+                JsonObject collection = new JsonObject(listing);
+                for (String field : collection.fieldNames()) {
+                    if (collection.getValue(field) instanceof JsonArray) {
+                        for (Object entry : collection.getJsonArray(field)) {
+                            if (entry instanceof String && !((String) entry).endsWith("/")) {
+                                instances.add((String) entry);
+                            }
+                        }
+                    }
+                }
+            }
+            if (instances.isEmpty()) {
+                resultHandler.handle(result);
+                return;
+            }
+            AtomicInteger pending = new AtomicInteger(instances.size());
+            long now = System.currentTimeMillis();
+            for (String instance : instances) {
+                storage.get(requestPerRuleMonitoringPath + "/" + instance, snapshot -> {
+                    if (snapshot != null) {
+                        try {
+                            JsonObject snapshotObject = new JsonObject(snapshot);
+                            if (isCurrentRequestPerRuleSnapshot(snapshotObject, now)) {
+                                mergeRequestPerRuleSnapshot(snapshotObject.getJsonObject("rules"), rules);
+                                result.put("instances", result.getInteger("instances") + 1);
+                            } else {
+                                log.debug("Skipping outdated request per rule snapshot of instance {}", instance);
+                            }
+                        } catch (RuntimeException ex) {
+                            log.warn("Unable to merge request per rule snapshot of instance {}: {}", instance, ex.getMessage());
+                        }
+                    }
+                    if (pending.decrementAndGet() == 0) {
+                        resultHandler.handle(result);
+                    }
+                });
+            }
+        });
+    }
+
+    private boolean isCurrentRequestPerRuleSnapshot(JsonObject snapshot, long now){
+        Long timestamp = snapshot.getLong("timestamp");
+        if (timestamp == null) {
+            return false;
+        }
+        long interval = snapshot.getLong("interval", requestPerRuleSampling * requestPerRuleWindows);
+        return timestamp >= now - interval - requestPerRuleSampling;
+    }
+
+    private void mergeRequestPerRuleSnapshot(JsonObject snapshot, JsonObject target){
+        if (snapshot == null) {
+            return;
+        }
+        for (String group : snapshot.fieldNames()) {
+            Object value = snapshot.getValue(group);
+            if (value instanceof JsonObject) {
+                JsonObject targetGroup = target.getJsonObject(group);
+                if (targetGroup == null) {
+                    targetGroup = new JsonObject();
+                    target.put(group, targetGroup);
+                }
+                for (String rule : ((JsonObject) value).fieldNames()) {
+                    targetGroup.put(rule, targetGroup.getLong(rule, 0L) + ((JsonObject) value).getLong(rule));
+                }
+            } else if (value instanceof Number) {
+                target.put(group, target.getLong(group, 0L) + ((Number) value).longValue());
+            }
+        }
+    }
+
     /**
      * Update the meter values for requests. Requests from clients and requests to other backends are measured separately.
      *
@@ -325,7 +535,9 @@ public class MonitoringHandler {
      */
     public void updateRequestsMeter(String target, String uri) {
         if (shouldBeTracked(uri)) {
-            if (isRequestToExternalTarget(target)) {
+            if (metricsAggregator != null) {
+                (isRequestToExternalTarget(target) ? backendRequestsCounter : clientRequestsCounter).increment();
+            } else if (isRequestToExternalTarget(target)) {
                 vertx.eventBus().send(getMonitoringAddress(), new JsonObject().put(METRIC_NAME, prefix + REQUESTS_BACKENDS_NAME).put(METRIC_ACTION, MARK));
             } else {
                 vertx.eventBus().send(getMonitoringAddress(), new JsonObject().put(METRIC_NAME, prefix + REQUESTS_CLIENT_NAME).put(METRIC_ACTION, MARK));
@@ -345,7 +557,11 @@ public class MonitoringHandler {
         if (shouldBeTracked(targetUri)) {
             if (metricName != null) {
                 time = System.nanoTime();
-                vertx.eventBus().send(getMonitoringAddress(), new JsonObject().put(METRIC_NAME, prefix + "routing." + metricName).put(METRIC_ACTION, MARK));
+                if (metricsAggregator != null) {
+                    routingCounters.computeIfAbsent(metricName, n -> metricsAggregator.counter("routing." + n)).increment();
+                } else {
+                    vertx.eventBus().send(getMonitoringAddress(), new JsonObject().put(METRIC_NAME, prefix + "routing." + metricName).put(METRIC_ACTION, MARK));
+                }
             }
             updatePendingRequestCount(true);
         }
@@ -362,15 +578,32 @@ public class MonitoringHandler {
     public void stopRequestMetricTracking(final String metricName, long startTime, String targetUri) {
         if (shouldBeTracked(targetUri)) {
             if (metricName != null) {
-                double duration = (System.nanoTime() - startTime) / 1000000d;
-                vertx.eventBus().send(getMonitoringAddress(),
-                        new JsonObject().put(METRIC_NAME, prefix + "routing." + metricName + ".duration").put(METRIC_ACTION, "set").put("n", duration));
+                long durationNanos = System.nanoTime() - startTime;
+                if (latencyHistograms != null) {
+                    latencyHistograms.record(metricName, durationNanos);
+                }
+                if (metricsAggregator != null) {
+                    routingTimers.computeIfAbsent(metricName, n -> metricsAggregator.timer("routing." + n + ".duration"))
+                            .record(durationNanos);
+                } else {
+                    double duration = durationNanos / 1000000d;
+                    vertx.eventBus().send(getMonitoringAddress(),
+                            new JsonObject().put(METRIC_NAME, prefix + "routing." + metricName + ".duration").put(METRIC_ACTION, "set").put("n", duration));
+                }
             }
             updatePendingRequestCount(false);
         }
     }
 
     private void updatePendingRequestCount(boolean incrementCount) {
+        if (metricsAggregator != null) {
+            if (incrementCount) {
+                pendingRequestsGauge.increment();
+            } else {
+                pendingRequestsGauge.decrement();
+            }
+            return;
+        }
         final String action = incrementCount ? "inc" : "dec";
         log.trace("Updating count for pending requests: {} remaining", action);
         vertx.eventBus().send(getMonitoringAddress(), new JsonObject().put(METRIC_NAME, prefix + PENDING_REQUESTS_METRIC).put(METRIC_ACTION, action));
@@ -415,58 +648,150 @@ public class MonitoringHandler {
      * @param callback the callback returning the result
      */
     public void updateQueuesSizesInformation(final int numQueues, final boolean showEmptyQueues, final MonitoringCallback callback) {
-        final JsonObject resultObject = new JsonObject();
-        final JsonArray queuesArray = new JsonArray();
-        vertx.eventBus().request(getRedisquesAddress(), buildGetQueuesOperation(), (Handler<AsyncResult<Message<JsonObject>>>) reply -> {
-            if (reply.succeeded() && OK.equals(reply.result().body().getString(STATUS))) {
-                final List<String> queueNames = reply.result().body().getJsonObject(VALUE).getJsonArray("queues").getList();
-                collectQueueLengths(queueNames, numQueues, showEmptyQueues, mapEntries -> {
-                    for (Map.Entry<String, Long> entry : mapEntries) {
-                        JsonObject obj = new JsonObject();
-                        obj.put(METRIC_NAME, entry.getKey());
-                        obj.put("size", entry.getValue());
-                        queuesArray.add(obj);
-                    }
-                    resultObject.put("queues", queuesArray);
-                    callback.onDone(resultObject);
-                });
-            } else {
-                String error = "Error gathering names of active queues";
-                log.error(error);
-                callback.onFail(error, StatusCode.INTERNAL_SERVER_ERROR.getStatusCode());
+        collectQueueLengths(showEmptyQueues, new QueueLengthCollectingCallback() {
+            @Override
+            public void onDone(List<Map.Entry<String, Long>> mapEntries) {
+                sortResultMap(mapEntries);
+                final JsonArray queuesArray = new JsonArray();
+                for (Map.Entry<String, Long> entry : mapEntries.subList(0, Math.min(mapEntries.size(), Math.max(0, numQueues)))) {
+                    JsonObject obj = new JsonObject();
+                    obj.put(METRIC_NAME, entry.getKey());
+                    obj.put("size", entry.getValue());
+                    queuesArray.add(obj);
+                }
+                callback.onDone(new JsonObject().put("queues", queuesArray));
             }
-    });
-    }
-
-    private void collectQueueLengths(final List<String> queueNames, final int numOfQueues, final boolean showEmptyQueues, final QueueLengthCollectingCallback callback) {
-        final SortedMap<String, Long> resultMap = new TreeMap<>();
-        final List<Map.Entry<String, Long>> mapEntryList = new ArrayList<>();
-        final AtomicInteger subCommandCount = new AtomicInteger(queueNames.size());
-        if (!queueNames.isEmpty()) {
-            for (final String name : queueNames) {
-                vertx.eventBus().request(getRedisquesAddress(), buildGetQueueItemsCountOperation(name), (Handler<AsyncResult<Message<JsonObject>>>) reply -> {
-                    subCommandCount.decrementAndGet();
-                    if (reply.succeeded() && OK.equals(reply.result().body().getString(STATUS))) {
-                        final long count = reply.result().body().getLong(VALUE);
-                        if (showEmptyQueues || count > 0) {
-                            resultMap.put(name, count);
-                        }
-                    } else {
-                        log.error("Error gathering size of queue {}", name);
-                    }
 
-                    if (subCommandCount.get() == 0) {
-                        mapEntryList.addAll(resultMap.entrySet());
-                        sortResultMap(mapEntryList);
-                        int toIndex = numOfQueues > queueNames.size() ? queueNames.size() : numOfQueues;
-                        toIndex = Math.min(mapEntryList.size(), toIndex);
-                        callback.onDone(mapEntryList.subList(0, toIndex));
+            @Override
+            public void onFail(String errorMessage) {
+                callback.onFail(errorMessage, StatusCode.INTERNAL_SERVER_ERROR.getStatusCode());
+            }
+        });
+    }
+
+    /**
+     * Updates the backlog (sum of the queue items) per queue prefix. The sizes of all queues are read with a single
+     * request to redisques.
+     */
+    public void updateQueueBacklogInformation() {
+        collectQueueLengths(false, new QueueLengthCollectingCallback() {
+            @Override
+            public void onDone(List<Map.Entry<String, Long>> mapEntries) {
+                Map<String, Long> backlogs = new HashMap<>();
+                long total = 0;
+                for (Map.Entry<String, Long> entry : mapEntries) {
+                    backlogs.merge(getQueueMetricPrefix(entry.getKey()), entry.getValue(), Long::sum);
+                    total += entry.getValue();
+                }
+                for (Map.Entry<String, AtomicLong> backlog : queueBacklogs.entrySet()) {
+                    backlog.getValue().set(backlogs.getOrDefault(backlog.getKey(), 0L));
+                }
+                for (Map.Entry<String, Long> backlog : backlogs.entrySet()) {
+                    getOrCreateQueueBacklog(backlog.getKey()).set(backlog.getValue());
+                }
+                vertx.eventBus().send(getMonitoringAddress(), new JsonObject().put(METRIC_NAME, prefix + QUEUE_BACKLOG_METRIC).put(METRIC_ACTION, SET).put("n", total));
+            }
+
+            @Override
+            public void onFail(String errorMessage) {
+                log.error(errorMessage);
+            }
+        });
+    }
+
+    /**
+     * Get the current backlog of the provided queue prefix as collected by {@link #updateQueueBacklogInformation()}
+     *
+     * @param queuePrefix the queue prefix
+     * @return the backlog or <code>null</code> when no backlog was collected for this queue prefix
+     */
+    @Nullable
+    public Long getQueueBacklog(String queuePrefix) {
+        AtomicLong backlog = queueBacklogs.get(queuePrefix);
+        return backlog == null ? null : backlog.get();
+    }
+
+    private AtomicLong getOrCreateQueueBacklog(String queuePrefix) {
+        MeterRegistry registry = meterRegistry;
+        return queueBacklogs.computeIfAbsent(queuePrefix, p -> {
+            AtomicLong backlog = new AtomicLong();
+            if (registry != null) {
+                Gauge.builder(QUEUE_BACKLOG_METRIC_NAME, backlog, AtomicLong::get)
+                        .description("Amount of queue items waiting to be delivered")
+                        .tag(QUEUE_METRIC_TAG_PREFIX, p)
+                        .register(registry);
+            }
+            return backlog;
+        });
+    }
+
+    private void collectQueueLengths(final boolean showEmptyQueues, final QueueLengthCollectingCallback callback) {
+        vertx.eventBus().request(getRedisquesAddress(), buildGetQueuesItemsCountOperation(null), (Handler<AsyncResult<Message<JsonObject>>>) reply -> {
+            if (reply.failed() || !OK.equals(reply.result().body().getString(STATUS))) {
+                callback.onFail("Error gathering sizes of active queues");
+                return;
+            }
+            final List<Map.Entry<String, Long>> mapEntryList = new ArrayList<>();
+            JsonArray queues = reply.result().body().getJsonArray(QUEUES);
+            if (queues != null) {
+                for (int i = 0; i < queues.size(); i++) {
+                    JsonObject queue = queues.getJsonObject(i);
+                    long count = queue.getLong(SIZE, 0L);
+                    if (showEmptyQueues || count > 0) {
+                        mapEntryList.add(new AbstractMap.SimpleImmutableEntry<>(queue.getString(NAME), count));
                     }
-                });
+                }
             }
-        } else {
             callback.onDone(mapEntryList);
+        });
+    }
+
+    /**
+     * Records a delivery of a queued request. The delivery duration is recorded per queue prefix and outcome. For
+     * successful deliveries, the time between enqueueing and delivering the request is recorded too. Nothing is
+     * recorded when no {@link MeterRegistry} is set.
+     *
+     * @param queue the name of the queue
+     * @param enqueueTimestamp the time [ms] the request was enqueued or <code>null</code> when unknown
+     * @param durationNanos the duration of the delivery in nanoseconds
+     * @param success whether the delivery was successful or not
+     */
+    public void updateQueueDelivery(String queue, @Nullable Long enqueueTimestamp, long durationNanos, boolean success) {
+        MeterRegistry registry = meterRegistry;
+        if (registry == null) {
+            return;
+        }
+        String queuePrefix = getQueueMetricPrefix(queue);
+        String outcome = success ? QUEUE_OUTCOME_SUCCESS : QUEUE_OUTCOME_FAILURE;
+        queueDeliveryTimers.computeIfAbsent(QUEUE_DELIVERY_DURATION_METRIC_NAME + "." + queuePrefix + "." + outcome,
+                k -> Timer.builder(QUEUE_DELIVERY_DURATION_METRIC_NAME)
+                        .description("Duration of the delivery of queued requests")
+                        .publishPercentiles(0.75, 0.95, 0.99)
+                        .tag(QUEUE_METRIC_TAG_PREFIX, queuePrefix)
+                        .tag(QUEUE_METRIC_TAG_OUTCOME, outcome)
+                        .register(registry)).record(durationNanos, TimeUnit.NANOSECONDS);
+
+        if (success && enqueueTimestamp != null) {
+            long lag = Math.max(0, System.currentTimeMillis() - enqueueTimestamp);
+            queueDeliveryTimers.computeIfAbsent(QUEUE_DELIVERY_LAG_METRIC_NAME + "." + queuePrefix,
+                    k -> Timer.builder(QUEUE_DELIVERY_LAG_METRIC_NAME)
+                            .description("Time between enqueueing and successfully delivering queued requests")
+                            .publishPercentiles(0.5, 0.95, 0.99)
+                            .publishPercentileHistogram()
+                            .tag(QUEUE_METRIC_TAG_PREFIX, queuePrefix)
+                            .register(registry)).record(lag, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    String getQueueMetricPrefix(String queue) {
+        if (queue != null) {
+            for (String queuePrefix : queueMetricPrefixes) {
+                if (queue.startsWith(queuePrefix)) {
+                    return queuePrefix;
+                }
+            }
         }
+        return OTHER_QUEUE_PREFIX;
     }
 
     public void updateEnqueue() {
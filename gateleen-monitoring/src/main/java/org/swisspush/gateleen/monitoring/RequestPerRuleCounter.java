@@ -0,0 +1,148 @@
+package org.swisspush.gateleen.monitoring;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Counts the requests per group (request header value) and routing rule with a fixed amount of memory. The counts
+ * are kept in a ring of windows. Each call of {@link #rotate()} closes the current window and starts a new one,
+ * replacing the oldest window.
+ * <p>
+ * Counting a request does not allocate any objects, except for the first request of a group and routing rule
+ * combination. When all slots are taken, the requests of new combinations are counted as overflow. The slots of
+ * combinations not counted in any window are freed on {@link #rotate()}.
+ */
+class RequestPerRuleCounter {
+
+    static final String OVERFLOW = "overflow";
+    private static final int MAX_PROBES = 16;
+
+    private final int capacity;
+    private final AtomicReferenceArray<RuleKey> keys;
+    private final AtomicLongArray[] windows;
+    private volatile int current;
+
+    /**
+     * @param capacity the maximum amount of group and routing rule combinations
+     * @param windowCount the amount of windows kept in the ring
+     */
+    RequestPerRuleCounter(int capacity, int windowCount) {
+        if (capacity < 1 || windowCount < 1) {
+            throw new IllegalArgumentException("capacity and windowCount must be greater than 0");
+        }
+        this.capacity = capacity;
+        this.keys = new AtomicReferenceArray<>(capacity);
+        this.windows = new AtomicLongArray[windowCount];
+        for (int i = 0; i < windowCount; i++) {
+            // the additional last slot holds the overflow count
+            windows[i] = new AtomicLongArray(capacity + 1);
+        }
+    }
+
+    void increment(String group, String rule) {
+        windows[current].incrementAndGet(slot(group, rule));
+    }
+
+    /**
+     * Closes the current window and starts a new one. Must not be called concurrently.
+     *
+     * @return returns the counts of the closed window
+     */
+    JsonObject rotate() {
+        int closed = current;
+        int next = (closed + 1) % windows.length;
+        AtomicLongArray nextWindow = windows[next];
+        for (int i = 0; i < nextWindow.length(); i++) {
+            nextWindow.set(i, 0);
+        }
+        current = next;
+        releaseUnusedSlots();
+        return toJson(closed, closed);
+    }
+
+    /**
+     * @return returns the counts summed up over all windows
+     */
+    JsonObject snapshot() {
+        return toJson(0, windows.length - 1);
+    }
+
+    private void releaseUnusedSlots() {
+        for (int slot = 0; slot < capacity; slot++) {
+            if (keys.get(slot) != null && isUnused(slot)) {
+                keys.set(slot, null);
+            }
+        }
+    }
+
+    private boolean isUnused(int slot) {
+        for (AtomicLongArray window : windows) {
+            if (window.get(slot) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private JsonObject toJson(int fromWindow, int toWindow) {
+        JsonObject result = new JsonObject();
+        for (int slot = 0; slot <= capacity; slot++) {
+            long count = 0;
+            for (int w = fromWindow; w <= toWindow; w++) {
+                count += windows[w].get(slot);
+            }
+            if (count == 0) {
+                continue;
+            }
+            RuleKey key = slot == capacity ? null : keys.get(slot);
+            if (key == null) {
+                // a request counted while its slot was released is counted as overflow
+                result.put(OVERFLOW, result.getLong(OVERFLOW, 0L) + count);
+            } else {
+                JsonObject group = result.getJsonObject(key.group);
+                if (group == null) {
+                    group = new JsonObject();
+                    result.put(key.group, group);
+                }
+                // a released slot breaks the probe sequence, so a combination can occupy more than one slot
+                group.put(key.rule, group.getLong(key.rule, 0L) + count);
+            }
+        }
+        return result;
+    }
+
+    private int slot(String group, String rule) {
+        int hash = 31 * group.hashCode() + rule.hashCode();
+        hash ^= (hash >>> 16);
+        for (int probe = 0; probe < Math.min(MAX_PROBES, capacity); probe++) {
+            int index = Math.floorMod(hash + probe, capacity);
+            RuleKey key = keys.get(index);
+            if (key == null) {
+                if (keys.compareAndSet(index, null, new RuleKey(group, rule))) {
+                    return index;
+                }
+                key = keys.get(index);
+            }
+            if (key.matches(group, rule)) {
+                return index;
+            }
+        }
+        return capacity;
+    }
+
+    private static class RuleKey {
+        private final String group;
+        private final String rule;
+
+        RuleKey(String group, String rule) {
+            this.group = group;
+            this.rule = rule;
+        }
+
+        boolean matches(String group, String rule) {
+            return this.group.equals(group) && this.rule.equals(rule);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.swisspush.gateleen.monitoring;
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for the {@link MetricsAggregator} class
+ */
+@RunWith(VertxUnitRunner.class)
+public class MetricsAggregatorTest {
+
+    private Vertx vertx;
+    private MetricsPublisher publisher;
+    private SimpleMeterRegistry meterRegistry;
+    private MetricsAggregator aggregator;
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+        publisher = Mockito.mock(MetricsPublisher.class);
+        meterRegistry = new SimpleMeterRegistry();
+        aggregator = new MetricsAggregator(vertx, 60000, publisher, meterRegistry);
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void testCountersAndGauges(TestContext context) {
+        aggregator.counter("requests.incoming").increment();
+        aggregator.counter("requests.incoming").increment();
+        MetricsAggregator.CounterMetric pending = aggregator.gauge("requests.pending.count");
+        pending.increment();
+        pending.increment();
+        pending.decrement();
+
+        aggregator.flush();
+
+        verify(publisher).publishMetric("requests.incoming", 2);
+        verify(publisher).publishMetric("requests.pending.count", 1);
+        context.assertEquals(2.0, meterRegistry.get("requests.incoming").functionCounter().count());
+        context.assertEquals(1.0, meterRegistry.get("requests.pending.count").gauge().value());
+
+        aggregator.counter("requests.incoming").increment();
+        context.assertEquals(3.0, meterRegistry.get("requests.incoming").functionCounter().count());
+    }
+
+    @Test
+    public void testTimers(TestContext context) {
+        MetricsAggregator.TimerMetric timer = aggregator.timer("routing.rule.duration");
+        timer.record(TimeUnit.MILLISECONDS.toNanos(10));
+        timer.record(TimeUnit.MILLISECONDS.toNanos(30));
+
+        aggregator.flush();
+
+        verify(publisher).publishMetric("routing.rule.duration", 20);
+        verify(publisher).publishMetric("routing.rule.duration.max", 30);
+        FunctionTimer functionTimer = meterRegistry.get("routing.rule.duration").functionTimer();
+        context.assertEquals(2.0, functionTimer.count());
+        context.assertEquals(40.0, functionTimer.totalTime(TimeUnit.MILLISECONDS));
+
+        // only the values recorded since the last flush are published
+        Mockito.reset(publisher);
+        timer.record(TimeUnit.MILLISECONDS.toNanos(5));
+        aggregator.flush();
+        verify(publisher).publishMetric("routing.rule.duration", 5);
+        verify(publisher).publishMetric("routing.rule.duration.max", 5);
+
+        // nothing recorded, nothing published
+        Mockito.reset(publisher);
+        aggregator.flush();
+        verify(publisher, never()).publishMetric(eq("routing.rule.duration"), anyLong());
+    }
+
+    @Test
+    public void testWithoutPublisher(TestContext context) {
+        MetricsAggregator registryOnly = new MetricsAggregator(vertx, 60000, null, meterRegistry);
+        registryOnly.counter("requests.backends").increment();
+        registryOnly.close();
+
+        verify(publisher, never()).publishMetric(anyString(), anyLong());
+        context.assertEquals(1.0, meterRegistry.get("requests.backends").functionCounter().count());
+    }
+}
@@ -1,11 +1,15 @@
 package org.swisspush.gateleen.monitoring;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import io.vertx.core.Handler;
 import io.vertx.core.MultiMap;
 import io.vertx.core.Vertx;
 import io.vertx.core.eventbus.Message;
 
 import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
@@ -16,11 +20,15 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
 import org.swisspush.gateleen.core.http.DummyHttpServerRequest;
+import org.swisspush.gateleen.core.metrics.LatencyHistograms;
 import org.swisspush.gateleen.core.storage.MockResourceStorage;
 import org.swisspush.gateleen.core.util.Address;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import static org.awaitility.Awaitility.await;
 import static org.awaitility.Durations.TWO_SECONDS;
 import static org.mockito.ArgumentMatchers.any;
@@ -132,14 +140,196 @@ public class MonitoringHandlerTest {
         request.addHeader(PROPERTY_NAME, "my_value_123");
         mh.updateRequestPerRuleMonitoring(request, "a_fancy_rule");
 
-        await().atMost(TWO_SECONDS).until(storageContainsData("my_value_123.a_fancy_rule"));
+        await().atMost(TWO_SECONDS).until(storageContainsData(REQUEST_PER_RULE_MONITORING_PATH,
+                new JsonObject().put("my_value_123", new JsonObject().put("a_fancy_rule", 1))));
     }
 
-    private Callable<Boolean> storageContainsData(String valueToLookFor) {
+    @Test
+    public void testMergeRequestPerRuleSnapshots(TestContext testContext){
+        Async async = testContext.async();
+        activateRequestPerRuleMonitoring(true);
+        MonitoringHandler mh = new MonitoringHandler(vertx, storage, PREFIX, REQUEST_PER_RULE_MONITORING_PATH);
+
+        long now = System.currentTimeMillis();
+        storage.putMockData(REQUEST_PER_RULE_MONITORING_PATH + "/", new JsonObject().put("rpr", new JsonArray()
+                .add("instance_1").add("instance_2").add("instance_3").add("instance_4")).encode());
+        storage.putMockData(REQUEST_PER_RULE_MONITORING_PATH + "/instance_1", new JsonObject()
+                .put("timestamp", now).put("interval", 60000)
+                .put("rules", new JsonObject()
+                        .put("grp_1", new JsonObject().put("rule_a", 5).put("rule_b", 1))).encode());
+        storage.putMockData(REQUEST_PER_RULE_MONITORING_PATH + "/instance_2", new JsonObject()
+                .put("timestamp", now - 1000).put("interval", 60000)
+                .put("rules", new JsonObject()
+                        .put("grp_1", new JsonObject().put("rule_a", 2))
+                        .put("grp_2", new JsonObject().put("rule_a", 7))
+                        .put("overflow", 3)).encode());
+        // the snapshot of an instance not running anymore
+        storage.putMockData(REQUEST_PER_RULE_MONITORING_PATH + "/instance_4", new JsonObject()
+                .put("timestamp", now - 3600000).put("interval", 60000)
+                .put("rules", new JsonObject()
+                        .put("grp_1", new JsonObject().put("rule_a", 100))).encode());
+
+        mh.mergeRequestPerRuleSnapshots(result -> {
+            testContext.assertEquals(2, result.getInteger("instances"));
+            JsonObject rules = result.getJsonObject("rules");
+            testContext.assertEquals(7L, rules.getJsonObject("grp_1").getLong("rule_a"));
+            testContext.assertEquals(1L, rules.getJsonObject("grp_1").getLong("rule_b"));
+            testContext.assertEquals(7L, rules.getJsonObject("grp_2").getLong("rule_a"));
+            testContext.assertEquals(3L, rules.getLong("overflow"));
+            async.complete();
+        });
+    }
+
+    @Test
+    public void testUpdateQueuesSizesInformation(TestContext testContext){
+        Async async = testContext.async();
+        AtomicInteger redisquesRequests = registerRedisquesQueuesItemsCount(new JsonArray()
+                .add(queueItemsCount("queue-a", 3))
+                .add(queueItemsCount("queue-b", 0))
+                .add(queueItemsCount("queue-c", 12))
+                .add(queueItemsCount("queue-d", 5)));
+
+        MonitoringHandler mh = new MonitoringHandler(vertx, storage, PREFIX);
+        mh.updateQueuesSizesInformation(2, false, new MonitoringHandler.MonitoringCallback() {
+            @Override
+            public void onDone(JsonObject result) {
+                JsonArray queues = result.getJsonArray("queues");
+                testContext.assertEquals(2, queues.size());
+                testContext.assertEquals(new JsonObject().put("name", "queue-c").put("size", 12L), queues.getJsonObject(0));
+                testContext.assertEquals(new JsonObject().put("name", "queue-d").put("size", 5L), queues.getJsonObject(1));
+                testContext.assertEquals(1, redisquesRequests.get(), "queue sizes should be read with a single request");
+                async.complete();
+            }
+
+            @Override
+            public void onFail(String errorMessage, int statusCode) {
+                testContext.fail(errorMessage);
+            }
+        });
+    }
+
+    @Test
+    public void testUpdateQueueBacklogInformation(TestContext testContext){
+        registerRedisquesQueuesItemsCount(new JsonArray()
+                .add(queueItemsCount("hook-queue-1", 3))
+                .add(queueItemsCount("hook-queue-2", 4))
+                .add(queueItemsCount("some-queue", 12)));
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MonitoringHandler mh = new MonitoringHandler(vertx, storage, PREFIX);
+        mh.setMeterRegistry(meterRegistry);
+        mh.setQueueMetricPrefixes(List.of("hook-queue-", "hook-"));
+        mh.updateQueueBacklogInformation();
+
+        await().atMost(TWO_SECONDS).until(() -> mh.getQueueBacklog("hook-queue-") != null && mh.getQueueBacklog("other") != null);
+        testContext.assertEquals(7L, mh.getQueueBacklog("hook-queue-"));
+        testContext.assertEquals(12L, mh.getQueueBacklog("other"));
+        testContext.assertNull(mh.getQueueBacklog("hook-"));
+
+        Gauge gauge = meterRegistry.get(MonitoringHandler.QUEUE_BACKLOG_METRIC_NAME)
+                .tag(MonitoringHandler.QUEUE_METRIC_TAG_PREFIX, "hook-queue-").gauge();
+        testContext.assertEquals(7.0, gauge.value());
+    }
+
+    @Test
+    public void testUpdateQueueDelivery(TestContext testContext){
+        MonitoringHandler mh = new MonitoringHandler(vertx, storage, PREFIX);
+
+        // no meter registry, nothing to record
+        mh.updateQueueDelivery("hook-queue-1", System.currentTimeMillis(), 1000, true);
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        mh.setMeterRegistry(meterRegistry);
+        mh.setQueueMetricPrefixes(List.of("hook-queue-"));
+
+        mh.updateQueueDelivery("hook-queue-1", System.currentTimeMillis() - 5000, TimeUnit.MILLISECONDS.toNanos(20), true);
+        mh.updateQueueDelivery("hook-queue-2", System.currentTimeMillis() - 3000, TimeUnit.MILLISECONDS.toNanos(40), true);
+        mh.updateQueueDelivery("hook-queue-2", System.currentTimeMillis() - 3000, TimeUnit.MILLISECONDS.toNanos(40), false);
+        mh.updateQueueDelivery("my-queue", null, TimeUnit.MILLISECONDS.toNanos(10), true);
+
+        Timer success = meterRegistry.get(MonitoringHandler.QUEUE_DELIVERY_DURATION_METRIC_NAME)
+                .tag(MonitoringHandler.QUEUE_METRIC_TAG_PREFIX, "hook-queue-")
+                .tag(MonitoringHandler.QUEUE_METRIC_TAG_OUTCOME, MonitoringHandler.QUEUE_OUTCOME_SUCCESS).timer();
+        testContext.assertEquals(2L, success.count());
+        testContext.assertEquals(60.0, success.totalTime(TimeUnit.MILLISECONDS));
+
+        Timer failure = meterRegistry.get(MonitoringHandler.QUEUE_DELIVERY_DURATION_METRIC_NAME)
+                .tag(MonitoringHandler.QUEUE_METRIC_TAG_PREFIX, "hook-queue-")
+                .tag(MonitoringHandler.QUEUE_METRIC_TAG_OUTCOME, MonitoringHandler.QUEUE_OUTCOME_FAILURE).timer();
+        testContext.assertEquals(1L, failure.count());
+
+        Timer lag = meterRegistry.get(MonitoringHandler.QUEUE_DELIVERY_LAG_METRIC_NAME)
+                .tag(MonitoringHandler.QUEUE_METRIC_TAG_PREFIX, "hook-queue-").timer();
+        testContext.assertEquals(2L, lag.count());
+        testContext.assertTrue(lag.max(TimeUnit.MILLISECONDS) >= 5000);
+
+        // no lag recorded without enqueue timestamp
+        testContext.assertEquals(1L, meterRegistry.get(MonitoringHandler.QUEUE_DELIVERY_DURATION_METRIC_NAME)
+                .tag(MonitoringHandler.QUEUE_METRIC_TAG_PREFIX, MonitoringHandler.OTHER_QUEUE_PREFIX).timer().count());
+        testContext.assertNull(meterRegistry.find(MonitoringHandler.QUEUE_DELIVERY_LAG_METRIC_NAME)
+                .tag(MonitoringHandler.QUEUE_METRIC_TAG_PREFIX, MonitoringHandler.OTHER_QUEUE_PREFIX).timer());
+    }
+
+    @Test
+    public void testMetricsAggregation(TestContext testContext){
+        MetricsPublisher publisher = Mockito.mock(MetricsPublisher.class);
+        MetricsAggregator aggregator = new MetricsAggregator(vertx, 60000, publisher, null);
+        MonitoringHandler mh = new MonitoringHandler(vertx, storage, PREFIX);
+        mh.setMetricsAggregator(aggregator);
+        mh.registerReceiver(event -> testContext.fail("no event bus message expected, but got " + event.body()));
+
+        long start = mh.startRequestMetricTracking("a_fancy_rule", "/playground/server/some_resource");
+        mh.updateRequestsMeter("localhost", "/playground/server/some_resource");
+        mh.updateRequestsMeter("http://some.backend", "/playground/server/some_resource");
+        mh.startRequestMetricTracking("a_fancy_rule", "/playground/server/some_resource");
+        mh.stopRequestMetricTracking("a_fancy_rule", start, "/playground/server/some_resource");
+
+        testContext.assertEquals(2L, aggregator.counter("routing.a_fancy_rule").value());
+        testContext.assertEquals(1L, aggregator.counter(MonitoringHandler.REQUESTS_CLIENT_NAME).value());
+        testContext.assertEquals(1L, aggregator.counter(MonitoringHandler.REQUESTS_BACKENDS_NAME).value());
+        testContext.assertEquals(1L, aggregator.gauge(MonitoringHandler.PENDING_REQUESTS_METRIC).value());
+        testContext.assertEquals(1L, aggregator.timer("routing.a_fancy_rule.duration").count());
+
+        aggregator.flush();
+        verify(publisher).publishMetric("routing.a_fancy_rule", 2L);
+        verify(publisher).publishMetric(MonitoringHandler.PENDING_REQUESTS_METRIC, 1L);
+    }
+
+    @Test
+    public void testLatencyHistograms(TestContext testContext){
+        LatencyHistograms latencyHistograms = new LatencyHistograms();
+        MonitoringHandler mh = new MonitoringHandler(vertx, storage, PREFIX);
+        mh.setLatencyHistograms(latencyHistograms);
+
+        long start = mh.startRequestMetricTracking("a_fancy_rule", "/playground/server/some_resource");
+        mh.stopRequestMetricTracking("a_fancy_rule", start, "/playground/server/some_resource");
+        mh.stopRequestMetricTracking(null, start, "/playground/server/some_resource");
+
+        testContext.assertEquals(1L, latencyHistograms.snapshot("a_fancy_rule").getCount());
+    }
+
+    private AtomicInteger registerRedisquesQueuesItemsCount(JsonArray queues) {
+        AtomicInteger requests = new AtomicInteger();
+        vertx.eventBus().<JsonObject>consumer(Address.redisquesAddress(), message -> {
+            if ("getQueuesItemsCount".equals(message.body().getString("operation"))) {
+                requests.incrementAndGet();
+                message.reply(new JsonObject().put("status", "ok").put("queues", queues));
+            } else {
+                message.reply(new JsonObject().put("status", "error"));
+            }
+        });
+        return requests;
+    }
+
+    private JsonObject queueItemsCount(String name, long size) {
+        return new JsonObject().put("name", name).put("size", size);
+    }
+
+    private Callable<Boolean> storageContainsData(String pathPrefix, JsonObject rulesToLookFor) {
         return () -> {
             boolean dataFound = false;
             for (Map.Entry<String, String> entry : storage.getMockData().entrySet()) {
-                if(entry.getKey().contains(valueToLookFor)){
+                if(entry.getKey().startsWith(pathPrefix) && rulesToLookFor.equals(new JsonObject(entry.getValue()).getJsonObject("rules"))){
                     dataFound = true;
                     break;
                 }
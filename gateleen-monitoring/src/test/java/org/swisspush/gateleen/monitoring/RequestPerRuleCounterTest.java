@@ -0,0 +1,78 @@
+package org.swisspush.gateleen.monitoring;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests for the {@link RequestPerRuleCounter} class
+ */
+@RunWith(VertxUnitRunner.class)
+public class RequestPerRuleCounterTest {
+
+    @Test
+    public void testCountAndRotate(TestContext context) {
+        RequestPerRuleCounter counter = new RequestPerRuleCounter(16, 2);
+        counter.increment("grp_1", "rule_a");
+        counter.increment("grp_1", "rule_a");
+        counter.increment("grp_1", "rule_b");
+        counter.increment("grp_2", "rule_a");
+
+        JsonObject expected = new JsonObject()
+                .put("grp_1", new JsonObject().put("rule_a", 2L).put("rule_b", 1L))
+                .put("grp_2", new JsonObject().put("rule_a", 1L));
+        context.assertEquals(expected, counter.snapshot());
+        context.assertEquals(expected, counter.rotate());
+
+        counter.increment("grp_1", "rule_a");
+        context.assertEquals(new JsonObject().put("grp_1", new JsonObject().put("rule_a", 1L)), counter.rotate());
+
+        // the first window has been replaced, only the second window is left
+        context.assertEquals(new JsonObject().put("grp_1", new JsonObject().put("rule_a", 1L)), counter.snapshot());
+        counter.rotate();
+        context.assertEquals(new JsonObject(), counter.snapshot());
+    }
+
+    @Test
+    public void testOverflow(TestContext context) {
+        RequestPerRuleCounter counter = new RequestPerRuleCounter(2, 1);
+        counter.increment("grp_1", "rule_a");
+        counter.increment("grp_1", "rule_b");
+        counter.increment("grp_1", "rule_c");
+        counter.increment("grp_1", "rule_c");
+        counter.increment("grp_1", "rule_a");
+
+        JsonObject snapshot = counter.snapshot();
+        context.assertEquals(2L, snapshot.getJsonObject("grp_1").getLong("rule_a"));
+        context.assertEquals(1L, snapshot.getJsonObject("grp_1").getLong("rule_b"));
+        context.assertNull(snapshot.getJsonObject("grp_1").getLong("rule_c"));
+        context.assertEquals(2L, snapshot.getLong(RequestPerRuleCounter.OVERFLOW));
+    }
+
+    @Test
+    public void testSlotsAreReleasedOnRotate(TestContext context) {
+        RequestPerRuleCounter counter = new RequestPerRuleCounter(2, 2);
+        counter.increment("grp_1", "rule_a");
+        counter.increment("grp_1", "rule_b");
+        counter.rotate();
+
+        // the combinations are still counted in a window
+        counter.increment("grp_1", "rule_c");
+        context.assertEquals(1L, counter.snapshot().getLong(RequestPerRuleCounter.OVERFLOW));
+        counter.rotate();
+
+        // all windows of the first combinations have been replaced, their slots are free again
+        for (int i = 0; i < 10; i++) {
+            counter.increment("grp_2", "rule_" + i);
+            counter.increment("grp_2", "rule_" + i);
+            counter.increment("grp_3", "rule_" + i);
+            JsonObject counts = counter.rotate();
+            context.assertEquals(2L, counts.getJsonObject("grp_2").getLong("rule_" + i));
+            context.assertEquals(1L, counts.getJsonObject("grp_3").getLong("rule_" + i));
+            context.assertNull(counts.getLong(RequestPerRuleCounter.OVERFLOW));
+            counter.rotate();
+        }
+    }
+}
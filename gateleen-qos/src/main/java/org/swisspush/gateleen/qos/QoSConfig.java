@@ -12,6 +12,7 @@ public class QoSConfig {
     private int period;
     private int minSampleCount;
     private int minSentinelCount;
+    private String priorityHeader;
 
     /**
      * Creates a new global configuration
@@ -83,4 +84,24 @@ public class QoSConfig {
     public int getMinSentinelCount() {
         return minSentinelCount;
     }
+
+    /**
+     * Returns the name of the request header
+     * holding the priority class of a request.
+     *
+     * @return the header name or null if the priority classes are taken from the rules only
+     */
+    public String getPriorityHeader() {
+        return priorityHeader;
+    }
+
+    /**
+     * Sets the name of the request header
+     * holding the priority class of a request.
+     *
+     * @param priorityHeader the header name or null
+     */
+    public void setPriorityHeader(String priorityHeader) {
+        this.priorityHeader = priorityHeader;
+    }
 }
@@ -3,7 +3,9 @@ package org.swisspush.gateleen.qos;
 import org.swisspush.gateleen.core.http.RequestLoggerFactory;
 import org.swisspush.gateleen.core.logging.LoggableResource;
 import org.swisspush.gateleen.core.logging.RequestLogger;
+import org.swisspush.gateleen.core.metrics.LatencyHistograms;
 import org.swisspush.gateleen.core.storage.ResourceStorage;
+import org.swisspush.gateleen.core.util.PatternSet;
 import org.swisspush.gateleen.core.util.ResourcesUtils;
 import org.swisspush.gateleen.core.util.ResponseStatusCodeLogUtil;
 import org.swisspush.gateleen.core.util.StatusCode;
@@ -13,6 +15,8 @@ import com.floreysoft.jmte.ErrorHandler;
 import com.floreysoft.jmte.TemplateContext;
 import com.floreysoft.jmte.message.ParseException;
 import com.floreysoft.jmte.token.Token;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpMethod;
@@ -24,9 +28,13 @@ import org.swisspush.gateleen.core.validation.ValidationResult;
 import org.swisspush.gateleen.validation.ValidationException;
 import org.swisspush.gateleen.validation.Validator;
 
+import javax.annotation.Nullable;
 import javax.management.*;
 import java.lang.management.ManagementFactory;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
 import java.util.regex.Pattern;
 
 /**
@@ -81,8 +89,11 @@ import java.util.regex.Pattern;
  * <b><code>reject</code></b>: The ratio (eg. 1.3 means that *quorum* % of all sentinels must have an even or greater current ratio)
  * which defines when a rule rejects the given request. <br>
  * <b><code>warn</code></b>: The ratio which defines when a rule writes a warning in the log without rejecting the given request. <br>
+ * <b><code>shed</code></b>: The ratio from which on a rule rejects a share of the given requests. The share rises linearly
+ * up to all requests at the ratio <code>shedFull</code>. <br>
+ * <b><code>priority</code></b>: The priority class (critical, high, normal or low) of the requests shed by the rule. <br>
  * </p>
- * <p>You can combine warn and reject
+ * <p>You can combine warn, shed and reject
  *
  * @author https://github.com/ljucam [Mario Ljuca]
  */
@@ -98,6 +109,12 @@ public class QoSHandler implements LoggableResource {
 
     protected static final String REJECT_ACTION = "reject";
     protected static final String WARN_ACTION = "warn";
+    protected static final String SHED_ACTION = "shed";
+
+    public static final String QOS_REQUESTS_METRIC = "gateleen.qos.requests";
+    public static final String QOS_REQUESTS_METRIC_DESCRIPTION = "Amount of requests handled while a QoS rule had actions to perform";
+    private static final String RULE_TAG = "rule";
+    private static final String RESULT_TAG = "result";
 
     private final Vertx vertx;
     private final ResourceStorage storage;
@@ -107,10 +124,15 @@ public class QoSHandler implements LoggableResource {
     private final String qosSettingsSchema;
 
     private MBeanServer mbeanServer;
+    private LatencyHistograms latencyHistograms;
+    private MeterRegistry meterRegistry;
+    private final Map<String, Counter> requestCounters = new ConcurrentHashMap<>();
+    private DoubleSupplier random = () -> ThreadLocalRandom.current().nextDouble();
     private long timerId = -1;
 
     private QoSConfig globalQoSConfig;
     private List<QoSRule> qosRules;
+    private PatternSet<QoSRule> qosRulePatterns = PatternSet.empty();
     private List<QoSSentinel> qosSentinels;
 
     private boolean logQosConfigurationChanges = false;
@@ -160,6 +182,37 @@ public class QoSHandler implements LoggableResource {
         this.mbeanServer = mbeanServer;
     }
 
+    /**
+     * Sets the in-process latency histograms to read the sentinel values from. The histograms have to be fed with
+     * the durations of the routed requests, see <code>MonitoringHandler#setLatencyHistograms</code>. Without
+     * histograms, the sentinel values are read from the MBeans of the metrics module.
+     *
+     * @param latencyHistograms the latency histograms or <code>null</code> to read the sentinel values over JMX
+     */
+    public void setLatencyHistograms(@Nullable LatencyHistograms latencyHistograms) {
+        this.latencyHistograms = latencyHistograms;
+    }
+
+    /**
+     * Sets the meter registry to export the amount of accepted and rejected requests per rule to.
+     *
+     * @param meterRegistry the meter registry or <code>null</code>
+     */
+    public void setMeterRegistry(@Nullable MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        requestCounters.clear();
+    }
+
+    /**
+     * Sets the source of random numbers between 0.0 (inclusive) and 1.0 (exclusive) to decide about shedding a
+     * request. This method is usefull for tests.
+     *
+     * @param random the source of random numbers
+     */
+    protected void setRandom(DoubleSupplier random) {
+        this.random = random;
+    }
+
     /**
      * Loads the QoS settings.
      */
@@ -220,33 +273,74 @@ public class QoSHandler implements LoggableResource {
      */
     private boolean qoSHandledRequest(final HttpServerRequest request) {
         // check if the request matches a pattern in the QoS rules
-        for (QoSRule rule : qosRules) {
-
-            // is there anything to perform and
-            // if so, does the pattern matches?
-            if (rule.performAction() && rule.getUrlPattern().matcher(request.uri()).matches()) {
-                boolean requestHandled = false;
-
-                // perform the action
-                for (String action : rule.getActions()) {
-                    switch (action) {
-                        case REJECT_ACTION:
-                            handleReject(request);
-                            requestHandled = true;
-                            break;
-                        case WARN_ACTION:
-                            RequestLoggerFactory.getLogger(QoSHandler.class, request)
-                                    .warn("QoS Warning: Heavy load detected for rule {}, concerning the request {}",
-                                            rule.getUrlPattern(), request.uri());
-                            break;
-                    }
-                }
+        // having anything to perform
+        QoSRule rule = qosRulePatterns.findFirst(request.uri(), QoSRule::performAction);
+        if (rule == null) {
+            return false;
+        }
 
-                // only one rule may match the given pattern, so we return if the request has to be handled or not
-                return requestHandled;
+        List<String> actions = rule.getActions();
+        boolean requestHandled = false;
+
+        // perform the action
+        for (String action : actions) {
+            switch (action) {
+                case REJECT_ACTION:
+                    handleReject(request);
+                    requestHandled = true;
+                    break;
+                case WARN_ACTION:
+                    RequestLoggerFactory.getLogger(QoSHandler.class, request)
+                            .warn("QoS Warning: Heavy load detected for rule {}, concerning the request {}",
+                                    rule.getUrlPattern(), request.uri());
+                    break;
+                case SHED_ACTION:
+                    // a rejecting rule rejects all requests anyway
+                    if (!actions.contains(REJECT_ACTION) && shed(request, rule)) {
+                        handleReject(request);
+                        requestHandled = true;
+                    }
+                    break;
             }
         }
-        return false;
+        countRequest(rule, requestHandled);
+
+        // only one rule may match the given pattern, so we return if the request has to be handled or not
+        return requestHandled;
+    }
+
+    /**
+     * Decides randomly if the given request is shed. The shedding probability of the rule is weighted by the
+     * priority class of the request, which is taken from the priority header (if configured and valid) or the rule.
+     *
+     * @param request the original request
+     * @param rule the matching rule
+     * @return true if the request has to be rejected, otherwise false
+     */
+    private boolean shed(final HttpServerRequest request, QoSRule rule) {
+        QoSPriority priority = null;
+        String priorityHeader = globalQoSConfig != null ? globalQoSConfig.getPriorityHeader() : null;
+        if (priorityHeader != null) {
+            priority = QoSPriority.fromString(request.headers().get(priorityHeader));
+        }
+        if (priority == null) {
+            priority = rule.getPriority();
+        }
+        return random.getAsDouble() < priority.weighted(rule.getShedProbability());
+    }
+
+    private void countRequest(QoSRule rule, boolean rejected) {
+        rule.countRequest(rejected);
+        MeterRegistry registry = meterRegistry;
+        if (registry != null) {
+            String pattern = rule.getUrlPattern().pattern();
+            String result = rejected ? "rejected" : "accepted";
+            requestCounters.computeIfAbsent(result + " " + pattern, key -> Counter.builder(QOS_REQUESTS_METRIC)
+                    .description(QOS_REQUESTS_METRIC_DESCRIPTION)
+                    .tag(RULE_TAG, pattern)
+                    .tag(RESULT_TAG, result)
+                    .register(registry)).increment();
+        }
     }
 
     /**
@@ -287,6 +381,11 @@ public class QoSHandler implements LoggableResource {
         else if (sentinels.isEmpty() && !rules.isEmpty()) {
             throw new ValidationException("QoS settings contain rules without sentinels");
         }
+        for (QoSRule rule : rules) {
+            if (rule.getShed() != null && rule.getShedFull() != null && rule.getShedFull() <= rule.getShed()) {
+                throw new ValidationException("QoS rule " + rule.getUrlPattern() + " has a shedFull ratio not greater than its shed ratio");
+            }
+        }
     }
 
     /**
@@ -358,7 +457,8 @@ public class QoSHandler implements LoggableResource {
              "quorum": 40,
              "period": 60, 
              "minSampleCount" : 1000, 
-             "minSentinelCount" : 5
+             "minSentinelCount" : 5,
+             "priorityHeader" : "x-qos-priority"
          },
          
          * @formatter:on
@@ -366,11 +466,13 @@ public class QoSHandler implements LoggableResource {
 
         if (qosSettings.containsKey(JSON_FIELD_CONFIG)) {
             JsonObject jsonConfig = qosSettings.getJsonObject(JSON_FIELD_CONFIG);
-            return new QoSConfig(jsonConfig.getInteger("percentile"),
+            QoSConfig config = new QoSConfig(jsonConfig.getInteger("percentile"),
                     jsonConfig.getInteger("quorum"),
                     jsonConfig.getInteger("period"),
                     jsonConfig.getInteger("minSampleCount"),
                     jsonConfig.getInteger("minSentinelCount"));
+            config.setPriorityHeader(jsonConfig.getString("priorityHeader"));
+            return config;
         }
 
         return null;
@@ -472,6 +574,11 @@ public class QoSHandler implements LoggableResource {
             "/gateleen/xyz/v1/(delivery|acceptance)/.*": {
               "reject": 1.3,
               "warn": 1.1
+            },
+            "/gateleen/xyz/v1/statistics/.*": {
+              "shed": 1.2,
+              "shedFull": 2.0,
+              "priority": "low"
             }
           }
         
@@ -505,6 +612,18 @@ public class QoSHandler implements LoggableResource {
                     rule.setWarn(jsonRule.getDouble("warn"));
                 }
 
+                // shed ratios
+                if (jsonRule.containsKey("shed")) {
+                    addRule = true;
+                    rule.setShed(jsonRule.getDouble("shed"));
+                    rule.setShedFull(jsonRule.getDouble("shedFull"));
+                }
+
+                QoSPriority priority = QoSPriority.fromString(jsonRule.getString("priority"));
+                if (priority != null) {
+                    rule.setPriority(priority);
+                }
+
                 if (addRule) {
                     rules.add(rule);
                 } else {
@@ -642,11 +761,12 @@ public class QoSHandler implements LoggableResource {
      */
     protected void evaluateQoSActions() {
         /*
-         * Connect to JMX, load the metrics module
-         * and read the given sentinel (metric) values.
+         * Read the given sentinel (metric) values from the in-process
+         * latency histograms or - without histograms - connect to JMX
+         * and load them from the metrics module.
          */
 
-        if (log.isTraceEnabled()) {
+        if (latencyHistograms == null && log.isTraceEnabled()) {
             Set<ObjectInstance> instances = mbeanServer.queryMBeans(null, null);
             for (ObjectInstance instance : instances) {
                 log.trace("MBean Found:");
@@ -661,76 +781,44 @@ public class QoSHandler implements LoggableResource {
 
         // load the sentinels and read the percentil value
         for (QoSSentinel sentinel : qosSentinels) {
-            String name = "metrics:name=" + prefix + "routing." + sentinel.getName() + ".duration";
-
-            try {
-                ObjectName beanName = new ObjectName(name);
-                // is sentinel registered and if so,
-                // is the sample count even or greater then the given one?
-                if (mbeanServer.isRegistered(beanName)) {
-                    long currentSampleCount = (Long) mbeanServer.getAttribute(beanName, "Count");
-                    if (currentSampleCount >= globalQoSConfig.getMinSampleCount()) {
-
-                        double currentResponseTime = 0.0;
-
-                        // override
-                        if (sentinel.getPercentile() != null) {
-                            currentResponseTime = (Double) mbeanServer.getAttribute(beanName, "" + sentinel.getPercentile() + PERCENTILE_SUFFIX);
-                        }
-                        // global
-                        else {
-                            currentResponseTime = (Double) mbeanServer.getAttribute(beanName, "" + globalQoSConfig.getPercentile() + PERCENTILE_SUFFIX);
-                        }
-
-                        // the reference value of the sentinel
-                        // has to be the lowest measured percentile value
-                        // over all readings
-                        if (sentinel.getLowestPercentileValue() > currentResponseTime) {
-                            if(currentResponseTime > 0.0) {
-                                if(sentinel.getLowestPercentileMinValue() != null && currentResponseTime < sentinel.getLowestPercentileMinValue()){
-                                    sentinel.setLowestPercentileValue(sentinel.getLowestPercentileMinValue());
-                                } else {
-                                    sentinel.setLowestPercentileValue(currentResponseTime);
-                                }
-                            } else {
-                                log.debug("ignoring response time of 0.0, because the metric is probably not yet fully initalized");
-                            }
-                        }
+            int percentile = sentinel.getPercentile() != null ? sentinel.getPercentile() : globalQoSConfig.getPercentile();
+            Double currentResponseTime = latencyHistograms != null
+                    ? readPercentileFromHistogram(sentinel, percentile)
+                    : readPercentileFromMBean(sentinel, percentile);
+            if (currentResponseTime == null) {
+                continue;
+            }
 
-                        // calculate the current ratio compared to the reference percentile value
-                        double currentRatio = currentResponseTime / sentinel.getLowestPercentileValue();
-                        currentSentinelRatios.add(currentRatio);
-
-                        log.debug("sentinel '{}': percentile={}, lowestPercentileValue={}, lowestPercentileMinValue={}, " +
-                                        "currentSampleCount={}, currentResponseTime={}, currentRatio={}",
-                                sentinel.getName(),
-                                sentinel.getPercentile(),
-                                sentinel.getLowestPercentileValue(),
-                                sentinel.getLowestPercentileMinValue(),
-                                currentSampleCount,
-                                currentResponseTime,
-                                currentRatio);
-
-                        // increment valid counter
-                        validSentinels++;
+            // the reference value of the sentinel
+            // has to be the lowest measured percentile value
+            // over all readings
+            if (sentinel.getLowestPercentileValue() > currentResponseTime) {
+                if(currentResponseTime > 0.0) {
+                    if(sentinel.getLowestPercentileMinValue() != null && currentResponseTime < sentinel.getLowestPercentileMinValue()){
+                        sentinel.setLowestPercentileValue(sentinel.getLowestPercentileMinValue());
                     } else {
-                        log.warn("Sentinel {} doesn't have enough samples yet ({}/{})",
-                                sentinel.getName(),
-                                currentSampleCount,
-                                globalQoSConfig.getMinSampleCount());
+                        sentinel.setLowestPercentileValue(currentResponseTime);
                     }
                 } else {
-                    log.warn("MBean {} for sentinel {} is not ready yet ...", name, sentinel.getName());
+                    log.debug("ignoring response time of 0.0, because the metric is probably not yet fully initalized");
                 }
-            } catch (MalformedObjectNameException e) {
-                log.error("Could not load MBean for metric name '{}'.", sentinel.getName(), e);
-            } catch (AttributeNotFoundException e) {
-                // ups ... should not be possible, we check if the bean is registered
-            } catch (InstanceNotFoundException e) {
-                log.error("Could not find attribute {} for the MBean of the metric '{}'.", sentinel.getPercentile() + PERCENTILE_SUFFIX, sentinel.getName(), e);
-            } catch (MBeanException | ReflectionException e) {
-                log.error("Could not load value of attribute {} for the MBean of the metric '{}'.", sentinel.getPercentile() + PERCENTILE_SUFFIX, sentinel.getName(), e);
             }
+
+            // calculate the current ratio compared to the reference percentile value
+            double currentRatio = currentResponseTime / sentinel.getLowestPercentileValue();
+            currentSentinelRatios.add(currentRatio);
+
+            log.debug("sentinel '{}': percentile={}, lowestPercentileValue={}, lowestPercentileMinValue={}, " +
+                            "currentResponseTime={}, currentRatio={}",
+                    sentinel.getName(),
+                    sentinel.getPercentile(),
+                    sentinel.getLowestPercentileValue(),
+                    sentinel.getLowestPercentileMinValue(),
+                    currentResponseTime,
+                    currentRatio);
+
+            // increment valid counter
+            validSentinels++;
         }
 
         // do we have something to work with?
@@ -774,6 +862,16 @@ public class QoSHandler implements LoggableResource {
                     log.debug("rule will not be logged with a warning: {}", rule.getUrlPattern());
                     rule.removeAction(WARN_ACTION);
                 }
+
+                // shed
+                double shedProbability = shedProbability(rule, currentSentinelRatios.get(threshold));
+                rule.setShedProbability(shedProbability);
+                if (shedProbability > 0.0) {
+                    log.debug("rule will be shed with a probability of {}: {}", shedProbability, rule.getUrlPattern());
+                    rule.addAction(SHED_ACTION);
+                } else {
+                    rule.removeAction(SHED_ACTION);
+                }
             }
         }
         // nothing to do
@@ -784,6 +882,81 @@ public class QoSHandler implements LoggableResource {
         }
     }
 
+    /**
+     * Reads the current percentile value of the sentinel from the in-process latency histograms.
+     *
+     * @param sentinel the sentinel
+     * @param percentile the percentile to read (e.g. 75 or 999 for the 99.9th percentile)
+     * @return the percentile value [ms] or <code>null</code> when the sentinel does not have enough samples
+     */
+    private Double readPercentileFromHistogram(QoSSentinel sentinel, int percentile) {
+        LatencyHistograms.LatencySnapshot snapshot = latencyHistograms.snapshot(sentinel.getName());
+        if (snapshot == null) {
+            log.warn("No latencies recorded yet for sentinel {} ...", sentinel.getName());
+            return null;
+        }
+        if (snapshot.getCount() < globalQoSConfig.getMinSampleCount()) {
+            log.warn("Sentinel {} doesn't have enough samples yet ({}/{})",
+                    sentinel.getName(),
+                    snapshot.getCount(),
+                    globalQoSConfig.getMinSampleCount());
+            return null;
+        }
+        log.debug("sentinel '{}': currentSampleCount={}", sentinel.getName(), snapshot.getCount());
+        return snapshot.getValueAtPercentile(toPercentileValue(percentile));
+    }
+
+    /**
+     * Converts a configured percentile to its value, e.g. 75 to 75.0 or 999 to 99.9
+     */
+    static double toPercentileValue(int percentile) {
+        double value = percentile;
+        while (value > 100) {
+            value /= 10;
+        }
+        return value;
+    }
+
+    /**
+     * Reads the current percentile value of the sentinel from the MBean of the metrics module.
+     *
+     * @param sentinel the sentinel
+     * @param percentile the percentile to read (e.g. 75 or 999 for the 99.9th percentile)
+     * @return the percentile value [ms] or <code>null</code> when the MBean is not available or the sentinel does not
+     * have enough samples
+     */
+    private Double readPercentileFromMBean(QoSSentinel sentinel, int percentile) {
+        String name = "metrics:name=" + prefix + "routing." + sentinel.getName() + ".duration";
+        try {
+            ObjectName beanName = new ObjectName(name);
+            // is sentinel registered and if so,
+            // is the sample count even or greater then the given one?
+            if (!mbeanServer.isRegistered(beanName)) {
+                log.warn("MBean {} for sentinel {} is not ready yet ...", name, sentinel.getName());
+                return null;
+            }
+            long currentSampleCount = (Long) mbeanServer.getAttribute(beanName, "Count");
+            if (currentSampleCount < globalQoSConfig.getMinSampleCount()) {
+                log.warn("Sentinel {} doesn't have enough samples yet ({}/{})",
+                        sentinel.getName(),
+                        currentSampleCount,
+                        globalQoSConfig.getMinSampleCount());
+                return null;
+            }
+            log.debug("sentinel '{}': currentSampleCount={}", sentinel.getName(), currentSampleCount);
+            return (Double) mbeanServer.getAttribute(beanName, "" + percentile + PERCENTILE_SUFFIX);
+        } catch (MalformedObjectNameException e) {
+            log.error("Could not load MBean for metric name '{}'.", sentinel.getName(), e);
+        } catch (AttributeNotFoundException e) {
+            // ups ... should not be possible, we check if the bean is registered
+        } catch (InstanceNotFoundException e) {
+            log.error("Could not find attribute {} for the MBean of the metric '{}'.", percentile + PERCENTILE_SUFFIX, sentinel.getName(), e);
+        } catch (MBeanException | ReflectionException e) {
+            log.error("Could not load value of attribute {} for the MBean of the metric '{}'.", percentile + PERCENTILE_SUFFIX, sentinel.getName(), e);
+        }
+        return null;
+    }
+
     /**
      * Takes the ratio of the rule and compares if
      * the calculated sentinel ratio from the desc. sorted
@@ -798,6 +971,27 @@ public class QoSHandler implements LoggableResource {
         return ratio != null && ratio <= thresholdSentinelRatio;
     }
 
+    /**
+     * Calculates the probability to shed a request of the normal priority class. The probability rises linearly
+     * from 0.0 at the <code>shed</code> ratio of the rule to 1.0 at its <code>shedFull</code> ratio, which defaults
+     * to twice the <code>shed</code> ratio.
+     *
+     * @param rule the rule
+     * @param thresholdSentinelRatio the calculated sentinel ratio
+     * @return the probability, 0.0 if the rule does not shed
+     */
+    protected double shedProbability(QoSRule rule, double thresholdSentinelRatio) {
+        Double shed = rule.getShed();
+        if (shed == null || thresholdSentinelRatio <= shed) {
+            return 0.0;
+        }
+        double shedFull = rule.getShedFull() != null ? rule.getShedFull() : shed * 2;
+        if (shedFull <= shed) {
+            return 1.0;
+        }
+        return Math.min(1.0, (thresholdSentinelRatio - shed) / (shedFull - shed));
+    }
+
     /**
      * Sets the global configuration for the QoS.
      *
@@ -823,6 +1017,7 @@ public class QoSHandler implements LoggableResource {
      */
     protected void setQosRules(List<QoSRule> qosRules) {
         this.qosRules = qosRules;
+        this.qosRulePatterns = PatternSet.compile(qosRules, QoSRule::getUrlPattern);
     }
 
     /**
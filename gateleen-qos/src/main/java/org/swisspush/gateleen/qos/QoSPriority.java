@@ -0,0 +1,55 @@
+package org.swisspush.gateleen.qos;
+
+/**
+ * Priority classes of the requests matching a QoS rule with the <code>shed</code> action. The shedding
+ * probability of the rule is multiplied by the weight of the priority class.
+ */
+public enum QoSPriority {
+    /**
+     * Never shed
+     */
+    critical(0.0),
+    /**
+     * Shed with half of the probability of the rule
+     */
+    high(0.5),
+    /**
+     * Shed with the probability of the rule
+     */
+    normal(1.0),
+    /**
+     * Shed with twice the probability of the rule
+     */
+    low(2.0);
+
+    private final double weight;
+
+    QoSPriority(double weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * Returns the shedding probability for this priority class.
+     *
+     * @param probability the shedding probability of the rule
+     * @return the weighted probability, never greater than 1.0
+     */
+    public double weighted(double probability) {
+        return Math.min(1.0, probability * weight);
+    }
+
+    /**
+     * Returns the priority class with the provided name.
+     *
+     * @param priority the name of the priority class
+     * @return the priority class or <code>null</code> when no priority class matches
+     */
+    public static QoSPriority fromString(String priority) {
+        for (QoSPriority qosPriority : values()) {
+            if (qosPriority.name().equalsIgnoreCase(priority)) {
+                return qosPriority;
+            }
+        }
+        return null;
+    }
+}
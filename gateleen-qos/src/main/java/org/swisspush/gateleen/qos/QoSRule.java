@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Pattern;
 
 /**
@@ -14,8 +15,14 @@ import java.util.regex.Pattern;
 public class QoSRule {
     private Double reject;
     private Double warn;
+    private Double shed;
+    private Double shedFull;
+    private QoSPriority priority = QoSPriority.normal;
+    private volatile double shedProbability;
     private Pattern urlPattern;
     private Set<String> actions;
+    private final LongAdder acceptedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
 
     /**
      * Creates a new QoS rule object with the
@@ -72,6 +79,120 @@ public class QoSRule {
         this.warn = warn;
     }
 
+    /**
+     * Returns the ratio at which requests
+     * start to be shed.
+     *
+     * @return the ratio
+     */
+    public Double getShed() {
+        return shed;
+    }
+
+    /**
+     * Sets the ratio at which requests
+     * start to be shed.
+     *
+     * @param shed the ratio
+     */
+    public void setShed(Double shed) {
+        this.shed = shed;
+    }
+
+    /**
+     * Returns the ratio at which all requests
+     * of the normal priority class are shed.
+     *
+     * @return the ratio
+     */
+    public Double getShedFull() {
+        return shedFull;
+    }
+
+    /**
+     * Sets the ratio at which all requests
+     * of the normal priority class are shed.
+     *
+     * @param shedFull the ratio
+     */
+    public void setShedFull(Double shedFull) {
+        this.shedFull = shedFull;
+    }
+
+    /**
+     * Returns the priority class of the requests
+     * matching this rule.
+     *
+     * @return the priority class
+     */
+    public QoSPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets the priority class of the requests
+     * matching this rule.
+     *
+     * @param priority the priority class
+     */
+    public void setPriority(QoSPriority priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Returns the probability (0.0 to 1.0) to shed
+     * a request of the normal priority class.
+     *
+     * @return the probability
+     */
+    public double getShedProbability() {
+        return shedProbability;
+    }
+
+    /**
+     * Sets the probability (0.0 to 1.0) to shed
+     * a request of the normal priority class.
+     *
+     * @param shedProbability the probability
+     */
+    public void setShedProbability(double shedProbability) {
+        this.shedProbability = shedProbability;
+    }
+
+    /**
+     * Counts a request handled while this rule
+     * had actions to perform.
+     *
+     * @param rejected true if the request was rejected
+     */
+    public void countRequest(boolean rejected) {
+        if (rejected) {
+            rejectedCount.increment();
+        } else {
+            acceptedCount.increment();
+        }
+    }
+
+    /**
+     * Returns the amount of requests accepted
+     * while this rule had actions to perform.
+     *
+     * @return the amount of accepted requests
+     */
+    public long getAcceptedCount() {
+        return acceptedCount.sum();
+    }
+
+    /**
+     * Returns the amount of requests rejected
+     * by this rule.
+     *
+     * @return the amount of rejected requests
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
     /**
      * Returns a precompiled pattern
      * for this rule.
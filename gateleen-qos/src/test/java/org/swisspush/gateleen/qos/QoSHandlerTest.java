@@ -1,5 +1,6 @@
 package org.swisspush.gateleen.qos;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import io.vertx.core.Handler;
 import io.vertx.core.MultiMap;
 import io.vertx.core.Vertx;
@@ -18,6 +19,7 @@ import org.junit.runner.RunWith;
 import org.mockito.Mockito;
 import org.swisspush.gateleen.core.http.DummyHttpServerRequest;
 import org.swisspush.gateleen.core.http.DummyHttpServerResponse;
+import org.swisspush.gateleen.core.metrics.LatencyHistograms;
 import org.swisspush.gateleen.core.storage.MockResourceStorage;
 import org.swisspush.gateleen.core.storage.ResourceStorage;
 import org.swisspush.gateleen.core.util.StatusCode;
@@ -27,6 +29,7 @@ import javax.management.ObjectName;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import static org.hamcrest.CoreMatchers.hasItems;
@@ -484,6 +487,182 @@ public class QoSHandlerTest {
         // -----
     }
 
+    /**
+     * Test the calculation based on the in-process latency histograms.
+     */
+    @Test
+    public void testCalculation_latencyHistograms() {
+        QoSHandler qosHandler = new QoSHandler(vertx, storage, qosSettingsPath, new HashMap<>(), prefix);
+        qosHandler.setMBeanServer(mbeanServer);
+        LatencyHistograms latencyHistograms = new LatencyHistograms();
+        qosHandler.setLatencyHistograms(latencyHistograms);
+
+        qosHandler.setGlobalQoSConfig(new QoSConfig(75, 40, 5, 10, 3));
+        List<QoSSentinel> sentinels = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            sentinels.add(new QoSSentinel("sentinel" + i));
+        }
+        qosHandler.setQosSentinels(sentinels);
+
+        QoSRule rule = new QoSRule(Pattern.compile("/test1/*"));
+        rule.setReject(1.5);
+        qosHandler.setQosRules(List.of(rule));
+
+        // sentinel4 has not enough samples
+        recordLatencies(latencyHistograms, "sentinel1", 10, 20);
+        recordLatencies(latencyHistograms, "sentinel2", 10, 20);
+        recordLatencies(latencyHistograms, "sentinel3", 10, 20);
+        recordLatencies(latencyHistograms, "sentinel4", 10, 5);
+        qosHandler.evaluateQoSActions();
+        assertThat(rule.performAction(), is(Boolean.FALSE));
+        assertThat(sentinels.get(0).getLowestPercentileValue() > 9.0, is(Boolean.TRUE));
+        assertThat(sentinels.get(3).getLowestPercentileValue(), is(Double.MAX_VALUE));
+
+        // the latencies of the sentinels increase
+        recordLatencies(latencyHistograms, "sentinel1", 40, 100);
+        recordLatencies(latencyHistograms, "sentinel2", 40, 100);
+        qosHandler.evaluateQoSActions();
+        assertThat(rule.performAction(), is(Boolean.TRUE));
+        assertThat(rule.getActions().get(0), is(QoSHandler.REJECT_ACTION));
+
+        verifyNoInteractions(mbeanServer);
+    }
+
+    @Test
+    public void testShedProbability(TestContext context) {
+        QoSHandler qosHandler = new QoSHandler(vertx, storage, qosSettingsPath, new HashMap<>(), prefix);
+        QoSRule rule = new QoSRule(Pattern.compile("/test1/.*"));
+        context.assertEquals(0.0, qosHandler.shedProbability(rule, 5.0));
+
+        rule.setShed(1.2);
+        context.assertEquals(0.0, qosHandler.shedProbability(rule, 1.2));
+        context.assertEquals(0.5, Math.rint(qosHandler.shedProbability(rule, 1.8) * 100) / 100);
+        context.assertEquals(1.0, qosHandler.shedProbability(rule, 3.0));
+
+        rule.setShedFull(1.4);
+        context.assertEquals(0.5, Math.rint(qosHandler.shedProbability(rule, 1.3) * 100) / 100);
+        context.assertEquals(1.0, qosHandler.shedProbability(rule, 1.4));
+    }
+
+    @Test
+    public void testShedding(TestContext context) {
+        QoSHandler qosHandler = new QoSHandler(vertx, storage, qosSettingsPath, new HashMap<>(), prefix);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        qosHandler.setMeterRegistry(meterRegistry);
+        qosHandler.setRandom(() -> 0.4);
+        QoSConfig config = new QoSConfig(75, 40, 5, 10, 1);
+        config.setPriorityHeader("x-qos-priority");
+        qosHandler.setGlobalQoSConfig(config);
+
+        QoSRule rule = new QoSRule(Pattern.compile("/test1/.*"));
+        rule.setShed(1.0);
+        rule.setShedFull(2.0);
+        rule.setPriority(QoSPriority.low);
+        rule.addAction(QoSHandler.SHED_ACTION);
+        rule.setShedProbability(0.3);
+        qosHandler.setQosRules(List.of(rule));
+
+        // low priority from the rule: 0.4 < 0.6
+        HttpServerResponse response = spy(new CustomHttpServerResponse(MultiMap.caseInsensitiveMultiMap()));
+        context.assertTrue(qosHandler.handle(new CustomHttpServerRequest("/test1/resource", HttpMethod.GET, "",
+                MultiMap.caseInsensitiveMultiMap(), response)));
+        verify(response, times(1)).setStatusCode(eq(StatusCode.SERVICE_UNAVAILABLE.getStatusCode()));
+
+        // normal priority from the header: 0.4 >= 0.3
+        context.assertFalse(qosHandler.handle(new CustomHttpServerRequest("/test1/resource", HttpMethod.GET, "",
+                MultiMap.caseInsensitiveMultiMap().add("x-qos-priority", "normal"), response)));
+
+        // unknown priority in the header falls back to the priority of the rule
+        context.assertTrue(qosHandler.handle(new CustomHttpServerRequest("/test1/resource", HttpMethod.GET, "",
+                MultiMap.caseInsensitiveMultiMap().add("x-qos-priority", "unknown"), response)));
+
+        // critical requests are never shed
+        rule.setShedProbability(1.0);
+        context.assertFalse(qosHandler.handle(new CustomHttpServerRequest("/test1/resource", HttpMethod.GET, "",
+                MultiMap.caseInsensitiveMultiMap().add("x-qos-priority", "critical"), response)));
+
+        // not matching requests are not counted
+        context.assertFalse(qosHandler.handle(new CustomHttpServerRequest("/test2/resource", HttpMethod.GET, "",
+                MultiMap.caseInsensitiveMultiMap(), response)));
+
+        context.assertEquals(2L, rule.getRejectedCount());
+        context.assertEquals(2L, rule.getAcceptedCount());
+        context.assertEquals(2.0, meterRegistry.get(QoSHandler.QOS_REQUESTS_METRIC)
+                .tag("rule", "/test1/.*").tag("result", "rejected").counter().count());
+        context.assertEquals(2.0, meterRegistry.get(QoSHandler.QOS_REQUESTS_METRIC)
+                .tag("rule", "/test1/.*").tag("result", "accepted").counter().count());
+    }
+
+    @Test
+    public void testCalculation_shed() {
+        QoSHandler qosHandler = new QoSHandler(vertx, storage, qosSettingsPath, new HashMap<>(), prefix);
+        LatencyHistograms latencyHistograms = new LatencyHistograms();
+        qosHandler.setLatencyHistograms(latencyHistograms);
+        qosHandler.setGlobalQoSConfig(new QoSConfig(75, 100, 5, 10, 1));
+        qosHandler.setQosSentinels(List.of(new QoSSentinel("sentinel1")));
+
+        QoSRule rule = new QoSRule(Pattern.compile("/test1/.*"));
+        rule.setShed(1.5);
+        rule.setShedFull(3.5);
+        qosHandler.setQosRules(List.of(rule));
+
+        recordLatencies(latencyHistograms, "sentinel1", 10, 20);
+        qosHandler.evaluateQoSActions();
+        assertThat(rule.performAction(), is(Boolean.FALSE));
+
+        // the ratio rises to 2.5
+        recordLatencies(latencyHistograms, "sentinel1", 25, 200);
+        qosHandler.evaluateQoSActions();
+        assertThat(rule.getActions(), is(List.of(QoSHandler.SHED_ACTION)));
+        assertThat(Math.abs(rule.getShedProbability() - 0.5) < 0.05, is(Boolean.TRUE));
+    }
+
+    @Test
+    public void testQoSSettingsUpdateWithInvalidShedRatios(TestContext context) {
+        QoSHandler qosHandler = new QoSHandler(vertx, storage, qosSettingsPath, new HashMap<>(), prefix);
+        HttpServerResponse response = spy(new CustomHttpServerResponse(MultiMap.caseInsensitiveMultiMap()));
+
+        String config = "{" +
+                "  \"config\":{" +
+                "    \"percentile\":75," +
+                "    \"quorum\":40," +
+                "    \"period\":5," +
+                "    \"minSampleCount\" : 1000," +
+                "    \"minSentinelCount\" : 5," +
+                "    \"priorityHeader\" : \"x-qos-priority\"" +
+                "  }," +
+                "  \"sentinels\":{" +
+                "    \"sentinelA\":{}" +
+                "  }," +
+                "  \"rules\":{" +
+                "    \"/test/myapi1/v1/.*\":{" +
+                "      \"shed\":1.5," +
+                "      \"shedFull\":1.2," +
+                "      \"priority\":\"low\"" +
+                "    }" +
+                "  }" +
+                "}";
+
+        qosHandler.handle(new CustomHttpServerRequest(QOS_URI, HttpMethod.PUT, config, MultiMap.caseInsensitiveMultiMap(), response));
+
+        verify(response, times(1)).setStatusCode(eq(StatusCode.BAD_REQUEST.getStatusCode()));
+        verify(response, times(1)).setStatusMessage(eq("Bad Request ValidationException: QoS rule /test/myapi1/v1/.* " +
+                "has a shedFull ratio not greater than its shed ratio"));
+    }
+
+    @Test
+    public void testToPercentileValue(TestContext context) {
+        context.assertEquals(75.0, QoSHandler.toPercentileValue(75));
+        context.assertEquals(99.0, QoSHandler.toPercentileValue(99));
+        context.assertEquals(99.9, QoSHandler.toPercentileValue(999));
+    }
+
+    private void recordLatencies(LatencyHistograms latencyHistograms, String metricName, long millis, int count) {
+        for (int i = 0; i < count; i++) {
+            latencyHistograms.record(metricName, TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+
     /**
      * Test reject behaviour under mixed load.
      * 
@@ -30,9 +30,12 @@ import org.swisspush.gateleen.core.util.ExpiryCheckHandler;
 import org.swisspush.gateleen.queue.queuing.circuitbreaker.QueueCircuitBreaker;
 import org.swisspush.gateleen.queue.queuing.circuitbreaker.util.QueueCircuitState;
 import org.swisspush.gateleen.queue.queuing.circuitbreaker.util.QueueResponseType;
+import org.swisspush.gateleen.queue.queuing.governor.QueueDeliveryGovernor;
 
 import javax.annotation.Nullable;
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static io.vertx.core.Future.failedFuture;
 import static io.vertx.core.Future.succeededFuture;
@@ -52,6 +55,7 @@ public class QueueProcessor {
     private HttpClient httpClient;
     private MonitoringHandler monitoringHandler;
     private QueueCircuitBreaker queueCircuitBreaker;
+    private final QueueDeliveryGovernor deliveryGovernor;
     private final GateleenExceptionFactory exceptionFactory;
     private static final Handler<Buffer> DEV_NULL = buf -> {};
     private MessageConsumer<JsonObject> consumer;
@@ -73,11 +77,28 @@ public class QueueProcessor {
         QueueCircuitBreaker queueCircuitBreaker,
         GateleenExceptionFactory exceptionFactory,
         boolean immediatelyStartQueueProcessing
+    ) {
+        this(vertx, httpClient, monitoringHandler, queueCircuitBreaker, null, exceptionFactory, immediatelyStartQueueProcessing);
+    }
+
+    /**
+     * @param deliveryGovernor limits the concurrent deliveries per target. See {@link QueueDeliveryGovernor} for details.
+     *                         No limits are applied when <code>null</code>
+     */
+    public QueueProcessor(
+        Vertx vertx,
+        HttpClient httpClient,
+        @Nullable MonitoringHandler monitoringHandler,
+        QueueCircuitBreaker queueCircuitBreaker,
+        @Nullable QueueDeliveryGovernor deliveryGovernor,
+        GateleenExceptionFactory exceptionFactory,
+        boolean immediatelyStartQueueProcessing
     ) {
         this.vertx = vertx;
         this.httpClient = httpClient;
         this.monitoringHandler = monitoringHandler;
         this.queueCircuitBreaker = queueCircuitBreaker;
+        this.deliveryGovernor = deliveryGovernor;
         this.exceptionFactory = exceptionFactory;
 
         if (immediatelyStartQueueProcessing) {
@@ -293,6 +314,26 @@ public class QueueProcessor {
         return result;
     }
 
+    /**
+     * Evaluates the target used to limit the concurrent deliveries. This is the circuit of the queued request when
+     * available, the host of the request uri otherwise.
+     *
+     * @return returns the delivery target or <code>null</code> when no target could be evaluated
+     */
+    private String getDeliveryTarget(HttpRequest queuedRequest) {
+        if (queueCircuitBreaker != null) {
+            String circuitHash = queueCircuitBreaker.getCircuitHash(queuedRequest);
+            if (circuitHash != null) {
+                return circuitHash;
+            }
+        }
+        try {
+            return URI.create(queuedRequest.getUri()).getAuthority();
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
     private void performCircuitBreakerActions(String queueName, HttpRequest queuedRequest, QueueResponseType queueResponseType, QueueCircuitState state) {
         updateCircuitBreakerStatistics(queueName, queuedRequest, queueResponseType, state);
         if (QueueCircuitState.HALF_OPEN == state) {
@@ -350,9 +391,37 @@ public class QueueProcessor {
             return;
         }
 
+        final String deliveryTarget = deliveryGovernor != null ? getDeliveryTarget(queuedRequest) : null;
+        final long deliveryStart = System.nanoTime();
+        final AtomicBoolean deliveryCompleted = new AtomicBoolean(false);
+        final Handler<QueueResponseType> completeDelivery = responseType -> {
+            if (!deliveryCompleted.compareAndSet(false, true)) {
+                return;
+            }
+            if (deliveryTarget != null) {
+                deliveryGovernor.release(deliveryTarget, responseType);
+            }
+            if (monitoringHandler != null) {
+                monitoringHandler.updateQueueDelivery(queueName, jsonRequest.getLong(QueueClient.QUEUE_TIMESTAMP),
+                        System.nanoTime() - deliveryStart, SUCCESS == responseType);
+            }
+        };
+        if (deliveryTarget != null) {
+            if (QueueCircuitState.HALF_OPEN == state) {
+                deliveryGovernor.recover(deliveryTarget);
+            }
+            if (!deliveryGovernor.tryAcquire(deliveryTarget)) {
+                logger.debug("Delivery concurrency limit reached for queue {} to {}. Retry later", queueName, queuedRequest.getUri());
+                message.reply(new JsonObject().put(STATUS, ERROR).put(MESSAGE, "Delivery concurrency limit reached for "
+                        + queuedRequest.getUri() + ". Retry later"));
+                return;
+            }
+        }
+
         httpClient.request(queuedRequest.getMethod(), queuedRequest.getUri()).onComplete(asyncReqResult -> {
             if (asyncReqResult.failed()) {
                 logger.warn("Failed request to {}: {}", queuedRequest.getUri(), asyncReqResult.cause());
+                completeDelivery.handle(FAILURE);
                 return;
             }
             HttpClientRequest request1 = asyncReqResult.result();
@@ -364,12 +433,14 @@ public class QueueProcessor {
                 logger.warn("Failed {} request to {}: {}", queuedRequest.getMethod(), queuedRequest.getUri(), asyncReqResult.cause());
                 message.reply(new JsonObject().put(STATUS, ERROR).put(MESSAGE, exception.getMessage()));
                 performCircuitBreakerActions(queueName, queuedRequest, FAILURE, state);
+                completeDelivery.handle(FAILURE);
             });
 
             Handler<AsyncResult<HttpClientResponse>> httpAsyncHandler = asyncResult -> {
                 if (asyncResult.failed()) {
                     logger.error("TODO error handling", exceptionFactory.newException(
                         "httpClientRequest.send() failed", asyncResult.cause()));
+                    completeDelivery.handle(FAILURE);
                     return;
                 }
                 HttpClientResponse response = asyncResult.result();
@@ -383,6 +454,7 @@ public class QueueProcessor {
                     }
                     message.reply(new JsonObject().put(STATUS, OK));
                     performCircuitBreakerActions(queueName, queuedRequest, SUCCESS, state);
+                    completeDelivery.handle(SUCCESS);
                     if(monitoringHandler != null) {
                         monitoringHandler.updateDequeue();
                     }
@@ -390,10 +462,12 @@ public class QueueProcessor {
                     logger.info("Failed queued request to {}: {} {}", queuedRequest.getUri(), statusCode, response.statusMessage());
                     message.reply(new JsonObject().put(STATUS, ERROR).put(MESSAGE, statusCode + " " + response.statusMessage()));
                     performCircuitBreakerActions(queueName, queuedRequest, FAILURE, state);
+                    completeDelivery.handle(FAILURE);
                 } else {
                     logger.info("Reply success, because no more retries left for failed queued request to {}: {} {}", queuedRequest.getUri(), statusCode, response.statusMessage());
                     message.reply(new JsonObject().put(STATUS, OK));
                     performCircuitBreakerActions(queueName, queuedRequest, SUCCESS, state);
+                    completeDelivery.handle(statusCode >= 500 ? FAILURE : SUCCESS);
                 }
                 response.handler(DEV_NULL);
                 response.endHandler(nothing -> logger.debug("Backend response end"));
@@ -401,6 +475,7 @@ public class QueueProcessor {
                     logger.warn("Exception on response from {}: {}", queuedRequest.getUri(), exception.getMessage());
                     message.reply(new JsonObject().put(STATUS, ERROR).put(MESSAGE, exception.getMessage()));
                     performCircuitBreakerActions(queueName, queuedRequest, FAILURE, state);
+                    completeDelivery.handle(FAILURE);
                 });
             };
 
@@ -437,4 +512,9 @@ public class QueueProcessor {
     public HttpClient getHttpClient() {
         return httpClient;
     }
+
+    @Nullable
+    public QueueDeliveryGovernor getDeliveryGovernor() {
+        return deliveryGovernor;
+    }
 }
@@ -98,12 +98,12 @@ public class QueuingHandler implements Handler<Buffer> {
                     request.response().setStatusMessage(StatusCode.ACCEPTED.getStatusMessage());
                     request.response().end();
                 } else {
-                    requestQueue.enqueue(request, headers, buffer, queueSplitter.convertToSubQueue(queue, request));
+                    requestQueue.enqueue(request, headers, buffer, queueSplitter.convertToSubQueue(queue, request, buffer));
                 }
             });
 
         } else {
-            requestQueue.enqueue(request, headers, buffer, queueSplitter.convertToSubQueue(queue, request));
+            requestQueue.enqueue(request, headers, buffer, queueSplitter.convertToSubQueue(queue, request, buffer));
         }
     }
 
@@ -57,6 +57,17 @@ public interface QueueCircuitBreaker {
      */
     boolean isStatisticsUpdateEnabled();
 
+    /**
+     * Get the hash of the circuit representing the provided queued request. The circuit hash is available even when
+     * the circuit check is disabled.
+     *
+     * @param queuedRequest the queued request
+     * @return returns the hash of the corresponding circuit or <code>null</code> when no circuit matches
+     */
+    default String getCircuitHash(HttpRequest queuedRequest) {
+        return null;
+    }
+
     /**
      * Locks the queue having the provided queueName by calling the vertx-redisques API. Additionally, marks the queueName
      * as a locked queue of the circuit representing the provided queuedRequest.
@@ -20,6 +20,9 @@ import org.swisspush.gateleen.queue.queuing.circuitbreaker.QueueCircuitBreaker;
 import org.swisspush.gateleen.queue.queuing.circuitbreaker.QueueCircuitBreakerStorage;
 import org.swisspush.gateleen.queue.queuing.circuitbreaker.util.PatternAndCircuitHash;
 import org.swisspush.gateleen.queue.queuing.circuitbreaker.util.QueueCircuitState;
+import org.swisspush.gateleen.queue.queuing.governor.QueueDeliveryGovernor;
+
+import javax.annotation.Nullable;
 
 import static org.swisspush.gateleen.queue.queuing.circuitbreaker.api.QueueCircuitBreakerAPI.*;
 
@@ -32,6 +35,8 @@ import static org.swisspush.gateleen.queue.queuing.circuitbreaker.api.QueueCircu
  * <li>Change states of all circuits</li>
  * <li>Change status of a single circuit</li>
  * </ul>
+ * When a {@link QueueDeliveryGovernor} is provided, the circuit informations also contain the current delivery
+ * concurrency state of the circuits.
  *
  * @author https://github.com/mcweba [Marc-Andre Weber]
  */
@@ -47,16 +52,24 @@ public class QueueCircuitBreakerHttpRequestHandler implements Handler<HttpServer
 
     private EventBus eventBus;
     private QueueCircuitBreakerStorage storage;
+    private QueueDeliveryGovernor deliveryGovernor;
 
     public static final String HTTP_REQUEST_API_ADDRESS = "gateleen.queue-circuit-breaker.http-request-api";
 
     private static final String APPLICATION_JSON = "application/json";
     private static final String CONTENT_TYPE = "content-type";
+    private static final String DELIVERY = "delivery";
 
     public QueueCircuitBreakerHttpRequestHandler(Vertx vertx, QueueCircuitBreakerStorage storage, String prefix) {
+        this(vertx, storage, prefix, null);
+    }
+
+    public QueueCircuitBreakerHttpRequestHandler(Vertx vertx, QueueCircuitBreakerStorage storage, String prefix,
+                                                 @Nullable QueueDeliveryGovernor deliveryGovernor) {
         this.router = Router.router(vertx);
         this.eventBus = vertx.eventBus();
         this.storage = storage;
+        this.deliveryGovernor = deliveryGovernor;
 
         registerAPIConsumer();
 
@@ -274,7 +287,9 @@ public class QueueCircuitBreakerHttpRequestHandler implements Handler<HttpServer
                 message.reply(new JsonObject().put(STATUS, ERROR).put(MESSAGE, event.cause().getMessage()));
                 return;
             }
-            message.reply(new JsonObject().put(STATUS, OK).put(VALUE, event.result()));
+            JsonObject circuitInformation = event.result();
+            addDeliveryState(circuitHash, circuitInformation);
+            message.reply(new JsonObject().put(STATUS, OK).put(VALUE, circuitInformation));
         });
     }
 
@@ -317,10 +332,27 @@ public class QueueCircuitBreakerHttpRequestHandler implements Handler<HttpServer
                 message.reply(new JsonObject().put(STATUS, ERROR).put(MESSAGE, event.cause().getMessage()));
                 return;
             }
-            message.reply(new JsonObject().put(STATUS, OK).put(VALUE, event.result()));
+            JsonObject allCircuits = event.result();
+            for (String circuitHash : allCircuits.fieldNames()) {
+                Object circuitInformation = allCircuits.getValue(circuitHash);
+                if (circuitInformation instanceof JsonObject) {
+                    addDeliveryState(circuitHash, (JsonObject) circuitInformation);
+                }
+            }
+            message.reply(new JsonObject().put(STATUS, OK).put(VALUE, allCircuits));
         });
     }
 
+    private void addDeliveryState(String circuitHash, JsonObject circuitInformation) {
+        if (deliveryGovernor == null || circuitInformation == null) {
+            return;
+        }
+        JsonObject deliveryState = deliveryGovernor.getState(circuitHash);
+        if (deliveryState != null) {
+            circuitInformation.put(DELIVERY, deliveryState);
+        }
+    }
+
     private void unsupportedOperation(String operation, Message<JsonObject> event) {
         JsonObject reply = new JsonObject();
         String message = "Unsupported operation received: " + operation;
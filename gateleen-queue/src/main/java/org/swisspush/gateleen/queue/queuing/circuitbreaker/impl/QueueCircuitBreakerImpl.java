@@ -257,6 +257,12 @@ public class QueueCircuitBreakerImpl implements QueueCircuitBreaker, RuleChanges
         return configResourceManager.getConfigurationResource().isStatisticsUpdateEnabled();
     }
 
+    @Override
+    public String getCircuitHash(HttpRequest queuedRequest) {
+        PatternAndCircuitHash patternAndCircuitHash = getPatternAndCircuitHashFromRequest(queuedRequest);
+        return patternAndCircuitHash != null ? patternAndCircuitHash.getCircuitHash() : null;
+    }
+
     @Override
     public Future<QueueCircuitState> handleQueuedRequest(String queueName, HttpRequest queuedRequest) {
         Promise<QueueCircuitState> promise = Promise.promise();
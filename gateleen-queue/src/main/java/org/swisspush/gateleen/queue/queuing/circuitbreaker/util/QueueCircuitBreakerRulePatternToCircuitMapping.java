@@ -3,6 +3,7 @@ package org.swisspush.gateleen.queue.queuing.circuitbreaker.util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.swisspush.gateleen.core.util.HashCodeGenerator;
+import org.swisspush.gateleen.core.util.PatternSet;
 import org.swisspush.gateleen.routing.Rule;
 
 import java.util.*;
@@ -18,6 +19,7 @@ public class QueueCircuitBreakerRulePatternToCircuitMapping {
     private Logger log = LoggerFactory.getLogger(QueueCircuitBreakerRulePatternToCircuitMapping.class);
 
     private List<PatternAndCircuitHash> rulePatternToCircuitMapping = new ArrayList<>();
+    private PatternSet<PatternAndCircuitHash> rulePatterns = PatternSet.empty();
 
     /**
      * Updates the mapping with the provided routing rules. Returns a list of {@link PatternAndCircuitHash} objects which have
@@ -44,6 +46,7 @@ public class QueueCircuitBreakerRulePatternToCircuitMapping {
                 log.error("rule pattern and circuitHash could not be retrieved from rule {}", rule.getUrlPattern());
             }
         }
+        rulePatterns = PatternSet.compile(rulePatternToCircuitMapping, PatternAndCircuitHash::getPattern);
         return getRemovedPatternAndCircuitHashes(originalPatternAndCircuitHashes, rulePatternToCircuitMapping);
     }
 
@@ -54,12 +57,7 @@ public class QueueCircuitBreakerRulePatternToCircuitMapping {
     }
 
     public PatternAndCircuitHash getCircuitFromRequestUri(String requestUri){
-        for (PatternAndCircuitHash mapping : rulePatternToCircuitMapping) {
-            if(mapping.getPattern().matcher(requestUri).matches()){
-                return mapping;
-            }
-        }
-        return null;
+        return rulePatterns.findFirst(requestUri);
     }
 
     private PatternAndCircuitHash getPatternAndCircuitHashFromRule(Rule rule){
@@ -0,0 +1,175 @@
+package org.swisspush.gateleen.queue.queuing.governor;
+
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.swisspush.gateleen.queue.queuing.QueueProcessor;
+import org.swisspush.gateleen.queue.queuing.circuitbreaker.util.QueueResponseType;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Limits the amount of concurrent queued request deliveries of the {@link QueueProcessor} per target. A target is
+ * either a circuit (routing rule) of the queue circuit breaker or the host of an absolute request uri.
+ * <p>
+ * The concurrency limit of a target is adapted based on the delivery results (additive increase, multiplicative
+ * decrease). Failed deliveries halve the limit, successful deliveries raise it by one after a full 'round' of
+ * successful deliveries until the configured maximum is reached again. When a target recovers (circuit in state
+ * half_open), the limit is reset to the initial concurrency, so a recovered backend is not overwhelmed by all the
+ * waiting queues at once.
+ * <p>
+ * Deliveries exceeding the limit are not executed. The {@link QueueProcessor} replies with an error instead, so
+ * vertx-redisques retries the queue later.
+ * <p>
+ * The state is kept per instance and is safe to be shared between multiple {@link QueueProcessor} instances.
+ */
+public class QueueDeliveryGovernor {
+
+    public static final int DEFAULT_MAX_CONCURRENCY = 50;
+    public static final int DEFAULT_INITIAL_CONCURRENCY = 2;
+
+    public static final String FIELD_LIMIT = "limit";
+    public static final String FIELD_MAX_LIMIT = "maxLimit";
+    public static final String FIELD_IN_FLIGHT = "inFlight";
+    public static final String FIELD_DELIVERED = "delivered";
+    public static final String FIELD_REJECTED = "rejected";
+
+    private final Logger log = LoggerFactory.getLogger(QueueDeliveryGovernor.class);
+
+    private final int maxConcurrency;
+    private final int initialConcurrency;
+    private final Map<String, TargetState> targets = new ConcurrentHashMap<>();
+
+    public QueueDeliveryGovernor() {
+        this(DEFAULT_MAX_CONCURRENCY, DEFAULT_INITIAL_CONCURRENCY);
+    }
+
+    /**
+     * @param maxConcurrency the maximum amount of concurrent deliveries per target
+     * @param initialConcurrency the amount of concurrent deliveries per target after a recovery
+     */
+    public QueueDeliveryGovernor(int maxConcurrency, int initialConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be greater than 0");
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.initialConcurrency = Math.max(1, Math.min(initialConcurrency, maxConcurrency));
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getInitialConcurrency() {
+        return initialConcurrency;
+    }
+
+    /**
+     * Tries to reserve a delivery slot for the provided target. Every successful call must be followed by exactly one
+     * call of {@link #release(String, QueueResponseType)}.
+     *
+     * @param target the delivery target
+     * @return returns true when the delivery can be executed, false when the concurrency limit is reached
+     */
+    public boolean tryAcquire(String target) {
+        return targets.computeIfAbsent(target, t -> new TargetState(maxConcurrency)).tryAcquire();
+    }
+
+    /**
+     * Releases a delivery slot of the provided target and adapts the concurrency limit based on the delivery result.
+     *
+     * @param target the delivery target
+     * @param responseType the result of the delivery
+     */
+    public void release(String target, QueueResponseType responseType) {
+        TargetState state = targets.get(target);
+        if (state != null) {
+            state.release(responseType, maxConcurrency);
+        }
+    }
+
+    /**
+     * Resets the concurrency limit of the provided target to the initial concurrency. The limit will then slowly
+     * be increased again with each round of successful deliveries.
+     *
+     * @param target the delivery target
+     */
+    public void recover(String target) {
+        TargetState state = targets.computeIfAbsent(target, t -> new TargetState(initialConcurrency));
+        if (state.recover(initialConcurrency)) {
+            log.info("Delivery concurrency limit of target {} reset to {}", target, initialConcurrency);
+        }
+    }
+
+    /**
+     * @param target the delivery target
+     * @return returns the current state of the provided target or <code>null</code> when the target is not known
+     */
+    @Nullable
+    public JsonObject getState(String target) {
+        TargetState state = targets.get(target);
+        return state == null ? null : state.toJson(maxConcurrency);
+    }
+
+    /**
+     * @return returns the current state of all known targets
+     */
+    public JsonObject getAllStates() {
+        JsonObject result = new JsonObject();
+        targets.forEach((target, state) -> result.put(target, state.toJson(maxConcurrency)));
+        return result;
+    }
+
+    private static class TargetState {
+        private int limit;
+        private int inFlight;
+        private int successesSinceIncrease;
+        private long delivered;
+        private long rejected;
+
+        TargetState(int limit) {
+            this.limit = limit;
+        }
+
+        synchronized boolean tryAcquire() {
+            if (inFlight >= limit) {
+                rejected++;
+                return false;
+            }
+            inFlight++;
+            return true;
+        }
+
+        synchronized void release(QueueResponseType responseType, int maxConcurrency) {
+            inFlight = Math.max(0, inFlight - 1);
+            delivered++;
+            if (QueueResponseType.FAILURE == responseType) {
+                limit = Math.max(1, limit / 2);
+                successesSinceIncrease = 0;
+            } else if (limit < maxConcurrency && ++successesSinceIncrease >= limit) {
+                limit++;
+                successesSinceIncrease = 0;
+            }
+        }
+
+        synchronized boolean recover(int initialConcurrency) {
+            successesSinceIncrease = 0;
+            if (limit > initialConcurrency) {
+                limit = initialConcurrency;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized JsonObject toJson(int maxConcurrency) {
+            return new JsonObject()
+                    .put(FIELD_LIMIT, limit)
+                    .put(FIELD_MAX_LIMIT, maxConcurrency)
+                    .put(FIELD_IN_FLIGHT, inFlight)
+                    .put(FIELD_DELIVERED, delivered)
+                    .put(FIELD_REJECTED, rejected);
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package org.swisspush.gateleen.queue.queuing.splitter;
 
 import io.vertx.core.Future;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServerRequest;
 
+import javax.annotation.Nullable;
+
 /**
  * Interface for queues configured to be split in sub-queues. The method {@link QueueSplitter#convertToSubQueue(String, HttpServerRequest)}
  * evaluates the convert of the queue name in a sub-queue name.
@@ -21,4 +24,17 @@ public interface QueueSplitter {
          * @return sub-queue name
          */
     String convertToSubQueue(String queue, HttpServerRequest request);
+
+    /**
+     * Convert the queue name in a sub-queue name. Same as {@link #convertToSubQueue(String, HttpServerRequest)} but
+     * provides the request payload to splitters using it to compute the sub-queue.
+     *
+     * @param queue
+     * @param request
+     * @param payload the request payload, may be <code>null</code>
+     * @return sub-queue name
+     */
+    default String convertToSubQueue(String queue, HttpServerRequest request, @Nullable Buffer payload) {
+        return convertToSubQueue(queue, request);
+    }
 }
@@ -26,6 +26,9 @@ public class QueueSplitterConfiguration {
     @Nullable
     private final Pattern postfixFromUrl;
 
+    @Nullable
+    private final QueueSplitterHashConfiguration postfixFromHash;
+
 
     public QueueSplitterConfiguration(
             Pattern queue,
@@ -33,11 +36,22 @@ public class QueueSplitterConfiguration {
             @Nullable List<String> postfixFromStatic,
             @Nullable String postfixFromHeader,
             @Nullable Pattern postfixFromUrl) {
+        this(queue, postfixDelimiter, postfixFromStatic, postfixFromHeader, postfixFromUrl, null);
+    }
+
+    public QueueSplitterConfiguration(
+            Pattern queue,
+            String postfixDelimiter,
+            @Nullable List<String> postfixFromStatic,
+            @Nullable String postfixFromHeader,
+            @Nullable Pattern postfixFromUrl,
+            @Nullable QueueSplitterHashConfiguration postfixFromHash) {
         this.queue = queue;
         this.postfixDelimiter = postfixDelimiter;
         this.postfixFromStatic = postfixFromStatic;
         this.postfixFromHeader = postfixFromHeader;
         this.postfixFromUrl = postfixFromUrl;
+        this.postfixFromHash = postfixFromHash;
     }
 
     public Pattern getQueue() {
@@ -63,6 +77,11 @@ public class QueueSplitterConfiguration {
         return postfixFromUrl;
     }
 
+    @Nullable
+    public QueueSplitterHashConfiguration getPostfixFromHash() {
+        return postfixFromHash;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -72,12 +91,13 @@ public class QueueSplitterConfiguration {
                 Objects.equals(postfixDelimiter, that.postfixDelimiter) &&
                 Objects.equals(postfixFromStatic, that.postfixFromStatic) &&
                 Objects.equals(postfixFromHeader, that.postfixFromHeader) &&
-                Objects.equals(postfixFromUrl, that.postfixFromUrl);
+                Objects.equals(postfixFromUrl, that.postfixFromUrl) &&
+                Objects.equals(postfixFromHash, that.postfixFromHash);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(queue, postfixDelimiter, postfixFromStatic, postfixFromHeader, postfixFromUrl);
+        return Objects.hash(queue, postfixDelimiter, postfixFromStatic, postfixFromHeader, postfixFromUrl, postfixFromHash);
     }
 
     @Override
@@ -88,6 +108,7 @@ public class QueueSplitterConfiguration {
                 ", postfixFromStatic=" + postfixFromStatic +
                 ", postfixFromHeader='" + postfixFromHeader + '\'' +
                 ", postfixFromUrl='" + postfixFromUrl + '\'' +
+                ", postfixFromHash=" + postfixFromHash +
                 '}';
     }
 
@@ -95,6 +116,10 @@ public class QueueSplitterConfiguration {
         return postfixFromStatic != null && !postfixFromStatic.isEmpty();
     }
 
+    public boolean isSplitFromHash() {
+        return postfixFromHash != null && postfixFromHash.getBuckets() > 1;
+    }
+
     public boolean isSplitFromRequest() {
         return postfixFromHeader != null || postfixFromUrl != null;
     }
@@ -27,6 +27,9 @@ public class QueueSplitterConfigurationParser {
     public static final String POSTFIX_FROM_REQUEST_KEY = "postfixFromRequest";
     public static final String POSTFIX_FROM_HEADER_KEY = "header";
     public static final String POSTFIX_FROM_URL_KEY = "url";
+    public static final String POSTFIX_FROM_HASH_KEY = "postfixFromHash";
+    public static final String HASH_BUCKETS_KEY = "buckets";
+    public static final String HASH_PAYLOAD_KEY = "payload";
     public static final String POSTFIX_DELIMITER_KEY = "postfixDelimiter";
     public static final String DEFAULT_POSTFIX_DELIMITER = "-";
 
@@ -60,6 +63,31 @@ public class QueueSplitterConfigurationParser {
                             null,
                             null
                     ));
+                } else if (queueConfig.getJsonObject(POSTFIX_FROM_HASH_KEY) != null) {
+                    JsonObject postfixFromHash = queueConfig.getJsonObject(POSTFIX_FROM_HASH_KEY);
+                    int buckets = postfixFromHash.getInteger(HASH_BUCKETS_KEY, 0);
+                    String hashFromHeader = postfixFromHash.getString(POSTFIX_FROM_HEADER_KEY);
+                    String hashFromUrl = postfixFromHash.getString(POSTFIX_FROM_URL_KEY);
+                    boolean hashFromPayload = postfixFromHash.getBoolean(HASH_PAYLOAD_KEY, false);
+                    if (buckets < 2) {
+                        log.warn("Queue splitter '{}' with less than 2 hash buckets. Discarding this queue splitter configuration", queuePattern);
+                    } else if (hashFromHeader == null && hashFromUrl == null && !hashFromPayload) {
+                        log.warn("Queue splitter '{}' without a hash key definition. Discarding this queue splitter configuration", queuePattern);
+                    } else {
+                        queueSplitterConfigurations.add(new QueueSplitterConfiguration(
+                                pattern,
+                                queueConfig.getString(POSTFIX_DELIMITER_KEY, DEFAULT_POSTFIX_DELIMITER),
+                                null,
+                                null,
+                                null,
+                                new QueueSplitterHashConfiguration(
+                                        buckets,
+                                        hashFromHeader,
+                                        hashFromUrl != null ? Pattern.compile(hashFromUrl) : null,
+                                        hashFromPayload
+                                )
+                        ));
+                    }
                 } else {
                     JsonObject postfixFromRequest = queueConfig.getJsonObject(POSTFIX_FROM_REQUEST_KEY);
                     String postfixFromHeader = postfixFromRequest != null ? postfixFromRequest.getString(POSTFIX_FROM_HEADER_KEY) : null;
@@ -0,0 +1,74 @@
+package org.swisspush.gateleen.queue.queuing.splitter;
+
+import javax.annotation.Nullable;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Container holding the hash partitioning values of a {@link QueueSplitterConfiguration}. The partitioning
+ * key is composed of the url regex groups, the header value and the payload (in this order), depending on
+ * which of them are configured.
+ */
+public class QueueSplitterHashConfiguration {
+
+    private final int buckets;
+
+    @Nullable
+    private final String header;
+
+    @Nullable
+    private final Pattern url;
+
+    private final boolean payload;
+
+    public QueueSplitterHashConfiguration(int buckets, @Nullable String header, @Nullable Pattern url, boolean payload) {
+        this.buckets = buckets;
+        this.header = header;
+        this.url = url;
+        this.payload = payload;
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    @Nullable
+    public String getHeader() {
+        return header;
+    }
+
+    @Nullable
+    public Pattern getUrl() {
+        return url;
+    }
+
+    public boolean isPayload() {
+        return payload;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        QueueSplitterHashConfiguration that = (QueueSplitterHashConfiguration) o;
+        return buckets == that.buckets &&
+                payload == that.payload &&
+                Objects.equals(header, that.header) &&
+                Objects.equals(url == null ? null : url.pattern(), that.url == null ? null : that.url.pattern());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(buckets, header, url == null ? null : url.pattern(), payload);
+    }
+
+    @Override
+    public String toString() {
+        return "QueueSplitterHashConfiguration{" +
+                "buckets=" + buckets +
+                ", header='" + header + '\'' +
+                ", url='" + url + '\'' +
+                ", payload=" + payload +
+                '}';
+    }
+}
@@ -11,10 +11,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.swisspush.gateleen.core.configuration.ConfigurationResourceConsumer;
 import org.swisspush.gateleen.core.configuration.ConfigurationResourceManager;
+import org.swisspush.gateleen.core.util.PatternSet;
 import org.swisspush.gateleen.queue.queuing.splitter.executors.QueueSplitExecutor;
+import org.swisspush.gateleen.queue.queuing.splitter.executors.QueueSplitExecutorFromHash;
 import org.swisspush.gateleen.queue.queuing.splitter.executors.QueueSplitExecutorFromRequest;
 import org.swisspush.gateleen.queue.queuing.splitter.executors.QueueSplitExecutorFromStaticList;
 
+import javax.annotation.Nullable;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
@@ -30,7 +33,7 @@ public class QueueSplitterImpl extends ConfigurationResourceConsumer implements
     private final Logger log = LoggerFactory.getLogger(QueueSplitterImpl.class);
 
     private final Map<String, Object> properties;
-    private List<QueueSplitExecutor> configurableQueueSplitExecutors = new ArrayList<>();
+    private PatternSet<QueueSplitExecutor> configurableQueueSplitExecutors = PatternSet.empty();
     private final Cache<String, QueueSplitExecutorFromStaticList> dynamicQueueSplitExecutors;
 
     public QueueSplitterImpl(
@@ -69,14 +72,16 @@ public class QueueSplitterImpl extends ConfigurationResourceConsumer implements
 
     private void initializeQueueSplitterConfiguration(Buffer configuration) {
         final List<QueueSplitterConfiguration> configurations = QueueSplitterConfigurationParser.parse(configuration, properties);
-        configurableQueueSplitExecutors.clear();
-        configurableQueueSplitExecutors = configurations.stream().map(queueSplitterConfiguration -> {
+        List<QueueSplitExecutor> executors = configurations.stream().map(queueSplitterConfiguration -> {
             if (queueSplitterConfiguration.isSplitStatic()) {
                 return new QueueSplitExecutorFromStaticList(queueSplitterConfiguration);
+            } else if (queueSplitterConfiguration.isSplitFromHash()) {
+                return new QueueSplitExecutorFromHash(queueSplitterConfiguration);
             } else {
                 return new QueueSplitExecutorFromRequest(queueSplitterConfiguration);
             }
         }).collect(Collectors.toList());
+        configurableQueueSplitExecutors = PatternSet.compile(executors, QueueSplitExecutor::queuePattern);
     }
 
     /**
@@ -154,9 +159,18 @@ public class QueueSplitterImpl extends ConfigurationResourceConsumer implements
      */
     @Override
     public String convertToSubQueue(final String queue, HttpServerRequest request) {
-        Optional<QueueSplitExecutor> executor = configurableQueueSplitExecutors.stream().filter(splitExecutor -> splitExecutor.matches(queue)).findFirst();
-        if (executor.isPresent()) {
-            return executor.get().executeSplit(queue, request);
+        return convertToSubQueue(queue, request, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String convertToSubQueue(final String queue, HttpServerRequest request, @Nullable Buffer payload) {
+        for (QueueSplitExecutor executor : configurableQueueSplitExecutors.candidates(queue)) {
+            if (executor.matches(queue)) {
+                return executor.executeSplit(queue, request, payload);
+            }
         }
         return dynamicSplitProcessing(queue, request);
     }
@@ -173,7 +187,7 @@ public class QueueSplitterImpl extends ConfigurationResourceConsumer implements
     public void resourceRemoved(String resourceUri) {
         if (configResourceUri() != null && configResourceUri().equals(resourceUri)) {
             log.info("Queue splitter configuration resource {} was removed. Going to release all executors", resourceUri);
-            configurableQueueSplitExecutors.clear();
+            configurableQueueSplitExecutors = PatternSet.empty();
         }
         dynamicQueueSplitExecutors.invalidateAll();
     }
@@ -1,10 +1,31 @@
 package org.swisspush.gateleen.queue.queuing.splitter.executors;
 
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServerRequest;
 
+import javax.annotation.Nullable;
+import java.util.regex.Pattern;
+
 public interface QueueSplitExecutor {
 
     boolean matches(String queue);
 
+    /**
+     * Returns the pattern of the queues handled by this executor. The pattern is used to index the executors and
+     * does not replace {@link #matches(String)}. Executors not providing a pattern are evaluated for every queue.
+     */
+    @Nullable
+    default Pattern queuePattern() {
+        return null;
+    }
+
     String executeSplit(String queue, HttpServerRequest request);
+
+    /**
+     * Same as {@link #executeSplit(String, HttpServerRequest)} but with access to the request payload. Executors
+     * not depending on the payload don't need to override this method.
+     */
+    default String executeSplit(String queue, HttpServerRequest request, @Nullable Buffer payload) {
+        return executeSplit(queue, request);
+    }
 }
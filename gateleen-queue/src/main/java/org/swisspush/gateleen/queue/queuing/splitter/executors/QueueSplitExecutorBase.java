@@ -2,6 +2,8 @@ package org.swisspush.gateleen.queue.queuing.splitter.executors;
 
 import org.swisspush.gateleen.queue.queuing.splitter.QueueSplitterConfiguration;
 
+import java.util.regex.Pattern;
+
 public abstract class QueueSplitExecutorBase implements QueueSplitExecutor {
 
     protected final QueueSplitterConfiguration configuration;
@@ -14,4 +16,9 @@ public abstract class QueueSplitExecutorBase implements QueueSplitExecutor {
     public boolean matches(String queue) {
         return configuration.getQueue().matcher(queue).matches();
     }
+
+    @Override
+    public Pattern queuePattern() {
+        return configuration.getQueue();
+    }
 }
@@ -0,0 +1,69 @@
+package org.swisspush.gateleen.queue.queuing.splitter.executors;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerRequest;
+import org.swisspush.gateleen.queue.queuing.splitter.QueueSplitterConfiguration;
+import org.swisspush.gateleen.queue.queuing.splitter.QueueSplitterHashConfiguration;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+
+/**
+ * Distributes the requests of a queue over a fixed number of sub-queues by hashing a key extracted from the
+ * request. Requests with the same key always end up in the same sub-queue, so the order per key is kept.
+ * Requests without any key stay in the original queue.
+ */
+public class QueueSplitExecutorFromHash extends QueueSplitExecutorBase {
+
+    public QueueSplitExecutorFromHash(QueueSplitterConfiguration configuration) {
+        super(configuration);
+    }
+
+    @Override
+    public String executeSplit(String queue, HttpServerRequest request) {
+        return executeSplit(queue, request, null);
+    }
+
+    @Override
+    public String executeSplit(String queue, HttpServerRequest request, @Nullable Buffer payload) {
+        if (!matches(queue)) {
+            return queue;
+        }
+        QueueSplitterHashConfiguration hashConfiguration = configuration.getPostfixFromHash();
+        Hasher hasher = Hashing.murmur3_32_fixed().newHasher();
+        boolean keyFound = false;
+
+        if (hashConfiguration.getUrl() != null) {
+            Matcher matcher = hashConfiguration.getUrl().matcher(request.uri());
+            if (matcher.matches()) {
+                for (int i = 0; i < matcher.groupCount(); i++) {
+                    String group = matcher.group(i + 1);
+                    if (group != null) {
+                        hasher.putString(group, StandardCharsets.UTF_8).putByte((byte) 0);
+                        keyFound = true;
+                    }
+                }
+            }
+        }
+        if (hashConfiguration.getHeader() != null && request.headers() != null) {
+            String headerValue = request.headers().get(hashConfiguration.getHeader());
+            if (headerValue != null) {
+                hasher.putString(headerValue, StandardCharsets.UTF_8).putByte((byte) 0);
+                keyFound = true;
+            }
+        }
+        if (hashConfiguration.isPayload() && payload != null && payload.length() > 0) {
+            hasher.putBytes(payload.getBytes());
+            keyFound = true;
+        }
+
+        if (!keyFound) {
+            return queue;
+        }
+        int bucket = Hashing.consistentHash(hasher.hash(), hashConfiguration.getBuckets());
+        return queue + configuration.getPostfixDelimiter() + bucket;
+    }
+}
@@ -36,6 +36,7 @@ import org.swisspush.gateleen.monitoring.MonitoringHandler;
 import org.swisspush.gateleen.queue.queuing.circuitbreaker.QueueCircuitBreaker;
 import org.swisspush.gateleen.queue.queuing.circuitbreaker.util.QueueCircuitState;
 import org.swisspush.gateleen.queue.queuing.circuitbreaker.util.QueueResponseType;
+import org.swisspush.gateleen.queue.queuing.governor.QueueDeliveryGovernor;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
@@ -149,6 +150,50 @@ public class QueueProcessorTest {
         });
     }
 
+    @Test
+    public void testDeliveryConcurrencyLimitReached(TestContext context) {
+        Async async = context.async();
+        QueueCircuitBreaker circuitBreaker = Mockito.spy(new ConfigurableQueueCircuitBreaker(QueueCircuitState.CLOSED, false, false));
+        doReturn("myCircuitHash").when(circuitBreaker).getCircuitHash(any(HttpRequest.class));
+        QueueDeliveryGovernor deliveryGovernor = new QueueDeliveryGovernor(1, 1);
+        context.assertTrue(deliveryGovernor.tryAcquire("myCircuitHash"));
+
+        new QueueProcessor(vertx, httpClient, monitoringHandler, circuitBreaker, deliveryGovernor, exceptionFactory, true);
+
+        vertx.eventBus().request(Address.queueProcessorAddress(), buildQueueEventBusMessage("my_queue"), event -> {
+            context.assertTrue(event.succeeded());
+            JsonObject result = (JsonObject) event.result().body();
+            context.assertEquals("error", result.getString("status"));
+            context.assertTrue(result.getString("message").contains("Delivery concurrency limit reached"));
+
+            verify(httpClient, never()).request(any(HttpMethod.class), anyString());
+            context.assertEquals(1L, deliveryGovernor.getState("myCircuitHash").getLong(QueueDeliveryGovernor.FIELD_REJECTED));
+            async.complete();
+        });
+    }
+
+    @Test
+    public void testDeliveryConcurrencySlotReleased(TestContext context) {
+        Async async = context.async();
+        QueueCircuitBreaker circuitBreaker = Mockito.spy(new ConfigurableQueueCircuitBreaker(QueueCircuitState.CLOSED, false, false));
+        doReturn("myCircuitHash").when(circuitBreaker).getCircuitHash(any(HttpRequest.class));
+        QueueDeliveryGovernor deliveryGovernor = new QueueDeliveryGovernor(1, 1);
+
+        new QueueProcessor(vertx, httpClient, monitoringHandler, circuitBreaker, deliveryGovernor, exceptionFactory, true);
+        setHttpClientRespondStatusCode(StatusCode.OK);
+
+        vertx.eventBus().request(Address.queueProcessorAddress(), buildQueueEventBusMessage("my_queue"), event -> {
+            context.assertTrue(event.succeeded());
+            JsonObject result = (JsonObject) event.result().body();
+            context.assertEquals("ok", result.getString("status"));
+
+            JsonObject state = deliveryGovernor.getState("myCircuitHash");
+            context.assertEquals(0, state.getInteger(QueueDeliveryGovernor.FIELD_IN_FLIGHT));
+            context.assertEquals(1L, state.getLong(QueueDeliveryGovernor.FIELD_DELIVERED));
+            async.complete();
+        });
+    }
+
     @Test
     public void testSuccessfulNormalRequestResponse(TestContext context) {
         Async async = context.async();
@@ -162,6 +207,7 @@ public class QueueProcessorTest {
             context.assertEquals("ok", result.getString("status"));
 
             verify(httpClient, times(1)).request(any(HttpMethod.class), anyString());
+            verify(monitoringHandler, timeout(1000)).updateQueueDelivery(eq("my_queue"), any(), anyLong(), eq(true));
             async.complete();
         });
     }
@@ -243,6 +289,7 @@ public class QueueProcessorTest {
             context.assertTrue(result.getString("message").contains("" + StatusCode.BAD_REQUEST.getStatusCode()));
 
             verify(httpClient, times(1)).request(any(HttpMethod.class), anyString());
+            verify(monitoringHandler, timeout(1000)).updateQueueDelivery(eq("my_queue"), any(), anyLong(), eq(false));
             async.complete();
         });
     }
@@ -0,0 +1,91 @@
+package org.swisspush.gateleen.queue.queuing.governor;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.swisspush.gateleen.queue.queuing.circuitbreaker.util.QueueResponseType.FAILURE;
+import static org.swisspush.gateleen.queue.queuing.circuitbreaker.util.QueueResponseType.SUCCESS;
+import static org.swisspush.gateleen.queue.queuing.governor.QueueDeliveryGovernor.*;
+
+/**
+ * Tests for the {@link QueueDeliveryGovernor} class
+ */
+@RunWith(VertxUnitRunner.class)
+public class QueueDeliveryGovernorTest {
+
+    @Test
+    public void testLimitReached(TestContext context) {
+        QueueDeliveryGovernor governor = new QueueDeliveryGovernor(2, 1);
+
+        context.assertTrue(governor.tryAcquire("circuit_1"));
+        context.assertTrue(governor.tryAcquire("circuit_1"));
+        context.assertFalse(governor.tryAcquire("circuit_1"));
+
+        // other targets are not affected
+        context.assertTrue(governor.tryAcquire("circuit_2"));
+
+        governor.release("circuit_1", SUCCESS);
+        context.assertTrue(governor.tryAcquire("circuit_1"));
+
+        JsonObject state = governor.getState("circuit_1");
+        context.assertEquals(2, state.getInteger(FIELD_LIMIT));
+        context.assertEquals(2, state.getInteger(FIELD_IN_FLIGHT));
+        context.assertEquals(1L, state.getLong(FIELD_DELIVERED));
+        context.assertEquals(1L, state.getLong(FIELD_REJECTED));
+    }
+
+    @Test
+    public void testFailureHalvesLimit(TestContext context) {
+        QueueDeliveryGovernor governor = new QueueDeliveryGovernor(8, 1);
+
+        context.assertTrue(governor.tryAcquire("circuit_1"));
+        governor.release("circuit_1", FAILURE);
+        context.assertEquals(4, governor.getState("circuit_1").getInteger(FIELD_LIMIT));
+
+        context.assertTrue(governor.tryAcquire("circuit_1"));
+        governor.release("circuit_1", FAILURE);
+        context.assertTrue(governor.tryAcquire("circuit_1"));
+        governor.release("circuit_1", FAILURE);
+        context.assertTrue(governor.tryAcquire("circuit_1"));
+        governor.release("circuit_1", FAILURE);
+        context.assertEquals(1, governor.getState("circuit_1").getInteger(FIELD_LIMIT));
+    }
+
+    @Test
+    public void testRecoverRampsUpSlowly(TestContext context) {
+        QueueDeliveryGovernor governor = new QueueDeliveryGovernor(4, 1);
+
+        governor.recover("circuit_1");
+        context.assertEquals(1, governor.getState("circuit_1").getInteger(FIELD_LIMIT));
+        context.assertTrue(governor.tryAcquire("circuit_1"));
+        context.assertFalse(governor.tryAcquire("circuit_1"));
+
+        // limit 1 -> 2 after 1 success, 2 -> 3 after 2 successes, 3 -> 4 after 3 successes
+        int[] expectedLimits = {2, 2, 3, 3, 3, 4, 4};
+        for (int expectedLimit : expectedLimits) {
+            governor.release("circuit_1", SUCCESS);
+            context.assertEquals(expectedLimit, governor.getState("circuit_1").getInteger(FIELD_LIMIT));
+            context.assertTrue(governor.tryAcquire("circuit_1"));
+        }
+        context.assertEquals(4, governor.getState("circuit_1").getInteger(FIELD_MAX_LIMIT));
+    }
+
+    @Test
+    public void testGetStates(TestContext context) {
+        QueueDeliveryGovernor governor = new QueueDeliveryGovernor();
+
+        context.assertNull(governor.getState("circuit_1"));
+        context.assertTrue(governor.getAllStates().isEmpty());
+
+        governor.tryAcquire("circuit_1");
+        governor.tryAcquire("circuit_2");
+
+        JsonObject allStates = governor.getAllStates();
+        context.assertEquals(2, allStates.size());
+        context.assertEquals(DEFAULT_MAX_CONCURRENCY, allStates.getJsonObject("circuit_1").getInteger(FIELD_LIMIT));
+        context.assertEquals(1, allStates.getJsonObject("circuit_2").getInteger(FIELD_IN_FLIGHT));
+    }
+}
@@ -21,6 +21,8 @@ public class QueueConfigurationSchemaValidationTest {
 
     private final String CONFIG_RESOURCE_VALID = ResourcesUtils.loadResource("testresource_queuesplitter_configuration_valid_1", true);
 
+    private final String CONFIG_RESOURCE_HASH = ResourcesUtils.loadResource("testresource_queuesplitter_configuration_hash", true);
+
     private final String CONFIG_RESOURCE_MISSING_POSTFIX = ResourcesUtils.loadResource("testresource_queuesplitter_configuration_missing_postfix", true);
     private final String CONFIG_RESOURCE_MISSING_POSTFIX_REQUEST = ResourcesUtils.loadResource("testresource_queuesplitter_configuration_missing_postfix_request", true);
 
@@ -35,6 +37,18 @@ public class QueueConfigurationSchemaValidationTest {
         context.assertEquals(ValidationStatus.VALIDATED_POSITIV, validationResult.getValidationStatus());
     }
 
+    @Test
+    public void testHashConfigWithTooFewBuckets(TestContext context) {
+
+        // When
+        ValidationResult validationResult = validate(CONFIG_RESOURCE_HASH);
+
+        // Then
+        context.assertNotNull(validationResult);
+        context.assertEquals(ValidationStatus.VALIDATED_NEGATIV, validationResult.getValidationStatus());
+        context.assertTrue(validationResult.getValidationDetails().encode().contains("$.my-queue-hash-[a-z]+.postfixFromHash.buckets"));
+    }
+
     @Test
     public void testMissingPostfix(TestContext context) {
 
@@ -35,6 +35,11 @@ public class QueueSplitterConfigurationParserTest {
             true
     );
 
+    private final String CONFIGURATION_HASH = ResourcesUtils.loadResource(
+            "testresource_queuesplitter_configuration_hash",
+            true
+    );
+
     private final String CONFIGURATION_WITH_PROPS = ResourcesUtils.loadResource(
             "testresource_queuesplitter_configuration_with_props",
             true
@@ -166,4 +171,39 @@ public class QueueSplitterConfigurationParserTest {
         // Then
         context.assertEquals(0, configurations.size());
     }
+
+    @Test
+    public void parseWithHash(TestContext context) {
+
+        // Given
+        Buffer configurationResourceBuffer = Buffer.buffer(CONFIGURATION_HASH);
+        HashMap<String, Object> properties = new HashMap<>();
+
+        // When
+        List<QueueSplitterConfiguration> configurations = QueueSplitterConfigurationParser.parse(
+                configurationResourceBuffer,
+                properties
+        );
+
+        // Then
+        context.assertEquals(2, configurations.size());
+
+        QueueSplitterConfiguration config_1 = configurations.get(0);
+        context.assertEquals(Pattern.compile("my-queue-hash-1").pattern(), config_1.getQueue().pattern());
+        context.assertEquals("-", config_1.getPostfixDelimiter());
+        context.assertNull(config_1.getPostfixFromStatic());
+        context.assertNull(config_1.getPostfixFromHeader());
+        context.assertNull(config_1.getPostfixFromUrl());
+        context.assertEquals(new QueueSplitterHashConfiguration(4, "x-rp-deviceid", null, false), config_1.getPostfixFromHash());
+        context.assertFalse(config_1.isSplitStatic());
+        context.assertTrue(config_1.isSplitFromHash());
+        context.assertFalse(config_1.isSplitFromRequest());
+
+        QueueSplitterConfiguration config_2 = configurations.get(1);
+        context.assertEquals(Pattern.compile("my-queue-hash-[0-9]+").pattern(), config_2.getQueue().pattern());
+        context.assertEquals("_", config_2.getPostfixDelimiter());
+        context.assertEquals(new QueueSplitterHashConfiguration(8, null, Pattern.compile(".*/path1/(.*)/path3/.*"), true),
+                config_2.getPostfixFromHash());
+        context.assertTrue(config_2.isSplitFromHash());
+    }
 }
@@ -0,0 +1,138 @@
+package org.swisspush.gateleen.queue.queuing.splitter.executors;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.impl.headers.HeadersMultiMap;
+import org.junit.Test;
+import org.swisspush.gateleen.queue.queuing.splitter.QueueSplitterConfiguration;
+import org.swisspush.gateleen.queue.queuing.splitter.QueueSplitterHashConfiguration;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class QueueSplitExecutorFromHashTest {
+
+    @Test
+    public void testExecuteSplitWithHeaderIsStable() {
+
+        // Given
+        QueueSplitExecutorFromHash executor = new QueueSplitExecutorFromHash(configuration(
+                new QueueSplitterHashConfiguration(4, "x-rp-deviceid", null, false)
+        ));
+
+        // When
+        String subQueue = executor.executeSplit("queue-1", requestWithDeviceId("A1B2C3D4E5F6"));
+
+        // Then
+        assertTrue(subQueue.matches("queue-1-[0-3]"));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(subQueue, executor.executeSplit("queue-1", requestWithDeviceId("A1B2C3D4E5F6")));
+        }
+        assertEquals(subQueue, new QueueSplitExecutorFromHash(configuration(
+                new QueueSplitterHashConfiguration(4, "x-rp-deviceid", null, false)
+        )).executeSplit("queue-1", requestWithDeviceId("A1B2C3D4E5F6")));
+    }
+
+    @Test
+    public void testExecuteSplitWithHeaderUsesAllBuckets() {
+
+        // Given
+        QueueSplitExecutorFromHash executor = new QueueSplitExecutorFromHash(configuration(
+                new QueueSplitterHashConfiguration(4, "x-rp-deviceid", null, false)
+        ));
+
+        // When
+        Set<String> subQueues = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            subQueues.add(executor.executeSplit("queue-1", requestWithDeviceId("device-" + i)));
+        }
+
+        // Then
+        assertEquals(Set.of("queue-1-0", "queue-1-1", "queue-1-2", "queue-1-3"), subQueues);
+    }
+
+    @Test
+    public void testExecuteSplitWithHeaderButMissingInRequest() {
+
+        // Given
+        QueueSplitExecutorFromHash executor = new QueueSplitExecutorFromHash(configuration(
+                new QueueSplitterHashConfiguration(4, "x-rp-deviceid", null, false)
+        ));
+        HttpServerRequest request = mock(HttpServerRequest.class);
+        when(request.headers()).thenReturn(new HeadersMultiMap());
+
+        // Then
+        assertEquals("queue-1", executor.executeSplit("queue-1", request));
+    }
+
+    @Test
+    public void testExecuteSplitWithUrl() {
+
+        // Given
+        QueueSplitExecutorFromHash executor = new QueueSplitExecutorFromHash(configuration(
+                new QueueSplitterHashConfiguration(8, null, Pattern.compile("/path1/(.+)/path3/.+"), false)
+        ));
+
+        // When
+        String subQueue = executor.executeSplit("queue-1", requestWithUri("/path1/abc/path3/1"));
+
+        // Then
+        assertTrue(subQueue.matches("queue-1-[0-7]"));
+        assertEquals(subQueue, executor.executeSplit("queue-1", requestWithUri("/path1/abc/path3/2")));
+        assertEquals("queue-1", executor.executeSplit("queue-1", requestWithUri("/other/abc")));
+    }
+
+    @Test
+    public void testExecuteSplitWithPayload() {
+
+        // Given
+        QueueSplitExecutorFromHash executor = new QueueSplitExecutorFromHash(configuration(
+                new QueueSplitterHashConfiguration(8, null, null, true)
+        ));
+        HttpServerRequest request = requestWithUri("/path1");
+
+        // When
+        String subQueue = executor.executeSplit("queue-1", request, Buffer.buffer("{\"id\":1}"));
+
+        // Then
+        assertTrue(subQueue.matches("queue-1-[0-7]"));
+        assertEquals(subQueue, executor.executeSplit("queue-1", request, Buffer.buffer("{\"id\":1}")));
+        assertEquals("queue-1", executor.executeSplit("queue-1", request, Buffer.buffer()));
+        assertEquals("queue-1", executor.executeSplit("queue-1", request));
+    }
+
+    @Test
+    public void testExecuteSplitForWrongQueue() {
+
+        // Given
+        QueueSplitExecutorFromHash executor = new QueueSplitExecutorFromHash(configuration(
+                new QueueSplitterHashConfiguration(4, "x-rp-deviceid", null, false)
+        ));
+
+        // Then
+        assertEquals("queue-2", executor.executeSplit("queue-2", requestWithDeviceId("A1B2C3D4E5F6")));
+    }
+
+    private static QueueSplitterConfiguration configuration(QueueSplitterHashConfiguration hashConfiguration) {
+        return new QueueSplitterConfiguration(Pattern.compile("queue-1"), "-", null, null, null, hashConfiguration);
+    }
+
+    private static HttpServerRequest requestWithDeviceId(String deviceId) {
+        HttpServerRequest request = mock(HttpServerRequest.class);
+        when(request.headers()).thenReturn(new HeadersMultiMap().add("x-rp-deviceid", deviceId));
+        when(request.uri()).thenReturn("/path1");
+        return request;
+    }
+
+    private static HttpServerRequest requestWithUri(String uri) {
+        HttpServerRequest request = mock(HttpServerRequest.class);
+        when(request.headers()).thenReturn(new HeadersMultiMap());
+        when(request.uri()).thenReturn(uri);
+        return request;
+    }
+}
@@ -22,6 +22,7 @@ public abstract class AbstractForwarder implements Handler<RoutingContext> {
     protected final LogAppenderRepository logAppenderRepository;
     protected final MonitoringHandler monitoringHandler;
     protected final String metricNameTag;
+    protected boolean serverTimingEnabled;
 
     public static final String FORWARDS_METRIC_NAME = "gateleen.forwarded.seconds";
     public static final String FORWARDS_METRIC_DESCRIPTION = "Durations of forwarded requests";
@@ -40,6 +41,16 @@ public abstract class AbstractForwarder implements Handler<RoutingContext> {
 
     protected abstract void setMeterRegistry(MeterRegistry meterRegistry);
 
+    /**
+     * Enables returning the phase durations in the <code>x-gateleen-timing</code> response header to requests asking
+     * for them. Disabled by default.
+     *
+     * @param serverTimingEnabled whether the phase durations may be returned
+     */
+    public void setServerTimingEnabled(boolean serverTimingEnabled) {
+        this.serverTimingEnabled = serverTimingEnabled;
+    }
+
     protected boolean doHeadersFilterMatch(final HttpServerRequest request) {
         final Logger log = RequestLoggerFactory.getLogger(getClass(), request);
 
@@ -38,10 +38,12 @@ import org.swisspush.gateleen.routing.auth.AuthHeader;
 import org.swisspush.gateleen.routing.auth.AuthStrategy;
 
 import javax.annotation.Nullable;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -91,6 +93,7 @@ public class Forwarder extends AbstractForwarder {
     private static final Logger LOG = LoggerFactory.getLogger(Forwarder.class);
     private static AtomicInteger nextErrorId = new AtomicInteger();
     private Timer forwardTimer;
+    private Map<PhaseTimings.Phase, Timer> phaseTimers;
     private MeterRegistry meterRegistry;
 
     /**
@@ -225,11 +228,25 @@ public class Forwarder extends AbstractForwarder {
                     .tag(FORWARDER_METRIC_TAG_METRICNAME, metricNameTag)
                     .tag(FORWARDER_METRIC_TAG_TYPE, getRequestTarget(target))
                     .register(meterRegistry);
+            phaseTimers = PhaseTimings.registerTimers(meterRegistry, metricNameTag, getRequestTarget(target), measuredPhases());
         }
     }
 
+    private Set<PhaseTimings.Phase> measuredPhases() {
+        Set<PhaseTimings.Phase> phases = EnumSet.of(PhaseTimings.Phase.connection, PhaseTimings.Phase.ttfb,
+                PhaseTimings.Phase.body);
+        if (authStrategy != null) {
+            phases.add(PhaseTimings.Phase.auth);
+        }
+        if (rule.getProfile() != null && userProfilePath != null) {
+            phases.add(PhaseTimings.Phase.profile);
+        }
+        return phases;
+    }
+
     public void shutdown() {
         forwardTimer = null; // remove this reference from Forwarder
+        phaseTimers = null;
     }
 
     private Map<String, String> createProfileHeaderValues(JsonObject profile, Logger log) {
@@ -324,9 +341,13 @@ public class Forwarder extends AbstractForwarder {
         final String targetUri = buildTargetUri(urlPattern, req.uri(), rule.getPath(), fullUrl);
         log.debug("Forwarding request: {} to {}://{} with rule {}", req.uri(), rule.getScheme(), target + targetUri, rule.getRuleIdentifier());
         final String userId = extractUserId(req, log);
+        final PhaseTimings timings = PhaseTimings.start(phaseTimers, serverTimingEnabled, req.headers());
         req.pause(); // pause the request to avoid problems with starting another async request (storage)
 
         maybeAuthenticate(rule).onComplete(event -> {
+            if (authStrategy != null) {
+                timings.mark(PhaseTimings.Phase.auth);
+            }
             if (event.failed()) {
                 log.error("Failed to authenticate request. Cause: {}", event.cause().getMessage());
                 respondError(req, StatusCode.UNAUTHORIZED);
@@ -337,7 +358,9 @@ public class Forwarder extends AbstractForwarder {
             if (userId != null && rule.getProfile() != null && userProfilePath != null) {
                 log.debug("Get profile information for user '{}' to append to headers", userId);
                 String userProfileKey = String.format(userProfilePath, userId);
+                timings.restart();
                 storage.get(userProfileKey, buffer -> {
+                    timings.mark(PhaseTimings.Phase.profile);
                     Map<String, String> profileHeaderMap = new HashMap<>();
                     if (buffer != null) {
                         JsonObject profile = new JsonObject(buffer.toString());
@@ -347,10 +370,10 @@ public class Forwarder extends AbstractForwarder {
                     } else {
                         log.debug("No profile information found in local storage for user '{}'", userId);
                     }
-                    handleRequest(req, bodyData, targetUri, log, profileHeaderMap, authHeader, afterHandler);
+                    handleRequest(req, bodyData, targetUri, log, profileHeaderMap, authHeader, afterHandler, timings);
                 });
             } else {
-                handleRequest(req, bodyData, targetUri, log, null, authHeader, afterHandler);
+                handleRequest(req, bodyData, targetUri, log, null, authHeader, afterHandler, timings);
             }
         });
     }
@@ -412,7 +435,8 @@ public class Forwarder extends AbstractForwarder {
 
     private void handleRequest(final HttpServerRequest req, final Buffer bodyData, final String targetUri,
                                final Logger log, final Map<String, String> profileHeaderMap,
-                               Optional<AuthHeader> authHeader, @Nullable final Handler<Void> afterHandler
+                               Optional<AuthHeader> authHeader, @Nullable final Handler<Void> afterHandler,
+                               final PhaseTimings timings
     ) {
         /* collect stuff we need */
         final LoggingHandler loggingHandler = new LoggingHandler(loggingResourceManager, logAppenderRepository, req, vertx.eventBus());
@@ -425,7 +449,7 @@ public class Forwarder extends AbstractForwarder {
         /* bundle it into a handy context */
         RequestCtx ctx = new RequestCtx(
                 req, log, targetUri, startTime, timerSample, profileHeaderMap, loggingHandler,
-                afterHandler, timeout, timeoutMs, uniqueId, authHeader.orElse(null), bodyData);
+                afterHandler, timeout, timeoutMs, uniqueId, authHeader.orElse(null), bodyData, timings);
 
         /*
          * Arm a pool-wait guard timer BEFORE calling client.request().
@@ -452,6 +476,7 @@ public class Forwarder extends AbstractForwarder {
                 : -1;
 
         /* initiate request to target server */
+        timings.restart();
         client.request(req.method(), port, rule.getHost(), ctx.targetUri, ev -> {
             if (!responded.compareAndSet(false, true)) {
                 /* pool-wait timer already fired and responded with 504 — abandon the
@@ -460,6 +485,7 @@ public class Forwarder extends AbstractForwarder {
                 return;
             }
             vertx.cancelTimer(poolWaitTimerId);
+            timings.mark(PhaseTimings.Phase.connection);
             if (ev.failed()) {
                 ctx.log.warn("Problem to request {}: {}", ctx.targetUri, ev.cause());
                 tryRespondWithServiceUnavailable(ctx.dnReq.response(), log, "findme_48hj349lgnt8j");
@@ -615,6 +641,7 @@ public class Forwarder extends AbstractForwarder {
         }
 
         handleForwardDurationMetrics(ctx.timerSample);
+        ctx.timings.mark(PhaseTimings.Phase.ttfb);
 
         ctx.upRes = rsp;
         ctx.upRes.exceptionHandler(ex -> onUpstreamError(ex, ctx.dnReq, () -> ctx.upRes.request().getURI()));
@@ -662,6 +689,7 @@ public class Forwarder extends AbstractForwarder {
         if (ctx.profileHeaderMap != null && !ctx.profileHeaderMap.isEmpty()) {
             HttpHeaderUtil.mergeHeaders(ctx.dnRsp.headers(), MultiMap.caseInsensitiveMultiMap().addAll(ctx.profileHeaderMap), ctx.targetUri);
         }
+        ctx.timings.writeServerTiming(ctx.dnRsp.headers());
         // if we receive a chunked transfer then we also use chunked
         // otherwise, upstream must have sent a Content-Length - or no body at all (e.g. for "304 not modified" responses)
         if (ctx.dnRsp.headers().contains(HttpHeaders.TRANSFER_ENCODING, "chunked", true)) {
@@ -715,6 +743,7 @@ public class Forwarder extends AbstractForwarder {
     }
 
     private void onUpstreamResponseEnd(Void nothing1, RequestCtx ctx) {
+        ctx.timings.mark(PhaseTimings.Phase.body);
         try {
             ctx.dnRsp.end();
             // if everything is fine, we call the after handler
@@ -961,6 +990,7 @@ public class Forwarder extends AbstractForwarder {
         private final String uniqueId;
         private final AuthHeader authHeader;
         private final Buffer bodyData;
+        private final PhaseTimings timings;
 
         private RequestCtx(
                 HttpServerRequest dnReq,
@@ -975,7 +1005,8 @@ public class Forwarder extends AbstractForwarder {
                 long timeoutMs,
                 String uniqueId,
                 AuthHeader authHeader,
-                Buffer bodyData
+                Buffer bodyData,
+                PhaseTimings timings
         ) {
             this.dnReq = dnReq;
             this.log = log;
@@ -990,6 +1021,7 @@ public class Forwarder extends AbstractForwarder {
             this.uniqueId = uniqueId;
             this.authHeader = authHeader;
             this.bodyData = bodyData;
+            this.timings = timings;
         }
     }
 
@@ -0,0 +1,156 @@
+package org.swisspush.gateleen.routing;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.vertx.core.MultiMap;
+
+import javax.annotation.Nullable;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.swisspush.gateleen.routing.AbstractForwarder.FORWARDER_METRIC_TAG_METRICNAME;
+import static org.swisspush.gateleen.routing.AbstractForwarder.FORWARDER_METRIC_TAG_TYPE;
+
+/**
+ * Measures the phases of a single forwarded request. Each call of {@link #mark(Phase)} attributes the time elapsed
+ * since the previous mark to the provided phase.
+ * <p>
+ * The durations are recorded to the phase timers of the forwarder (when a meter registry is set) and can be written
+ * to the {@link #TIMING_HEADER} response header in the <code>Server-Timing</code> format, when enabled on the router.
+ */
+class PhaseTimings {
+
+    static final String TIMING_HEADER = "x-gateleen-timing";
+    static final String PHASE_METRIC_NAME = "gateleen.forwarded.phase.seconds";
+    static final String PHASE_METRIC_DESCRIPTION = "Durations of the phases of forwarded requests";
+    static final String PHASE_METRIC_TAG_PHASE = "phase";
+
+    enum Phase {
+        /** authentication of the request to the backend */
+        auth,
+        /** lookup of the user profile */
+        profile,
+        /** waiting for a pooled or new connection to the backend */
+        connection,
+        /** sending the request until the response headers are received */
+        ttfb,
+        /** transferring the response body */
+        body,
+        /** receiving the request body */
+        request,
+        /** processing of the request by the storage */
+        storage
+    }
+
+    private static final PhaseTimings DISABLED = new PhaseTimings(null, false);
+
+    private final Map<Phase, Timer> timers;
+    private final boolean serverTiming;
+    private final Map<Phase, Long> durations;
+    private long lastMark;
+
+    private PhaseTimings(@Nullable Map<Phase, Timer> timers, boolean serverTiming) {
+        this.timers = timers;
+        this.serverTiming = serverTiming;
+        this.durations = serverTiming ? new EnumMap<>(Phase.class) : null;
+        this.lastMark = System.nanoTime();
+    }
+
+    /**
+     * Starts measuring the phases of a request.
+     *
+     * @param timers the phase timers of the forwarder or <code>null</code> when no meter registry is set
+     * @param serverTimingEnabled whether the forwarder may return the durations in the {@link #TIMING_HEADER} header
+     * @param requestHeaders the headers of the request. The <code>Server-Timing</code> values are only collected when
+     *                       enabled and the request contains the {@link #TIMING_HEADER} header with value
+     *                       <code>true</code>
+     * @return the timings of the request
+     */
+    static PhaseTimings start(@Nullable Map<Phase, Timer> timers, boolean serverTimingEnabled, MultiMap requestHeaders) {
+        boolean serverTiming = serverTimingEnabled && "true".equalsIgnoreCase(requestHeaders.get(TIMING_HEADER));
+        if (timers == null && !serverTiming) {
+            return DISABLED;
+        }
+        return new PhaseTimings(timers, serverTiming);
+    }
+
+    /**
+     * Registers a timer per provided phase. Marks of other phases are not recorded.
+     *
+     * @param meterRegistry the meter registry
+     * @param metricName the metricName of the rule
+     * @param type the type of the forwarder
+     * @param phases the phases the forwarder measures
+     * @return the registered timers
+     */
+    static Map<Phase, Timer> registerTimers(MeterRegistry meterRegistry, String metricName, String type, Set<Phase> phases) {
+        Map<Phase, Timer> timers = new EnumMap<>(Phase.class);
+        for (Phase phase : phases) {
+            timers.put(phase, Timer.builder(PHASE_METRIC_NAME)
+                    .description(PHASE_METRIC_DESCRIPTION)
+                    .tag(FORWARDER_METRIC_TAG_METRICNAME, metricName)
+                    .tag(FORWARDER_METRIC_TAG_TYPE, type)
+                    .tag(PHASE_METRIC_TAG_PHASE, phase.name())
+                    .register(meterRegistry));
+        }
+        return timers;
+    }
+
+    /**
+     * Attributes the time elapsed since the previous mark to the provided phase.
+     *
+     * @param phase the phase which just ended
+     */
+    void mark(Phase phase) {
+        if (this == DISABLED) {
+            return;
+        }
+        long now = System.nanoTime();
+        long duration = now - lastMark;
+        lastMark = now;
+        Timer timer = timers != null ? timers.get(phase) : null;
+        if (timer != null) {
+            timer.record(duration, TimeUnit.NANOSECONDS);
+        }
+        if (serverTiming) {
+            durations.merge(phase, duration, Long::sum);
+        }
+    }
+
+    /**
+     * Restarts the measurement without attributing the time elapsed since the previous mark to any phase.
+     */
+    void restart() {
+        if (this != DISABLED) {
+            lastMark = System.nanoTime();
+        }
+    }
+
+    /**
+     * Adds the durations of the phases measured so far to the {@link #TIMING_HEADER} header of the provided response
+     * headers, in front of the value already present (e.g. from an upstream gateleen).
+     *
+     * @param responseHeaders the response headers
+     */
+    void writeServerTiming(MultiMap responseHeaders) {
+        if (!serverTiming || durations.isEmpty()) {
+            return;
+        }
+        StringBuilder value = new StringBuilder();
+        for (Map.Entry<Phase, Long> entry : durations.entrySet()) {
+            if (value.length() > 0) {
+                value.append(", ");
+            }
+            value.append(entry.getKey().name()).append(";dur=")
+                    .append(String.format(Locale.ROOT, "%.3f", entry.getValue() / (double) TimeUnit.MILLISECONDS.toNanos(1)));
+        }
+        String upstreamValue = responseHeaders.get(TIMING_HEADER);
+        if (upstreamValue != null && !upstreamValue.isEmpty()) {
+            value.append(", ").append(upstreamValue);
+        }
+        responseHeaders.set(TIMING_HEADER, value.toString());
+    }
+}
@@ -95,6 +95,11 @@ public class Router implements Refreshable, LoggableResource, ConfigurationResou
      */
     private int routeMultiplier;
 
+    /**
+     * Whether the forwarders return the phase durations in the <code>x-gateleen-timing</code> response header.
+     */
+    private final boolean serverTimingEnabled;
+
     /**
      * @return A builder which assists to create a router instance.
      */
@@ -123,6 +128,7 @@ public class Router implements Refreshable, LoggableResource, ConfigurationResou
            Set<DefaultRouteType> defaultRouteTypes,
            HttpClientFactory httpClientFactory,
            int routeMultiplier,
+           boolean serverTimingEnabled,
            @Nullable OAuthProvider oAuthProvider,
            GateleenExceptionFactory exceptionFactory,
            Handler<Void>... doneHandlers) {
@@ -143,6 +149,7 @@ public class Router implements Refreshable, LoggableResource, ConfigurationResou
         this.httpClientFactory = httpClientFactory;
         this.doneHandlers = doneHandlers;
         this.routeMultiplier = routeMultiplier;
+        this.serverTimingEnabled = serverTimingEnabled;
         this.oAuthProvider = oAuthProvider;
         this.exceptionFactory =  exceptionFactory;
 
@@ -371,6 +378,7 @@ public class Router implements Refreshable, LoggableResource, ConfigurationResou
             }
 
             forwarder.setMeterRegistry(meterRegistry);
+            forwarder.setServerTimingEnabled(serverTimingEnabled);
 
             if (rule.getMethods() == null) {
                 log.info("Installing {} forwarder for all methods: {}", rule.getScheme().toUpperCase(), rule.getUrlPattern());
@@ -54,6 +54,7 @@ public class RouterBuilder {
     private ArrayList<Handler<Void>> doneHandlers;
     private HttpClientFactory httpClientFactory;
     private int routeMultiplier = Router.DEFAULT_ROUTER_MULTIPLIER;
+    private boolean serverTimingEnabled;
 
     private OAuthProvider oAuthProvider;
     private GateleenExceptionFactory exceptionFactory;
@@ -112,6 +113,7 @@ public class RouterBuilder {
                 defaultRouteTypes,
                 httpClientFactory,
                 routeMultiplier,
+                serverTimingEnabled,
                 oAuthProvider,
                 exceptionFactory,
                 doneHandlersArray
@@ -251,6 +253,16 @@ public class RouterBuilder {
         return this;
     }
 
+    /**
+     * Enables returning the phase durations of forwarded requests in the <code>x-gateleen-timing</code> response
+     * header to requests asking for them. Disabled by default.
+     */
+    public RouterBuilder withServerTiming(boolean enabled) {
+        ensureNotBuilt();
+        this.serverTimingEnabled = enabled;
+        return this;
+    }
+
     public RouterBuilder withResourceLogging(boolean enabled) {
         ensureNotBuilt();
         this.resourceLoggingEnabled = enabled;
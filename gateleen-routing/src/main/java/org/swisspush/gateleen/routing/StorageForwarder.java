@@ -34,6 +34,8 @@ import org.swisspush.gateleen.logging.LoggingResourceManager;
 import org.swisspush.gateleen.monitoring.MonitoringHandler;
 
 import javax.annotation.Nullable;
+import java.util.EnumSet;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 /**
@@ -50,6 +52,7 @@ public class StorageForwarder extends AbstractForwarder {
     private GateleenExceptionFactory gateleenExceptionFactory;
 
     private Timer forwardTimer;
+    private Map<PhaseTimings.Phase, Timer> phaseTimers;
     private Counter storageWriteNoExpiry;
     private Counter storageWriteWithExpiry;
     private MeterRegistry meterRegistry;
@@ -97,6 +100,8 @@ public class StorageForwarder extends AbstractForwarder {
                     .tag(FORWARDER_METRIC_TAG_METRICNAME, metricNameTag)
                     .tag(METRIC_TAG_EXPIRES, "true")
                     .register(meterRegistry);
+            phaseTimers = PhaseTimings.registerTimers(meterRegistry, metricNameTag, TYPE_STORAGE,
+                    EnumSet.of(PhaseTimings.Phase.request, PhaseTimings.Phase.storage));
         }
     }
 
@@ -117,6 +122,7 @@ public class StorageForwarder extends AbstractForwarder {
         if (meterRegistry != null) {
             timerSample = Timer.start(meterRegistry);
         }
+        final PhaseTimings timings = PhaseTimings.start(phaseTimers, serverTimingEnabled, ctx.request().headers());
 
         if (monitoringHandler != null) {
             monitoringHandler.updateRequestsMeter("localhost", ctx.request().uri());
@@ -150,9 +156,11 @@ public class StorageForwarder extends AbstractForwarder {
 
         Timer.Sample finalTimerSample = timerSample;
 
-        ctx.request().endHandler(event ->
+        ctx.request().endHandler(event -> {
+                timings.mark(PhaseTimings.Phase.request);
                 eventBus.request(address, requestBuffer, new DeliveryOptions().setSendTimeout(10000),
                         (Handler<AsyncResult<Message<Buffer>>>) result -> {
+                            timings.mark(PhaseTimings.Phase.storage);
                             HttpServerResponse response = ctx.response();
                             if (monitoringHandler != null) {
                                 monitoringHandler.stopRequestMetricTracking(rule.getMetricName(), finalStartTime, ctx.request().uri());
@@ -208,6 +216,7 @@ public class StorageForwarder extends AbstractForwarder {
                                 }
                                 Buffer data = buffer.getBuffer(4 + headerLength, buffer.length());
                                 response.headers().set("content-length", "" + data.length());
+                                timings.writeServerTiming(response.headers());
                                 response.write(data);
                                 response.end();
                                 ResponseStatusCodeLogUtil.debug(ctx.request(), StatusCode.fromCode(statusCode), StorageForwarder.class);
@@ -218,7 +227,8 @@ public class StorageForwarder extends AbstractForwarder {
                                         requestHeaders, responseHeaders != null ? responseHeaders : new HeadersMultiMap());
                             }
 
-                        }));
+                        });
+        });
     }
 
     private void handleStorageWriteMetrics(HttpMethod method, MultiMap headers) {
@@ -0,0 +1,86 @@
+package org.swisspush.gateleen.routing;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.MultiMap;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.EnumSet;
+import java.util.Map;
+
+import static org.swisspush.gateleen.routing.PhaseTimings.PHASE_METRIC_NAME;
+import static org.swisspush.gateleen.routing.PhaseTimings.PHASE_METRIC_TAG_PHASE;
+import static org.swisspush.gateleen.routing.PhaseTimings.TIMING_HEADER;
+
+/**
+ * Tests for the {@link PhaseTimings} class
+ */
+@RunWith(VertxUnitRunner.class)
+public class PhaseTimingsTest {
+
+    @Test
+    public void testPhaseTimers(TestContext context) {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        Map<PhaseTimings.Phase, Timer> timers = PhaseTimings.registerTimers(meterRegistry, "my-rule", "external",
+                EnumSet.of(PhaseTimings.Phase.connection, PhaseTimings.Phase.ttfb, PhaseTimings.Phase.body));
+
+        PhaseTimings timings = PhaseTimings.start(timers, true, MultiMap.caseInsensitiveMultiMap());
+        timings.mark(PhaseTimings.Phase.auth);
+        timings.mark(PhaseTimings.Phase.connection);
+        timings.mark(PhaseTimings.Phase.ttfb);
+        timings.mark(PhaseTimings.Phase.ttfb);
+
+        context.assertEquals(1L, timer(meterRegistry, PhaseTimings.Phase.connection).count());
+        context.assertEquals(2L, timer(meterRegistry, PhaseTimings.Phase.ttfb).count());
+        context.assertEquals(0L, timer(meterRegistry, PhaseTimings.Phase.body).count());
+        context.assertEquals("my-rule", timer(meterRegistry, PhaseTimings.Phase.body).getId().getTag("metricName"));
+        context.assertEquals("external", timer(meterRegistry, PhaseTimings.Phase.body).getId().getTag("type"));
+        // only the provided phases are registered
+        context.assertEquals(3, meterRegistry.find(PHASE_METRIC_NAME).timers().size());
+
+        // no Server-Timing values without request header
+        MultiMap responseHeaders = MultiMap.caseInsensitiveMultiMap();
+        timings.writeServerTiming(responseHeaders);
+        context.assertFalse(responseHeaders.contains(TIMING_HEADER));
+    }
+
+    @Test
+    public void testServerTimingHeader(TestContext context) {
+        PhaseTimings timings = PhaseTimings.start(null, true, MultiMap.caseInsensitiveMultiMap().add(TIMING_HEADER, "true"));
+        timings.mark(PhaseTimings.Phase.auth);
+        timings.restart();
+        timings.mark(PhaseTimings.Phase.connection);
+        timings.mark(PhaseTimings.Phase.ttfb);
+
+        MultiMap responseHeaders = MultiMap.caseInsensitiveMultiMap().add(TIMING_HEADER, "storage;dur=1.000");
+        timings.writeServerTiming(responseHeaders);
+
+        String value = responseHeaders.get(TIMING_HEADER);
+        context.assertTrue(value.matches("auth;dur=\\d+\\.\\d{3}, connection;dur=\\d+\\.\\d{3}, "
+                + "ttfb;dur=\\d+\\.\\d{3}, storage;dur=1\\.000"), value);
+    }
+
+    @Test
+    public void testDisabled(TestContext context) {
+        PhaseTimings timings = PhaseTimings.start(null, true, MultiMap.caseInsensitiveMultiMap().add(TIMING_HEADER, "no"));
+        timings.mark(PhaseTimings.Phase.connection);
+
+        MultiMap responseHeaders = MultiMap.caseInsensitiveMultiMap();
+        timings.writeServerTiming(responseHeaders);
+        context.assertFalse(responseHeaders.contains(TIMING_HEADER));
+
+        // the request header is ignored unless enabled on the router
+        timings = PhaseTimings.start(null, false, MultiMap.caseInsensitiveMultiMap().add(TIMING_HEADER, "true"));
+        timings.mark(PhaseTimings.Phase.connection);
+        timings.writeServerTiming(responseHeaders);
+        context.assertFalse(responseHeaders.contains(TIMING_HEADER));
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, PhaseTimings.Phase phase) {
+        return meterRegistry.get(PHASE_METRIC_NAME).tag(PHASE_METRIC_TAG_PHASE, phase.name()).timer();
+    }
+}
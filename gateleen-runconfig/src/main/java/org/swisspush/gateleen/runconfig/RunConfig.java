@@ -642,6 +642,9 @@ public class RunConfig {
                         validationHandler.handle(request);
                         return;
                     }
+                    if (monitoringHandler.handleRequestPerRuleQuery(request)) {
+                        return;
+                    }
                     if (loggingResourceManager != null && loggingResourceManager.handleLoggingResource(request)) {
                         return;
                     }
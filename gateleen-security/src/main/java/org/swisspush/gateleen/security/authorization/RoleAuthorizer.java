@@ -9,16 +9,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.swisspush.gateleen.core.http.RequestLoggerFactory;
 import org.swisspush.gateleen.core.storage.ResourceStorage;
+import org.swisspush.gateleen.core.util.PatternSet;
 import org.swisspush.gateleen.core.util.ResponseStatusCodeLogUtil;
 import org.swisspush.gateleen.core.util.RoleExtractor;
 import org.swisspush.gateleen.core.util.StatusCode;
 import org.swisspush.gateleen.security.PatternHolder;
 import org.swisspush.gateleen.validation.ValidationException;
 
+import javax.annotation.Nullable;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 
 public class RoleAuthorizer implements ConfigurationResource {
@@ -30,6 +33,7 @@ public class RoleAuthorizer implements ConfigurationResource {
     private final String anonymousRole = "everyone";
     private final String deviceHeader = "x-rp-deviceid";
     private final String userHeader = "x-rp-usr";
+    private static final char PLACEHOLDER_START = '<';
 
     private final String rolePrefix;
 
@@ -46,6 +50,8 @@ public class RoleAuthorizer implements ConfigurationResource {
 
     // URI -> Method -> Roles
     private Map<PatternHolder, Map<String, Set<String>>> grantedRoles = new HashMap<>();
+    // index of the uri patterns of the granted roles, rebuilt lazily after changes
+    private PatternSet<PatternHolder> grantedRolePatterns;
 
     public static final Logger log = LoggerFactory.getLogger(RoleAuthorizer.class);
 
@@ -113,6 +119,7 @@ public class RoleAuthorizer implements ConfigurationResource {
             final List<Future<Void>> futures = new ArrayList<>();
             if (buffer != null) {
                 grantedRoles = new HashMap<>();
+                grantedRolePatterns = null;
                 for (Object roleObject : new JsonObject(buffer).getJsonArray(aclKey)) {
                     String role = (String) roleObject;
                     futures.add(updateAcl(role));
@@ -120,6 +127,7 @@ public class RoleAuthorizer implements ConfigurationResource {
             } else {
                 log.warn("No ACLs in storage, using initial authorization.");
                 grantedRoles = initialGrantedRoles;
+                grantedRolePatterns = null;
                 futures.add(Future.succeededFuture());
             }
             Future.all(futures).onComplete(event -> {
@@ -168,10 +176,10 @@ public class RoleAuthorizer implements ConfigurationResource {
      */
     private boolean isAuthorized(Set<String> roles, HttpServerRequest request) {
         Map<String, RoleMapper.MappedRole> mappedRoles = roleMapper.mapRoles(roles);
-        for (Entry<PatternHolder, Map<String, Set<String>>> entry : grantedRoles.entrySet()) {
-            Matcher matcher = entry.getKey().getPattern(request.headers()).matcher(request.uri());
+        for (PatternHolder patternHolder : grantedRolePatterns().candidates(request.uri())) {
+            Matcher matcher = patternHolder.getPattern(request.headers()).matcher(request.uri());
             if (matcher.matches()) {
-                Set<String> methodRoles = entry.getValue().get(request.method().name());
+                Set<String> methodRoles = grantedRoles.get(patternHolder).get(request.method().name());
                 if (methodRoles != null) {
                     for (String role : methodRoles) {
                         if (checkRole(mappedRoles, request, matcher, role)) {
@@ -185,6 +193,32 @@ public class RoleAuthorizer implements ConfigurationResource {
         return false;
     }
 
+    private PatternSet<PatternHolder> grantedRolePatterns() {
+        PatternSet<PatternHolder> patterns = grantedRolePatterns;
+        if (patterns == null) {
+            patterns = PatternSet.compile(new ArrayList<>(grantedRoles.keySet()), RoleAuthorizer::candidatePattern);
+            grantedRolePatterns = patterns;
+        }
+        return patterns;
+    }
+
+    /**
+     * Returns the pattern used to select the candidate patterns for a request uri. Placeholders like
+     * <code>&lt;x-rp-usr&gt;</code> are replaced by request headers before matching, so only the part of the pattern
+     * before the first placeholder is used.
+     */
+    @Nullable
+    private static Pattern candidatePattern(PatternHolder patternHolder) {
+        Pattern pattern = patternHolder.getPattern();
+        String regex = pattern.pattern();
+        if (regex.indexOf(PLACEHOLDER_START) < 0) {
+            return pattern;
+        }
+        // a placeholder ends the literal prefix like any other regex meta char
+        String prefix = PatternSet.literalPrefix(regex.replace(PLACEHOLDER_START, '.'));
+        return prefix == null ? null : Pattern.compile(prefix + ".*");
+    }
+
     private void fillInNewRoleHeader(HttpServerRequest request, Map<String, RoleMapper.MappedRole> mappedRoles) {
         StringJoiner joiner = new StringJoiner(",");
         for (RoleMapper.MappedRole mappedRole : mappedRoles.values()) {
@@ -254,6 +288,7 @@ public class RoleAuthorizer implements ConfigurationResource {
 
     private void mergeAcl(String role, Buffer buffer) throws ValidationException {
         Map<PatternHolder, Set<String>> permissions = aclFactory.parseAcl(buffer);
+        grantedRolePatterns = null;
         for (Entry<PatternHolder, Set<String>> entry : permissions.entrySet()) {
             PatternHolder holder = entry.getKey();
             Map<String, Set<String>> aclItem = grantedRoles.computeIfAbsent(holder, k -> new HashMap<>());
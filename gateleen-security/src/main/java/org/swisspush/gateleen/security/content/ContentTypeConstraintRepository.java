@@ -2,8 +2,8 @@ package org.swisspush.gateleen.security.content;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.swisspush.gateleen.core.util.PatternSet;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,7 +16,7 @@ import java.util.Optional;
 public class ContentTypeConstraintRepository {
 
     private final Logger log = LoggerFactory.getLogger(ContentTypeConstraintRepository.class);
-    private final List<ContentTypeConstraint> constraints = new ArrayList<>();
+    private PatternSet<ContentTypeConstraint> constraints = PatternSet.empty();
 
     /**
      * Clear all existing constraints. This should be used when the constraint configuration resource
@@ -24,7 +24,7 @@ public class ContentTypeConstraintRepository {
      */
     void clearConstraints(){
         log.info("About to clear Content-Type constraints");
-        this.constraints.clear();
+        this.constraints = PatternSet.empty();
     }
 
     /**
@@ -37,7 +37,7 @@ public class ContentTypeConstraintRepository {
         clearConstraints();
         if(constraints != null){
             log.info("About to set {} Content-Type constraints", constraints.size());
-            this.constraints.addAll(constraints);
+            this.constraints = PatternSet.compile(constraints, constraint -> constraint.urlPattern().getPattern());
         }
     }
 
@@ -48,11 +48,6 @@ public class ContentTypeConstraintRepository {
      * @return Returns a matching {@link ContentTypeConstraint} or {@link Optional#empty()}
      */
     Optional<ContentTypeConstraint> findMatchingContentTypeConstraint(String requestUri){
-        for (ContentTypeConstraint constraint : constraints) {
-            if(constraint.urlPattern().getPattern().matcher(requestUri).matches()){
-                return Optional.of(constraint);
-            }
-        }
-        return Optional.empty();
+        return Optional.ofNullable(constraints.findFirst(requestUri));
     }
 }
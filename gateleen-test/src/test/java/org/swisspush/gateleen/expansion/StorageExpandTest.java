@@ -136,17 +136,26 @@ public class StorageExpandTest extends AbstractTest {
     }
 
     @Test
-    public void testWithStorageExpandAndExpandValueTooHigh(TestContext context) {
+    public void testWithStorageExpandAndMultipleLevels(TestContext context) {
         Async async = context.async();
         delete();
-        createRoutingRule(true);
 
-        with().body("{ \"foo\": \"bar1\" }").put("/test/exp/res1");
-        with().body("{ \"foo\": \"bar2\" }").put("/test/exp/res2");
+        with().body("{ \"foo\": \"bar1\" }").put("/items/exp/res1");
+        with().body("{ \"foo\": \"bar3\" }").put("/items/exp/sub/res3");
+        with().body("{ \"foo\": \"bar5\" }").put("/items/exp/sub/deeper/res5");
+
+        createRoutingRule(false);
+        String standardExpand = given().param("expand", 3).when().get("/items/").getBody().asString();
+
+        createRoutingRule(true);
+        given().param("expand", 3).when().get("/items/").then().log().body()
+                .assertThat().statusCode(200)
+                .body("items.exp.res1.foo", equalTo("bar1"))
+                .body("items.exp.sub.res3.foo", equalTo("bar3"))
+                .body("items.exp.sub.deeper", hasItems("res5"));
 
-        given().param("expand", 3).when().get("/test/exp/").then().log().body()
-                .assertThat().statusCode(400)
-                .body(containsString("Expand values higher than 1 are not supported for storageExpand requests"));
+        String storageExpand = given().param("expand", 3).when().get("/items/").getBody().asString();
+        Assert.assertEquals(standardExpand, storageExpand);
 
         async.complete();
     }